@@ -0,0 +1,573 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingDeque;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Thumbnails of the cover art embedded in tracks, for showing beside
+ * them in a list.
+ *
+ * Thumbnails are made on background threads: the picture is read from
+ * the file's ID3 tag by its position (Id3Tag.readPicture), decoded at a
+ * reduced resolution where the format allows, and scaled down. They are
+ * kept in two places:
+ *
+ *   - in memory, the most recently used, up to a limit on their total
+ *     size in bytes;
+ *   - on disk, as PNG files in a folder, so that they are not made again
+ *     at the next start. The folder is also limited in size, the least
+ *     recently used files being deleted first.
+ *
+ * Tracks without a picture are remembered in both places too, so their
+ * tags are not read again.
+ *
+ * get and peek never wait: get gives the thumbnail if it is in memory and
+ * otherwise asks for it to be loaded. The most recent requests are
+ * served first and the oldest are dropped when too many are waiting, so
+ * when a list is scrolled quickly the rows now showing are loaded first
+ * and those scrolled past are not loaded at all.
+ *
+ * @version 2026.10.19
+ */
+public class AlbumArtCache
+{
+    // The name of the folder in a library folder that holds its thumbnails.
+    public static final String FOLDER_NAME = "album-art";
+    // The size a thumbnail in memory is counted as when a track has no picture.
+    private static final int NO_PICTURE_BYTES = 64;
+    // The space a saved file is counted as taking on disk, rounded up to
+    // whole blocks of most file systems; an empty file still takes one.
+    private static final int DISK_BLOCK_BYTES = 4096;
+    // The most requests waiting to be loaded.
+    private static final int MAX_WAITING = 256;
+    // The most threads making thumbnails.
+    private static final int MAX_THREADS = 2;
+    // The thumbnail held for a track without a picture.
+    private static final BufferedImage NO_PICTURE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    // The width and height of the thumbnails, in pixels.
+    private final int size;
+    // The folder thumbnails are saved in, or null to keep them only in memory.
+    private final File folder;
+    // The most bytes of thumbnails kept in memory and on disk.
+    private final long memoryLimit;
+    private final long diskLimit;
+    // The thumbnails in memory by file name, least recently used first.
+    private final LinkedHashMap<String, BufferedImage> thumbnails;
+    // The bytes of thumbnails in memory.
+    private long memoryBytes;
+    // The bytes of thumbnails on disk, or -1 until the folder has been checked.
+    private long diskBytes;
+    // The requests waiting, the most recent first, and the files they are for.
+    private final LinkedBlockingDeque<Request> waiting;
+    private final Set<String> requested;
+    // The threads making thumbnails.
+    private final Thread[] workers;
+    // The number of thumbnails found in memory, on disk, and made from the file.
+    private long memoryHits;
+    private long diskHits;
+    private long made;
+
+    /**
+     * Create a cache of thumbnails.
+     * @param size The width and height of the thumbnails, in pixels.
+     * @param folder The folder to save thumbnails in, or null to keep them
+     *               only in memory. It is created if needed.
+     * @param memoryLimit The most bytes of thumbnails to keep in memory.
+     * @param diskLimit The most bytes of thumbnails to keep on disk.
+     */
+    public AlbumArtCache(int size, File folder, long memoryLimit, long diskLimit)
+    {
+        if(size <= 0) {
+            throw new IllegalArgumentException("Thumbnail size must be positive: " + size);
+        }
+        this.size = size;
+        this.folder = folder;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        thumbnails = new LinkedHashMap<>(16, 0.75f, true);
+        memoryBytes = 0;
+        diskBytes = -1;
+        waiting = new LinkedBlockingDeque<>();
+        requested = new HashSet<>();
+        int threads = Math.max(1, Math.min(MAX_THREADS,
+                                           Runtime.getRuntime().availableProcessors() - 1));
+        workers = new Thread[threads];
+        for(int i = 0; i < threads; i++) {
+            workers[i] = new Thread("album-art-" + i) {
+                public void run()
+                {
+                    work();
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Return the thumbnail of a track's cover art if it is in memory.
+     * If it is not, it is loaded in the background and whenLoaded is run
+     * once it is, on a background thread.
+     * @param track The track.
+     * @param whenLoaded What to do once the thumbnail has been loaded, or null.
+     * @return The thumbnail, or null if it is not in memory or the track
+     *         has no picture.
+     */
+    public BufferedImage get(Track track, Runnable whenLoaded)
+    {
+        String filename = track.getFilename();
+        synchronized(this) {
+            BufferedImage thumbnail = thumbnails.get(filename);
+            if(thumbnail != null) {
+                memoryHits++;
+                return thumbnail == NO_PICTURE ? null : thumbnail;
+            }
+            if(!requested.add(filename)) {
+                return null;
+            }
+        }
+        waiting.addFirst(new Request(filename, whenLoaded));
+        if(waiting.size() > MAX_WAITING) {
+            Request oldest = waiting.pollLast();
+            if(oldest != null) {
+                synchronized(this) {
+                    requested.remove(oldest.filename);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the thumbnail of a track's cover art if it is in memory,
+     * without asking for it to be loaded.
+     * @param track The track.
+     * @return The thumbnail, or null if it is not in memory or the track
+     *         has no picture.
+     */
+    public synchronized BufferedImage peek(Track track)
+    {
+        BufferedImage thumbnail = thumbnails.get(track.getFilename());
+        return thumbnail == NO_PICTURE ? null : thumbnail;
+    }
+
+    /**
+     * Return the thumbnail of a track's cover art, loading or making it
+     * if it is not in memory.
+     * @param track The track.
+     * @return The thumbnail, or null if the track has no picture.
+     */
+    public BufferedImage load(Track track)
+    {
+        String filename = track.getFilename();
+        synchronized(this) {
+            BufferedImage thumbnail = thumbnails.get(filename);
+            if(thumbnail != null) {
+                memoryHits++;
+                return thumbnail == NO_PICTURE ? null : thumbnail;
+            }
+        }
+        BufferedImage thumbnail = loadThumbnail(filename);
+        return thumbnail == NO_PICTURE ? null : thumbnail;
+    }
+
+    /**
+     * Stop making thumbnails. Those in memory can still be read.
+     */
+    public void close()
+    {
+        waiting.clear();
+        for(Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Return the bytes of thumbnails held in memory.
+     * @return The bytes.
+     */
+    public synchronized long getMemoryBytes()
+    {
+        return memoryBytes;
+    }
+
+    /**
+     * Return the space thumbnails saved on disk are counted as taking.
+     * @return The bytes, in whole blocks, or -1 until the folder has been checked.
+     */
+    public synchronized long getDiskBytes()
+    {
+        return diskBytes;
+    }
+
+    /**
+     * Return the number of thumbnails held in memory.
+     * @return The number, including tracks found to have no picture.
+     */
+    public synchronized int getMemoryCount()
+    {
+        return thumbnails.size();
+    }
+
+    /**
+     * Return how many times a thumbnail was found in memory.
+     * @return The number of memory hits.
+     */
+    public synchronized long getMemoryHits()
+    {
+        return memoryHits;
+    }
+
+    /**
+     * Return how many times a thumbnail was read from disk.
+     * @return The number of disk hits.
+     */
+    public synchronized long getDiskHits()
+    {
+        return diskHits;
+    }
+
+    /**
+     * Return how many thumbnails have been made from the tracks' pictures.
+     * @return The number made, including tracks found to have no picture.
+     */
+    public synchronized long getMade()
+    {
+        return made;
+    }
+
+    /**
+     * Load the thumbnails requested, most recent first, until closed.
+     */
+    private void work()
+    {
+        if(Thread.currentThread() == workers[0]) {
+            trimFolder();
+        }
+        try {
+            while(true) {
+                Request request = waiting.takeFirst();
+                loadThumbnail(request.filename);
+                synchronized(this) {
+                    requested.remove(request.filename);
+                }
+                if(request.whenLoaded != null) {
+                    request.whenLoaded.run();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    /**
+     * Return a file's thumbnail from disk, or make it from the file's
+     * picture and save it, and keep it in memory.
+     * @param filename The track file.
+     * @return The thumbnail, or NO_PICTURE.
+     */
+    private BufferedImage loadThumbnail(String filename)
+    {
+        File file = new File(filename);
+        File saved = folder == null ? null : savedFile(file);
+        BufferedImage thumbnail = null;
+        if(saved != null && saved.exists()) {
+            thumbnail = readSaved(saved);
+            if(thumbnail != null) {
+                saved.setLastModified(System.currentTimeMillis());
+                synchronized(this) {
+                    diskHits++;
+                }
+            }
+        }
+        if(thumbnail == null) {
+            thumbnail = makeThumbnail(file);
+            synchronized(this) {
+                made++;
+            }
+            if(saved != null) {
+                save(thumbnail, saved);
+            }
+        }
+        keep(filename, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Make the thumbnail of a file's picture.
+     * @param file The track file.
+     * @return The thumbnail, or NO_PICTURE if the file has no picture
+     *         that can be read.
+     */
+    private BufferedImage makeThumbnail(File file)
+    {
+        try {
+            byte[] picture = Id3Tag.readPicture(file);
+            if(picture == null) {
+                return NO_PICTURE;
+            }
+            BufferedImage image = decode(picture);
+            if(image == null) {
+                return NO_PICTURE;
+            }
+            double scale = Math.min((double) size / image.getWidth(),
+                                    (double) size / image.getHeight());
+            int width = Math.max(1, (int) Math.round(image.getWidth() * Math.min(scale, 1)));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * Math.min(scale, 1)));
+            BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = thumbnail.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                      RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+            graphics.dispose();
+            return thumbnail;
+        }
+        catch(IOException | RuntimeException e) {
+            // A damaged picture is shown as no picture.
+            return NO_PICTURE;
+        }
+    }
+
+    /**
+     * Decode a picture, reading only every nth pixel of a picture much
+     * larger than a thumbnail, so that a large picture is never held
+     * at full size.
+     * @param picture The picture's data.
+     * @return The picture, or null if its format is not known.
+     */
+    private BufferedImage decode(byte[] picture) throws IOException
+    {
+        try(ImageInputStream input = ImageIO.createImageInputStream(
+                new ByteArrayInputStream(picture))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Keep twice the thumbnail's size, so that the scaling is smooth.
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0))
+                                       / (2 * size));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Keep a thumbnail in memory, removing the least recently used
+     * thumbnails if there are too many bytes.
+     */
+    private synchronized void keep(String filename, BufferedImage thumbnail)
+    {
+        BufferedImage old = thumbnails.put(filename, thumbnail);
+        if(old != null) {
+            memoryBytes -= bytes(old);
+        }
+        memoryBytes += bytes(thumbnail);
+        Iterator<BufferedImage> eldest = thumbnails.values().iterator();
+        while(memoryBytes > memoryLimit && eldest.hasNext()) {
+            memoryBytes -= bytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Return the memory a thumbnail is counted as using.
+     */
+    private static long bytes(BufferedImage thumbnail)
+    {
+        if(thumbnail == NO_PICTURE) {
+            return NO_PICTURE_BYTES;
+        }
+        return 4L * thumbnail.getWidth() * thumbnail.getHeight();
+    }
+
+    /**
+     * Return the space a saved file of the given length is counted as
+     * taking on disk. A file recording that a track has no picture is
+     * empty, but is counted as a block like any other.
+     */
+    private static long onDisk(long length)
+    {
+        return Math.max(1, (length + DISK_BLOCK_BYTES - 1) / DISK_BLOCK_BYTES) * DISK_BLOCK_BYTES;
+    }
+
+    /**
+     * Return the file a track's thumbnail is saved in. Its name depends
+     * on the track file's path, size and time of change, so a changed
+     * track is given a new thumbnail.
+     */
+    private File savedFile(File file)
+    {
+        String key = file.getAbsolutePath() + "\0" + file.length() + "\0" + file.lastModified()
+                     + "\0" + size;
+        return new File(folder, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8))
+                                + ".png");
+    }
+
+    /**
+     * Read a saved thumbnail. An empty file records that the track has no picture.
+     * @return The thumbnail, NO_PICTURE, or null if it cannot be read.
+     */
+    private BufferedImage readSaved(File saved)
+    {
+        if(saved.length() == 0) {
+            return NO_PICTURE;
+        }
+        try {
+            return ImageIO.read(saved);
+        }
+        catch(IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save a thumbnail, writing it to a temporary file first so that a
+     * thumbnail is never seen half written.
+     */
+    private void save(BufferedImage thumbnail, File saved)
+    {
+        File temporary = new File(folder, saved.getName() + "." + Thread.currentThread().getId());
+        try {
+            if(!folder.isDirectory() && !folder.mkdirs()) {
+                return;
+            }
+            if(thumbnail == NO_PICTURE) {
+                temporary.createNewFile();
+            }
+            else {
+                ImageIO.write(thumbnail, "png", temporary);
+            }
+            if(temporary.renameTo(saved)) {
+                boolean trim;
+                synchronized(this) {
+                    if(diskBytes >= 0) {
+                        diskBytes += onDisk(saved.length());
+                    }
+                    trim = diskBytes > diskLimit;
+                }
+                if(trim) {
+                    trimFolder();
+                }
+            }
+        }
+        catch(IOException e) {
+            System.out.println("Unable to save a thumbnail: " + e.getMessage());
+        }
+        finally {
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Delete the least recently used thumbnails on disk until they fit
+     * within three quarters of the limit, so that trimming is not needed
+     * again at once.
+     */
+    private void trimFolder()
+    {
+        File[] files = folder == null ? null : folder.listFiles((dir, name) -> name.endsWith(".png"));
+        if(files == null) {
+            // The folder has not been made yet, so nothing is saved.
+            files = new File[0];
+        }
+        long total = 0;
+        long[] lengths = new long[files.length];
+        long[] used = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for(int i = 0; i < files.length; i++) {
+            lengths[i] = onDisk(files[i].length());
+            used[i] = files[i].lastModified();
+            order[i] = i;
+            total += lengths[i];
+        }
+        if(total > diskLimit) {
+            Arrays.sort(order, Comparator.comparingLong(i -> used[i]));
+            for(int i = 0; i < order.length && total > diskLimit * 3 / 4; i++) {
+                if(files[order[i]].delete()) {
+                    total -= lengths[order[i]];
+                }
+            }
+        }
+        synchronized(this) {
+            diskBytes = total;
+        }
+    }
+
+    /**
+     * Load the thumbnails of the tracks in a folder and report the time
+     * taken and the memory used.
+     * @param args The folder, and optionally the thumbnail size and the
+     *             memory limit in kilobytes.
+     */
+    public static void main(String[] args)
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: java AlbumArtCache folder [size] [memory KB]");
+            return;
+        }
+        File library = new File(args[0]);
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        long memory = args.length > 2 ? Long.parseLong(args[2]) * 1024 : 8 * 1024 * 1024;
+        List<Track> tracks = new MusicOrganizer(library).getAllTracks();
+        for(int pass = 1; pass <= 2; pass++) {
+            AlbumArtCache cache = new AlbumArtCache(size, new File(library, FOLDER_NAME),
+                                                    memory, 256L * 1024 * 1024);
+            long start = System.nanoTime();
+            int pictures = 0;
+            for(Track track : tracks) {
+                if(cache.load(track) != null) {
+                    pictures++;
+                }
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.printf("pass %d: %d tracks, %d with pictures, %d ms; %d made, "
+                              + "%d read from disk; %d in memory using %d KB%n",
+                              pass, tracks.size(), pictures, millis, cache.getMade(),
+                              cache.getDiskHits(), cache.getMemoryCount(),
+                              cache.getMemoryBytes() / 1024);
+            cache.close();
+        }
+    }
+
+    /**
+     * A thumbnail to be loaded, and what to do once it is.
+     */
+    private static class Request
+    {
+        final String filename;
+        final Runnable whenLoaded;
+
+        Request(String filename, Runnable whenLoaded)
+        {
+            this.filename = filename;
+            this.whenLoaded = whenLoaded;
+        }
+    }
+}
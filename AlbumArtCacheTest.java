@@ -0,0 +1,180 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A test of reading cover art from ID3 tags and of the AlbumArtCache,
+ * using the small tagged files in ./test-files:
+ *
+ *   cover-v23.mp3  an ID3v2.3 tag with a PNG back cover (red) followed
+ *                  by a JPEG front cover (blue), so the front cover must
+ *                  be chosen over the first picture;
+ *   cover-v24.mp3  an ID3v2.4 tag with a PNG front cover (green) whose
+ *                  description is in UTF-16, so its length is found by
+ *                  a two-byte terminator;
+ *   no-cover.mp3   a tag without a picture.
+ *
+ * Each cover is a square of its colour with a white circle in the middle.
+ * The test also checks that the empty files recording tracks without a
+ * picture are counted against the limit on the disk cache.
+ *
+ * Usage: java AlbumArtCacheTest [folder of test files]
+ *
+ * @version 2026.10.19
+ */
+public class AlbumArtCacheTest
+{
+    // The size of the thumbnails made.
+    private static final int SIZE = 32;
+    // The number of copies of the file without a picture loaded into the disk cache.
+    private static final int COPIES = 12;
+    // The disk cache limit in the check, in bytes: room for a few empty files.
+    private static final long DISK_LIMIT = 4 * 4096;
+
+    // The folder of test files.
+    private final File files;
+    // The number of checks failed.
+    private int failures;
+
+    /**
+     * Run the test.
+     * @param args The folder of test files, if not ./test-files.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        AlbumArtCacheTest test = new AlbumArtCacheTest(new File(args.length > 0 ? args[0]
+                                                                                : "test-files"));
+        int failures = test.run();
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Create a test of the files in a folder.
+     * @param files The folder of test files.
+     */
+    public AlbumArtCacheTest(File files)
+    {
+        this.files = files;
+    }
+
+    /**
+     * Make all the checks.
+     * @return The number of checks failed.
+     */
+    public int run() throws Exception
+    {
+        checkPicture("cover-v23.mp3", 0xFF, 0xD8, "JPEG front cover");
+        checkPicture("cover-v24.mp3", 0x89, 'P', "PNG front cover");
+        check("no-cover.mp3 has no picture",
+              Id3Tag.readPicture(new File(files, "no-cover.mp3")) == null);
+
+        AlbumArtCache cache = new AlbumArtCache(SIZE, null, 1024 * 1024, 0);
+        checkThumbnail(cache, "cover-v23.mp3", 0x0000FF);
+        checkThumbnail(cache, "cover-v24.mp3", 0x00FF00);
+        check("no thumbnail without a picture",
+              cache.load(new Track(new File(files, "no-cover.mp3").getPath())) == null);
+        cache.close();
+
+        checkDiskLimit();
+        return failures;
+    }
+
+    /**
+     * Check that the picture read from a file starts as expected.
+     */
+    private void checkPicture(String name, int first, int second, String expected)
+        throws IOException
+    {
+        byte[] picture = Id3Tag.readPicture(new File(files, name));
+        check(name + " gives the " + expected, picture != null && picture.length > 2
+              && (picture[0] & 0xFF) == first && (picture[1] & 0xFF) == second);
+    }
+
+    /**
+     * Check a file's thumbnail: its size, the colour at a corner and the
+     * white circle in the middle.
+     */
+    private void checkThumbnail(AlbumArtCache cache, String name, int colour)
+    {
+        BufferedImage thumbnail = cache.load(new Track(new File(files, name).getPath()));
+        if(thumbnail == null) {
+            check(name + " has a thumbnail", false);
+            return;
+        }
+        check(name + " thumbnail is " + thumbnail.getWidth() + "x" + thumbnail.getHeight(),
+              thumbnail.getWidth() == SIZE && thumbnail.getHeight() == SIZE);
+        int corner = thumbnail.getRGB(1, 1);
+        int middle = thumbnail.getRGB(SIZE / 2, SIZE / 2);
+        check(name + " corner " + Integer.toHexString(corner & 0xFFFFFF) + " is "
+              + Integer.toHexString(colour), isNear(corner, colour));
+        check(name + " middle " + Integer.toHexString(middle & 0xFFFFFF) + " is white",
+              isNear(middle, 0xFFFFFF));
+    }
+
+    /**
+     * Load many tracks without pictures into a disk cache with a small
+     * limit, and check that the empty files saved for them are trimmed.
+     */
+    private void checkDiskLimit() throws IOException, InterruptedException
+    {
+        File temporary = Files.createTempDirectory("album-art-test").toFile();
+        File folder = new File(temporary, AlbumArtCache.FOLDER_NAME);
+        File[] copies = new File[COPIES];
+        for(int i = 0; i < COPIES; i++) {
+            copies[i] = new File(temporary, "no-cover-" + i + ".mp3");
+            Files.copy(new File(files, "no-cover.mp3").toPath(), copies[i].toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        AlbumArtCache cache = new AlbumArtCache(SIZE, folder, 1024 * 1024, DISK_LIMIT);
+        // The cache checks the folder on a background thread when created.
+        while(cache.getDiskBytes() < 0) {
+            Thread.sleep(10);
+        }
+        for(File copy : copies) {
+            cache.load(new Track(copy.getPath()));
+        }
+        cache.close();
+        String[] saved = folder.list();
+        int count = saved == null ? 0 : saved.length;
+        check("empty files count against the disk limit (" + count + " of " + COPIES
+              + " kept, " + cache.getDiskBytes() + " bytes counted)",
+              count > 0 && count < COPIES && cache.getDiskBytes() <= DISK_LIMIT);
+        for(File copy : copies) {
+            copy.delete();
+        }
+        if(saved != null) {
+            for(String name : saved) {
+                new File(folder, name).delete();
+            }
+        }
+        folder.delete();
+        temporary.delete();
+    }
+
+    /**
+     * Return whether two colours are close, allowing for JPEG and scaling.
+     */
+    private static boolean isNear(int rgb, int expected)
+    {
+        for(int shift = 0; shift < 24; shift += 8) {
+            if(Math.abs(((rgb >> shift) & 0xFF) - ((expected >> shift) & 0xFF)) > 48) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Report the result of a check.
+     */
+    private void check(String description, boolean passed)
+    {
+        System.out.println((passed ? "ok    " : "FAIL  ") + description);
+        if(!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * A stage in a DspChain, processing decoded samples before they are
+ * written to the audio device.
+ * Samples are 16-bit and interleaved, one per channel in each frame.
+ * An effect processes them in place, and should keep any state it needs
+ * in fields allocated by setFormat() rather than allocating per block.
+ *
+ * @version 2026.10.19
+ */
+public interface AudioEffect
+{
+    /**
+     * Prepare for samples of the given format.
+     * Called before the first block, and whenever the format changes.
+     * @param sampleRate The number of frames per second.
+     * @param channels The number of channels.
+     */
+    void setFormat(int sampleRate, int channels);
+
+    /**
+     * Process a block of samples in place.
+     * @param samples The interleaved samples.
+     * @param offset The position of the first sample.
+     * @param length The number of samples; a whole number of frames.
+     */
+    void process(short[] samples, int offset, int length);
+
+    /**
+     * Forget any state kept from earlier blocks, as after a seek.
+     */
+    void reset();
+
+    /**
+     * Return whether the effect must always be applied, even when
+     * the chain is bypassed to save time.
+     * @return true if the effect cannot be skipped.
+     */
+    default boolean isEssential()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,237 @@
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Compute a compact spectral fingerprint of the start of a track.
+ * The track is decoded, mixed to mono and reduced to a low sample rate.
+ * The energy in a set of frequency bands is then measured in short,
+ * overlapping windows. Each window gives one 32 bit value, each bit of
+ * which records whether the energy difference between two neighbouring
+ * bands rose or fell since the previous window.
+ *
+ * These values survive re-encoding at a different bit rate, so copies of
+ * the same recording give fingerprints that differ in only a few bits.
+ *
+ * @version 2026.10.19
+ */
+public class AudioFingerprinter
+{
+    // The length of the start of the track that is fingerprinted, in seconds.
+    public static final int WINDOW_SECONDS = 15;
+    // The sample rate the audio is reduced to before analysis.
+    private static final int ANALYSIS_RATE = 5512;
+    // The number of samples in each analysis window (a power of 2).
+    private static final int FRAME_SIZE = 2048;
+    // The number of samples between the starts of consecutive windows.
+    private static final int HOP_SIZE = 64;
+    // The number of frequency bands; one more than the bits in a value.
+    private static final int BANDS = 33;
+    // The range of frequencies covered by the bands.
+    private static final double LOW_FREQUENCY = 300;
+    private static final double HIGH_FREQUENCY = 2000;
+
+    // The window function applied before the transform.
+    private final double[] window;
+    // Tables of the cosines and sines used by the transform.
+    private final double[] cos;
+    private final double[] sin;
+    // Working storage for the transform.
+    private final double[] real;
+    private final double[] imag;
+    // The sample rate of the most recently decoded audio, after reduction.
+    private int sampleRate;
+
+    /**
+     * Create a fingerprinter.
+     * A fingerprinter holds working storage, so it should not be shared
+     * between threads.
+     */
+    public AudioFingerprinter()
+    {
+        window = new double[FRAME_SIZE];
+        cos = new double[FRAME_SIZE / 2];
+        sin = new double[FRAME_SIZE / 2];
+        for(int i = 0; i < FRAME_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1));
+        }
+        for(int i = 0; i < FRAME_SIZE / 2; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / FRAME_SIZE);
+            sin[i] = -Math.sin(2 * Math.PI * i / FRAME_SIZE);
+        }
+        real = new double[FRAME_SIZE];
+        imag = new double[FRAME_SIZE];
+        sampleRate = ANALYSIS_RATE;
+    }
+
+    /**
+     * Compute the fingerprint of a file.
+     * @param filename The file to be fingerprinted.
+     * @return The fingerprint; empty if the file is too short.
+     */
+    public int[] fingerprint(String filename) throws JavaLayerException
+    {
+        float[] mono = decodeStart(filename);
+        int length = mono.length;
+        int[] bandEdges = getBandEdges(sampleRate);
+
+        int windows = length < FRAME_SIZE ? 0 : (length - FRAME_SIZE) / HOP_SIZE + 1;
+        int[] result = new int[Math.max(0, windows - 1)];
+        double[] energy = new double[BANDS];
+        double[] previous = new double[BANDS];
+        for(int w = 0; w < windows; w++) {
+            measureBands(mono, w * HOP_SIZE, bandEdges, energy);
+            if(w > 0) {
+                int bits = 0;
+                for(int m = 0; m < BANDS - 1; m++) {
+                    double difference = (energy[m] - energy[m + 1])
+                                      - (previous[m] - previous[m + 1]);
+                    if(difference > 0) {
+                        bits |= 1 << m;
+                    }
+                }
+                result[w - 1] = bits;
+            }
+            double[] swap = previous;
+            previous = energy;
+            energy = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Decode the start of a file, mixed to mono and reduced in rate.
+     * The reduced sample rate is stored in sampleRate.
+     * @param filename The file to be decoded.
+     * @return The samples.
+     */
+    private float[] decodeStart(String filename) throws JavaLayerException
+    {
+        PcmReader reader = new PcmReader(filename);
+        try {
+            SampleBuffer output = reader.readFrame();
+            if(output == null) {
+                return new float[0];
+            }
+            int channels = output.getChannelCount();
+            int factor = Math.max(1, Math.round((float) reader.getSampleRate() / ANALYSIS_RATE));
+            sampleRate = reader.getSampleRate() / factor;
+            float[] mono = new float[WINDOW_SECONDS * sampleRate];
+            int count = 0;
+            float sum = 0;
+            int summed = 0;
+            while(output != null && count < mono.length) {
+                short[] samples = output.getBuffer();
+                int length = output.getBufferLength();
+                for(int i = 0; i + channels <= length && count < mono.length; i += channels) {
+                    for(int c = 0; c < channels; c++) {
+                        sum += samples[i + c];
+                    }
+                    summed++;
+                    if(summed == factor) {
+                        mono[count] = sum / (factor * channels);
+                        count++;
+                        sum = 0;
+                        summed = 0;
+                    }
+                }
+                output = reader.readFrame();
+            }
+            float[] result = new float[count];
+            System.arraycopy(mono, 0, result, 0, count);
+            return result;
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Find the transform bins at the edges of the bands.
+     * The bands are spaced logarithmically.
+     * @param sampleRate The sample rate of the analyzed audio.
+     * @return The first bin of each band, followed by the end of the last.
+     */
+    private int[] getBandEdges(int sampleRate)
+    {
+        int[] edges = new int[BANDS + 1];
+        double ratio = Math.pow(HIGH_FREQUENCY / LOW_FREQUENCY, 1.0 / BANDS);
+        double frequency = LOW_FREQUENCY;
+        for(int b = 0; b <= BANDS; b++) {
+            int bin = (int) Math.round(frequency * FRAME_SIZE / sampleRate);
+            edges[b] = Math.min(bin, FRAME_SIZE / 2);
+            frequency *= ratio;
+        }
+        for(int b = 1; b <= BANDS; b++) {
+            if(edges[b] <= edges[b - 1]) {
+                edges[b] = edges[b - 1] + 1;
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Measure the energy in each band of one window.
+     * @param samples The mono samples.
+     * @param start The first sample of the window.
+     * @param bandEdges The band edges, as returned by getBandEdges.
+     * @param energy Receives the energy of each band.
+     */
+    private void measureBands(float[] samples, int start, int[] bandEdges, double[] energy)
+    {
+        for(int i = 0; i < FRAME_SIZE; i++) {
+            real[i] = samples[start + i] * window[i];
+            imag[i] = 0;
+        }
+        transform();
+        for(int b = 0; b < BANDS; b++) {
+            double sum = 0;
+            for(int k = bandEdges[b]; k < bandEdges[b + 1]; k++) {
+                sum += real[k] * real[k] + imag[k] * imag[k];
+            }
+            energy[b] = sum;
+        }
+    }
+
+    /**
+     * Perform an in-place radix-2 fast Fourier transform of real and imag.
+     */
+    private void transform()
+    {
+        int n = FRAME_SIZE;
+        // Reorder the input by bit-reversed index.
+        for(int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            while((j & bit) != 0) {
+                j ^= bit;
+                bit >>= 1;
+            }
+            j |= bit;
+            if(i < j) {
+                double t = real[i];
+                real[i] = real[j];
+                real[j] = t;
+                t = imag[i];
+                imag[i] = imag[j];
+                imag[j] = t;
+            }
+        }
+        for(int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for(int i = 0; i < n; i += size) {
+                for(int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sin[k * step];
+                    int a = i + k;
+                    int b = a + half;
+                    double tr = real[b] * wr - imag[b] * wi;
+                    double ti = real[b] * wi + imag[b] * wr;
+                    real[b] = real[a] - tr;
+                    imag[b] = imag[a] - ti;
+                    real[a] += tr;
+                    imag[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+
+/**
+ * Crossfade from the end of one track into the start of the next.
+ * As a track nears its end, its player calls beginTail(), and the
+ * remaining samples are captured here instead of being played. When the
+ * next track starts, process() mixes the captured tail into its first
+ * samples, fading the tail out while the new track fades in.
+ *
+ * Only tracks of the same format are mixed. If the next track differs,
+ * or there is no next track, the tail is played unmixed by drainTail().
+ *
+ * @version 2026.10.19
+ */
+public class Crossfader implements AudioEffect
+{
+    // The default length of a crossfade, in milliseconds.
+    public static final int DEFAULT_FADE_MILLIS = 6000;
+    // Room for the frame that crosses the start of the fade.
+    private static final int SPARE_SAMPLES = 2 * 1152;
+
+    // The length of a crossfade, in milliseconds; 0 for none.
+    private volatile int fadeMillis;
+    // The captured tail.
+    private short[] tail;
+    // The number of samples in the tail.
+    private int tailLength;
+    // The position of the next tail sample to mix.
+    private int tailPosition;
+    // The format of the tail.
+    private int tailRate;
+    private int tailChannels;
+    // Whether samples are being captured.
+    private boolean capturing;
+    // The current format.
+    private int sampleRate;
+    private int channels;
+
+    /**
+     * Create a crossfader with the default fade length.
+     */
+    public Crossfader()
+    {
+        fadeMillis = DEFAULT_FADE_MILLIS;
+        tail = new short[0];
+    }
+
+    /**
+     * Set the length of a crossfade.
+     * @param millis The length, in milliseconds; 0 to play tracks without fading.
+     */
+    public void setFadeMillis(int millis)
+    {
+        fadeMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Return the length of a crossfade.
+     * @return The length, in milliseconds.
+     */
+    public int getFadeMillis()
+    {
+        return fadeMillis;
+    }
+
+    /**
+     * Start capturing the tail of a track. Samples processed until
+     * endTail() are kept rather than played.
+     * @param sampleRate The sample rate of the track.
+     * @param channels The number of channels of the track.
+     */
+    public synchronized void beginTail(int sampleRate, int channels)
+    {
+        int capacity = (int) ((long) fadeMillis * sampleRate / 1000 + SPARE_SAMPLES) * channels;
+        if(tail.length < capacity) {
+            tail = new short[capacity];
+        }
+        tailLength = 0;
+        tailPosition = 0;
+        tailRate = sampleRate;
+        tailChannels = channels;
+        capturing = true;
+    }
+
+    /**
+     * Stop capturing; the tail is mixed into the following samples.
+     */
+    public synchronized void endTail()
+    {
+        capturing = false;
+    }
+
+    /**
+     * Return whether samples are being captured rather than played.
+     * @return true if capturing a tail.
+     */
+    public synchronized boolean isCapturing()
+    {
+        return capturing;
+    }
+
+    /**
+     * Return whether a tail is waiting to be mixed into samples of the given format.
+     * @param sampleRate The sample rate of the samples.
+     * @param channels The number of channels of the samples.
+     * @return true if a tail is waiting and cannot be mixed.
+     */
+    public synchronized boolean needsDrain(int sampleRate, int channels)
+    {
+        return !capturing && tailPosition < tailLength
+            && (sampleRate != tailRate || channels != tailChannels);
+    }
+
+    /**
+     * Play any tail not yet mixed, without fading.
+     * @param audio The device to play it on.
+     */
+    public synchronized void drainTail(AudioDevice audio) throws JavaLayerException
+    {
+        capturing = false;
+        if(tailPosition < tailLength && audio != null) {
+            audio.write(tail, tailPosition, tailLength - tailPosition);
+        }
+        tailLength = 0;
+        tailPosition = 0;
+    }
+
+    public synchronized void setFormat(int sampleRate, int channels)
+    {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    public synchronized void process(short[] samples, int offset, int length)
+    {
+        if(capturing) {
+            int n = Math.min(length, tail.length - tailLength);
+            System.arraycopy(samples, offset, tail, tailLength, n);
+            tailLength += n;
+        }
+        else if(tailPosition < tailLength
+                && sampleRate == tailRate && channels == tailChannels) {
+            mix(samples, offset, length);
+        }
+    }
+
+    /**
+     * The crossfader holds the end of the previous track, so it cannot be skipped.
+     */
+    public boolean isEssential()
+    {
+        return true;
+    }
+
+    public synchronized void reset()
+    {
+        capturing = false;
+        tailLength = 0;
+        tailPosition = 0;
+    }
+
+    /**
+     * Mix the tail into the samples, fading it out and the samples in.
+     */
+    private void mix(short[] samples, int offset, int length)
+    {
+        int n = Math.min(length, tailLength - tailPosition);
+        int step = (int) (((long) PcmKernels.WEIGHT_ONE << 15) / tailLength);
+        PcmKernels.mix(samples, offset, tail, tailPosition, n, tailPosition * step, step);
+        tailPosition += n;
+    }
+}
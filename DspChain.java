@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of effects applied to decoded samples before they are played,
+ * such as gain, equalization, limiting and crossfading.
+ * The effects are applied in the order they were added. The time spent
+ * in each effect is measured, so that the cost of each stage can be
+ * reported in nanoseconds per frame.
+ *
+ * @version 2026.10.19
+ */
+public class DspChain
+{
+    // The effects, in order.
+    private AudioEffect[] effects;
+    // The total time spent in each effect, in nanoseconds.
+    private long[] nanos;
+    // The number of frames processed.
+    private long frames;
+    // The current format, or 0 before the first block.
+    private int sampleRate;
+    private int channels;
+    // Whether the effects that are not essential are bypassed.
+    private volatile boolean bypassed;
+    // Whether the bypassed effects were skipped for the last block.
+    private boolean skipped;
+
+    /**
+     * Create an empty chain.
+     */
+    public DspChain()
+    {
+        effects = new AudioEffect[0];
+        nanos = new long[0];
+    }
+
+    /**
+     * Add an effect to the end of the chain.
+     * @param effect The effect to add.
+     */
+    public synchronized void add(AudioEffect effect)
+    {
+        int count = effects.length;
+        AudioEffect[] newEffects = new AudioEffect[count + 1];
+        System.arraycopy(effects, 0, newEffects, 0, count);
+        newEffects[count] = effect;
+        effects = newEffects;
+        nanos = new long[count + 1];
+        frames = 0;
+        if(sampleRate > 0) {
+            effect.setFormat(sampleRate, channels);
+        }
+    }
+
+    /**
+     * Return the effects in the chain.
+     * @return A copy of the list of effects, in order.
+     */
+    public synchronized List<AudioEffect> getEffects()
+    {
+        List<AudioEffect> list = new ArrayList<>();
+        for(AudioEffect effect : effects) {
+            list.add(effect);
+        }
+        return list;
+    }
+
+    /**
+     * Choose whether to bypass the effects that are not essential,
+     * to save time when output is falling behind. Effects are reset
+     * when they are used again.
+     * @param bypassed true to skip all but the essential effects.
+     */
+    public void setBypassed(boolean bypassed)
+    {
+        this.bypassed = bypassed;
+    }
+
+    /**
+     * Return whether the effects that are not essential are bypassed.
+     * @return true if they are bypassed.
+     */
+    public boolean isBypassed()
+    {
+        return bypassed;
+    }
+
+    /**
+     * Process a block of samples in place through every effect.
+     * @param samples The interleaved samples.
+     * @param offset The position of the first sample.
+     * @param length The number of samples; a whole number of frames.
+     * @param sampleRate The number of frames per second.
+     * @param channels The number of channels.
+     */
+    public synchronized void process(short[] samples, int offset, int length,
+                                     int sampleRate, int channels)
+    {
+        boolean skip = bypassed;
+        if(skipped && !skip) {
+            // Their state is out of date.
+            for(AudioEffect effect : effects) {
+                if(!effect.isEssential()) {
+                    effect.reset();
+                }
+            }
+        }
+        skipped = skip;
+        if(sampleRate != this.sampleRate || channels != this.channels) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            for(AudioEffect effect : effects) {
+                effect.setFormat(sampleRate, channels);
+            }
+        }
+        long before = System.nanoTime();
+        for(int i = 0; i < effects.length; i++) {
+            if(skip && !effects[i].isEssential()) {
+                continue;
+            }
+            effects[i].process(samples, offset, length);
+            long after = System.nanoTime();
+            nanos[i] += after - before;
+            before = after;
+        }
+        frames += length / channels;
+    }
+
+    /**
+     * Reset every effect, as after a seek.
+     */
+    public synchronized void reset()
+    {
+        for(AudioEffect effect : effects) {
+            effect.reset();
+        }
+    }
+
+    /**
+     * Return the average time spent in an effect.
+     * @param stage The position of the effect in the chain.
+     * @return The time, in nanoseconds per frame.
+     */
+    public synchronized double getNanosPerFrame(int stage)
+    {
+        return frames == 0 ? 0 : (double) nanos[stage] / frames;
+    }
+
+    /**
+     * Return a report of the time spent in each effect.
+     * @return The report, one line per effect.
+     */
+    public synchronized String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for(int i = 0; i < effects.length; i++) {
+            report.append(String.format("%-12s %8.1f ns/frame%n",
+                                        effects[i].getClass().getSimpleName(),
+                                        getNanosPerFrame(i)));
+        }
+        return report.toString();
+    }
+}
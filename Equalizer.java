@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+/**
+ * A parametric equalizer: a series of peaking filters, each boosting or
+ * cutting a band of frequencies around its centre.
+ * Each band is a biquad filter (from the Audio EQ Cookbook by Robert
+ * Bristow-Johnson), with its state kept per channel in preallocated arrays.
+ * Bands with a gain of 0dB are skipped.
+ *
+ * @version 2026.10.19
+ */
+public class Equalizer implements AudioEffect
+{
+    // The largest number of bands.
+    public static final int MAX_BANDS = 10;
+
+    // The number of bands.
+    private int bandCount;
+    // The centre frequency, gain in dB and Q of each band.
+    private final double[] frequency;
+    private final double[] gain;
+    private final double[] q;
+    // The normalized filter coefficients of each band.
+    private final float[] b0, b1, b2, a1, a2;
+    // The filter state of each band and channel (transposed direct form II).
+    private float[] z1, z2;
+    // The current format.
+    private int sampleRate;
+    private int channels;
+
+    /**
+     * Create an equalizer with no bands.
+     */
+    public Equalizer()
+    {
+        frequency = new double[MAX_BANDS];
+        gain = new double[MAX_BANDS];
+        q = new double[MAX_BANDS];
+        b0 = new float[MAX_BANDS];
+        b1 = new float[MAX_BANDS];
+        b2 = new float[MAX_BANDS];
+        a1 = new float[MAX_BANDS];
+        a2 = new float[MAX_BANDS];
+        sampleRate = 44100;
+        channels = 2;
+        z1 = new float[MAX_BANDS * channels];
+        z2 = new float[MAX_BANDS * channels];
+    }
+
+    /**
+     * Add a band.
+     * @param frequency The centre frequency, in Hz.
+     * @param gain The boost (positive) or cut (negative), in dB.
+     * @param q The sharpness of the band; 0.7 is about two octaves wide.
+     * @return The number of the new band, or -1 if there are already MAX_BANDS.
+     */
+    public synchronized int addBand(double frequency, double gain, double q)
+    {
+        if(bandCount == MAX_BANDS) {
+            return -1;
+        }
+        int band = bandCount++;
+        this.frequency[band] = frequency;
+        this.q[band] = q;
+        setGain(band, gain);
+        return band;
+    }
+
+    /**
+     * Change the gain of a band.
+     * @param band The number of the band.
+     * @param gain The boost (positive) or cut (negative), in dB.
+     */
+    public synchronized void setGain(int band, double gain)
+    {
+        if(band >= 0 && band < bandCount) {
+            this.gain[band] = gain;
+            computeCoefficients(band);
+        }
+    }
+
+    /**
+     * Return the gain of a band.
+     * @param band The number of the band.
+     * @return The gain, in dB.
+     */
+    public synchronized double getGain(int band)
+    {
+        return gain[band];
+    }
+
+    /**
+     * Return the number of bands.
+     * @return The number of bands.
+     */
+    public synchronized int getBandCount()
+    {
+        return bandCount;
+    }
+
+    public synchronized void setFormat(int sampleRate, int channels)
+    {
+        this.sampleRate = sampleRate;
+        if(channels != this.channels) {
+            this.channels = channels;
+            z1 = new float[MAX_BANDS * channels];
+            z2 = new float[MAX_BANDS * channels];
+        }
+        for(int band = 0; band < bandCount; band++) {
+            computeCoefficients(band);
+        }
+        reset();
+    }
+
+    public synchronized void process(short[] samples, int offset, int length)
+    {
+        int end = offset + length;
+        for(int band = 0; band < bandCount; band++) {
+            if(gain[band] == 0) {
+                continue;
+            }
+            float c0 = b0[band], c1 = b1[band], c2 = b2[band];
+            float d1 = a1[band], d2 = a2[band];
+            for(int channel = 0; channel < channels; channel++) {
+                int state = band * channels + channel;
+                float s1 = z1[state];
+                float s2 = z2[state];
+                for(int i = offset + channel; i < end; i += channels) {
+                    float x = samples[i];
+                    float y = c0 * x + s1;
+                    s1 = c1 * x - d1 * y + s2;
+                    s2 = c2 * x - d2 * y;
+                    int out = Math.round(y);
+                    samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, out));
+                }
+                z1[state] = s1;
+                z2[state] = s2;
+            }
+        }
+    }
+
+    public synchronized void reset()
+    {
+        Arrays.fill(z1, 0);
+        Arrays.fill(z2, 0);
+    }
+
+    /**
+     * Compute the coefficients of a peaking filter for a band.
+     */
+    private void computeCoefficients(int band)
+    {
+        double amplitude = Math.pow(10, gain[band] / 40);
+        double omega = 2 * Math.PI * Math.min(frequency[band], sampleRate * 0.45) / sampleRate;
+        double alpha = Math.sin(omega) / (2 * q[band]);
+        double cos = Math.cos(omega);
+        double norm = 1 + alpha / amplitude;
+        b0[band] = (float) ((1 + alpha * amplitude) / norm);
+        b1[band] = (float) (-2 * cos / norm);
+        b2[band] = (float) ((1 - alpha * amplitude) / norm);
+        a1[band] = (float) (-2 * cos / norm);
+        a2[band] = (float) ((1 - alpha / amplitude) / norm);
+    }
+}
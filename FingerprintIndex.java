@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An index of audio fingerprints, used to find tracks that are copies
+ * of the same recording.
+ * Every 32 bit value of every fingerprint is entered in a hash table.
+ * A query looks up each of its values, and each exact hit proposes an
+ * alignment between the query and a stored fingerprint. The best
+ * supported alignments are then checked by counting the differing bits
+ * over the whole overlap.
+ *
+ * @version 2026.10.19
+ */
+public class FingerprintIndex
+{
+    // The largest fraction of differing bits for two fingerprints to match.
+    public static final double MATCH_THRESHOLD = 0.35;
+    // The smallest number of overlapping values needed to compare fingerprints.
+    private static final int MIN_OVERLAP = 128;
+    // The number of best supported alignments checked for each query.
+    private static final int CANDIDATES = 8;
+
+    // The tracks in the index, in the order they were added.
+    private List<Track> tracks;
+    // The fingerprint of each track.
+    private List<int[]> fingerprints;
+    // The positions at which each value occurs, packed as track << 32 | position.
+    // The first element of each array holds the number of positions.
+    private Map<Integer, long[]> postings;
+
+    /**
+     * Create an empty index.
+     */
+    public FingerprintIndex()
+    {
+        tracks = new ArrayList<>();
+        fingerprints = new ArrayList<>();
+        postings = new HashMap<>();
+    }
+
+    /**
+     * Fingerprint the given tracks, using one thread per processor,
+     * and add them to the index.
+     * Tracks that cannot be decoded are left out.
+     * @param library The tracks to be added.
+     */
+    public void addTracks(List<Track> library)
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<AudioFingerprinter> fingerprinters =
+            ThreadLocal.withInitial(AudioFingerprinter::new);
+        List<Future<int[]>> results = new ArrayList<>();
+        for(final Track track : library) {
+            results.add(pool.submit(() -> fingerprinters.get().fingerprint(track.getFilename())));
+        }
+        for(int i = 0; i < library.size(); i++) {
+            try {
+                add(library.get(i), results.get(i).get());
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch(ExecutionException e) {
+                System.out.println("Unable to fingerprint: " + library.get(i).getFilename());
+            }
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Add a track with a known fingerprint to the index.
+     * @param track The track.
+     * @param fingerprint The track's fingerprint.
+     */
+    public void add(Track track, int[] fingerprint)
+    {
+        int id = tracks.size();
+        tracks.add(track);
+        fingerprints.add(fingerprint);
+        for(int position = 0; position < fingerprint.length; position++) {
+            long entry = ((long) id << 32) | position;
+            long[] list = postings.get(fingerprint[position]);
+            if(list == null) {
+                list = new long[4];
+                postings.put(fingerprint[position], list);
+            }
+            else if(list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+                postings.put(fingerprint[position], list);
+            }
+            list[0]++;
+            list[(int) list[0]] = entry;
+        }
+    }
+
+    /**
+     * Find the tracks in the index whose fingerprints match the given one.
+     * @param fingerprint The fingerprint to look for.
+     * @return The matching tracks.
+     */
+    public List<Track> findMatches(int[] fingerprint)
+    {
+        List<Track> matches = new ArrayList<>();
+        for(int id : findMatches(fingerprint, -1)) {
+            matches.add(tracks.get(id));
+        }
+        return matches;
+    }
+
+    /**
+     * Group the tracks in the index that are copies of the same recording.
+     * @return The groups of two or more matching tracks.
+     */
+    public List<List<Track>> findDuplicates()
+    {
+        // Join each track to the group of the first track it matches.
+        int[] group = new int[tracks.size()];
+        for(int id = 0; id < tracks.size(); id++) {
+            group[id] = id;
+        }
+        for(int id = 0; id < tracks.size(); id++) {
+            for(int other : findMatches(fingerprints.get(id), id)) {
+                int a = root(group, id);
+                int b = root(group, other);
+                group[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        Map<Integer, List<Track>> groups = new LinkedHashMap<>();
+        for(int id = 0; id < tracks.size(); id++) {
+            int root = root(group, id);
+            List<Track> members = groups.get(root);
+            if(members == null) {
+                members = new ArrayList<>();
+                groups.put(root, members);
+            }
+            members.add(tracks.get(id));
+        }
+        List<List<Track>> duplicates = new ArrayList<>();
+        for(List<Track> members : groups.values()) {
+            if(members.size() > 1) {
+                duplicates.add(members);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Find the tracks whose fingerprints match the given one.
+     * @param fingerprint The fingerprint to look for.
+     * @param exclude The id of a track to leave out, or -1.
+     * @return The ids of the matching tracks.
+     */
+    private List<Integer> findMatches(int[] fingerprint, int exclude)
+    {
+        // Count the hits supporting each alignment of query and track.
+        Map<Long, Integer> votes = new HashMap<>();
+        for(int position = 0; position < fingerprint.length; position++) {
+            long[] list = postings.get(fingerprint[position]);
+            if(list == null) {
+                continue;
+            }
+            for(int i = 1; i <= list[0]; i++) {
+                long entry = list[i];
+                int id = (int) (entry >>> 32);
+                if(id != exclude) {
+                    int shift = (int) entry - position;
+                    long key = ((long) id << 32) | (shift & 0xffffffffL);
+                    votes.merge(key, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(votes.entrySet());
+        ranked.sort((a, b) -> b.getValue() - a.getValue());
+        List<Integer> matches = new ArrayList<>();
+        for(int i = 0; i < ranked.size() && i < CANDIDATES; i++) {
+            long key = ranked.get(i).getKey();
+            int id = (int) (key >>> 32);
+            if(!matches.contains(id)
+                    && bitErrorRate(fingerprint, fingerprints.get(id), (int) key) <= MATCH_THRESHOLD) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Return the fraction of differing bits between two aligned fingerprints.
+     * @param query The first fingerprint.
+     * @param stored The second fingerprint.
+     * @param shift The position in stored that aligns with the start of query.
+     * @return The bit error rate, or 1 if the overlap is too short.
+     */
+    private static double bitErrorRate(int[] query, int[] stored, int shift)
+    {
+        int start = Math.max(0, -shift);
+        int end = Math.min(query.length, stored.length - shift);
+        if(end - start < MIN_OVERLAP) {
+            return 1;
+        }
+        long errors = 0;
+        for(int i = start; i < end; i++) {
+            errors += Integer.bitCount(query[i] ^ stored[i + shift]);
+        }
+        return errors / (32.0 * (end - start));
+    }
+
+    /**
+     * Find the first member of a group.
+     */
+    private static int root(int[] group, int id)
+    {
+        while(group[id] != id) {
+            id = group[id];
+        }
+        return id;
+    }
+}
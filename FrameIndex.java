@@ -0,0 +1,493 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * An index of the frames in an MPEG audio file.
+ * The index records the byte offset of every frame, so that reading
+ * can start at any frame without reading the frames before it.
+ * It also records the sample rate and frame length, so that frame
+ * numbers can be converted to and from time units.
+ *
+ * Damaged files can be indexed. Where the frames are broken by data
+ * that is not a frame, the scan searches for the next frame and
+ * records the damaged region, and frameStream() gives a decoder only
+ * the frames, so that it does not lose its place. Frames found not
+ * to decode while playing are recorded too, so that a player concealing
+ * them does not decode them again. Since the index is cached, a damaged
+ * file is not scanned again when it is played again.
+ *
+ * @version 2026.10.19
+ */
+public class FrameIndex
+{
+    // The bit rates in kbit/s, by MPEG-1 or not, layer and bit rate index.
+    private static final int[][][] BITRATES = {
+        {
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },
+        },
+        {
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+        },
+    };
+    // The sample rates, by version bits (MPEG-2.5, reserved, MPEG-2, MPEG-1) and rate index.
+    private static final int[][] SAMPLE_RATES = {
+        { 11025, 12000, 8000 },
+        { 0, 0, 0 },
+        { 22050, 24000, 16000 },
+        { 44100, 48000, 32000 },
+    };
+    // The header bits that must not change from frame to frame:
+    // the sync word, version, layer and sample rate.
+    private static final int FORMAT_MASK = 0xFFFE0C00;
+
+    // The byte offset of each frame in the file.
+    private long[] offsets;
+    // The number of frames.
+    private int frameCount;
+    // The sample rate, in Hz.
+    private int sampleRate;
+    // The number of samples (per channel) in each frame.
+    private int samplesPerFrame;
+    // The offset following the last frame.
+    private long dataEnd;
+
+    // The offset at which each damaged region starts, and where the next frame starts.
+    private long[] damageStarts;
+    private long[] damageEnds;
+    // The number of damaged regions.
+    private int damageCount;
+    // The frames found not to decode while playing.
+    private final BitSet badFrames;
+
+    /**
+     * Create an index by reading the headers of all frames in a file.
+     * The frame data is skipped rather than decoded. Data between frames
+     * that are not contiguous is recorded as damage.
+     * @param filename The file to be indexed.
+     * @return The index.
+     */
+    public static FrameIndex scan(String filename) throws JavaLayerException
+    {
+        FrameIndex index = new FrameIndex();
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            Window file = new Window(channel);
+            long length = channel.size();
+            long position = skipTag(file, length);
+            // The header of the first frame, or 0 until it is found.
+            int first = 0;
+            while(position + 4 <= length) {
+                int header = file.getInt(position);
+                int frameLength = getFrameLength(header);
+                if(first != 0 && frameLength > 0 && isSameFormat(header, first)) {
+                    if(position + frameLength > length) {
+                        // The last frame is cut short.
+                        index.addDamage(position, length);
+                        break;
+                    }
+                    index.add(position);
+                    position += frameLength;
+                    index.dataEnd = position;
+                }
+                else {
+                    long found = findFrame(file, position, length, first);
+                    if(found < 0) {
+                        // Anything after the last frame, such as a tag, is ignored.
+                        break;
+                    }
+                    if(first == 0) {
+                        first = file.getInt(found);
+                        index.setFormat(first);
+                    }
+                    else {
+                        index.addDamage(position, found);
+                    }
+                    position = found;
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new JavaLayerException(ex.getMessage(), ex);
+        }
+        index.offsets = Arrays.copyOf(index.offsets, index.frameCount);
+        index.damageStarts = Arrays.copyOf(index.damageStarts, index.damageCount);
+        index.damageEnds = Arrays.copyOf(index.damageEnds, index.damageCount);
+        return index;
+    }
+
+    /**
+     * Create an empty index.
+     */
+    private FrameIndex()
+    {
+        offsets = new long[1024];
+        frameCount = 0;
+        sampleRate = 44100;
+        samplesPerFrame = 1152;
+        damageStarts = new long[4];
+        damageEnds = new long[4];
+        badFrames = new BitSet();
+    }
+
+    /**
+     * Return the number of frames.
+     * @return The number of frames.
+     */
+    public int getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Return the byte offset of a frame.
+     * @param frame The frame number.
+     * @return The offset of the frame's header in the file.
+     */
+    public long getOffset(int frame)
+    {
+        return offsets[frame];
+    }
+
+    /**
+     * Return the sample rate.
+     * @return The sample rate, in Hz.
+     */
+    public int getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Return the number of samples (per channel) in each frame.
+     * @return The frame length in samples.
+     */
+    public int getSamplesPerFrame()
+    {
+        return samplesPerFrame;
+    }
+
+    /**
+     * Return the length of the file.
+     * @return The length in milliseconds.
+     */
+    public long getLengthMillis()
+    {
+        return samplesToMillis((long) frameCount * samplesPerFrame);
+    }
+
+    /**
+     * Convert a sample offset to milliseconds.
+     * @param sample The sample offset.
+     * @return The time in milliseconds.
+     */
+    public long samplesToMillis(long sample)
+    {
+        return sample * 1000 / sampleRate;
+    }
+
+    /**
+     * Convert a time to a sample offset.
+     * @param millis The time in milliseconds.
+     * @return The sample offset.
+     */
+    public long millisToSamples(long millis)
+    {
+        return millis * sampleRate / 1000;
+    }
+
+    /**
+     * Return the number of damaged regions found between frames.
+     * @return The number of damaged regions.
+     */
+    public int getDamageCount()
+    {
+        return damageCount;
+    }
+
+    /**
+     * Return where a damaged region starts.
+     * @param damage The number of the region.
+     * @return The offset in the file of the first byte that is not part of a frame.
+     */
+    public long getDamageOffset(int damage)
+    {
+        return damageStarts[damage];
+    }
+
+    /**
+     * Record that a frame could not be decoded.
+     * @param frame The frame number.
+     */
+    public synchronized void markBadFrame(int frame)
+    {
+        badFrames.set(frame);
+    }
+
+    /**
+     * Return whether a frame has been found not to decode.
+     * @param frame The frame number.
+     * @return true if the frame could not be decoded.
+     */
+    public synchronized boolean isBadFrame(int frame)
+    {
+        return badFrames.get(frame);
+    }
+
+    /**
+     * Wrap a stream reading the file from a frame's offset, so that it
+     * passes over the damaged regions and ends after the last frame.
+     * A decoder reading it sees only the frames in this index.
+     * @param in The stream reading the file from the offset.
+     * @param offset The offset of a frame, or of the start of the file.
+     * @return The stream of frames.
+     */
+    public InputStream frameStream(InputStream in, long offset)
+    {
+        return new FrameStream(in, offset);
+    }
+
+    /**
+     * Record the format details given in the first frame's header.
+     * @param header The header of the first frame.
+     */
+    private void setFormat(int header)
+    {
+        int version = (header >>> 19) & 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        sampleRate = SAMPLE_RATES[version][(header >>> 10) & 3];
+        if(layer == 1) {
+            samplesPerFrame = 384;
+        }
+        else if(layer == 3 && version != 3) {
+            samplesPerFrame = 576;
+        }
+        else {
+            samplesPerFrame = 1152;
+        }
+    }
+
+    /**
+     * Add the offset of the next frame.
+     * @param offset The offset of the frame.
+     */
+    private void add(long offset)
+    {
+        if(frameCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, frameCount * 2);
+        }
+        offsets[frameCount] = offset;
+        frameCount++;
+    }
+
+    /**
+     * Add a damaged region.
+     * @param start The offset of the first byte that is not part of a frame.
+     * @param end The offset of the next frame, or the end of the file.
+     */
+    private void addDamage(long start, long end)
+    {
+        if(damageCount == damageStarts.length) {
+            damageStarts = Arrays.copyOf(damageStarts, damageCount * 2);
+            damageEnds = Arrays.copyOf(damageEnds, damageCount * 2);
+        }
+        damageStarts[damageCount] = start;
+        damageEnds[damageCount] = end;
+        damageCount++;
+    }
+
+    /**
+     * Return the length of a frame, worked out as the decoder does.
+     * @param header The four bytes of the frame header.
+     * @return The length including the header, or 0 if this is not a valid header.
+     */
+    private static int getFrameLength(int header)
+    {
+        int version = (header >>> 19) & 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        int bitrateIndex = (header >>> 12) & 15;
+        int rateIndex = (header >>> 10) & 3;
+        if((header & 0xFFE00000) != 0xFFE00000 || version == 1 || layer == 4
+           || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) {
+            return 0;
+        }
+        int padding = (header >>> 9) & 1;
+        int bitrate = BITRATES[version == 3 ? 1 : 0][layer - 1][bitrateIndex] * 1000;
+        int rate = SAMPLE_RATES[version][rateIndex];
+        if(layer == 1) {
+            return (12 * bitrate / rate + padding) * 4;
+        }
+        int length = 144 * bitrate / rate;
+        if(layer == 3 && version != 3) {
+            // MPEG-2 and 2.5 Layer III frames have half the samples.
+            length /= 2;
+        }
+        return length + padding;
+    }
+
+    /**
+     * Return whether a header has the same format as the first frame's,
+     * including whether it is mono.
+     */
+    private static boolean isSameFormat(int header, int first)
+    {
+        return (header & FORMAT_MASK) == (first & FORMAT_MASK)
+               && ((header & 0xC0) == 0xC0) == ((first & 0xC0) == 0xC0);
+    }
+
+    /**
+     * Search for the next frame: a valid header, of the same format as
+     * the first frame if that is known, followed by another frame of the
+     * same format or the end of the file.
+     * @return The offset of the frame, or -1 if there is none.
+     */
+    private static long findFrame(Window file, long from, long length, int first)
+        throws IOException
+    {
+        for(long position = from; position + 4 <= length; position++) {
+            int header = file.getInt(position);
+            int frameLength = getFrameLength(header);
+            if(frameLength > 0 && (first == 0 || isSameFormat(header, first))) {
+                long next = position + frameLength;
+                if(next == length) {
+                    return position;
+                }
+                if(next + 4 <= length) {
+                    int nextHeader = file.getInt(next);
+                    if(getFrameLength(nextHeader) > 0 && isSameFormat(nextHeader, header)) {
+                        return position;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the offset following an ID3v2 tag at the start of the file, or 0.
+     */
+    private static long skipTag(Window file, long length) throws IOException
+    {
+        if(length < 10 || (file.getInt(0) >>> 8) != 0x494433) {
+            return 0;
+        }
+        // The size is held in four bytes of seven bits each, and
+        // excludes the 10 byte header and any footer.
+        int size = file.getInt(6);
+        long tagLength = 10 + (((size >>> 24) & 0x7f) << 21 | ((size >>> 16) & 0x7f) << 14
+                               | ((size >>> 8) & 0x7f) << 7 | (size & 0x7f));
+        if((file.getInt(2) & 0x10) != 0) {
+            tagLength += 10;
+        }
+        return Math.min(tagLength, length);
+    }
+
+    /**
+     * A window onto a file, read a block at a time as it moves forward.
+     */
+    private static class Window
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        // The offset of the first byte in the buffer, or -1 if empty.
+        private long start;
+
+        Window(FileChannel channel)
+        {
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(64 * 1024);
+            start = -1;
+        }
+
+        /**
+         * Return the four bytes at an offset, which must be within the file.
+         */
+        int getInt(long offset) throws IOException
+        {
+            if(start < 0 || offset < start || offset + 4 > start + buffer.position()) {
+                buffer.clear();
+                while(buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                }
+                start = offset;
+            }
+            return buffer.getInt((int) (offset - start));
+        }
+    }
+
+    /**
+     * A stream of the frames of the file, passing over damaged regions.
+     */
+    private class FrameStream extends InputStream
+    {
+        private final InputStream in;
+        // The offset of the next byte.
+        private long position;
+        // The next damaged region.
+        private int damage;
+
+        FrameStream(InputStream in, long position)
+        {
+            this.in = in;
+            this.position = position;
+            damage = 0;
+            while(damage < damageCount && damageEnds[damage] <= position) {
+                damage++;
+            }
+        }
+
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            while(damage < damageCount && position >= damageStarts[damage]) {
+                skipTo(damageEnds[damage]);
+                damage++;
+            }
+            long limit = damage < damageCount ? damageStarts[damage] : dataEnd;
+            if(position >= limit) {
+                return -1;
+            }
+            int n = in.read(data, offset, (int) Math.min(length, limit - position));
+            if(n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+
+        /**
+         * Move forward to an offset.
+         */
+        private void skipTo(long offset) throws IOException
+        {
+            while(position < offset) {
+                long n = in.skip(offset - position);
+                if(n <= 0) {
+                    if(in.read() < 0) {
+                        break;
+                    }
+                    n = 1;
+                }
+                position += n;
+            }
+        }
+    }
+}
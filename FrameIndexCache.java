@@ -0,0 +1,129 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * A cache of frame indexes, shared by all players.
+ * Building an index means reading the whole file, so indexes are kept
+ * for the most recently used files. An index is rebuilt if its file has
+ * changed since it was built.
+ *
+ * Indexes can be built ahead of time on a background thread, so that
+ * starting the next track does not wait for the file to be scanned.
+ *
+ * @version 2026.10.19
+ */
+public class FrameIndexCache
+{
+    // The largest number of indexes kept.
+    private static final int CAPACITY = 256;
+    // The number of bytes read from the start of a file when prefetching.
+    private static final int PREFETCH_BYTES = 64 * 1024;
+
+    // The cached indexes, least recently used first.
+    private static final Map<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > CAPACITY;
+            }
+        };
+    // The thread that builds indexes ahead of time.
+    private static final ExecutorService prefetcher =
+        Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+    /**
+     * Return the index of a file, building it if it is not cached.
+     * @param filename The file.
+     * @return The file's frame index.
+     */
+    public static FrameIndex get(String filename) throws JavaLayerException
+    {
+        FrameIndex cached = getIfCached(filename);
+        if(cached != null) {
+            return cached;
+        }
+        File file = new File(filename);
+        long modified = file.lastModified();
+        long length = file.length();
+        PlayerMetrics.get().recordIndexLookup(false);
+        long start = System.nanoTime();
+        FrameIndex index = FrameIndex.scan(filename);
+        PlayerMetrics.get().recordScan(System.nanoTime() - start);
+        synchronized(entries) {
+            entries.put(filename, new Entry(index, modified, length));
+        }
+        return index;
+    }
+
+    /**
+     * Return the index of a file if it is cached and up to date, without
+     * building it.
+     * @param filename The file.
+     * @return The file's frame index, or null if it would have to be built.
+     */
+    public static FrameIndex getIfCached(String filename)
+    {
+        File file = new File(filename);
+        long modified = file.lastModified();
+        long length = file.length();
+        synchronized(entries) {
+            Entry entry = entries.get(filename);
+            if(entry != null && entry.modified == modified && entry.length == length) {
+                PlayerMetrics.get().recordIndexLookup(true);
+                return entry.index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the indexes of the given tracks on a background thread, and read
+     * the start of each file so that its first frames are in memory.
+     * @param tracks The tracks that are likely to be played soon.
+     */
+    public static void prefetch(Iterable<Track> tracks)
+    {
+        for(final Track track : tracks) {
+            prefetcher.execute(() -> {
+                try {
+                    get(track.getFilename());
+                    try(FileInputStream in = new FileInputStream(track.getFilename())) {
+                        in.read(new byte[PREFETCH_BYTES]);
+                    }
+                }
+                catch(JavaLayerException | IOException e) {
+                    // The problem will be reported if the track is played.
+                }
+            });
+        }
+    }
+
+    /**
+     * A cached index and the state of the file it was built from.
+     */
+    private static class Entry
+    {
+        final FrameIndex index;
+        final long modified;
+        final long length;
+
+        Entry(FrameIndex index, long modified, long length)
+        {
+            this.index = index;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+}
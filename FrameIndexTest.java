@@ -0,0 +1,214 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * A test of FrameIndex. Streams of frames are built in each MPEG
+ * version and layer, and must index without damage. A copy of a real
+ * track is then corrupted, by overwriting frames with noise and by
+ * inserting noise between frames, and the scan must find the damage
+ * and resync: every frame outside the damaged part must still be
+ * indexed, at its offset in the corrupted file.
+ *
+ * Usage: java FrameIndexTest [file]
+ * With no file, the first MP3 file in ./audio-files is corrupted.
+ *
+ * @version 2026.10.19
+ */
+public class FrameIndexTest
+{
+    // The number of frames in each built stream.
+    private static final int FRAMES = 200;
+    // The seed of the noise, so that a failure can be repeated.
+    private static final long SEED = 40;
+
+    // The number of checks failed.
+    private int failures;
+
+    /**
+     * Run the test.
+     * @param args The file to corrupt, if any.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File file = null;
+        if(args.length > 0) {
+            file = new File(args[0]);
+        }
+        else {
+            File[] files = new File("./audio-files").listFiles((dir, name) -> name.endsWith(".mp3"));
+            if(files != null && files.length > 0) {
+                file = files[0];
+            }
+        }
+        FrameIndexTest test = new FrameIndexTest();
+        // MPEG-1, 2 and 2.5 at 64kbit/s; the lengths are worked out as
+        // in the standard, with Layer III halved for MPEG-2 and 2.5.
+        test.checkBuilt("MPEG-1 Layer III", 0xFFFB5000, 144 * 64000 / 44100);
+        test.checkBuilt("MPEG-1 Layer II", 0xFFFD4000, 144 * 64000 / 44100);
+        test.checkBuilt("MPEG-1 Layer I", 0xFFFF2000, 12 * 64000 / 44100 * 4);
+        test.checkBuilt("MPEG-2 Layer III", 0xFFF38000, 72 * 64000 / 22050);
+        test.checkBuilt("MPEG-2 Layer II", 0xFFF58000, 144 * 64000 / 22050);
+        test.checkBuilt("MPEG-2.5 Layer III", 0xFFE38000, 72 * 64000 / 11025);
+        test.checkBuilt("MPEG-2.5 Layer II", 0xFFE58000, 144 * 64000 / 11025);
+        if(file != null) {
+            test.checkCorrupted(file);
+        }
+        else {
+            System.out.println("No file to corrupt");
+        }
+        System.out.println(test.failures == 0 ? "All checks passed"
+                                              : test.failures + " checks failed");
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Index a stream of frames with the given header, and check that
+     * every frame is found.
+     * @param name The format.
+     * @param header The header of every frame.
+     * @param frameLength The length of every frame, in bytes.
+     */
+    private void checkBuilt(String name, int header, int frameLength)
+        throws IOException, JavaLayerException
+    {
+        byte[] data = new byte[FRAMES * frameLength];
+        for(int frame = 0; frame < FRAMES; frame++) {
+            for(int i = 0; i < 4; i++) {
+                data[frame * frameLength + i] = (byte) (header >>> (24 - 8 * i));
+            }
+        }
+        File built = write(data);
+        FrameIndex index = FrameIndex.scan(built.getPath());
+        built.delete();
+        check(name + ": " + index.getFrameCount() + " frames, " + index.getDamageCount()
+              + " damaged regions", index.getFrameCount() == FRAMES && index.getDamageCount() == 0);
+    }
+
+    /**
+     * Corrupt copies of a file, and check that the scan resyncs.
+     * @param file The file.
+     */
+    private void checkCorrupted(File file) throws IOException, JavaLayerException
+    {
+        byte[] original = Files.readAllBytes(file.toPath());
+        FrameIndex clean = FrameIndex.scan(file.getPath());
+        int count = clean.getFrameCount();
+        check(file.getName() + " has frames and no damage",
+              count > 10 && clean.getDamageCount() == 0);
+        if(count <= 10) {
+            return;
+        }
+        Random random = new Random(SEED);
+
+        // Overwrite three frames, from just after a header, with noise.
+        int frame = count / 2;
+        long from = clean.getOffset(frame) + 10;
+        long to = clean.getOffset(frame + 3);
+        byte[] overwritten = original.clone();
+        for(long i = from; i < to; i++) {
+            overwritten[(int) i] = (byte) random.nextInt(256);
+        }
+        FrameIndex index = scan(overwritten);
+        check("overwritten: " + index.getDamageCount() + " damaged regions",
+              index.getDamageCount() >= 1);
+        int missing = 0;
+        Set<Long> offsets = offsets(index);
+        for(int f = 0; f < count; f++) {
+            long offset = clean.getOffset(f);
+            if((offset < from - 10 || offset >= to) && !offsets.contains(offset)) {
+                missing++;
+            }
+        }
+        check("overwritten: frames outside the noise all found (" + missing + " missing)",
+              missing == 0);
+        int found = 0;
+        for(long offset : offsets) {
+            if(offset >= from && offset < to) {
+                found++;
+            }
+        }
+        check("overwritten: no frames found in the noise (" + found + " found)", found == 0);
+
+        // Insert noise between two frames, so that the rest move along.
+        frame = count / 3;
+        int at = (int) clean.getOffset(frame);
+        int inserted = 1000;
+        byte[] longer = new byte[original.length + inserted];
+        System.arraycopy(original, 0, longer, 0, at);
+        for(int i = 0; i < inserted; i++) {
+            longer[at + i] = (byte) random.nextInt(256);
+        }
+        System.arraycopy(original, at, longer, at + inserted, original.length - at);
+        index = scan(longer);
+        check("inserted: " + index.getDamageCount() + " damaged regions, from "
+              + (index.getDamageCount() > 0 ? index.getDamageOffset(0) : -1),
+              index.getDamageCount() == 1 && index.getDamageOffset(0) == at);
+        missing = 0;
+        offsets = offsets(index);
+        for(int f = 0; f < count; f++) {
+            long offset = clean.getOffset(f);
+            if(!offsets.contains(f < frame ? offset : offset + inserted)) {
+                missing++;
+            }
+        }
+        check("inserted: every frame found after the noise (" + missing + " missing)",
+              missing == 0 && index.getFrameCount() == count);
+    }
+
+    /**
+     * Index data written to a temporary file.
+     */
+    private static FrameIndex scan(byte[] data) throws IOException, JavaLayerException
+    {
+        File corrupted = write(data);
+        try {
+            return FrameIndex.scan(corrupted.getPath());
+        }
+        finally {
+            corrupted.delete();
+        }
+    }
+
+    /**
+     * Return the offsets of all frames in an index.
+     */
+    private static Set<Long> offsets(FrameIndex index)
+    {
+        Set<Long> offsets = new HashSet<>();
+        for(int f = 0; f < index.getFrameCount(); f++) {
+            offsets.add(index.getOffset(f));
+        }
+        return offsets;
+    }
+
+    /**
+     * Write data to a new temporary file.
+     */
+    private static File write(byte[] data) throws IOException
+    {
+        File file = File.createTempFile("frame-index-test", ".mp3");
+        file.deleteOnExit();
+        try(FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    /**
+     * Report the result of a check.
+     */
+    private void check(String description, boolean passed)
+    {
+        System.out.println((passed ? "ok    " : "FAIL  ") + description);
+        if(!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Scale samples by a fixed gain.
+ * The gain is held as a fixed point multiplier, so the inner loop uses
+ * integer arithmetic only. Samples that would exceed full scale are clipped.
+ *
+ * @version 2026.10.19
+ */
+public class GainEffect implements AudioEffect
+{
+    // The multiplier representing a gain of 0dB.
+    private static final int UNITY_GAIN = PcmKernels.GAIN_ONE;
+
+    // The gain, as a fixed point multiplier.
+    private volatile int scale;
+
+    /**
+     * Create an effect with a gain of 0dB.
+     */
+    public GainEffect()
+    {
+        scale = UNITY_GAIN;
+    }
+
+    /**
+     * Set the gain.
+     * @param gain The gain in dB. Positive values are limited to +12dB.
+     */
+    public void setGain(double gain)
+    {
+        double multiplier = Math.pow(10, gain / 20) * UNITY_GAIN;
+        scale = (int) Math.min(Math.round(multiplier), 4 * UNITY_GAIN - 1);
+    }
+
+    /**
+     * Return whether the gain is 0dB, so processing has no effect.
+     * @return true if the gain is 0dB.
+     */
+    public boolean isUnity()
+    {
+        return scale == UNITY_GAIN;
+    }
+
+    public void setFormat(int sampleRate, int channels)
+    {
+    }
+
+    public void process(short[] samples, int offset, int length)
+    {
+        int multiplier = scale;
+        if(multiplier == UNITY_GAIN) {
+            return;
+        }
+        PcmKernels.gain(samples, offset, length, multiplier);
+    }
+
+    public void reset()
+    {
+    }
+}
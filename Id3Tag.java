@@ -0,0 +1,419 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The details held in the ID3 tag of an MP3 file: title, artist, album,
+ * genre and year. ID3v2 tags (versions 2.2, 2.3 and 2.4) at the start of
+ * the file are read, and an ID3v1 tag at the end is used for anything
+ * they do not give.
+ *
+ * Only the frames needed are read; the rest of the tag is skipped over
+ * without being read. Embedded pictures (cover art), which may be
+ * megabytes, are only located: the place of the front cover, or else
+ * the first picture, is recorded so that readPicture can read just
+ * those bytes when they are wanted.
+ *
+ * @version 2026.10.19
+ */
+public class Id3Tag
+{
+    // The genres numbered by ID3v1, which ID3v2 genres may refer to as "(n)".
+    private static final String[] GENRES = {
+        "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge",
+        "Hip-Hop", "Jazz", "Metal", "New Age", "Oldies", "Other", "Pop", "R&B",
+        "Rap", "Reggae", "Rock", "Techno", "Industrial", "Alternative", "Ska",
+        "Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient",
+        "Trip-Hop", "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical",
+        "Instrumental", "Acid", "House", "Game", "Sound Clip", "Gospel", "Noise",
+        "AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative",
+        "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave",
+        "Techno-Industrial", "Electronic", "Pop-Folk", "Eurodance", "Dream",
+        "Southern Rock", "Comedy", "Cult", "Gangsta", "Top 40", "Christian Rap",
+        "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave",
+        "Psychadelic", "Rave", "Showtunes", "Trailer", "Lo-Fi", "Tribal",
+        "Acid Punk", "Acid Jazz", "Polka", "Retro", "Musical", "Rock & Roll",
+        "Hard Rock",
+    };
+    // The ID3v2 frames read, by their 2.3/2.4 and 2.2 names.
+    private static final Map<String, String> FRAMES = new HashMap<>();
+    static {
+        FRAMES.put("TIT2", "title");
+        FRAMES.put("TT2", "title");
+        FRAMES.put("TPE1", "artist");
+        FRAMES.put("TP1", "artist");
+        FRAMES.put("TALB", "album");
+        FRAMES.put("TAL", "album");
+        FRAMES.put("TCON", "genre");
+        FRAMES.put("TCO", "genre");
+        FRAMES.put("TYER", "year");
+        FRAMES.put("TYE", "year");
+        FRAMES.put("TDRC", "year");
+    }
+    // The largest text frame read, in bytes.
+    private static final int MAX_TEXT = 1024;
+    // The most read of the start of a picture frame to find where the picture begins.
+    private static final int MAX_PICTURE_HEADER = 1024;
+    // The largest picture read, in bytes.
+    private static final int MAX_PICTURE = 16 * 1024 * 1024;
+    // The picture type of a front cover.
+    private static final int FRONT_COVER = 3;
+
+    // The details found, by name: title, artist, album, genre and year.
+    private final Map<String, String> details;
+    // The position and length in the file of the picture's data, or -1 and 0 if none.
+    private long pictureOffset;
+    private int pictureLength;
+    // The type of the picture, such as FRONT_COVER.
+    private int pictureType;
+
+    /**
+     * Create an empty tag.
+     */
+    private Id3Tag()
+    {
+        details = new HashMap<>();
+        pictureOffset = -1;
+        pictureLength = 0;
+    }
+
+    /**
+     * Read the tag of a file. A file without a tag, or one that cannot
+     * be read, gives a tag with no details.
+     * @param file The MP3 file.
+     * @return The tag.
+     */
+    public static Id3Tag read(File file)
+    {
+        Id3Tag tag = new Id3Tag();
+        try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            tag.readVersion2(in);
+            tag.readVersion1(in);
+        }
+        catch(IOException e) {
+            // Treat the file as having no tag.
+        }
+        return tag;
+    }
+
+    /**
+     * Return the title.
+     * @return The title, or null if not tagged.
+     */
+    public String getTitle()
+    {
+        return details.get("title");
+    }
+
+    /**
+     * Return the artist.
+     * @return The artist, or null if not tagged.
+     */
+    public String getArtist()
+    {
+        return details.get("artist");
+    }
+
+    /**
+     * Return the album.
+     * @return The album, or null if not tagged.
+     */
+    public String getAlbum()
+    {
+        return details.get("album");
+    }
+
+    /**
+     * Return the genre, with ID3v1 genre numbers replaced by their names.
+     * @return The genre, or null if not tagged.
+     */
+    public String getGenre()
+    {
+        return details.get("genre");
+    }
+
+    /**
+     * Return the year of release.
+     * @return The year, or 0 if not tagged.
+     */
+    public int getYear()
+    {
+        String year = details.get("year");
+        if(year != null && year.length() >= 4 && year.substring(0, 4).matches("[0-9]{4}")) {
+            return Integer.parseInt(year.substring(0, 4));
+        }
+        return 0;
+    }
+
+    /**
+     * Return where the embedded picture is in the file.
+     * @return The position of the picture's data, or -1 if there is none.
+     */
+    public long getPictureOffset()
+    {
+        return pictureOffset;
+    }
+
+    /**
+     * Return the size of the embedded picture.
+     * @return The length of the picture's data in bytes, or 0 if there is none.
+     */
+    public int getPictureLength()
+    {
+        return pictureLength;
+    }
+
+    /**
+     * Read the picture embedded in a file, such as a JPEG or PNG of the
+     * album cover. Only the tag's frame headers and the picture itself
+     * are read, not the audio.
+     * @param file The MP3 file.
+     * @return The picture's data, or null if the file has no picture.
+     */
+    public static byte[] readPicture(File file) throws IOException
+    {
+        Id3Tag tag = new Id3Tag();
+        try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            tag.readVersion2(in);
+            if(tag.pictureOffset < 0) {
+                return null;
+            }
+            byte[] picture = new byte[tag.pictureLength];
+            in.seek(tag.pictureOffset);
+            in.readFully(picture);
+            return picture;
+        }
+    }
+
+    /**
+     * Read the text frames wanted from an ID3v2 tag at the start of the
+     * file, and locate its picture.
+     */
+    private void readVersion2(RandomAccessFile in) throws IOException
+    {
+        byte[] header = new byte[10];
+        if(in.read(header) < 10 || header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+            return;
+        }
+        int version = header[3];
+        // Unsynchronized pictures are not stored as they are, so cannot be read by position.
+        boolean unsynchronized = (header[5] & 0x80) != 0;
+        long end = 10 + syncsafe(header, 6);
+        long position = 10;
+        if(version >= 3 && (header[5] & 0x40) != 0) {
+            // Skip the extended header.
+            byte[] size = new byte[4];
+            in.seek(position);
+            in.readFully(size);
+            position += version == 4 ? syncsafe(size, 0) : 4 + bigEndian(size, 0, 4);
+        }
+        int idLength = version == 2 ? 3 : 4;
+        int headerLength = version == 2 ? 6 : 10;
+        byte[] frameHeader = new byte[headerLength];
+        while(position + headerLength <= end) {
+            in.seek(position);
+            in.readFully(frameHeader);
+            if(frameHeader[0] == 0) {
+                // Padding.
+                break;
+            }
+            String id = new String(frameHeader, 0, idLength, StandardCharsets.ISO_8859_1);
+            long size = version == 2 ? bigEndian(frameHeader, 3, 3)
+                        : version == 4 ? syncsafe(frameHeader, 4) : bigEndian(frameHeader, 4, 4);
+            position += headerLength;
+            String name = FRAMES.get(id);
+            if(name != null && size > 1 && !details.containsKey(name)) {
+                byte[] text = new byte[(int) Math.min(size, MAX_TEXT)];
+                in.readFully(text);
+                String value = decodeText(text);
+                if(!value.isEmpty()) {
+                    details.put(name, name.equals("genre") ? genreName(value) : value);
+                }
+            }
+            else if((id.equals("APIC") || id.equals("PIC")) && !unsynchronized
+                    && (pictureOffset < 0 || pictureType != FRONT_COVER)) {
+                int flags = version == 2 ? 0 : frameHeader[9] & 0xFF;
+                if(version == 4 ? (flags & 0x0E) == 0 : (flags & 0xC0) == 0) {
+                    // A 2.4 frame may start with its length, which is not needed.
+                    long start = version == 4 && (flags & 0x01) != 0 ? position + 4 : position;
+                    locatePicture(in, start, position + size - start, version);
+                }
+            }
+            position += size;
+        }
+    }
+
+    /**
+     * Record where the picture in a picture frame starts, after the
+     * frame's encoding, format, picture type and description, unless a
+     * front cover has already been found.
+     * @param start The position of the frame's contents.
+     * @param size The size of the frame's contents.
+     * @param version The ID3v2 version.
+     */
+    private void locatePicture(RandomAccessFile in, long start, long size, int version)
+        throws IOException
+    {
+        byte[] head = new byte[(int) Math.min(size, MAX_PICTURE_HEADER)];
+        in.seek(start);
+        in.readFully(head);
+        // The encoding, then a three-letter format in 2.2 or a MIME type ending in a null.
+        int typeAt = 4;
+        if(version != 2) {
+            typeAt = 1;
+            while(typeAt < head.length && head[typeAt] != 0) {
+                typeAt++;
+            }
+            typeAt++;
+        }
+        if(head.length < 2 || typeAt >= head.length) {
+            return;
+        }
+        int type = head[typeAt] & 0xFF;
+        // The description ends in a null, two bytes wide in UTF-16.
+        boolean wide = head[0] == 1 || head[0] == 2;
+        int data = typeAt + 1;
+        while(data < head.length
+              && (head[data] != 0 || (wide && (data + 1 >= head.length || head[data + 1] != 0)))) {
+            data += wide ? 2 : 1;
+        }
+        data += wide ? 2 : 1;
+        long length = size - data;
+        if(data > head.length || length <= 0 || length > MAX_PICTURE) {
+            return;
+        }
+        if(pictureOffset < 0 || type == FRONT_COVER) {
+            pictureOffset = start + data;
+            pictureLength = (int) length;
+            pictureType = type;
+        }
+    }
+
+    /**
+     * Fill in the details not already found from an ID3v1 tag at the
+     * end of the file.
+     */
+    private void readVersion1(RandomAccessFile in) throws IOException
+    {
+        if(in.length() < 128) {
+            return;
+        }
+        byte[] tag = new byte[128];
+        in.seek(in.length() - 128);
+        in.readFully(tag);
+        if(tag[0] != 'T' || tag[1] != 'A' || tag[2] != 'G') {
+            return;
+        }
+        addVersion1("title", tag, 3, 30);
+        addVersion1("artist", tag, 33, 30);
+        addVersion1("album", tag, 63, 30);
+        addVersion1("year", tag, 93, 4);
+        int genre = tag[127] & 0xFF;
+        if(!details.containsKey("genre") && genre < GENRES.length) {
+            details.put("genre", GENRES[genre]);
+        }
+    }
+
+    /**
+     * Add a fixed-width field of an ID3v1 tag, if not already found.
+     */
+    private void addVersion1(String name, byte[] tag, int offset, int length)
+    {
+        String value = trim(new String(tag, offset, length, StandardCharsets.ISO_8859_1));
+        if(!value.isEmpty() && !details.containsKey(name)) {
+            details.put(name, value);
+        }
+    }
+
+    /**
+     * Decode the contents of a text frame: an encoding byte, then the
+     * text. Only the first of several values is kept.
+     */
+    private static String decodeText(byte[] text)
+    {
+        Charset charset;
+        switch(text[0]) {
+            case 1:
+                charset = StandardCharsets.UTF_16;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16BE;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_8;
+                break;
+            default:
+                charset = StandardCharsets.ISO_8859_1;
+                break;
+        }
+        String value = new String(text, 1, text.length - 1, charset);
+        int nul = value.indexOf('\0');
+        return trim(nul >= 0 ? value.substring(0, nul) : value);
+    }
+
+    /**
+     * Replace a reference to an ID3v1 genre number, such as "(0)" or
+     * "17", by the genre's name.
+     */
+    private static String genreName(String genre)
+    {
+        String number = genre;
+        if(genre.startsWith("(") && genre.indexOf(')') > 1) {
+            number = genre.substring(1, genre.indexOf(')'));
+            String rest = genre.substring(genre.indexOf(')') + 1).trim();
+            if(!rest.isEmpty()) {
+                return rest;
+            }
+        }
+        if(number.matches("[0-9]{1,3}") && Integer.parseInt(number) < GENRES.length) {
+            return GENRES[Integer.parseInt(number)];
+        }
+        if(number.equals("RX")) {
+            return "Remix";
+        }
+        if(number.equals("CR")) {
+            return "Cover";
+        }
+        return genre;
+    }
+
+    /**
+     * Remove trailing nulls and surrounding spaces.
+     */
+    private static String trim(String value)
+    {
+        int end = value.length();
+        while(end > 0 && value.charAt(end - 1) == '\0') {
+            end--;
+        }
+        return value.substring(0, end).trim();
+    }
+
+    /**
+     * Return a big-endian number of the given number of bytes.
+     */
+    private static long bigEndian(byte[] bytes, int offset, int length)
+    {
+        long value = 0;
+        for(int i = 0; i < length; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Return a four-byte "syncsafe" number: seven bits in each byte.
+     */
+    private static long syncsafe(byte[] bytes, int offset)
+    {
+        long value = 0;
+        for(int i = 0; i < 4; i++) {
+            value = (value << 7) | (bytes[offset + i] & 0x7F);
+        }
+        return value;
+    }
+}
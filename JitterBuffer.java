@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * A buffer between a network source of audio data and the decoder.
+ * A producer thread copies data from the source into the buffer, and
+ * the decoder reads it through getInputStream(). Reading does not start
+ * until a prebuffer has been filled. If the buffer ever runs empty
+ * (an underrun), the prebuffer is doubled, up to half the capacity,
+ * and reading waits until it has been filled again. Playback therefore
+ * starts quickly on a good connection and becomes more tolerant of a
+ * bad one.
+ *
+ * @version 2026.10.19
+ */
+public class JitterBuffer
+{
+    // The buffered data, used as a ring.
+    private final byte[] buffer;
+    // The position of the next byte to read.
+    private int readPosition;
+    // The number of bytes buffered.
+    private int count;
+    // The number of bytes to buffer before reading starts.
+    private int prebuffer;
+    // Whether reading is waiting for the prebuffer to fill.
+    private boolean buffering;
+    // Whether the source has ended, or the buffer has been closed.
+    private boolean ended;
+    // The error that ended the source, if any.
+    private IOException error;
+    // The number of times the buffer has run empty.
+    private int underruns;
+    // The thread copying the source, or null.
+    private Thread producer;
+
+    /**
+     * Create a buffer.
+     * @param capacity The size of the buffer, in bytes.
+     * @param prebuffer The number of bytes to buffer before reading starts.
+     */
+    public JitterBuffer(int capacity, int prebuffer)
+    {
+        buffer = new byte[capacity];
+        this.prebuffer = Math.min(prebuffer, capacity / 2);
+        buffering = true;
+        ended = false;
+    }
+
+    /**
+     * Copy all data from a source into the buffer on a new thread.
+     * The source is closed when it ends or the buffer is closed. A read
+     * that times out is retried unless the buffer has been closed, so a
+     * source with a read timeout lets a stalled producer give up.
+     * @param source The source of the data.
+     */
+    public synchronized void fillFrom(final InputStream source)
+    {
+        producer = new Thread("jitter-buffer") {
+            public void run()
+            {
+                byte[] chunk = new byte[8192];
+                try {
+                    while(!isEnded()) {
+                        int n;
+                        try {
+                            n = source.read(chunk);
+                        }
+                        catch(SocketTimeoutException e) {
+                            continue;
+                        }
+                        if(n < 0) {
+                            break;
+                        }
+                        write(chunk, n);
+                    }
+                    close();
+                }
+                catch(IOException e) {
+                    fail(e);
+                }
+                catch(InterruptedException e) {
+                    close();
+                }
+                finally {
+                    try {
+                        source.close();
+                    }
+                    catch(IOException e) {
+                    }
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Add data to the buffer, waiting while it is full.
+     * @param data The data to add.
+     * @param length The number of bytes to add.
+     */
+    public synchronized void write(byte[] data, int length) throws InterruptedException
+    {
+        int offset = 0;
+        while(offset < length && !ended) {
+            while(count == buffer.length && !ended) {
+                wait();
+            }
+            int writePosition = (readPosition + count) % buffer.length;
+            int n = Math.min(length - offset,
+                             Math.min(buffer.length - count, buffer.length - writePosition));
+            System.arraycopy(data, offset, buffer, writePosition, n);
+            count += n;
+            offset += n;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Read data from the buffer, waiting for the prebuffer to fill if needed.
+     * @param data Receives the data.
+     * @param offset Where to put the data.
+     * @param length The largest number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the data.
+     */
+    public synchronized int read(byte[] data, int offset, int length) throws IOException
+    {
+        if(count == 0 && !ended && !buffering) {
+            // Ran dry: wait for more data before continuing.
+            underruns++;
+            PlayerMetrics.get().recordUnderrun();
+            prebuffer = Math.min(prebuffer * 2, buffer.length / 2);
+            buffering = true;
+        }
+        try {
+            while(buffering && count < prebuffer && !ended) {
+                wait();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while buffering", e);
+        }
+        buffering = false;
+        if(count == 0) {
+            if(error != null) {
+                throw error;
+            }
+            return -1;
+        }
+        int n = Math.min(length, Math.min(count, buffer.length - readPosition));
+        System.arraycopy(buffer, readPosition, data, offset, n);
+        readPosition = (readPosition + n) % buffer.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Return a stream reading from the buffer.
+     * @return The stream.
+     */
+    public InputStream getInputStream()
+    {
+        return new InputStream() {
+            public int read() throws IOException
+            {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            public int read(byte[] data, int offset, int length) throws IOException
+            {
+                return JitterBuffer.this.read(data, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Mark the end of the data. Data already buffered can still be read.
+     */
+    public synchronized void close()
+    {
+        ended = true;
+        notifyAll();
+    }
+
+    /**
+     * Discard the buffered data and stop filling the buffer. The producer
+     * is interrupted, and closes the source when its read returns. The
+     * source is not closed here, as closing an HTTP stream waits for a
+     * read in progress.
+     */
+    public void abort()
+    {
+        Thread thread;
+        synchronized(this) {
+            count = 0;
+            close();
+            thread = producer;
+        }
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Wait for the thread filling the buffer to finish, after abort().
+     * @param millis The longest time to wait, in milliseconds.
+     * @return true if the thread has finished, or there is none.
+     */
+    public boolean awaitProducer(long millis) throws InterruptedException
+    {
+        Thread thread;
+        synchronized(this) {
+            thread = producer;
+        }
+        if(thread != null) {
+            thread.join(millis);
+            return !thread.isAlive();
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of times the buffer has run empty.
+     * @return The number of underruns.
+     */
+    public synchronized int getUnderruns()
+    {
+        return underruns;
+    }
+
+    /**
+     * Return the number of bytes buffered before reading starts.
+     * @return The current prebuffer size.
+     */
+    public synchronized int getPrebuffer()
+    {
+        return prebuffer;
+    }
+
+    /**
+     * Return the number of bytes buffered.
+     * @return The amount of data waiting to be read.
+     */
+    public synchronized int getLevel()
+    {
+        return count;
+    }
+
+    /**
+     * Record the error that ended the source.
+     */
+    private synchronized void fail(IOException e)
+    {
+        error = e;
+        close();
+    }
+
+    /**
+     * Return whether the buffer has been closed.
+     */
+    private synchronized boolean isEnded()
+    {
+        return ended;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, cheap enough to record on every frame.
+ * Durations are counted in buckets whose bounds are powers of two
+ * nanoseconds, so recording is a bit count and an addition, with no
+ * locking. Each bucket is a LongAdder, so threads recording at once do
+ * not contend. Percentiles are accurate to within a factor of two.
+ *
+ * @version 2026.10.19
+ */
+public class LatencyHistogram
+{
+    // The number of buckets; bucket i counts durations below 2^i ns.
+    public static final int BUCKETS = 40;
+
+    // The count in each bucket.
+    private final LongAdder[] buckets;
+    // The total of all durations recorded, in nanoseconds.
+    private final LongAdder sum;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        buckets = new LongAdder[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+        sum = new LongAdder();
+    }
+
+    /**
+     * Record a duration.
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        buckets[bucket].increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * Return the number of durations recorded.
+     * @return The count.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for(LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Return the total of the durations recorded.
+     * @return The total, in nanoseconds.
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Return the mean duration.
+     * @return The mean, in nanoseconds, or 0 if none has been recorded.
+     */
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Return an upper bound for a percentile of the durations.
+     * @param percentile The percentile, such as 99.
+     * @return The bound of the bucket containing it, in nanoseconds.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] counts = getCounts();
+        long total = 0;
+        for(long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= rank && seen > 0) {
+                return getBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return the count in each bucket.
+     * @return The counts; bucket i counts durations below getBound(i).
+     */
+    public long[] getCounts()
+    {
+        long[] counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Return the upper bound of a bucket.
+     * @param bucket The bucket.
+     * @return The bound, in nanoseconds.
+     */
+    public static long getBound(int bucket)
+    {
+        return 1L << bucket;
+    }
+}
@@ -0,0 +1,814 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A library of tracks saved in a compact binary file, so that the
+ * library need not be rebuilt from the file system at every start.
+ *
+ * The file is opened by mapping it into memory, and nothing is read
+ * from it until a track is asked for, so opening even a very large
+ * catalog is almost instant and uses almost no heap. It holds:
+ *
+ *   a header: the format version, the number of tracks, where each
+ *       section starts, and checksums of the header and the body;
+ *   a string table: each distinct artist, title and file name once,
+ *       as a two-byte length followed by UTF-8;
+ *   the track records, all RECORD_SIZE bytes, giving the offsets of
+ *       their strings, the year, the loudness and trim from analysis, and the
+ *       size and modification time the file had when it was added;
+ *   a sort index for each of Track.FIELDS: the record numbers in the
+ *       order of that field;
+ *   an append log: tracks added and removed since the catalog was
+ *       last written in full, each change with its own checksum.
+ *
+ * Adding or removing a track appends to the log, which is read when
+ * the catalog is opened. A change that was only partly written, as
+ * when the program stops while writing, fails its checksum and is
+ * ignored. compact() writes the catalog in full again, applying the
+ * log. Run as a program, the class inspects, checks and compacts
+ * catalogs; see main().
+ *
+ * @version 2026.10.19
+ */
+public class LibraryCatalog
+{
+    // The first four bytes of every catalog: "LCAT".
+    private static final int MAGIC = 0x4C434154;
+    // The version of the format written.
+    public static final int VERSION = 2;
+    // The size of the header and of each track record, in bytes.
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+
+    // The positions of the header fields.
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 6;
+    private static final int H_COUNT = 8;
+    private static final int H_INDEXES = 12;
+    private static final int H_STRINGS = 16;
+    private static final int H_RECORDS = 24;
+    private static final int H_INDEX = 32;
+    private static final int H_LOG = 40;
+    private static final int H_BODY_CRC = 48;
+    private static final int H_HEADER_CRC = 60;
+
+    // The positions of the fields of a track record.
+    private static final int R_ARTIST = 0;
+    private static final int R_TITLE = 4;
+    private static final int R_FILENAME = 8;
+    private static final int R_ALBUM = 12;
+    private static final int R_GENRE = 16;
+    private static final int R_YEAR = 20;
+    private static final int R_TRACK_GAIN = 24;
+    private static final int R_ALBUM_GAIN = 28;
+    private static final int R_PEAK = 32;
+    private static final int R_START_FRAME = 36;
+    private static final int R_END_FRAME = 40;
+    private static final int R_MODIFIED = 48;
+    private static final int R_LENGTH = 56;
+
+    // The kinds of change in the append log.
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    // The catalog file.
+    private final File file;
+    // The file's contents, up to the start of the append log.
+    private final MappedByteBuffer map;
+    // The number of records written in full.
+    private final int baseCount;
+    // The start of the string table, the records and the sort indexes.
+    private final long strings;
+    private final long records;
+    private final long index;
+    // The start of the append log, and the end of the last complete change in it.
+    private final long logStart;
+    private long logEnd;
+
+    // The tracks added since the catalog was written in full, numbered
+    // from baseCount, and their file sizes and modification times.
+    private final List<Track> added;
+    private final List<long[]> addedFiles;
+    // The numbers of the records of tracks that have been removed.
+    private final BitSet removed;
+
+    /**
+     * Open a catalog. Only the header and the append log are read.
+     * @param file The catalog file.
+     * @throws IOException If the file cannot be read or is not a catalog.
+     */
+    private LibraryCatalog(File file) throws IOException
+    {
+        this.file = file;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if(channel.read(header, 0) < HEADER_SIZE) {
+                throw new IOException("Not a library catalog: " + file);
+            }
+            if(header.getInt(0) != MAGIC || header.getInt(H_HEADER_CRC) != crc(header, 0, H_HEADER_CRC)) {
+                throw new IOException("Not a library catalog, or damaged: " + file);
+            }
+            if(header.getShort(H_VERSION) != VERSION || header.getShort(H_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("Unsupported catalog version " + header.getShort(H_VERSION) + ": " + file);
+            }
+            baseCount = header.getInt(H_COUNT);
+            strings = header.getLong(H_STRINGS);
+            records = header.getLong(H_RECORDS);
+            index = header.getLong(H_INDEX);
+            logStart = header.getLong(H_LOG);
+            if(logStart > Integer.MAX_VALUE || logStart > channel.size()) {
+                throw new IOException("Catalog is too large or truncated: " + file);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, logStart);
+            added = new ArrayList<>();
+            addedFiles = new ArrayList<>();
+            removed = new BitSet();
+            readLog(channel);
+        }
+    }
+
+    /**
+     * Open a catalog. This maps the file and reads the changes made since
+     * it was last written in full; the tracks themselves are not read.
+     * @param file The catalog file.
+     * @return The catalog.
+     * @throws IOException If the file cannot be read or is not a catalog.
+     */
+    public static LibraryCatalog open(File file) throws IOException
+    {
+        return new LibraryCatalog(file);
+    }
+
+    /**
+     * Write a catalog of the given tracks, replacing any existing file.
+     * The size and modification time of each track's file are recorded.
+     * @param file The catalog file.
+     * @param tracks The tracks.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File file, List<Track> tracks) throws IOException
+    {
+        long[][] files = new long[tracks.size()][];
+        for(int i = 0; i < files.length; i++) {
+            File audio = new File(tracks.get(i).getFilename());
+            files[i] = new long[] { audio.lastModified(), audio.length() };
+        }
+        write(file, tracks, files);
+    }
+
+    /**
+     * Write the catalog in full, applying the changes in the append log.
+     * The catalog must not be used afterwards; open it again.
+     * @throws IOException If the file cannot be written.
+     */
+    public void compact() throws IOException
+    {
+        List<Track> tracks = new ArrayList<>();
+        List<long[]> files = new ArrayList<>();
+        for(int record = 0; record < getRecordCount(); record++) {
+            if(!removed.get(record)) {
+                tracks.add(getTrack(record));
+                files.add(getFileState(record));
+            }
+        }
+        write(file, tracks, files.toArray(new long[0][]));
+    }
+
+    /**
+     * Add a track, appending it to the file.
+     * @param track The track.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void add(Track track) throws IOException
+    {
+        File audio = new File(track.getFilename());
+        String[] values = getStrings(track);
+        int size = RECORD_SIZE;
+        for(String value : values) {
+            size += 2 + utf8(value).length;
+        }
+        ByteBuffer change = ByteBuffer.allocate(size);
+        for(String value : values) {
+            putString(change, value);
+        }
+        change.putInt(track.getYear());
+        change.putFloat((float) track.getTrackGain());
+        change.putFloat((float) track.getAlbumGain());
+        change.putFloat((float) track.getPeak());
+        change.putInt(track.getStartFrame());
+        change.putInt(track.getEndFrame());
+        change.putLong(audio.lastModified());
+        change.putLong(audio.length());
+        append(ADD, change);
+        added.add(track);
+        addedFiles.add(new long[] { audio.lastModified(), audio.length() });
+    }
+
+    /**
+     * Remove the track with the given file name, appending the removal to the file.
+     * @param filename The file name of the track.
+     * @return true if there was such a track.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized boolean remove(String filename) throws IOException
+    {
+        int record = find(filename);
+        if(record < 0) {
+            return false;
+        }
+        byte[] name = utf8(filename);
+        ByteBuffer change = ByteBuffer.allocate(2 + name.length);
+        putString(change, filename);
+        append(REMOVE, change);
+        removed.set(record);
+        return true;
+    }
+
+    /**
+     * Return the number of records, including those of removed tracks.
+     * Records are numbered from 0.
+     * @return The number of records.
+     */
+    public synchronized int getRecordCount()
+    {
+        return baseCount + added.size();
+    }
+
+    /**
+     * Return the number of tracks.
+     * @return The number of tracks that have not been removed.
+     */
+    public synchronized int size()
+    {
+        return getRecordCount() - removed.cardinality();
+    }
+
+    /**
+     * Return whether the track of a record has been removed.
+     * @param record The record number.
+     * @return true if removed.
+     */
+    public synchronized boolean isRemoved(int record)
+    {
+        return removed.get(record);
+    }
+
+    /**
+     * Return the track of a record. Each call creates a new Track.
+     * @param record The record number.
+     * @return The track.
+     */
+    public synchronized Track getTrack(int record)
+    {
+        if(record >= baseCount) {
+            return added.get(record - baseCount);
+        }
+        int at = recordPosition(record);
+        Track track = new Track(getString(map.getInt(at + R_ARTIST)),
+                                getString(map.getInt(at + R_TITLE)),
+                                getString(map.getInt(at + R_FILENAME)));
+        track.setTags(getString(map.getInt(at + R_ALBUM)), getString(map.getInt(at + R_GENRE)),
+                      map.getInt(at + R_YEAR));
+        track.setLoudness(map.getFloat(at + R_TRACK_GAIN), map.getFloat(at + R_ALBUM_GAIN),
+                          map.getFloat(at + R_PEAK));
+        track.setTrim(map.getInt(at + R_START_FRAME), map.getInt(at + R_END_FRAME));
+        return track;
+    }
+
+    /**
+     * Return all the tracks, in record order.
+     * @return The tracks that have not been removed.
+     */
+    public synchronized List<Track> getTracks()
+    {
+        List<Track> tracks = new ArrayList<>(size());
+        for(int record = 0; record < getRecordCount(); record++) {
+            if(!removed.get(record)) {
+                tracks.add(getTrack(record));
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * Return one field of a record, without creating a Track.
+     * @param record The record number.
+     * @param field The field; an element of Track.FIELDS.
+     * @return The value of the field.
+     */
+    public synchronized String getField(int record, String field)
+    {
+        if(record >= baseCount) {
+            return added.get(record - baseCount).getField(field);
+        }
+        return getString(map.getInt(recordPosition(record) + fieldOffset(field)));
+    }
+
+    /**
+     * Return the modification time and size the file of a record had
+     * when the record was written.
+     * @param record The record number.
+     * @return The modification time and the size, in bytes.
+     */
+    public synchronized long[] getFileState(int record)
+    {
+        if(record >= baseCount) {
+            return addedFiles.get(record - baseCount).clone();
+        }
+        int at = recordPosition(record);
+        return new long[] { map.getLong(at + R_MODIFIED), map.getLong(at + R_LENGTH) };
+    }
+
+    /**
+     * Return the records of the tracks sorted by a field. Records
+     * written in full are already in order in the file; only tracks
+     * added since are sorted.
+     * @param field The field; an element of Track.FIELDS.
+     * @return The record numbers of the tracks that have not been removed.
+     */
+    public synchronized int[] sortedBy(String field)
+    {
+        int column = fieldColumn(field);
+        Integer[] extra = new Integer[added.size()];
+        for(int i = 0; i < extra.length; i++) {
+            extra[i] = baseCount + i;
+        }
+        Arrays.sort(extra, (a, b) -> getField(a, field).compareTo(getField(b, field)));
+        int[] sorted = new int[size()];
+        int count = 0;
+        int next = 0;
+        for(int i = 0; i < baseCount; i++) {
+            int record = map.getInt((int) (index + ((long) column * baseCount + i) * 4));
+            if(removed.get(record)) {
+                continue;
+            }
+            String value = null;
+            while(next < extra.length) {
+                if(value == null) {
+                    value = getField(record, field);
+                }
+                if(getField(extra[next], field).compareTo(value) >= 0) {
+                    break;
+                }
+                if(!removed.get(extra[next])) {
+                    sorted[count++] = extra[next];
+                }
+                next++;
+            }
+            sorted[count++] = record;
+        }
+        for(; next < extra.length; next++) {
+            if(!removed.get(extra[next])) {
+                sorted[count++] = extra[next];
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Return the record of the track with the given file name. Records
+     * written in full are found by a binary search of the file name index.
+     * @param filename The file name.
+     * @return The record number, or -1 if there is no such track.
+     */
+    public synchronized int find(String filename)
+    {
+        for(int i = added.size() - 1; i >= 0; i--) {
+            if(!removed.get(baseCount + i) && added.get(i).getFilename().equals(filename)) {
+                return baseCount + i;
+            }
+        }
+        int column = fieldColumn("Filename");
+        int low = 0;
+        int high = baseCount - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = map.getInt((int) (index + ((long) column * baseCount + middle) * 4));
+            int order = getField(record, "Filename").compareTo(filename);
+            if(order < 0) {
+                low = middle + 1;
+            }
+            else if(order > 0) {
+                high = middle - 1;
+            }
+            else {
+                return removed.get(record) ? -1 : record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return whether the part of the file written in full matches its checksum.
+     * This reads the whole of that part.
+     * @return true if the contents are intact.
+     */
+    public synchronized boolean verify()
+    {
+        return map.getInt(H_BODY_CRC) == crc(map, HEADER_SIZE, (int) logStart);
+    }
+
+    /**
+     * Return the size of the append log.
+     * @return The number of bytes of changes since the catalog was written in full.
+     */
+    public synchronized long getLogSize()
+    {
+        return logEnd - logStart;
+    }
+
+    /**
+     * Inspect, check or compact a catalog, or build one from a folder.
+     * Usage: java LibraryCatalog info|verify|compact catalog
+     *        java LibraryCatalog build catalog folder
+     *        java LibraryCatalog generate catalog count
+     * generate writes a catalog of made-up tracks, to measure opening
+     * a large one.
+     * @param args The command and its arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2) {
+            System.out.println("Usage: java LibraryCatalog info|verify|compact catalog");
+            System.out.println("       java LibraryCatalog build catalog folder");
+            System.out.println("       java LibraryCatalog generate catalog count");
+            return;
+        }
+        File file = new File(args[1]);
+        String command = args[0];
+        if(command.equals("build") && args.length > 2) {
+            write(file, new TrackReader().readTracks(new File(args[2]), ".mp3"));
+        }
+        else if(command.equals("generate") && args.length > 2) {
+            generate(file, Integer.parseInt(args[2]));
+        }
+        long heap = usedHeap();
+        long start = System.nanoTime();
+        LibraryCatalog catalog = open(file);
+        long openNanos = System.nanoTime() - start;
+        long heapUsed = usedHeap() - heap;
+        if(command.equals("verify")) {
+            System.out.println(catalog.verify() ? "OK" : "Checksum does not match: " + file);
+        }
+        else if(command.equals("compact")) {
+            long before = file.length();
+            catalog.compact();
+            System.out.println("Compacted " + before + " to " + file.length() + " bytes");
+        }
+        else {
+            System.out.printf("%d tracks (%d records, %d bytes of changes), %d bytes%n",
+                              catalog.size(), catalog.getRecordCount(), catalog.getLogSize(),
+                              file.length());
+            System.out.printf("Opened in %.1f ms, using about %d KB of heap%n",
+                              openNanos / 1e6, Math.max(0, heapUsed) / 1024);
+            int[] byArtist = catalog.sortedBy("Artist");
+            if(byArtist.length > 0) {
+                System.out.println("First by artist: " + catalog.getTrack(byArtist[0]).getDetails());
+            }
+        }
+    }
+
+    /**
+     * Write a catalog of the given tracks, with the given file states.
+     */
+    private static void write(File file, List<Track> tracks, long[][] files) throws IOException
+    {
+        int count = tracks.size();
+        // Build the string table, each distinct string once.
+        Map<String, Integer> offsets = new HashMap<>();
+        ByteArrayBuilder table = new ByteArrayBuilder();
+        int[][] fields = new int[count][];
+        for(int i = 0; i < count; i++) {
+            String[] values = getStrings(tracks.get(i));
+            fields[i] = new int[values.length];
+            for(int f = 0; f < values.length; f++) {
+                String value = values[f];
+                Integer offset = offsets.get(value);
+                if(offset == null) {
+                    offset = table.size();
+                    offsets.put(value, offset);
+                    byte[] bytes = utf8(value);
+                    table.putShort(bytes.length);
+                    table.put(bytes);
+                }
+                fields[i][f] = offset;
+            }
+        }
+
+        long strings = HEADER_SIZE;
+        long records = strings + table.size();
+        long index = records + (long) count * RECORD_SIZE;
+        long log = index + (long) Track.FIELDS.length * count * 4;
+        if(log > Integer.MAX_VALUE) {
+            throw new IOException("Too many tracks for one catalog");
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) log);
+        body.position((int) strings);
+        body.put(table.toArray());
+        for(int i = 0; i < count; i++) {
+            Track track = tracks.get(i);
+            for(int offset : fields[i]) {
+                body.putInt(offset);
+            }
+            body.putInt(track.getYear());
+            body.putFloat((float) track.getTrackGain());
+            body.putFloat((float) track.getAlbumGain());
+            body.putFloat((float) track.getPeak());
+            body.putInt(track.getStartFrame());
+            body.putInt(track.getEndFrame());
+            body.putInt(0);
+            body.putLong(files[i][0]);
+            body.putLong(files[i][1]);
+        }
+        for(String field : Track.FIELDS) {
+            Integer[] order = new Integer[count];
+            String[] values = new String[count];
+            for(int i = 0; i < count; i++) {
+                order[i] = i;
+                values[i] = tracks.get(i).getField(field);
+            }
+            Arrays.sort(order, (a, b) -> values[a].compareTo(values[b]));
+            for(int record : order) {
+                body.putInt(record);
+            }
+        }
+
+        body.putInt(0, MAGIC);
+        body.putShort(H_VERSION, (short) VERSION);
+        body.putShort(H_RECORD_SIZE, (short) RECORD_SIZE);
+        body.putInt(H_COUNT, count);
+        body.putInt(H_INDEXES, Track.FIELDS.length);
+        body.putLong(H_STRINGS, strings);
+        body.putLong(H_RECORDS, records);
+        body.putLong(H_INDEX, index);
+        body.putLong(H_LOG, log);
+        body.putInt(H_BODY_CRC, crc(body, HEADER_SIZE, (int) log));
+        body.putInt(H_HEADER_CRC, crc(body, 0, H_HEADER_CRC));
+
+        // Write a new file and move it into place, so a catalog is never half written.
+        File temporary = new File(file.getPath() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING,
+                                                   StandardOpenOption.WRITE)) {
+            body.clear();
+            while(body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the append log, stopping at the first change that is incomplete.
+     */
+    private void readLog(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        ByteBuffer log = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, size - logStart));
+        while(log.hasRemaining() && channel.read(log, logStart + log.position()) > 0) {
+        }
+        log.flip();
+        int complete = 0;
+        while(log.remaining() >= 5) {
+            int start = log.position();
+            byte type = log.get();
+            int length = log.getInt();
+            if(length < 0 || log.remaining() < length + 4) {
+                break;
+            }
+            int end = log.position() + length;
+            if(log.getInt(end) != crc(log, start, end)) {
+                break;
+            }
+            if(type == ADD) {
+                Track track = new Track(getString(log), getString(log), getString(log));
+                track.setTags(getString(log), getString(log), log.getInt());
+                track.setLoudness(log.getFloat(), log.getFloat(), log.getFloat());
+                track.setTrim(log.getInt(), log.getInt());
+                added.add(track);
+                addedFiles.add(new long[] { log.getLong(), log.getLong() });
+            }
+            else if(type == REMOVE) {
+                int record = find(getString(log));
+                if(record >= 0) {
+                    removed.set(record);
+                }
+            }
+            log.position(end + 4);
+            complete = end + 4;
+        }
+        logEnd = logStart + complete;
+    }
+
+    /**
+     * Append a change to the log, after the last complete one.
+     */
+    private void append(byte type, ByteBuffer payload) throws IOException
+    {
+        payload.flip();
+        ByteBuffer change = ByteBuffer.allocate(5 + payload.remaining() + 4);
+        change.put(type);
+        change.putInt(payload.remaining());
+        change.put(payload);
+        change.putInt(crc(change, 0, change.position()));
+        change.flip();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            // Drop anything after the last complete change, such as a torn write.
+            channel.truncate(logEnd);
+            long position = logEnd;
+            while(change.hasRemaining()) {
+                position += channel.write(change, position);
+            }
+            channel.force(false);
+            logEnd = position;
+        }
+    }
+
+    /**
+     * Return the position in the map of a record.
+     */
+    private int recordPosition(int record)
+    {
+        return (int) (records + (long) record * RECORD_SIZE);
+    }
+
+    /**
+     * Return the string at the given offset in the string table.
+     */
+    private String getString(int offset)
+    {
+        ByteBuffer view = map.duplicate();
+        view.position((int) (strings + offset));
+        return getString(view);
+    }
+
+    /**
+     * Read a string written by putString.
+     */
+    private static String getString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a string as a two-byte length and UTF-8.
+     */
+    private static void putString(ByteBuffer buffer, String value)
+    {
+        byte[] bytes = utf8(value);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Return a string as UTF-8, cut to the longest length that can be stored.
+     */
+    private static byte[] utf8(String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 0xFFFF ? bytes : Arrays.copyOf(bytes, 0xFFFF);
+    }
+
+    /**
+     * Return the strings of a track, in the order their offsets are stored.
+     */
+    private static String[] getStrings(Track track)
+    {
+        return new String[] { track.getArtist(), track.getTitle(), track.getFilename(),
+                              track.getAlbum(), track.getGenre() };
+    }
+
+    /**
+     * Return the position in Track.FIELDS of a field.
+     */
+    private static int fieldColumn(String field)
+    {
+        for(int f = 0; f < Track.FIELDS.length; f++) {
+            if(Track.FIELDS[f].equals(field)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field name: " + field);
+    }
+
+    /**
+     * Return the position within a record of the string offset of a field.
+     */
+    private static int fieldOffset(String field)
+    {
+        return new int[] { R_ARTIST, R_TITLE, R_FILENAME }[fieldColumn(field)];
+    }
+
+    /**
+     * Return the CRC-32 of part of a buffer.
+     */
+    private static int crc(ByteBuffer buffer, int from, int to)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Write a catalog of made-up tracks.
+     */
+    private static void generate(File file, int count) throws IOException
+    {
+        List<Track> tracks = new ArrayList<>(count);
+        long[][] files = new long[count][];
+        for(int i = 0; i < count; i++) {
+            String artist = "Artist" + (i % 5000);
+            Track track = new Track(artist, "Title" + i, "/music/" + artist + "-Title" + i + ".mp3");
+            tracks.add(track);
+            files[i] = new long[] { 0, 0 };
+        }
+        write(file, tracks, files);
+    }
+
+    /**
+     * Return the heap in use, after a garbage collection.
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * A growing array of bytes, used to build the string table.
+     */
+    private static class ByteArrayBuilder
+    {
+        // The bytes, and the number in use.
+        private byte[] bytes = new byte[4096];
+        private int size;
+
+        /**
+         * Add a two-byte length.
+         */
+        void putShort(int value)
+        {
+            ensure(2);
+            bytes[size++] = (byte) (value >> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Add bytes.
+         */
+        void put(byte[] values)
+        {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        /**
+         * Return the number of bytes added.
+         */
+        int size()
+        {
+            return size;
+        }
+
+        /**
+         * Return a copy of the bytes added.
+         */
+        byte[] toArray()
+        {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        /**
+         * Make room for more bytes.
+         */
+        private void ensure(int more)
+        {
+            if(size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+    }
+}
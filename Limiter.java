@@ -0,0 +1,115 @@
+/**
+ * A peak limiter, keeping samples below a ceiling without clipping.
+ * When a frame would exceed the ceiling the gain is reduced at once
+ * just enough to keep it below; the gain then recovers gradually
+ * towards 0dB over the release time.
+ *
+ * @version 2026.10.19
+ */
+public class Limiter implements AudioEffect
+{
+    // The ceiling, as a sample value.
+    private volatile float ceiling;
+    // The release time, in milliseconds.
+    private final double releaseMillis;
+    // How much of the remaining gain reduction is kept per frame.
+    private float release;
+    // The current gain.
+    private float gain;
+    // The current format.
+    private int sampleRate;
+    private int channels;
+    // The largest gain reduction since the last call of getReduction(), as a gain.
+    private float lowestGain;
+
+    /**
+     * Create a limiter with a ceiling of -1dBFS and a release of 100ms.
+     */
+    public Limiter()
+    {
+        this(-1, 100);
+    }
+
+    /**
+     * Create a limiter.
+     * @param ceiling The ceiling, in dBFS.
+     * @param releaseMillis The time taken to recover from a reduction.
+     */
+    public Limiter(double ceiling, double releaseMillis)
+    {
+        setCeiling(ceiling);
+        this.releaseMillis = releaseMillis;
+        sampleRate = 44100;
+        channels = 2;
+        computeRelease();
+        gain = 1;
+        lowestGain = 1;
+    }
+
+    /**
+     * Set the ceiling.
+     * @param ceiling The ceiling, in dBFS.
+     */
+    public void setCeiling(double ceiling)
+    {
+        this.ceiling = (float) (Short.MAX_VALUE * Math.pow(10, ceiling / 20));
+    }
+
+    /**
+     * Return the largest gain reduction since this method was last called.
+     * @return The reduction, in dB (0 or negative).
+     */
+    public synchronized double getReduction()
+    {
+        double reduction = 20 * Math.log10(lowestGain);
+        lowestGain = 1;
+        return reduction;
+    }
+
+    public synchronized void setFormat(int sampleRate, int channels)
+    {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        computeRelease();
+    }
+
+    public synchronized void process(short[] samples, int offset, int length)
+    {
+        float limit = ceiling;
+        float g = gain;
+        float lowest = lowestGain;
+        int end = offset + length;
+        for(int frame = offset; frame < end; frame += channels) {
+            int peak = 0;
+            for(int i = frame; i < frame + channels; i++) {
+                peak = Math.max(peak, Math.abs(samples[i]));
+            }
+            float target = peak * g > limit ? limit / peak : 1;
+            if(target < g) {
+                g = target;
+            }
+            else {
+                g = target + (g - target) * release;
+            }
+            lowest = Math.min(lowest, g);
+            for(int i = frame; i < frame + channels; i++) {
+                samples[i] = (short) (samples[i] * g);
+            }
+        }
+        gain = g;
+        lowestGain = lowest;
+    }
+
+    public synchronized void reset()
+    {
+        gain = 1;
+    }
+
+    /**
+     * Work out the per-frame release factor for the current sample rate.
+     */
+    private void computeRelease()
+    {
+        release = (float) Math.exp(-1000.0 / (releaseMillis * sampleRate));
+    }
+}
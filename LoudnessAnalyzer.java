@@ -0,0 +1,221 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Compute ReplayGain-style loudness values for tracks.
+ * Each track is decoded completely and its RMS level and peak sample
+ * are measured. From these a track gain is derived that brings the
+ * track to a common reference level without clipping. Tracks in the
+ * same folder are treated as one album, and an album gain is derived
+ * from their combined level. In the same pass a SilenceDetector finds
+ * the leading and trailing silence of each track.
+ *
+ * The results are stored in the tracks themselves. The throughput is
+ * recorded in PlayerMetrics, and that of the last run is available from
+ * getTracksPerMinute().
+ *
+ * @version 2026.10.19
+ */
+public class LoudnessAnalyzer
+{
+    // The level that tracks are normalized to, in dB relative to full scale.
+    public static final double REFERENCE_LEVEL = -18.0;
+    // The level of a full scale sample.
+    private static final double FULL_SCALE = 32768.0;
+
+    // The number of tracks analyzed per minute in the last run.
+    private double tracksPerMinute;
+
+    /**
+     * Create a loudness analyzer.
+     */
+    public LoudnessAnalyzer()
+    {
+        tracksPerMinute = 0;
+    }
+
+    /**
+     * Analyze all the given tracks, using one thread per processor.
+     * The gain, peak and trim values of each track are updated.
+     * Tracks that cannot be decoded are left unchanged.
+     * @param tracks The tracks to be analyzed.
+     */
+    public void analyzeTracks(List<Track> tracks)
+    {
+        long startTime = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Measurement>> results = new ArrayList<>();
+        for(final Track track : tracks) {
+            results.add(pool.submit(() -> measure(track.getFilename())));
+        }
+
+        // Combine the measurements of the tracks in each folder.
+        Map<String, Measurement> albums = new HashMap<>();
+        Map<Track, Measurement> measured = new HashMap<>();
+        for(int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.get(i);
+            try {
+                Measurement m = results.get(i).get();
+                measured.put(track, m);
+                String album = getAlbum(track);
+                Measurement albumTotal = albums.get(album);
+                if(albumTotal == null) {
+                    albumTotal = new Measurement();
+                    albums.put(album, albumTotal);
+                }
+                albumTotal.add(m);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch(ExecutionException e) {
+                System.out.println("Unable to analyze: " + track.getFilename());
+            }
+        }
+        pool.shutdownNow();
+
+        for(Map.Entry<Track, Measurement> entry : measured.entrySet()) {
+            Track track = entry.getKey();
+            Measurement m = entry.getValue();
+            Measurement album = albums.get(getAlbum(track));
+            track.setLoudness(m.getGain(), album.getGain(), m.getPeak());
+            track.setTrim(m.startFrame, m.endFrame);
+        }
+
+        long nanos = System.nanoTime() - startTime;
+        PlayerMetrics.get().recordAnalysis(measured.size(), nanos);
+        double minutes = nanos / 60e9;
+        tracksPerMinute = minutes > 0 ? measured.size() / minutes : 0;
+    }
+
+    /**
+     * Return the throughput of the most recent call to analyzeTracks.
+     * @return The number of tracks analyzed per minute.
+     */
+    public double getTracksPerMinute()
+    {
+        return tracksPerMinute;
+    }
+
+    /**
+     * Decode a file and measure its level.
+     * @param filename The file to be measured.
+     * @return The measurement.
+     */
+    private Measurement measure(String filename) throws JavaLayerException
+    {
+        Measurement m = new Measurement();
+        SilenceDetector silence = new SilenceDetector();
+        PcmReader reader = new PcmReader(filename);
+        try {
+            SampleBuffer output;
+            while((output = reader.readFrame()) != null) {
+                short[] samples = output.getBuffer();
+                int length = output.getBufferLength();
+                double sum = 0;
+                int peak = 0;
+                for(int i = 0; i < length; i++) {
+                    int sample = samples[i];
+                    sum += sample * sample;
+                    int magnitude = sample < 0 ? -sample : sample;
+                    if(magnitude > peak) {
+                        peak = magnitude;
+                    }
+                }
+                m.addSamples(sum, length, peak);
+                silence.addFrame(samples, length);
+            }
+            m.startFrame = silence.getStartFrame();
+            m.endFrame = silence.getEndFrame();
+        }
+        finally {
+            reader.close();
+        }
+        return m;
+    }
+
+    /**
+     * Return the album a track belongs to.
+     * Tracks carry no album details, so the folder holding the file is used.
+     * @param track The track.
+     * @return A key identifying the album.
+     */
+    private static String getAlbum(Track track)
+    {
+        String parent = new File(track.getFilename()).getAbsoluteFile().getParent();
+        return parent == null ? "" : parent;
+    }
+
+    /**
+     * The accumulated level of one or more tracks.
+     */
+    private static class Measurement
+    {
+        // The sum of the squares of all samples.
+        private double sumOfSquares;
+        // The number of samples.
+        private long count;
+        // The largest sample magnitude.
+        private int peak;
+        // The first audible frame, and the frame following the last.
+        private int startFrame;
+        private int endFrame;
+
+        /**
+         * Add the level of a block of samples.
+         */
+        void addSamples(double sumOfSquares, int count, int peak)
+        {
+            this.sumOfSquares += sumOfSquares;
+            this.count += count;
+            this.peak = Math.max(this.peak, peak);
+        }
+
+        /**
+         * Add the level of another measurement.
+         */
+        void add(Measurement other)
+        {
+            addSamples(other.sumOfSquares, 0, other.peak);
+            count += other.count;
+        }
+
+        /**
+         * Return the peak as a fraction of full scale.
+         */
+        double getPeak()
+        {
+            return peak / FULL_SCALE;
+        }
+
+        /**
+         * Return the gain in dB that brings the level to the reference
+         * level, limited so that the peak does not clip.
+         */
+        double getGain()
+        {
+            if(count == 0 || sumOfSquares == 0) {
+                return 0;
+            }
+            double rms = Math.sqrt(sumOfSquares / count) / FULL_SCALE;
+            double gain = REFERENCE_LEVEL - 20 * Math.log10(rms);
+            if(peak > 0) {
+                double headroom = -20 * Math.log10(getPeak());
+                gain = Math.min(gain, headroom);
+            }
+            return gain;
+        }
+    }
+}
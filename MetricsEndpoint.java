@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP endpoint serving PlayerMetrics in the Prometheus text
+ * format at /metrics. It listens on the loopback address only, so the
+ * metrics are visible to a scraper or agent on the same machine.
+ *
+ * @version 2026.10.19
+ */
+public class MetricsEndpoint
+{
+    // The default port.
+    public static final int DEFAULT_PORT = 9464;
+
+    // The server, once started.
+    private HttpServer server;
+
+    /**
+     * Start serving the metrics.
+     * @param port The port to listen on, or 0 for any free port.
+     * @return The port listened on.
+     * @throws IOException If the port cannot be opened.
+     */
+    public synchronized int start(int port) throws IOException
+    {
+        server = LocalHttpServer.create(port);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = PlayerMetrics.get().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving the metrics.
+     */
+    public synchronized void stop()
+    {
+        if(server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
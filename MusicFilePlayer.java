@@ -18,8 +18,10 @@
  */
 
 import java.io.BufferedInputStream;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
 
 import javazoom.jl.decoder.Bitstream;
 import javazoom.jl.decoder.BitstreamException;
@@ -29,6 +31,7 @@ import javazoom.jl.decoder.JavaLayerException;
 import javazoom.jl.decoder.SampleBuffer;
 import javazoom.jl.player.AudioDevice;
 import javazoom.jl.player.FactoryRegistry;
+import javazoom.jl.player.JavaSoundAudioDevice;
 
 /**
  * Play music files.
@@ -38,6 +41,17 @@ import javazoom.jl.player.FactoryRegistry;
  *     + Restriction to playing files rather than streams.
  *     + Pre-reading of the audio file to determine its length in frames.
  * These modifications permit arbitrary seek operations.
+ * The pre-read builds a FrameIndex of frame offsets, so that seeking
+ * reopens the file at the target frame rather than skipping from the start,
+ * and positions may be given in frames, milliseconds or samples.
+ * The decoder reads only the frames in the index, passing over any
+ * damaged regions. With concealment on, a frame that cannot be decoded
+ * is replaced by silence or by the frame before, and playing goes on.
+ * When the PcmCache is on, short tracks and chosen ranges of frames are
+ * decoded once and then played from memory.
+ * A section between two samples can be looped. On a shared device the
+ * section is held decoded in memory after its first pass, so that the
+ * loop point costs nothing and leaves no gap.
  * 
  * Modifications by David J. Barnes and Michael Kölling.
  * @version 2016.02.29
@@ -46,6 +60,18 @@ import javazoom.jl.player.FactoryRegistry;
  */
 public class MusicFilePlayer
 {
+    /**
+     * What replaces a frame that cannot be decoded.
+     */
+    public enum Concealment {
+        // Stop with an exception, as an unmodified player does.
+        NONE,
+        // Play silence for the frame.
+        SILENCE,
+        // Play the frame before again, quieter for each bad frame in a row.
+        REPEAT
+    }
+
     // The MPEG audio bitstream.
     private Bitstream bitstream;
     // The MPEG audio decoder.
@@ -57,12 +83,96 @@ public class MusicFilePlayer
     // The file being played.
     private String filename;
     
+    // The offsets and format of the frames.
+    private FrameIndex index;
     // The number of frames.
     private int frameCount;
+    // The first frame played by play() and playFrom().
+    private int startFrame;
+    // The frame at which playing stops.
+    private int endFrame;
     // The current frame number.
     private int frameNumber;
     // The position to resume, if any.
     private int resumePosition;
+    // The number of samples to discard from the frame at the resume position.
+    private int resumeSkip;
+    // The number of samples to discard from the next frame decoded.
+    private int skipSamples;
+    
+    // The gain applied to all samples.
+    private GainEffect gain;
+    // The effects applied after the gain, or null.
+    private DspChain effects;
+    // The crossfader mixing the ends of tracks, or null.
+    private Crossfader crossfader;
+    // Whether the end of this track is faded into the next.
+    private boolean fadeOut;
+    // Whether the end of this track is being captured for a crossfade.
+    private boolean tailStarted;
+    
+    // Whether the audio device is shared with other players.
+    private boolean sharedAudio;
+    // The sample rate of a shared device, to which all samples are converted.
+    private int deviceRate;
+    // The quality of sample rate conversion.
+    private Resampler.Quality quality;
+    // The converter to the device rate, or null if not needed yet.
+    private Resampler resampler;
+    // Mono samples converted to stereo.
+    private short[] stereo;
+    
+    // The playing speed; 1 is normal.
+    private double speed;
+    // How the speed is changed.
+    private TimeStretcher.Mode stretchMode;
+    // The stretcher changing the speed, or null if not needed yet.
+    private TimeStretcher stretcher;
+    
+    // What replaces a frame that cannot be decoded.
+    private Concealment concealment;
+    // The samples played in place of a bad frame.
+    private short[] concealed;
+    // The last frame decoded, kept for repetition, and its length.
+    private short[] lastFrame;
+    private int lastLength;
+    // The number of bad frames in a row.
+    private int badRun;
+    // The number of frames concealed by this player.
+    private int concealedFrames;
+    
+    // The range of frames played from the PcmCache, once decoded.
+    private int cacheStart;
+    private int cacheEnd;
+    // The cached samples of the range, or null if not cached.
+    private PcmCache.Entry cached;
+    // Whether the range is to be cached as it is decoded.
+    private boolean cacheWanted;
+    // The samples of the range decoded so far, or null.
+    private PcmCache.Entry recording;
+    // Whether the range has been chosen, by default the whole track if short.
+    private boolean cacheChosen;
+    // The samples of a frame read from the cache.
+    private short[] cachedFrame;
+    // Whether the bitstream is behind because frames were played from the cache.
+    private boolean fromCache;
+    // The number of frames decoded before a seek target, so that the
+    // decoder's bit reservoir holds the data the target frame refers to.
+    private static final int PRIME_FRAMES = 2;
+    // The number of samples faded at each side of a loop point, to avoid a click.
+    private static final int LOOP_FADE_SAMPLES = 128;
+    // The longest loop held in memory even when the PcmCache will not take it.
+    private static final long MAX_HELD_LOOP_MILLIS = 120000;
+    
+    // The section looped, in samples per channel; loopEnd is 0 if none.
+    private long loopStart;
+    private long loopEnd;
+    // The number of times the loop has gone back to its start.
+    private int loopCount;
+    // The number of samples per channel to play from the next frame, or 0 for all.
+    private int limitSamples;
+    // Whether to fade in the start of the next frame played.
+    private boolean fadeIn;
 
     /**
      * Creates a new MusicFilePlayer instance.
@@ -70,18 +180,94 @@ public class MusicFilePlayer
      */
     public MusicFilePlayer(String filename) throws JavaLayerException
     {
+        long start = System.nanoTime();
         this.filename = filename;
                 
         openAudio();
- 
+        openFile();
+        PlayerMetrics.get().recordOpen(System.nanoTime() - start);
+    }
+
+    /**
+     * Creates a new MusicFilePlayer instance playing to a device shared
+     * with other players, which stays open when this player is closed.
+     * The device must be open for 16-bit stereo at the given rate, as by
+     * openDevice(); samples of other rates or mono are converted to it.
+     * This lets one track follow another on the same device without a gap.
+     * @param filename The file to be played.
+     * @param device The open audio device.
+     * @param deviceRate The sample rate of the device.
+     * @param quality The quality of sample rate conversion.
+     */
+    public MusicFilePlayer(String filename, AudioDevice device, int deviceRate,
+                           Resampler.Quality quality) throws JavaLayerException
+    {
+        long start = System.nanoTime();
+        this.filename = filename;
+        audio = device;
+        decoder = new Decoder();
+        sharedAudio = true;
+        this.deviceRate = deviceRate;
+        this.quality = quality;
+        stereo = new short[0];
+        openFile();
+        PlayerMetrics.get().recordOpen(System.nanoTime() - start);
+    }
+
+    /**
+     * Open an audio device for 16-bit stereo at a fixed sample rate,
+     * to be shared by players created with that rate.
+     * @param sampleRate The sample rate.
+     * @return The open device.
+     */
+    public static AudioDevice openDevice(int sampleRate) throws JavaLayerException
+    {
+        AudioDevice device = FactoryRegistry.systemRegistry().createAudioDevice();
+        if(device instanceof JavaSoundAudioDevice) {
+            ((JavaSoundAudioDevice) device).open(new AudioFormat(sampleRate, 16, 2, true, false));
+        }
+        else {
+            device.open(new Decoder());
+        }
+        PlayerEvents.audioDevice("open", device, true, sampleRate);
+        return device;
+    }
+
+    /**
+     * Index the file and open it ready to play from the start.
+     */
+    private void openFile() throws JavaLayerException
+    {
+        PlayerEvents.TrackOpen event = PlayerEvents.isActive() ? new PlayerEvents.TrackOpen() : null;
+        if(event != null) {
+            event.begin();
+        }
+        long scanStart = System.nanoTime();
         frameCount = getFrameCount(filename);
+        long scanDuration = System.nanoTime() - scanStart;
+        startFrame = 0;
+        endFrame = frameCount;
         
         // Open a fresh bitstream following the frame count.
         openBitstream(filename);
+        if(event != null) {
+            event.scanDuration = scanDuration;
+            event.filename = filename;
+            event.frameCount = frameCount;
+            event.commit();
+        }
         
         frameNumber = 0;
         resumePosition = -1;  
-
+        resumeSkip = 0;
+        skipSamples = 0;
+        gain = new GainEffect();
+        speed = 1;
+        stretchMode = TimeStretcher.Mode.LOW_LATENCY;
+        concealment = Concealment.NONE;
+        concealed = new short[0];
+        lastFrame = new short[0];
+        cachedFrame = new short[0];
     }
 
     /**
@@ -89,7 +275,7 @@ public class MusicFilePlayer
      */
     public void play() throws JavaLayerException
     {
-        playFrames(0, frameCount);
+        playFrames(startFrame, endFrame);
     }
 
     /**
@@ -101,19 +287,20 @@ public class MusicFilePlayer
      */
     public boolean play(int frames) throws JavaLayerException
     {
-        return playFrames(frameNumber, frameNumber + frames);
+        return playFrames(frameNumber, 0, endFrame, frames);
 
     }
 
     /**
-     * Plays a range of MPEG audio frames
-     * @param start The first frame to play
-     * @param end       The last frame to play
+     * Plays a range of MPEG audio frames.
+     * If a loop lies within the range, it plays until paused.
+     * @param start The first frame to play.
+     * @param end The frame to stop before.
      * @return true if the last frame was played, or false if there are more frames.
      */
     public boolean play(int start, int end) throws JavaLayerException
     {
-        return playFrames(start, start + end);
+        return playFrames(start, end);
     }
     
     /**
@@ -123,7 +310,43 @@ public class MusicFilePlayer
      */
     public boolean playFrom(int start) throws JavaLayerException
     {
-        return playFrames(start, frameCount);
+        return playFrames(Math.max(start, startFrame), endFrame);
+    }
+    
+    /**
+     * Skip leading and trailing silence.
+     * play() and playFrom() start no earlier than the first audible frame,
+     * and all playing stops after the last audible frame.
+     * @param start The first audible frame.
+     * @param end The frame following the last audible frame.
+     */
+    public void setTrim(int start, int end)
+    {
+        startFrame = Math.max(0, Math.min(start, frameCount));
+        endFrame = Math.max(startFrame, Math.min(end, frameCount));
+    }
+    
+    /**
+     * Play a number of frames from the current position, without waiting
+     * for the audio device to play them. This lets a scheduler such as
+     * PlayerManager play a file in small steps.
+     *
+     * @param frames    The largest number of frames to play.
+     * @return  true if there are more frames to play, false otherwise.
+     */
+    public boolean step(int frames) throws JavaLayerException
+    {
+        synchronized(this) {
+            chooseCache();
+            if(frameNumber < startFrame) {
+                moveTo(startFrame);
+            }
+        }
+        boolean ok = true;
+        for(int played = 0; played < frames && frameNumber < endFrame && ok; played++) {
+            ok = playFrame();
+        }
+        return ok && frameNumber < endFrame;
     }
     
     /**
@@ -135,6 +358,16 @@ public class MusicFilePlayer
         return frameCount;
     }
     
+    /**
+     * Get the frame at which playing stops.
+     * This is the length of the file unless trailing silence is skipped.
+     * @return The end frame.
+     */
+    public int getEndFrame()
+    {
+        return endFrame;
+    }
+    
     /**
      * Get the current playing position (in frames).
      * @return The current frame number.
@@ -144,6 +377,49 @@ public class MusicFilePlayer
         return frameNumber;
     }
     
+    /**
+     * Get the length of the file (in milliseconds).
+     * @return The file length, in milliseconds.
+     */
+    public long getLengthMillis()
+    {
+        return index.getLengthMillis();
+    }
+    
+    /**
+     * Get the length of the file (in samples per channel).
+     * @return The file length, in samples.
+     */
+    public long getLengthSamples()
+    {
+        return (long) frameCount * index.getSamplesPerFrame();
+    }
+    
+    /**
+     * Get the current playing position (in milliseconds).
+     * @return The current position, in milliseconds.
+     */
+    public long getPositionMillis()
+    {
+        return index.samplesToMillis(getPositionSamples());
+    }
+    
+    /**
+     * Get the current playing position (in samples per channel).
+     * While paused after a seek this is the position that was set.
+     * @return The current position, in samples.
+     */
+    public long getPositionSamples()
+    {
+        int samplesPerFrame = index.getSamplesPerFrame();
+        if(!playing && resumePosition >= 0) {
+            return (long) resumePosition * samplesPerFrame + resumeSkip;
+        }
+        else {
+            return (long) frameNumber * samplesPerFrame;
+        }
+    }
+    
     /**
      * Set the playing position (in frames).
      * Playing does not start until resume() is called.
@@ -155,6 +431,255 @@ public class MusicFilePlayer
         resumePosition = position;
     }
     
+    /**
+     * Set the playing position (in milliseconds).
+     * Playing does not start until resume() is called.
+     * @param millis The playing position.
+     */
+    public void setPositionMillis(long millis) throws JavaLayerException
+    {
+        setPositionSamples(index.millisToSamples(millis));
+    }
+    
+    /**
+     * Set the playing position (in samples per channel).
+     * Playing starts exactly at the given sample when resume() is called.
+     * @param sample The playing position.
+     */
+    public void setPositionSamples(long sample) throws JavaLayerException
+    {
+        int samplesPerFrame = index.getSamplesPerFrame();
+        sample = Math.max(0, Math.min(sample, getLengthSamples()));
+        pause();
+        resumePosition = (int) (sample / samplesPerFrame);
+        resumeSkip = (int) (sample % samplesPerFrame);
+    }
+    
+    
+    /**
+     * Set the gain applied to the decoded samples.
+     * Samples that would exceed full scale are clipped.
+     * @param gain The gain in dB. Positive values are limited to +12dB.
+     */
+    public void setGain(double gain)
+    {
+        this.gain.setGain(gain);
+    }
+    
+    /**
+     * Set the playing speed, keeping the pitch. The change is heard
+     * within a few tens of milliseconds, so it may be made while playing.
+     * @param speed The speed, from 0.5 to 2; 1 is normal.
+     */
+    public void setSpeed(double speed)
+    {
+        setSpeed(speed, stretchMode);
+    }
+    
+    /**
+     * Set the playing speed, keeping the pitch, and how it is changed.
+     * HIGH_QUALITY is smoother, especially for music, but reacts more
+     * slowly and uses more CPU time.
+     * @param speed The speed, from 0.5 to 2; 1 is normal.
+     * @param mode How the speed is changed.
+     */
+    public synchronized void setSpeed(double speed, TimeStretcher.Mode mode)
+    {
+        this.speed = Math.max(TimeStretcher.MIN_SPEED, Math.min(TimeStretcher.MAX_SPEED, speed));
+        if(mode != stretchMode) {
+            stretchMode = mode;
+            stretcher = null;
+        }
+    }
+    
+    /**
+     * Return the playing speed.
+     * @return The speed; 1 is normal.
+     */
+    public synchronized double getSpeed()
+    {
+        return speed;
+    }
+    
+    /**
+     * Set the effects applied to the samples after the gain.
+     * The chain may be shared by successive players.
+     * @param effects The effects, or null for none.
+     */
+    public void setEffects(DspChain effects)
+    {
+        this.effects = effects;
+    }
+    
+    /**
+     * Set the crossfader shared with the players of neighbouring tracks.
+     * The crossfader should be the last effect in the chain given to
+     * setEffects(), if there is one. Any tail captured from the previous
+     * track is mixed into the start of this one. If fadeOut is true, the
+     * end of this track is captured in turn, to be mixed into the next;
+     * if the next track does not start, call finishCrossfade() to play it.
+     * @param crossfader The crossfader, or null for none.
+     * @param fadeOut Whether to fade the end of this track into the next.
+     */
+    public void setCrossfader(Crossfader crossfader, boolean fadeOut)
+    {
+        this.crossfader = crossfader;
+        this.fadeOut = fadeOut;
+    }
+    
+    /**
+     * Play any captured end of this track that was not mixed into a
+     * following track, and wait for it to finish.
+     */
+    public void finishCrossfade() throws JavaLayerException
+    {
+        synchronized(this) {
+            if(crossfader != null && tailStarted && audio != null) {
+                tailStarted = false;
+                crossfader.drainTail(audio);
+                audio.flush();
+            }
+        }
+    }
+    
+    /**
+     * Set what replaces a frame that cannot be decoded. With NONE, the
+     * default, such a frame stops playing with an exception.
+     * @param concealment The concealment.
+     */
+    public void setConcealment(Concealment concealment)
+    {
+        this.concealment = concealment;
+    }
+    
+    /**
+     * Return the number of frames that could not be decoded and were
+     * concealed by this player.
+     * @return The number of frames concealed.
+     */
+    public int getConcealedFrames()
+    {
+        return concealedFrames;
+    }
+    
+    /**
+     * Play a range of frames, such as a region played again and again,
+     * from the PcmCache. The first time the range is played from its
+     * start it is decoded as usual and cached; after that it is played
+     * from memory, and moving into it costs nothing. This replaces the
+     * default range, which is the whole track if it is short enough.
+     * Nothing is cached unless the cache is on and the device is shared,
+     * since a player's own device takes its format from the decoder.
+     * @param start The first frame of the range.
+     * @param end The frame following the range.
+     */
+    public synchronized void cacheFrames(int start, int end)
+    {
+        cacheFrames(start, end, false);
+    }
+    
+    /**
+     * Play a range of frames from memory once decoded.
+     * @param start The first frame of the range.
+     * @param end The frame following the range.
+     * @param hold Whether to keep the range for this player even if the
+     *             PcmCache does not take it.
+     */
+    private void cacheFrames(int start, int end, boolean hold)
+    {
+        cacheChosen = true;
+        cached = null;
+        recording = null;
+        cacheWanted = false;
+        cacheStart = Math.max(0, start);
+        cacheEnd = Math.min(end, frameCount);
+        long bytes = (long) (cacheEnd - cacheStart) * index.getSamplesPerFrame() * 2 * 2;
+        if(sharedAudio && PcmCache.fits(bytes)) {
+            cached = PcmCache.get(filename, cacheStart, cacheEnd);
+            cacheWanted = cached == null;
+        }
+        else if(sharedAudio && hold && cacheEnd > cacheStart) {
+            cacheWanted = true;
+        }
+    }
+    
+    /**
+     * Return whether frames are being played from the PcmCache.
+     * @return true if the current range has been cached.
+     */
+    public synchronized boolean isCached()
+    {
+        return cached != null;
+    }
+    
+    /**
+     * Loop a section: when playing reaches its end it continues from its
+     * start, until the loop is cleared. Positions are in samples per
+     * channel. A short fade at each side of the loop point avoids a
+     * click. The section is held decoded in memory after its first pass,
+     * on a shared device, so that the loop point leaves no gap.
+     * @param start The first sample of the section.
+     * @param end The sample following the section; must be after start.
+     */
+    public synchronized void setLoop(long start, long end)
+    {
+        end = Math.min(end, (long) endFrame * index.getSamplesPerFrame());
+        start = Math.max(0, start);
+        if(end <= start) {
+            return;
+        }
+        loopStart = start;
+        loopEnd = end;
+        loopCount = 0;
+        int samplesPerFrame = index.getSamplesPerFrame();
+        int first = (int) (start / samplesPerFrame);
+        int last = (int) ((end - 1) / samplesPerFrame);
+        boolean hold = index.samplesToMillis(end - start) <= MAX_HELD_LOOP_MILLIS;
+        cacheFrames(first, last + 1, hold);
+    }
+    
+    /**
+     * Loop a section given in milliseconds.
+     * @param start The start of the section.
+     * @param end The end of the section; must be after start.
+     */
+    public void setLoopMillis(long start, long end)
+    {
+        setLoop(index.millisToSamples(start), index.millisToSamples(end));
+    }
+    
+    /**
+     * Stop looping. Playing continues past the end of the section,
+     * and the section is no longer held in memory unless cached.
+     */
+    public synchronized void clearLoop()
+    {
+        loopEnd = 0;
+        loopStart = 0;
+        cacheChosen = false;
+        cached = null;
+        recording = null;
+        cacheWanted = false;
+    }
+    
+    /**
+     * Return whether a section is looped.
+     * @return true if looping.
+     */
+    public synchronized boolean isLooping()
+    {
+        return loopEnd > 0;
+    }
+    
+    /**
+     * Return the number of times playing has gone back to the start of
+     * the loop since it was set.
+     * @return The number of loops.
+     */
+    public synchronized int getLoopCount()
+    {
+        return loopCount;
+    }
     
     /**
      * Pause the playing.
@@ -164,6 +689,7 @@ public class MusicFilePlayer
         synchronized(this) {
             playing = false;
             resumePosition = frameNumber;
+            resumeSkip = 0;
         }
     }
     
@@ -180,8 +706,10 @@ public class MusicFilePlayer
             else {
                 start = frameNumber;
             }
+            int skip = resumeSkip;
             resumePosition = -1;
-            playFrames(start, frameCount);
+            resumeSkip = 0;
+            playFrames(start, skip, endFrame, Integer.MAX_VALUE);
         }
     }
     
@@ -199,35 +727,57 @@ public class MusicFilePlayer
      * @return true If finished for any reason, false if paused.
      */
     private boolean playFrames(int start, int end) throws JavaLayerException
+    {
+        return playFrames(start, 0, end, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Play the number of frames left, starting part way into the first frame.
+     * A shared device is not drained when the frames have been played,
+     * so that the next track follows without a gap; it is drained only
+     * when playing stops early.
+     * @param start The first frame to play.
+     * @param skip The number of samples to discard from the first frame.
+     * @param end The frame to stop before.
+     * @param frames The largest number of frames to play.
+     * @return true If finished for any reason, false if paused.
+     */
+    private boolean playFrames(int start, int skip, int end, int frames) throws JavaLayerException
     {
         // Clear any resumption position.
         resumePosition = -1;
         
-        if(end > frameCount) {
-            end = frameCount;
+        if(end > endFrame) {
+            end = endFrame;
         }
         
         // Make sure the player is in the correct position in the input.
         synchronized(this) {
+            chooseCache();
+            // Continuing from the current frame keeps any part of it still
+            // to be skipped, as after going back to the start of a loop.
+            if(start != frameNumber || skip > 0) {
+                skipSamples = skip;
+            }
             moveTo(start);
             playing = true;
         }
 
         // Play until finished, paused, or a problem.
         boolean ok = true;
-        while (frameNumber < end && playing && ok) {
-            ok = decodeFrame();
-            if(ok) {
-                frameNumber++;
-            }                    
+        for(int played = 0; frameNumber < end && played < frames && playing && ok; played++) {
+            ok = playFrame();
         }
 
         // Stopped for some reason.
         synchronized(this) {
+            // A shared device is left playing at the end, so that the
+            // next track can follow without waiting for it to drain.
+            boolean drain = !(sharedAudio && playing);
             playing = false;
             // last frame, ensure all data flushed to the audio device.
             AudioDevice out = audio;
-            if (out != null) {
+            if (out != null && drain) {
                 out.flush();
             }
         }
@@ -235,14 +785,62 @@ public class MusicFilePlayer
     }
     
     /**
-     * Set the playing position.
+     * Set the playing position, as by a seek. Any captured end of the
+     * track and the sample rate converter are reset, and the seek is
+     * measured.
      * @param position (in frames)
      */
     private void moveTo(int position) throws JavaLayerException
     {
-        if(position < frameNumber) {
+        long start = System.nanoTime();
+        boolean seeking = position != frameNumber;
+        PlayerEvents.Seek event = PlayerEvents.isActive() ? new PlayerEvents.Seek() : null;
+        if(event != null) {
+            event.begin();
+        }
+        int from = frameNumber;
+        if(tailStarted && seeking) {
+            // Moved away from the end: the captured end is no longer wanted.
+            crossfader.reset();
+            tailStarted = false;
+        }
+        if(seeking && resampler != null) {
+            resampler.reset();
+        }
+        if(seeking && stretcher != null) {
+            stretcher.reset();
+        }
+        reposition(position);
+        if(seeking) {
+            PlayerMetrics.get().recordSeek(System.nanoTime() - start);
+            if(event != null && event.shouldCommit()) {
+                event.filename = filename;
+                event.fromFrame = from;
+                event.toFrame = position;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Make the next frame played the given one, without the side effects
+     * of a seek. From a cached range nothing is read. Otherwise the file
+     * is reopened if needed at the frame a little before the position
+     * (found from the frame index), and the frames up to the position
+     * are decoded without being played.
+     * @param position (in frames)
+     */
+    private void reposition(int position) throws JavaLayerException
+    {
+        int first = Math.max(0, position - PRIME_FRAMES);
+        if(isCached(position)) {
+            // Played from memory: the file is reopened where the cached frames end.
+            frameNumber = position;
+            fromCache = true;
+        }
+        else if(position < frameNumber || first > frameNumber || fromCache) {
             synchronized(this) {
-                // Already played too far.
+                // Already played too far, or too far to read ahead.
                 if(bitstream != null) {
                     try {
                         bitstream.close();
@@ -250,24 +848,39 @@ public class MusicFilePlayer
                     catch (BitstreamException ex) {
                     }
                 }
-                if(audio != null) {
-                    audio.close();
+                // The decoder keeps a reference to the bitstream it was
+                // first used with, so a fresh one is needed.
+                if(sharedAudio) {
+                    decoder = new Decoder();
+                }
+                else {
+                    if(audio != null) {
+                        audio.close();
+                        PlayerEvents.audioDevice("close", audio, false, 0);
+                    }
+                    openAudio();
+                }
+                if(first < frameCount) {
+                    openBitstream(filename, index.getOffset(first));
                 }
-                openAudio();
-                openBitstream(filename);
-                frameNumber = 0;
+                else {
+                    openBitstream(filename);
+                    first = 0;
+                }
+                frameNumber = first;
+                lastLength = 0;
+                fromCache = false;
             }
         }
         
-        while(frameNumber < position) {
-            skipFrame();
-            frameNumber++;
-        }            
+        while(frameNumber < position && primeFrame()) {
+        }
     }
 
     /**
      * Cloases this player. Any audio currently playing is stopped
-     * immediately.
+     * immediately, unless the device is shared, when it is left open
+     * and plays what it has already been given.
      */
     public void close()
     {
@@ -277,7 +890,10 @@ public class MusicFilePlayer
                 audio = null;
                 // this may fail, so ensure object state is set up before
                 // calling this method.
-                out.close();
+                if(!sharedAudio) {
+                    out.close();
+                    PlayerEvents.audioDevice("close", out, false, 0);
+                }
                 try {
                     bitstream.close();
                 }
@@ -289,6 +905,61 @@ public class MusicFilePlayer
         }
     }
 
+    /**
+     * Play the next frame, and move to the start of the loop at its end.
+     * @return true if the frame was played, false if there are no more frames.
+     */
+    private boolean playFrame() throws JavaLayerException
+    {
+        boolean wrapAfter = false;
+        synchronized(this) {
+            if(loopEnd > 0) {
+                int samplesPerFrame = index.getSamplesPerFrame();
+                int last = (int) (loopEnd / samplesPerFrame);
+                int within = (int) (loopEnd % samplesPerFrame);
+                if(frameNumber > last || (frameNumber == last && within == 0)) {
+                    wrap();
+                }
+                else if(frameNumber == last) {
+                    // Play the frame up to the end of the loop.
+                    limitSamples = within;
+                    wrapAfter = true;
+                }
+            }
+        }
+        boolean ok = decodeFrame();
+        if(ok) {
+            frameNumber++;
+            if(wrapAfter) {
+                synchronized(this) {
+                    if(loopEnd > 0) {
+                        wrap();
+                    }
+                }
+            }
+        }
+        limitSamples = 0;
+        return ok;
+    }
+    
+    /**
+     * Go back to the start of the loop. This is not a seek: the sample
+     * rate converter carries on, so the two sides join smoothly.
+     */
+    private void wrap() throws JavaLayerException
+    {
+        if(tailStarted) {
+            // The end captured for a crossfade is not reached after all.
+            crossfader.reset();
+            tailStarted = false;
+        }
+        int samplesPerFrame = index.getSamplesPerFrame();
+        reposition((int) (loopStart / samplesPerFrame));
+        skipSamples = (int) (loopStart % samplesPerFrame);
+        fadeIn = true;
+        loopCount++;
+    }
+    
     /**
      * Decodes a single frame.
      *
@@ -303,20 +974,148 @@ public class MusicFilePlayer
                     return false;
                 }
     
-                Header h = readFrame();
-                if (h == null) {
-                    return false;
+                long start = System.nanoTime();
+                PlayerEvents.DecodeStall stall = PlayerEvents.isActive()
+                                                 ? new PlayerEvents.DecodeStall() : null;
+                if(stall != null) {
+                    stall.begin();
                 }
+                short[] samples;
+                int length;
+                int channels;
+                int rate;
+                if(isCached(frameNumber)) {
+                    length = cached.getFrameSamples();
+                    if(cachedFrame.length < length) {
+                        cachedFrame = new short[length];
+                    }
+                    cached.read(frameNumber - cacheStart, cachedFrame);
+                    samples = cachedFrame;
+                    channels = cached.getChannels();
+                    rate = cached.getSampleRate();
+                    fromCache = true;
+                }
+                else {
+                    if(fromCache) {
+                        // Continue from the file where the cached frames end.
+                        moveTo(frameNumber);
+                    }
+                    Header h = readFrame();
+                    if (h == null) {
+                        return false;
+                    }
     
-                // sample buffer set when decoder constructed
-                SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                    // sample buffer set when decoder constructed
+                    SampleBuffer output = decode(h);
+                    if(output != null) {
+                        samples = output.getBuffer();
+                        length = output.getBufferLength();
+                        channels = output.getChannelCount();
+                        if(concealment == Concealment.REPEAT) {
+                            if(lastFrame.length < length) {
+                                lastFrame = new short[length];
+                            }
+                            System.arraycopy(samples, 0, lastFrame, 0, length);
+                            lastLength = length;
+                        }
+                        badRun = 0;
+                    }
+                    else {
+                        channels = h.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                        length = index.getSamplesPerFrame() * channels;
+                        samples = conceal(length);
+                    }
+                    rate = h.frequency();
+                    bitstream.closeFrame();
+                    if(output != null) {
+                        cacheFrame(samples, length, rate, channels);
+                    }
+                    else {
+                        // Concealed samples are not the audio, so the range
+                        // is not cached until it is decoded without a fault.
+                        recording = null;
+                    }
+                }
+                int offset = 0;
+                if(skipSamples > 0) {
+                    // Start part way into the frame after a sample-accurate seek.
+                    offset = Math.min(length, skipSamples * channels);
+                    skipSamples = 0;
+                }
+                int count = length - offset;
+                if(limitSamples > 0) {
+                    // Stop part way into the frame at the end of a loop.
+                    count = Math.max(0, Math.min(length, limitSamples * channels) - offset);
+                    fade(samples, offset, count, channels, false);
+                }
+                if(fadeIn) {
+                    fadeIn = false;
+                    fade(samples, offset, count, channels, true);
+                }
+                if(sharedAudio) {
+                    // Convert to the device's format.
+                    if(channels == 1) {
+                        if(stereo.length < 2 * count) {
+                            stereo = new short[2 * count];
+                        }
+                        PcmKernels.monoToStereo(samples, offset, stereo, 0, count);
+                        samples = stereo;
+                        offset = 0;
+                        count *= 2;
+                        channels = 2;
+                    }
+                    if(rate != deviceRate) {
+                        if(resampler == null || resampler.getInputRate() != rate) {
+                            resampler = new Resampler(rate, deviceRate, 2, quality);
+                        }
+                        count = resampler.process(samples, offset, count);
+                        samples = resampler.getOutput();
+                        offset = 0;
+                        rate = deviceRate;
+                    }
+                }
+                if(speed != 1 || stretcher != null) {
+                    // Once started, stretching continues at normal speed,
+                    // so that returning to it leaves no gap.
+                    if(stretcher == null) {
+                        stretcher = new TimeStretcher(rate, channels, stretchMode);
+                    }
+                    stretcher.setSpeed(speed);
+                    count = stretcher.process(samples, offset, count);
+                    samples = stretcher.getOutput();
+                    offset = 0;
+                }
+                gain.process(samples, offset, count);
+                if(crossfader != null) {
+                    if(fadeOut && !tailStarted && loopEnd == 0 && crossfader.getFadeMillis() > 0
+                       && frameNumber >= endFrame - crossfader.getFadeMillis() / getFrameMillis()) {
+                        crossfader.beginTail(rate, channels);
+                        tailStarted = true;
+                    }
+                    else if(crossfader.needsDrain(rate, channels)) {
+                        crossfader.drainTail(audio);
+                    }
+                }
+                if(effects != null) {
+                    effects.process(samples, offset, count, rate, channels);
+                }
+                else if(crossfader != null) {
+                    crossfader.process(samples, offset, count);
+                }
 
-                if(audio != null) {
-                    audio.write(output.getBuffer(), 0, output.getBufferLength());
+                PlayerMetrics.get().recordDecode(System.nanoTime() - start);
+                if(stall != null) {
+                    stall.end();
+                }
+                if(stall != null && stall.shouldCommit()) {
+                    stall.filename = filename;
+                    stall.frame = frameNumber;
+                    stall.commit();
+                }
+                if(audio != null && !tailStarted) {
+                    audio.write(samples, offset, count);
                 }
             }
-
-            bitstream.closeFrame();
         }
         catch (RuntimeException ex) {
             ex.printStackTrace();
@@ -326,6 +1125,172 @@ public class MusicFilePlayer
     }
 
 
+    /**
+     * Decode the frame just read. If it cannot be decoded and concealment
+     * is on, the frame is recorded as bad in the frame index. A frame
+     * already recorded as bad, when playing it again or after a seek, is
+     * concealed without decoding it again.
+     * @param h The header of the frame.
+     * @return The decoded samples, or null if the frame is to be concealed.
+     */
+    private SampleBuffer decode(Header h) throws JavaLayerException
+    {
+        if(concealment != Concealment.NONE && index.isBadFrame(frameNumber)) {
+            recordConcealed();
+            return null;
+        }
+        try {
+            return (SampleBuffer) decoder.decodeFrame(h, bitstream);
+        }
+        catch(RuntimeException ex) {
+            if(concealment == Concealment.NONE) {
+                throw ex;
+            }
+            index.markBadFrame(frameNumber);
+            recordConcealed();
+            return null;
+        }
+    }
+
+    /**
+     * Count the current frame as concealed, in this player and in the
+     * metrics, and record it as a Flight Recorder event.
+     */
+    private void recordConcealed()
+    {
+        concealedFrames++;
+        PlayerMetrics.get().recordConcealed();
+        PlayerEvents.CorruptFrame event = PlayerEvents.isActive()
+                                          ? new PlayerEvents.CorruptFrame() : null;
+        if(event != null && event.isEnabled()) {
+            event.filename = filename;
+            event.frame = frameNumber;
+            event.offset = frameNumber < frameCount ? index.getOffset(frameNumber) : -1;
+            event.concealment = concealment.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Fade in the start of some samples, after a loop point, or fade out
+     * their end, before one.
+     * @param samples The interleaved samples.
+     * @param offset The index of the first sample.
+     * @param count The number of samples.
+     * @param channels The number of channels.
+     * @param in true to fade in the start, false to fade out the end.
+     */
+    private void fade(short[] samples, int offset, int count, int channels, boolean in)
+    {
+        int frames = Math.min(LOOP_FADE_SAMPLES, count / channels);
+        for(int i = 0; i < frames; i++) {
+            int at = in ? offset + i * channels : offset + count - (i + 1) * channels;
+            for(int c = 0; c < channels; c++) {
+                samples[at + c] = (short) (samples[at + c] * (i + 1) / (frames + 1));
+            }
+        }
+    }
+    
+    /**
+     * Choose the range of frames to cache, if none has been chosen:
+     * the whole track, if it is short enough.
+     */
+    private void chooseCache()
+    {
+        if(!cacheChosen) {
+            cacheFrames(startFrame, endFrame);
+        }
+    }
+    
+    /**
+     * Return whether a frame is played from the cache.
+     */
+    private boolean isCached(int frame)
+    {
+        return cached != null && frame >= cacheStart && frame < cacheEnd;
+    }
+    
+    /**
+     * Add a decoded frame to the range being cached. The range is cached
+     * once all its frames have been decoded in order from its start,
+     * none of them concealed.
+     */
+    private void cacheFrame(short[] samples, int length, int rate, int channels)
+    {
+        if(!cacheWanted || frameNumber < cacheStart || frameNumber >= cacheEnd) {
+            return;
+        }
+        if(frameNumber == cacheStart) {
+            recording = new PcmCache.Entry(cacheEnd - cacheStart, length, rate, channels);
+        }
+        if(recording == null) {
+            return;
+        }
+        if(!recording.add(frameNumber - cacheStart, samples, length)) {
+            recording = null;
+        }
+        else if(recording.isComplete()) {
+            if(PcmCache.fits(recording.getBytes())) {
+                PcmCache.put(filename, cacheStart, cacheEnd, recording);
+            }
+            cached = recording;
+            recording = null;
+            cacheWanted = false;
+        }
+    }
+    
+    /**
+     * Return the length of a frame, in milliseconds.
+     */
+    private double getFrameMillis()
+    {
+        return index.getSamplesPerFrame() * 1000.0 / index.getSampleRate();
+    }
+    
+    /**
+     * Return the samples played in place of a bad frame: the frame
+     * before, halved in level for each further bad frame in a row, or
+     * silence.
+     * @param length The number of samples in a frame.
+     * @return The samples.
+     */
+    private short[] conceal(int length)
+    {
+        if(concealed.length < length) {
+            concealed = new short[length];
+        }
+        badRun++;
+        if(concealment == Concealment.REPEAT && lastLength == length && badRun <= 14) {
+            System.arraycopy(lastFrame, 0, concealed, 0, length);
+            PcmKernels.gain(concealed, 0, length, PcmKernels.GAIN_ONE >> (badRun - 1));
+        }
+        else {
+            Arrays.fill(concealed, 0, length, (short) 0);
+        }
+        return concealed;
+    }
+
+    /**
+     * Decode a single frame without playing it.
+     * @return false    if there are no more frames to decode, true otherwise.
+     */
+    private boolean primeFrame() throws JavaLayerException
+    {
+        Header h = readFrame();
+        if (h == null) {
+            return false;
+        }
+        try {
+            decode(h);
+        }
+        catch (RuntimeException ex) {
+            throw new JavaLayerException("Exception decoding audio frame", ex);
+        }
+        frameNumber++;
+        bitstream.closeFrame();
+        return true;
+    }
+
     /**
      * skips over a single frame
      * @return false    if there are no more frames to decode, true otherwise.
@@ -350,20 +1315,16 @@ public class MusicFilePlayer
     }
     
     /**
-     * Count the number of frames in the file.
-     * This can be used for positioning.
+     * Count the number of frames in the file, and index their offsets.
+     * This can be used for positioning. The index is shared through the
+     * FrameIndexCache, so a file that was prefetched is not read again.
      * @param filename The file to be measured.
      * @return The number of frames.
      */
     protected int getFrameCount(String filename) throws JavaLayerException
     {
-        openBitstream(filename);
-        int count = 0;
-        while(skipFrame()) {
-            count++;
-        }
-        bitstream.close();
-        return count;        
+        index = FrameIndexCache.get(filename);
+        return index.getFrameCount();
     }
     
     /**
@@ -388,6 +1349,7 @@ public class MusicFilePlayer
         audio = FactoryRegistry.systemRegistry().createAudioDevice();
         decoder = new Decoder();
         audio.open(decoder);
+        PlayerEvents.audioDevice("open", audio, false, 0);
     }
     
     /**
@@ -397,15 +1359,27 @@ public class MusicFilePlayer
      */
     protected void openBitstream(String filename)
         throws JavaLayerException
+    {
+        openBitstream(filename, frameCount > 0 ? index.getOffset(0) : 0);
+    }
+    
+    /**
+     * Open a BitStream for the given file, starting at the given offset.
+     * The file handle is shared with other players reading the same file,
+     * and damaged regions found by the frame index are passed over.
+     * @param filename The file to be opened.
+     * @param offset The offset of the first frame to be read.
+     */
+    private void openBitstream(String filename, long offset)
+        throws JavaLayerException
     {
         try {
-            bitstream = new Bitstream(new BufferedInputStream(
-                        new FileInputStream(filename)));
+            InputStream in = index.frameStream(SharedFileChannels.openStream(filename, offset), offset);
+            bitstream = new Bitstream(new BufferedInputStream(in));
         }
-        catch(java.io.IOException ex) {
+        catch(IOException ex) {
             throw new JavaLayerException(ex.getMessage(), ex);
         }
-                    
     }
 }
 
@@ -1,8 +1,11 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * A class to hold details of audio tracks.
@@ -17,6 +20,14 @@ public class MusicOrganizer
     private ArrayList<Track> tracks;
     // A reader that can read music files and load them as tracks.
     private TrackReader reader;
+    // The catalog the library is saved in, or null.
+    private File catalogFile;
+    // The tracks arranged for searching by smart playlists.
+    private TrackColumns columns;
+    // The smart playlists kept up to date with the collection.
+    private List<SmartPlaylist> playlists;
+    // The name of the catalog kept in a library folder.
+    public static final String CATALOG_NAME = "library.catalog";
 
     /**
      * Create a MusicOrganizer.
@@ -26,16 +37,46 @@ public class MusicOrganizer
     {
         tracks = new ArrayList<>();
         reader = new TrackReader();
+        columns = new TrackColumns();
+        playlists = new ArrayList<>();
         readLibrary(dir);
     }
     
+    /**
+     * Create a MusicOrganizer, loading the library from a catalog saved
+     * by an earlier run, if there is one, rather than from the folder.
+     * Files added to the folder since are read and added to the catalog,
+     * and those removed or changed are removed from it; the catalog is
+     * written afresh if it cannot be read.
+     * @param dir The directory containing the audio files.
+     * @param catalogFile The catalog.
+     */
+    public MusicOrganizer(File dir, File catalogFile)
+    {
+        tracks = new ArrayList<>();
+        reader = new TrackReader();
+        columns = new TrackColumns();
+        playlists = new ArrayList<>();
+        this.catalogFile = catalogFile;
+        try {
+            LibraryCatalog catalog = LibraryCatalog.open(catalogFile);
+            for(Track track : updateCatalog(catalog, dir)) {
+                addTrack(track);
+            }
+        }
+        catch(IOException e) {
+            readLibrary(dir);
+            saveCatalog();
+        }
+    }
+    
     /**
      * Add a track file to the collection.
      * @param filename The file name of the track to be added.
      */
     public void addFile(String filename)
     {
-        tracks.add(new Track(filename));
+        addTrack(new Track(filename));
     }
     
     /**
@@ -45,6 +86,10 @@ public class MusicOrganizer
     public void addTrack(Track track)
     {
         tracks.add(track);
+        int row = columns.add(track);
+        for(SmartPlaylist playlist : getSmartPlaylists()) {
+            playlist.trackChanged(row);
+        }
     }
     
     /**
@@ -133,7 +178,87 @@ public class MusicOrganizer
     public void removeTrack(int index)
     {
         if(indexValid(index)) {
-            tracks.remove(index);
+            int row = columns.remove(tracks.remove(index));
+            for(SmartPlaylist playlist : getSmartPlaylists()) {
+                playlist.trackRemoved(row);
+            }
+        }
+    }
+    
+    /**
+     * Bring the smart playlists up to date after a track's details
+     * (such as its tags or play count) have changed.
+     * @param track The track.
+     */
+    public void trackChanged(Track track)
+    {
+        int row = columns.update(track);
+        if(row >= 0) {
+            for(SmartPlaylist playlist : getSmartPlaylists()) {
+                playlist.trackChanged(row);
+            }
+        }
+    }
+    
+    /**
+     * Record that a track has been played, and bring the smart
+     * playlists up to date.
+     * @param track The track.
+     * @param time The time it was played, in milliseconds since 1970.
+     */
+    public void recordPlay(Track track, long time)
+    {
+        track.recordPlay(time);
+        trackChanged(track);
+    }
+    
+    /**
+     * Return the tracks matching a query, such as
+     * "genre = blues AND year < 1940 AND NOT played in 7 days".
+     * @param query The query; see TrackQuery.
+     * @return The matching tracks.
+     * @throws IllegalArgumentException If the query is not valid.
+     */
+    public List<Track> query(String query)
+    {
+        TrackQuery compiled = TrackQuery.parse(query);
+        return columns.getTracks(columns.select(compiled));
+    }
+    
+    /**
+     * Create a smart playlist: the tracks matching a query, kept up to
+     * date as the collection changes.
+     * @param query The query; see TrackQuery.
+     * @return The playlist.
+     * @throws IllegalArgumentException If the query is not valid.
+     */
+    public SmartPlaylist createSmartPlaylist(String query)
+    {
+        SmartPlaylist playlist = new SmartPlaylist(TrackQuery.parse(query), columns);
+        synchronized(playlists) {
+            playlists.add(playlist);
+        }
+        return playlist;
+    }
+    
+    /**
+     * Stop keeping a smart playlist up to date.
+     * @param playlist The playlist.
+     */
+    public void removeSmartPlaylist(SmartPlaylist playlist)
+    {
+        synchronized(playlists) {
+            playlists.remove(playlist);
+        }
+    }
+    
+    /**
+     * Return a copy of the list of smart playlists.
+     */
+    private List<SmartPlaylist> getSmartPlaylists()
+    {
+        synchronized(playlists) {
+            return new ArrayList<>(playlists);
         }
     }
     
@@ -163,6 +288,98 @@ public class MusicOrganizer
         return valid;
     }
     
+    /**
+     * Analyze the loudness and the leading and trailing silence
+     * of all tracks in the collection.
+     * This decodes every track, so it is best run in the background.
+     */
+    public void analyzeTracks()
+    {
+        if(catalogFile != null && isAnalyzed()) {
+            // The results were saved in the catalog.
+            return;
+        }
+        new LoudnessAnalyzer().analyzeTracks(getAllTracks());
+        saveCatalog();
+    }
+    
+    /**
+     * Write the whole collection to the catalog, if there is one,
+     * so that it is loaded from there next time.
+     */
+    public void saveCatalog()
+    {
+        if(catalogFile != null) {
+            try {
+                LibraryCatalog.write(catalogFile, getAllTracks());
+            }
+            catch(IOException e) {
+                System.out.println("Unable to save the library catalog: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Find the tracks in the collection that are copies of the same
+     * recording, such as re-encodes stored under different names.
+     * This decodes the start of every track, so it is best run in the background.
+     * @return The groups of two or more matching tracks.
+     */
+    public List<List<Track>> findDuplicates()
+    {
+        FingerprintIndex index = new FingerprintIndex();
+        index.addTracks(getAllTracks());
+        return index.findDuplicates();
+    }
+    
+    /**
+     * Return whether every track has been analyzed.
+     */
+    private boolean isAnalyzed()
+    {
+        for(Track track : tracks) {
+            if(track.getEndFrame() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Bring a catalog up to date with the files in a folder. The files
+     * are only listed and their sizes and times checked; a file is read
+     * only if it is new or has changed since it was catalogued.
+     * @return The tracks in the catalog afterwards.
+     */
+    private List<Track> updateCatalog(LibraryCatalog catalog, File dir) throws IOException
+    {
+        Set<String> present = new HashSet<>();
+        for(File file : reader.listFiles(dir, ".mp3")) {
+            String filename = file.getPath();
+            present.add(filename);
+            int record = catalog.find(filename);
+            if(record >= 0) {
+                long[] state = catalog.getFileState(record);
+                if(state[0] == file.lastModified() && state[1] == file.length()) {
+                    continue;
+                }
+                // Changed since it was catalogued: its tags and analysis are out of date.
+                catalog.remove(filename);
+            }
+            catalog.add(reader.readTrack(file));
+        }
+        List<Track> catalogued = new ArrayList<>();
+        for(Track track : catalog.getTracks()) {
+            if(present.contains(track.getFilename())) {
+                catalogued.add(track);
+            }
+            else {
+                catalog.remove(track.getFilename());
+            }
+        }
+        return catalogued;
+    }
+    
     public void readLibrary(File dir)
     {
         ArrayList<Track> tempTracks = reader.readTracks(dir, ".mp3");
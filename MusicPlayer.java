@@ -2,6 +2,8 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.List;
+import javax.sound.sampled.AudioSystem;
 import javazoom.jl.decoder.JavaLayerException;
 import javazoom.jl.player.AudioDevice;
 import javazoom.jl.player.FactoryRegistry;
@@ -15,10 +17,48 @@ import javazoom.jl.player.FactoryRegistry;
  */
 public class MusicPlayer
 {
-    // The current player. It might be null.
-    private MusicFilePlayer player;
+    // The current player. It might be null. It is replaced by the player
+    // thread as well as by callers, so it is read once into a local.
+    private volatile MusicFilePlayer player;
     // The current file being played.
     private String filename;
+    // Whether to apply album gain rather than track gain.
+    private boolean albumGainMode;
+    // The tracks to be played after the current one.
+    private PlayQueue queue;
+    // The effects applied to every track.
+    private DspChain effects;
+    // The equalizer in the chain of effects.
+    private Equalizer equalizer;
+    // The crossfader in the chain of effects.
+    private Crossfader crossfader;
+    // The sample rate all tracks are converted to, or 0 to use each track's own.
+    private int outputRate;
+    // The quality of sample rate conversion.
+    private Resampler.Quality resampleQuality;
+    // The device shared by successive tracks at the output rate, or null.
+    private RealtimeOutput device;
+    // The priority of the thread writing to the shared device.
+    private int outputPriority;
+    // What replaces a frame that cannot be decoded.
+    private MusicFilePlayer.Concealment concealment;
+    // The playing speed, and how it is changed.
+    private double speed;
+    private TimeStretcher.Mode stretchMode;
+    // The history plays are recorded in, or null.
+    private PlayHistory history;
+    // The track being played, for the history, or null.
+    private Track currentTrack;
+    // Whether a problem has stopped playing since a track was last started.
+    private volatile boolean problem;
+    // The default output rate.
+    private static final int DEFAULT_OUTPUT_RATE = 44100;
+    // The number of upcoming tracks prepared in the background.
+    private static final int PREFETCH_COUNT = 2;
+    // The number of frames decoded when preparing to play.
+    private static final int PREPARE_FRAMES = 4;
+    // The centre frequencies of the equalizer bands, in Hz.
+    private static final double[] EQ_BANDS = { 60, 250, 1000, 4000, 12000 };
 
     /**
      * Constructor for objects of class MusicPlayer
@@ -27,6 +67,25 @@ public class MusicPlayer
     {
         player = null;
         filename = "";
+        albumGainMode = false;
+        queue = new PlayQueue();
+        equalizer = new Equalizer();
+        for(double frequency : EQ_BANDS) {
+            equalizer.addBand(frequency, 0, 0.9);
+        }
+        crossfader = new Crossfader();
+        effects = new DspChain();
+        effects.add(equalizer);
+        effects.add(new Limiter());
+        effects.add(crossfader);
+        outputRate = DEFAULT_OUTPUT_RATE;
+        resampleQuality = Resampler.Quality.STANDARD;
+        outputPriority = Thread.MAX_PRIORITY;
+        concealment = MusicFilePlayer.Concealment.REPEAT;
+        speed = 1;
+        stretchMode = TimeStretcher.Mode.LOW_LATENCY;
+        history = null;
+        currentTrack = null;
     }
 
     /**
@@ -34,23 +93,260 @@ public class MusicPlayer
      * The method returns once the playing has been started.
      * @param filename The file to be played.
      */
-    public void startPlaying(final String filename)
+    public synchronized void startPlaying(final String filename)
+    {
+        problem = false;
+        try {
+            if(setupPlayer(filename) != null) {
+                playFrom(0);
+            }
+        }
+        catch (JavaLayerException ex) {
+            reportProblem();
+        }
+    }
+
+    /**
+     * Start playing the given track, normalized by its analyzed gain
+     * and skipping its leading and trailing silence.
+     * The method returns once the playing has been started.
+     * @param track The track to be played.
+     */
+    public synchronized void startPlaying(Track track)
     {
+        problem = false;
         try {
-            setupPlayer(filename);
-            playFrom(0);
+            MusicFilePlayer current = setupPlayer(track.getFilename());
+            if(current != null) {
+                PlayerEvents.TrackStart event = PlayerEvents.isActive()
+                                                ? new PlayerEvents.TrackStart() : null;
+                if(event != null) {
+                    event.begin();
+                }
+                double gain = albumGainMode ? track.getAlbumGain() : track.getTrackGain();
+                boolean fadeOut = !queue.getUpcoming(1).isEmpty();
+                current.setGain(gain);
+                if(track.getEndFrame() >= 0) {
+                    current.setTrim(track.getStartFrame(), track.getEndFrame());
+                }
+                current.setCrossfader(crossfader, fadeOut);
+                if(event != null && event.shouldCommit()) {
+                    event.filename = track.getFilename();
+                    event.gain = gain;
+                    event.crossfade = fadeOut;
+                    event.commit();
+                }
+                startPlay(track);
+                playFrom(0);
+            }
+            FrameIndexCache.prefetch(queue.getUpcoming(PREFETCH_COUNT));
         }
         catch (JavaLayerException ex) {
             reportProblem();
         }
     }
 
+    /**
+     * Replace the queue with the given tracks and start playing one of them.
+     * The following tracks are played when it finishes.
+     * @param tracks The tracks to be queued.
+     * @param start The position of the track to play first.
+     */
+    public void startPlaying(List<Track> tracks, int start)
+    {
+        Track track = queue.setTracks(tracks, start);
+        if(track != null) {
+            startPlaying(track);
+        }
+    }
+
+    /**
+     * Prepare to play a track, so that playing it starts sooner: its
+     * frame index is built, its first frames are decoded so that the
+     * decoder is loaded, and the audio system is initialized. This is
+     * slow, and is meant to be called on a background thread before
+     * anything is played.
+     * @param track The track likely to be played first, or null to
+     *              prepare only the audio system.
+     */
+    public void prepare(Track track)
+    {
+        if(track != null) {
+            PcmReader reader = null;
+            try {
+                FrameIndexCache.get(track.getFilename());
+                reader = new PcmReader(track.getFilename());
+                for(int i = 0; i < PREPARE_FRAMES && reader.readFrame() != null; i++) {
+                }
+            }
+            catch(JavaLayerException ex) {
+                // The track will be reported as unplayable if it is played.
+            }
+            finally {
+                if(reader != null) {
+                    reader.close();
+                }
+            }
+        }
+        AudioSystem.getMixerInfo();
+        FactoryRegistry.systemRegistry();
+    }
+
+    /**
+     * Play the next track in the queue, if there is one.
+     * @return true if there was a next track, false if nothing changed.
+     */
+    public boolean playNext()
+    {
+        Track track = queue.next();
+        if(track != null) {
+            startPlaying(track);
+        }
+        return track != null;
+    }
+
+    /**
+     * Play the previous track in the queue, if there is one.
+     * @return true if there was a previous track, false if nothing changed.
+     */
+    public boolean playPrevious()
+    {
+        Track track = queue.previous();
+        if(track != null) {
+            startPlaying(track);
+        }
+        return track != null;
+    }
+
+    /**
+     * Record the tracks played in a play history: when each starts, and
+     * when it ends, how much of it was heard.
+     * @param history The history, or null to stop recording.
+     */
+    public synchronized void setPlayHistory(PlayHistory history)
+    {
+        this.history = history;
+    }
+
+    /**
+     * Return the queue of tracks to be played.
+     * @return The queue.
+     */
+    public PlayQueue getQueue()
+    {
+        return queue;
+    }
+
+    /**
+     * Choose whether tracks are normalized by album or by track gain.
+     * Album gain keeps the relative levels of tracks within an album.
+     * @param albumGainMode true to use album gain, false to use track gain.
+     */
+    public void setAlbumGainMode(boolean albumGainMode)
+    {
+        this.albumGainMode = albumGainMode;
+    }
+
+    /**
+     * Return the effects applied to every track: an equalizer,
+     * a limiter and a crossfader, in that order.
+     * @return The chain of effects.
+     */
+    public DspChain getEffects()
+    {
+        return effects;
+    }
+
+    /**
+     * Return the equalizer applied to every track.
+     * @return The equalizer.
+     */
+    public Equalizer getEqualizer()
+    {
+        return equalizer;
+    }
+
+    /**
+     * Set the length of the crossfade between consecutive tracks in the queue.
+     * @param millis The length, in milliseconds; 0 for no crossfade.
+     */
+    public void setCrossfadeMillis(int millis)
+    {
+        crossfader.setFadeMillis(millis);
+    }
+
+    /**
+     * Set the sample rate of the audio device. Every track is converted
+     * to this rate, so one device stays open from track to track and
+     * tracks follow each other without a gap. Takes effect from the
+     * next track started.
+     * @param rate The sample rate, or 0 to open a device at each track's own rate.
+     * @param quality The quality of conversion.
+     */
+    public void setOutputRate(int rate, Resampler.Quality quality)
+    {
+        synchronized(this) {
+            if(rate != outputRate) {
+                closeDevice();
+            }
+            outputRate = rate;
+            resampleQuality = quality;
+        }
+    }
+
+    /**
+     * Set the priority of the thread writing to the shared audio device.
+     * Takes effect when the device is next opened.
+     * @param priority The thread priority.
+     */
+    public void setOutputPriority(int priority)
+    {
+        outputPriority = priority;
+    }
+
+    /**
+     * Set what replaces a frame that cannot be decoded, so that damaged
+     * files play through. Takes effect from the next track started.
+     * @param concealment The concealment, or NONE to stop at a bad frame.
+     */
+    public void setConcealment(MusicFilePlayer.Concealment concealment)
+    {
+        this.concealment = concealment;
+    }
+
+    /**
+     * Set the playing speed, keeping the pitch. Takes effect at once,
+     * and applies to every track until changed.
+     * @param speed The speed, from 0.5 to 2; 1 is normal.
+     * @param mode How the speed is changed.
+     */
+    public void setSpeed(double speed, TimeStretcher.Mode mode)
+    {
+        this.speed = speed;
+        stretchMode = mode;
+        MusicFilePlayer current = player;
+        if(current != null) {
+            current.setSpeed(speed, mode);
+        }
+    }
+
+    /**
+     * Return the shared audio output, if open, to inspect its near misses.
+     * @return The output, or null.
+     */
+    public synchronized RealtimeOutput getOutput()
+    {
+        return device;
+    }
+
     /**
      * Stop playing the current file.
      */
     public void stop()
     {
+        endPlay(false);
         killPlayer();
+        crossfader.reset();
     }
 
     /**
@@ -58,9 +354,10 @@ public class MusicPlayer
      */
     public void pause()
     {
-        if(player != null) {
+        MusicFilePlayer current = player;
+        if(current != null) {
             try {
-                player.pause();
+                current.pause();
             }
             catch(JavaLayerException e) {
                 reportProblem();
@@ -74,12 +371,14 @@ public class MusicPlayer
      */
     public void resume()
     {
-        if(player != null) {
+        final MusicFilePlayer current = player;
+        if(current != null) {
             Thread playerThread = new Thread() {
                 public void run()
                 {
                     try {
-                        player.resume();
+                        current.resume();
+                        advanceIfFinished(current);
                     }
                     catch(JavaLayerException e) {
                         reportProblem();
@@ -87,7 +386,7 @@ public class MusicPlayer
                     }
                 }
             };
-            playerThread.setPriority(Thread.MIN_PRIORITY);
+            playerThread.setPriority(Thread.NORM_PRIORITY);
             playerThread.start();
         }
     }
@@ -100,9 +399,30 @@ public class MusicPlayer
      */
     public void seekTo(int position)
     {
-        if(player != null && position >= 0 && position < player.getLength()) {
+        MusicFilePlayer current = player;
+        if(current != null && position >= 0 && position < current.getLength()) {
+            try {
+                current.setPosition(position);
+            }
+            catch(JavaLayerException e) {
+                reportProblem();
+                killPlayer();
+            }
+        }
+    }
+
+    /**
+     * Seek to the given time in the current file.
+     * The track will be paused as a result of this operation.
+     *
+     * @param millis What position in the file to move to, in milliseconds.
+     */
+    public void seekToMillis(long millis)
+    {
+        MusicFilePlayer current = player;
+        if(current != null && millis >= 0 && millis < current.getLengthMillis()) {
             try {
-                player.setPosition(position);
+                current.setPositionMillis(millis);
             }
             catch(JavaLayerException e) {
                 reportProblem();
@@ -111,6 +431,126 @@ public class MusicPlayer
         }
     }
 
+    /**
+     * Seek to the given sample in the current file.
+     * The track will be paused as a result of this operation.
+     *
+     * @param sample What position in the file to move to, in samples per channel.
+     */
+    public void seekToSample(long sample)
+    {
+        MusicFilePlayer current = player;
+        if(current != null && sample >= 0 && sample < current.getLengthSamples()) {
+            try {
+                current.setPositionSamples(sample);
+            }
+            catch(JavaLayerException e) {
+                reportProblem();
+                killPlayer();
+            }
+        }
+    }
+
+    /**
+     * Mark the current position of the current track as a named cue point.
+     * @param name The name of the cue point.
+     */
+    public void addCue(String name)
+    {
+        MusicFilePlayer current = player;
+        Track track = queue.getCurrent();
+        if(current != null && track != null) {
+            track.setCue(name, current.getPositionSamples());
+        }
+    }
+
+    /**
+     * Move to a named cue point of the current track.
+     * The track will be paused as a result of this operation.
+     *
+     * @param name The name of the cue point.
+     */
+    public void jumpToCue(String name)
+    {
+        Track track = queue.getCurrent();
+        if(track != null && track.getCue(name) >= 0) {
+            seekToSample(track.getCue(name));
+        }
+    }
+
+    /**
+     * Loop the section of the current track between two cue points.
+     *
+     * @param from The name of the cue point starting the section.
+     * @param to The name of the cue point ending the section.
+     */
+    public void setLoop(String from, String to)
+    {
+        MusicFilePlayer current = player;
+        Track track = queue.getCurrent();
+        if(current != null && track != null
+                && track.getCue(from) >= 0 && track.getCue(to) >= 0) {
+            current.setLoop(track.getCue(from), track.getCue(to));
+        }
+    }
+
+    /**
+     * Loop a section of the current track.
+     *
+     * @param start The start of the section, in milliseconds.
+     * @param end The end of the section, in milliseconds.
+     */
+    public void setLoopMillis(long start, long end)
+    {
+        MusicFilePlayer current = player;
+        if(current != null) {
+            current.setLoopMillis(start, end);
+        }
+    }
+
+    /**
+     * Stop looping the current track.
+     */
+    public void clearLoop()
+    {
+        MusicFilePlayer current = player;
+        if(current != null) {
+            current.clearLoop();
+        }
+    }
+
+    /**
+     * Return the length of the current music file, if any.
+     *
+     * @return The file length in milliseconds.
+     */
+    public long getLengthMillis()
+    {
+        MusicFilePlayer current = player;
+        if(current != null) {
+            return current.getLengthMillis();
+        }
+        else {
+            return 0;
+        }
+    }
+
+    /**
+     * Return the current position of the current music file, if any.
+     *
+     * @return The file position in milliseconds.
+     */
+    public long getPositionMillis()
+    {
+        MusicFilePlayer current = player;
+        if(current != null) {
+            return current.getPositionMillis();
+        }
+        else {
+            return 0;
+        }
+    }
+
     /**
      * Return the length of the current music file, if any.
      * The length is in 'frames' rather than seconds, for instance.
@@ -119,8 +559,9 @@ public class MusicPlayer
      */
     public int getLength()
     {
-        if(player != null) {
-            return player.getLength();
+        MusicFilePlayer current = player;
+        if(current != null) {
+            return current.getLength();
         }
         else {
             return 0;
@@ -135,32 +576,110 @@ public class MusicPlayer
      */
     public int getPosition()
     {
-        if(player != null) {
-            return player.getPosition();
+        MusicFilePlayer current = player;
+        if(current != null) {
+            return current.getPosition();
         }
         else {
             return 0;
         }
     }
 
+    /**
+     * Return whether the current file has been played to its end,
+     * with nothing following it in the queue.
+     *
+     * @return true if there is a file and it has finished playing.
+     */
+    public boolean isFinished()
+    {
+        MusicFilePlayer current = player;
+        return current != null && current.getPosition() >= current.getEndFrame()
+            && queue.getUpcoming(1).isEmpty();
+    }
+
+    /**
+     * Return whether nothing is playing: no file has been started, or
+     * playing was stopped, or a problem stopped it. While the queue moves
+     * on from one track to the next, the next is already current.
+     *
+     * @return true if there is no current file.
+     */
+    public synchronized boolean isStopped()
+    {
+        return player == null;
+    }
+
+    /**
+     * Return whether a problem has stopped playing since a track was
+     * last started.
+     *
+     * @return true if there was a problem.
+     */
+    public boolean hasProblem()
+    {
+        return problem;
+    }
+
+    /**
+     * Wait until the shared device has played all the audio written to
+     * it. Stopping closes the device and discards what it still holds,
+     * so once the last track has finished this lets its end be heard.
+     * A track played on a device of its own drains it itself.
+     */
+    public void drain()
+    {
+        RealtimeOutput output;
+        synchronized(this) {
+            output = device;
+        }
+        if(output != null) {
+            output.flush();
+        }
+    }
+
     /**
      * Set up the player ready to play the given file.
      * @param filename The name of the file to play.
+     * @return The new player, or null if the file cannot be played.
      */
-    private void setupPlayer(String filename)
+    private synchronized MusicFilePlayer setupPlayer(String filename)
     {
         try {
+            endPlay(false);
             if(player != null) {
                 killPlayer();
             }
             this.filename = filename;
-            player = new MusicFilePlayer(filename);
+            MusicFilePlayer created;
+            if(outputRate > 0) {
+                if(device == null) {
+                    device = new RealtimeOutput(MusicFilePlayer.openDevice(outputRate),
+                                                outputRate, 2, effects,
+                                                RealtimeOutput.DEFAULT_BUFFER_MILLIS,
+                                                RealtimeOutput.DEFAULT_MARGIN_MILLIS,
+                                                outputPriority);
+                }
+                created = new MusicFilePlayer(filename, device, outputRate, resampleQuality);
+            }
+            else {
+                created = new MusicFilePlayer(filename);
+            }
+            created.setEffects(effects);
+            created.setConcealment(concealment);
+            created.setSpeed(speed, stretchMode);
+            // Mix in the end of the previous track, if it was captured.
+            crossfader.endTail();
+            created.setCrossfader(crossfader, false);
+            player = created;
+            return created;
         }
         catch(JavaLayerException e) {
             System.out.println("Problem setting up player");
             e.printStackTrace();
             reportProblem();
             killPlayer();
+            return null;
         }
     }
 
@@ -171,11 +690,13 @@ public class MusicPlayer
      */
     private void playFrom(final int start) throws JavaLayerException
     {
+        final MusicFilePlayer current = player;
         Thread playerThread = new Thread() {
             public void run()
             {
                 try {
-                    player.playFrom(start);
+                    current.playFrom(start);
+                    advanceIfFinished(current);
                 }
                 catch(JavaLayerException e) {
                     reportProblem();
@@ -183,10 +704,83 @@ public class MusicPlayer
                 }
             }
         };
-        playerThread.setPriority(Thread.MIN_PRIORITY);
+        playerThread.setPriority(Thread.NORM_PRIORITY);
         playerThread.start();
     }
 
+    /**
+     * Start the next track in the queue if the given player has played
+     * to its end and is still the current player.
+     * If there is no next track, any end of the track captured for
+     * a crossfade is played instead.
+     * @param finished The player whose playing has stopped.
+     */
+    private void advanceIfFinished(MusicFilePlayer finished) throws JavaLayerException
+    {
+        if(finished == player && finished.getPosition() >= finished.getEndFrame()) {
+            endPlay(true);
+            Track track;
+            synchronized(this) {
+                if(finished != player) {
+                    // Another track was started meanwhile.
+                    return;
+                }
+                track = queue.advance();
+                if(track != null) {
+                    // Leave a shared device open, so the next track follows without a gap.
+                    finished.stop();
+                    player = null;
+                    // Started under the lock, so that there is always a
+                    // current player while tracks remain.
+                    startPlaying(track);
+                }
+            }
+            if(track == null) {
+                finished.finishCrossfade();
+            }
+        }
+    }
+
+    /**
+     * Note the track that has started playing, for the play history.
+     * @param track The track.
+     */
+    private void startPlay(Track track)
+    {
+        PlayHistory recorder;
+        synchronized(this) {
+            currentTrack = track;
+            recorder = history;
+        }
+        if(recorder != null) {
+            recorder.started(track);
+        }
+    }
+
+    /**
+     * Record the end of the track being played, if any, in the play history.
+     * This does not wait, so it may be called from the playing thread.
+     * @param completed Whether the track was played to its end.
+     */
+    private void endPlay(boolean completed)
+    {
+        Track track;
+        PlayHistory recorder;
+        int percent = 0;
+        synchronized(this) {
+            track = currentTrack;
+            recorder = history;
+            currentTrack = null;
+            MusicFilePlayer current = player;
+            if(current != null && current.getEndFrame() > 0) {
+                percent = (int) (100L * current.getPosition() / current.getEndFrame());
+            }
+        }
+        if(track != null && recorder != null) {
+            recorder.ended(track, percent, completed);
+        }
+    }
+
     /**
      * Terminate the player, if there is one.
      */
@@ -198,6 +792,22 @@ public class MusicPlayer
                 player = null;
                 filename = "";
             }
+            // Stop any audio the shared device is still playing.
+            closeDevice();
+        }
+    }
+
+    /**
+     * Close the shared audio device, if there is one.
+     */
+    private void closeDevice()
+    {
+        synchronized(this) {
+            if(device != null) {
+                device.close();
+                PlayerEvents.audioDevice("close", device, true, outputRate);
+                device = null;
+            }
         }
     }
 
@@ -206,6 +816,14 @@ public class MusicPlayer
      */
     private void reportProblem()
     {
+        problem = true;
+        PlayerMetrics.get().recordError();
+        PlayerEvents.PlaybackProblem event = PlayerEvents.isActive()
+                                             ? new PlayerEvents.PlaybackProblem() : null;
+        if(event != null && event.isEnabled()) {
+            event.filename = filename;
+            event.commit();
+        }
         System.out.println("There was a problem playing: " + filename);
     }
 
@@ -0,0 +1,430 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.AudioDeviceFactory;
+import javazoom.jl.player.FactoryRegistry;
+import javazoom.jl.player.NullAudioDevice;
+
+/**
+ * A command-line interface to the music library and player, for use
+ * on machines without a display and from scripts. It uses the same
+ * classes as MusicPlayerGUI but none of AWT or Swing, which are never
+ * loaded.
+ *
+ * Usage: java MusicPlayerCLI command arguments... [options]
+ *
+ *     scan folder                 read the folder and bring its catalog up to date
+ *     list folder                 list the tracks: artist, title and file, tab-separated
+ *     search folder query         list the tracks matching a TrackQuery
+ *     play folder [query]         play the folder's tracks (or those matching) in order
+ *     play file.mp3               play one file
+ *     transcode file.mp3 out.wav  decode a file to a WAV file
+ *
+ * Options:
+ *     --sort field    sort listings by Artist, Title or Filename
+ *     --rate hz       the sample rate of a transcoded file
+ *     --silent        play without sound, as for timing
+ *     --timing        report the time taken to start and to play the first audio
+ *
+ * A folder's catalog (see MusicOrganizer.CATALOG_NAME) is used if there
+ * is one, so listing and searching a large library does not read every
+ * file; scan creates or updates it.
+ *
+ * @version 2026.10.19
+ */
+public class MusicPlayerCLI
+{
+    // The time between checks on the player, in milliseconds.
+    private static final int POLL_MILLIS = 5;
+
+    // The arguments other than options.
+    private final List<String> arguments;
+    // The field to sort listings by, or null.
+    private String sortField;
+    // The sample rate of transcoded files, or 0 for the file's own.
+    private int rate;
+    // Whether to play without sound.
+    private boolean silent;
+    // Whether to report timings.
+    private boolean timing;
+    // When main was entered, in nanoseconds and in milliseconds since 1970.
+    private final long mainNanos;
+    private final long mainMillis;
+
+    /**
+     * Run a command.
+     * @param args The command, its arguments and options.
+     */
+    public static void main(String[] args)
+    {
+        long mainNanos = System.nanoTime();
+        MusicPlayerCLI cli = new MusicPlayerCLI(mainNanos);
+        try {
+            System.exit(cli.run(args));
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        catch(IOException | JavaLayerException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create the interface.
+     * @param mainNanos When main was entered, in nanoseconds.
+     */
+    public MusicPlayerCLI(long mainNanos)
+    {
+        this.mainNanos = mainNanos;
+        mainMillis = System.currentTimeMillis() - (System.nanoTime() - mainNanos) / 1000000;
+        arguments = new ArrayList<>();
+        sortField = null;
+        rate = 0;
+    }
+
+    /**
+     * Run a command.
+     * @param args The command, its arguments and options.
+     * @return The exit status.
+     * @throws IllegalArgumentException If the command is not valid.
+     */
+    public int run(String[] args) throws IOException, JavaLayerException
+    {
+        parseOptions(args);
+        if(arguments.isEmpty()) {
+            throw new IllegalArgumentException(usage());
+        }
+        int status = execute(arguments.get(0));
+        if(timing) {
+            report("JVM start to main", startupMillis());
+        }
+        return status;
+    }
+
+    /**
+     * Carry out a command.
+     * @return The exit status.
+     */
+    private int execute(String command) throws IOException, JavaLayerException
+    {
+        switch(command) {
+            case "scan":
+                return scan(argument(1, "folder"));
+            case "list":
+                print(sort(open(argument(1, "folder"), false).getAllTracks()));
+                return 0;
+            case "search":
+                print(sort(open(argument(1, "folder"), false).query(argument(2, "query"))));
+                return 0;
+            case "play":
+                return play(argument(1, "folder or file"),
+                            arguments.size() > 2 ? arguments.get(2) : null);
+            case "transcode":
+                return transcode(argument(1, "file"), argument(2, "output file"));
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command + "\n" + usage());
+        }
+    }
+
+    /**
+     * Read a folder and bring its catalog up to date.
+     */
+    private int scan(String folder)
+    {
+        MusicOrganizer organizer = open(folder, true);
+        System.out.println(organizer.getNumberOfTracks() + " tracks in " + folder);
+        return 0;
+    }
+
+    /**
+     * Play a file, or a folder's tracks, until the last has finished.
+     */
+    private int play(String path, String query) throws JavaLayerException
+    {
+        File file = new File(path);
+        List<Track> tracks;
+        if(file.isFile()) {
+            tracks = new ArrayList<>();
+            tracks.add(new TrackReader().readTrack(file));
+        }
+        else {
+            MusicOrganizer organizer = open(path, false);
+            tracks = query == null ? sort(organizer.getAllTracks()) : sort(organizer.query(query));
+        }
+        if(tracks.isEmpty()) {
+            System.err.println("Nothing to play");
+            return 1;
+        }
+        if(silent) {
+            FactoryRegistry.systemRegistry().addFactory(new AudioDeviceFactory() {
+                public AudioDevice createAudioDevice()
+                {
+                    return new NullAudioDevice();
+                }
+            });
+        }
+        MusicPlayer player = new MusicPlayer();
+        long started = System.nanoTime();
+        player.startPlaying(tracks, 0);
+        Track current = null;
+        boolean heard = false;
+        try {
+            while(!player.isStopped() && !player.isFinished() && !player.hasProblem()) {
+                if(!heard && player.getPositionMillis() > 0) {
+                    heard = true;
+                    if(timing) {
+                        report("play command to first audio", (System.nanoTime() - started) / 1e6);
+                        report("main to first audio", (System.nanoTime() - mainNanos) / 1e6);
+                    }
+                }
+                Track playing = player.getQueue().getCurrent();
+                if(playing != current && playing != null) {
+                    current = playing;
+                    System.out.println("Playing " + current.getDetails());
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean failed = player.hasProblem();
+        if(player.isFinished()) {
+            // Let the end of the last track be heard before the device is closed.
+            player.drain();
+        }
+        player.stop();
+        return failed ? 1 : 0;
+    }
+
+    /**
+     * Decode a file to a 16-bit WAV file, converting the sample rate if asked.
+     */
+    private int transcode(String input, String output) throws IOException, JavaLayerException
+    {
+        PcmReader reader = new PcmReader(input);
+        Resampler resampler = null;
+        int channels = 0;
+        int outputRate = 0;
+        long dataBytes = 0;
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(output)))) {
+            // Leave room for the header, written once the length is known.
+            out.write(new byte[44]);
+            SampleBuffer buffer;
+            while((buffer = reader.readFrame()) != null) {
+                if(channels == 0) {
+                    channels = reader.getChannels();
+                    outputRate = rate > 0 ? rate : reader.getSampleRate();
+                    if(outputRate != reader.getSampleRate()) {
+                        resampler = new Resampler(reader.getSampleRate(), outputRate, channels,
+                                                  Resampler.Quality.HIGH);
+                    }
+                }
+                short[] samples = buffer.getBuffer();
+                int count = buffer.getBufferLength();
+                if(resampler != null) {
+                    count = resampler.process(samples, 0, count);
+                    samples = resampler.getOutput();
+                }
+                for(int i = 0; i < count; i++) {
+                    out.writeShort(Short.reverseBytes(samples[i]));
+                }
+                dataBytes += 2L * count;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        if(channels == 0) {
+            System.err.println("No audio in " + input);
+            return 1;
+        }
+        try(RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            file.write(wavHeader(channels, outputRate, dataBytes));
+        }
+        System.out.println("Wrote " + output + ": " + outputRate + " Hz, " + channels + " channels, "
+                           + (dataBytes / 2 / channels * 1000 / outputRate) + " ms");
+        return 0;
+    }
+
+    /**
+     * Return the 44-byte header of a 16-bit PCM WAV file.
+     */
+    private static byte[] wavHeader(int channels, int sampleRate, long dataBytes)
+    {
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII))
+            .putInt((int) (36 + dataBytes))
+            .put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII))
+            .putInt(16)
+            .putShort((short) 1)
+            .putShort((short) channels)
+            .putInt(sampleRate)
+            .putInt(sampleRate * channels * 2)
+            .putShort((short) (channels * 2))
+            .putShort((short) 16)
+            .put("data".getBytes(StandardCharsets.US_ASCII))
+            .putInt((int) dataBytes);
+        return header.array();
+    }
+
+    /**
+     * Open a folder's library, from its catalog if it has one.
+     * @param update Whether to create the catalog if there is none.
+     */
+    private MusicOrganizer open(String folder, boolean update)
+    {
+        File dir = new File(folder);
+        if(!dir.isDirectory()) {
+            throw new IllegalArgumentException("Not a folder: " + folder);
+        }
+        long start = System.nanoTime();
+        File catalog = new File(dir, MusicOrganizer.CATALOG_NAME);
+        MusicOrganizer organizer = update || catalog.exists()
+                                   ? new MusicOrganizer(dir, catalog) : new MusicOrganizer(dir);
+        if(timing) {
+            report("library loaded (" + organizer.getNumberOfTracks() + " tracks)",
+                   (System.nanoTime() - start) / 1e6);
+        }
+        return organizer;
+    }
+
+    /**
+     * Sort tracks by the field chosen with --sort, if any.
+     */
+    private List<Track> sort(List<Track> tracks)
+    {
+        if(sortField != null) {
+            final String field = sortField;
+            tracks.sort((t1, t2) -> t1.getField(field).compareTo(t2.getField(field)));
+        }
+        return tracks;
+    }
+
+    /**
+     * Print tracks, one per line: artist, title and file, tab-separated.
+     */
+    private static void print(List<Track> tracks)
+    {
+        StringBuilder text = new StringBuilder();
+        for(Track track : tracks) {
+            text.append(String.join("\t", track.getFields())).append('\n');
+        }
+        System.out.print(text);
+    }
+
+    /**
+     * Separate the options from the other arguments.
+     */
+    private void parseOptions(String[] args)
+    {
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--sort":
+                    String field = value(args, ++i);
+                    sortField = null;
+                    for(String name : Track.FIELDS) {
+                        if(name.equalsIgnoreCase(field)) {
+                            sortField = name;
+                        }
+                    }
+                    if(sortField == null) {
+                        throw new IllegalArgumentException("Cannot sort by " + field + "; use one of "
+                                                           + Arrays.toString(Track.FIELDS));
+                    }
+                    break;
+                case "--rate":
+                    String hz = value(args, ++i);
+                    if(!hz.matches("[0-9]{4,6}")) {
+                        throw new IllegalArgumentException("Invalid sample rate: " + hz);
+                    }
+                    rate = Integer.parseInt(hz);
+                    break;
+                case "--silent":
+                    silent = true;
+                    break;
+                case "--timing":
+                    timing = true;
+                    break;
+                default:
+                    if(args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    }
+                    arguments.add(args[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Return the value following an option.
+     */
+    private static String value(String[] args, int index)
+    {
+        if(index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    /**
+     * Return an argument of the command.
+     */
+    private String argument(int index, String name)
+    {
+        if(index >= arguments.size()) {
+            throw new IllegalArgumentException(arguments.get(0) + " needs a " + name + "\n" + usage());
+        }
+        return arguments.get(index);
+    }
+
+    /**
+     * Return the time from the start of the JVM to main, in milliseconds.
+     * This loads the management classes, so it is called once the command
+     * has been timed.
+     */
+    private long startupMillis()
+    {
+        return mainMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    /**
+     * Print a timing on the error stream, so as not to mix with the results.
+     */
+    private static void report(String what, double millis)
+    {
+        System.err.printf("%-32s %8.1f ms%n", what, millis);
+    }
+
+    /**
+     * Return the usage message.
+     */
+    private static String usage()
+    {
+        return "Usage: java MusicPlayerCLI scan|list|search|play|transcode arguments... "
+            + "[--sort field] [--rate hz] [--silent] [--timing]\n"
+            + "    scan folder\n"
+            + "    list folder\n"
+            + "    search folder query\n"
+            + "    play folder [query] | play file.mp3\n"
+            + "    transcode file.mp3 out.wav";
+    }
+}
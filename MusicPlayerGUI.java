@@ -1,5 +1,6 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.border.*;
@@ -7,6 +8,7 @@ import javax.swing.border.*;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
 
 import java.io.*;
 
@@ -23,6 +25,13 @@ public class MusicPlayerGUI extends JFrame
 {
     private static final String VERSION = "Version 1.0";
     private static final String DEFAULT_AUDIO_DIR = "./audio-files";
+    // The number of steps in the seek slider.
+    private static final int SLIDER_STEPS = 1000;
+    // The size of the cover art shown beside each track, in pixels.
+    private static final int THUMBNAIL_SIZE = 32;
+    // The most bytes of cover art kept in memory and on disk.
+    private static final long ART_MEMORY = 8 * 1024 * 1024;
+    private static final long ART_DISK = 64 * 1024 * 1024;
 
     private JList<String> fileList;
     private JSlider slider;
@@ -31,13 +40,27 @@ public class MusicPlayerGUI extends JFrame
     private JButton pauseButton;
     private JButton stopButton;
     private JButton resumeButton;
-    private MusicOrganizer organizer;
+    private JButton previousButton;
+    private JButton nextButton;
+    // The library, or null while it is being loaded.
+    private volatile MusicOrganizer organizer;
+    // The most recent loading of the library, while it is under way.
+    private SwingWorker<MusicOrganizer, Void> libraryLoader;
+    // The field the track list is sorted by.
+    private String ordering;
+    // The thumbnails of the library's cover art, or null.
+    private AlbumArtCache albumArt;
+    // The history of the tracks played, or null.
+    private PlayHistory history;
     // A player for the music tracks.
     private MusicPlayer player;
     // The current track list.
     private List<Track> trackList;
     // The directory chooser which allows users to change the mp3 source directory.
-    private final JFileChooser directoryChooser;
+    // It is created when first needed, as creating it is slow.
+    private JFileChooser directoryChooser;
+    // The file chooser for importing and exporting playlists, created when first needed.
+    private JFileChooser playlistChooser;
     // timer is used to periodically update the slider position.
     private Timer timer;
 
@@ -56,19 +79,22 @@ public class MusicPlayerGUI extends JFrame
      */
     public static void main(String[] args)
     {
-        MusicPlayerGUI gui = new MusicPlayerGUI();
+        SwingUtilities.invokeLater(() -> new MusicPlayerGUI());
     }
 
     /**
      * Create a SoundPlayer and display its GUI on screen.
+     * The window is shown at once, and the library is loaded in the
+     * background and listed when it is ready. This must be called on
+     * the event dispatch thread.
      */
     public MusicPlayerGUI()
     {
         super("Music Player");
-        File audioFolder = new File(DEFAULT_AUDIO_DIR);
-        organizer = new MusicOrganizer(audioFolder);
+        organizer = null;
+        trackList = new ArrayList<>();
+        ordering = Track.FIELDS[0];
         player = new MusicPlayer();
-        directoryChooser = new JFileChooser();
         playbackState = PlaybackState.STOPPED;
 
         // Create a Timer to update the slider position periodically
@@ -79,12 +105,14 @@ public class MusicPlayerGUI extends JFrame
                 int currentPosition = player.getPosition();
 
                 if (playbackState == PlaybackState.PLAYING && currentPosition > 0) {
-                    int totalLength = player.getLength();
-                    int currentSliderPosition = (int) Math.round(((double) currentPosition / totalLength) * 100);
-                    slider.setValue(currentSliderPosition);
+                    long totalMillis = player.getLengthMillis();
+                    if (totalMillis > 0) {
+                        double fraction = (double) player.getPositionMillis() / totalMillis;
+                        slider.setValue((int) Math.round(fraction * SLIDER_STEPS));
+                    }
 
                     // also set playbackState to stopped if the song is over
-                    if (currentPosition == totalLength) {
+                    if (player.isFinished()) {
                         setPlaybackState(PlaybackState.STOPPED);
                     }
                 }
@@ -93,11 +121,15 @@ public class MusicPlayerGUI extends JFrame
         timer.start();
 
         makeFrame();
+        loadLibrary(new File(DEFAULT_AUDIO_DIR));
     }
 
     private void setPlaybackState(PlaybackState state) {
         playbackState = state;
 
+        previousButton.setEnabled(state != PlaybackState.STOPPED);
+        nextButton.setEnabled(state != PlaybackState.STOPPED);
+
         if (state == PlaybackState.PLAYING) {
             slider.setEnabled(true);
             playButton.setEnabled(false);
@@ -124,16 +156,15 @@ public class MusicPlayerGUI extends JFrame
      */
     private void changeSourceDir()
     {
-        directoryChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (directoryChooser == null) {
+            directoryChooser = new JFileChooser();
+            directoryChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }
 
         int returnVal = directoryChooser.showOpenDialog(this);
 
         if (returnVal == JFileChooser.APPROVE_OPTION) {
-            File dir = directoryChooser.getSelectedFile();
-            organizer = new MusicOrganizer(dir);
-
-            // refresh the track display
-            setListOrdering(Track.FIELDS[0]);
+            loadLibrary(directoryChooser.getSelectedFile());
 
             // disable play button since there won't be a selection when the new list first loads.
             playButton.setEnabled(false);
@@ -141,21 +172,210 @@ public class MusicPlayerGUI extends JFrame
 
     }
 
+    /**
+     * Load the library in a folder on a background thread, from its
+     * catalog if it has one, and list it when it has loaded. Its play
+     * history is opened, its tracks are analyzed in the background,
+     * and the player is prepared to play the first of them.
+     * @param dir The library folder.
+     */
+    private void loadLibrary(final File dir)
+    {
+        organizer = null;
+        trackList = new ArrayList<>();
+        fileList.setListData(new String[0]);
+        showInfo("Loading " + dir.getName() + "...");
+        libraryLoader = new SwingWorker<MusicOrganizer, Void>() {
+            // The history of the folder, opened with the library.
+            private PlayHistory loadedHistory;
+
+            @Override
+            protected MusicOrganizer doInBackground()
+            {
+                MusicOrganizer loaded =
+                    new MusicOrganizer(dir, new File(dir, MusicOrganizer.CATALOG_NAME));
+                try {
+                    loadedHistory = new PlayHistory(new File(dir, PlayHistory.LOG_NAME), loaded);
+                }
+                catch(IOException e) {
+                    System.out.println("Unable to open the play history: " + e.getMessage());
+                }
+                return loaded;
+            }
+
+            @Override
+            protected void done()
+            {
+                if (libraryLoader != this) {
+                    // Another folder was chosen while this one loaded.
+                    if (loadedHistory != null) {
+                        loadedHistory.close();
+                    }
+                    return;
+                }
+                try {
+                    organizer = get();
+                }
+                catch (InterruptedException | ExecutionException e) {
+                    showInfo("Cannot read " + dir.getName());
+                    return;
+                }
+                libraryLoader = null;
+                setHistory(loadedHistory);
+                if (albumArt != null) {
+                    albumArt.close();
+                }
+                albumArt = new AlbumArtCache(THUMBNAIL_SIZE,
+                                             new File(dir, AlbumArtCache.FOLDER_NAME),
+                                             ART_MEMORY, ART_DISK);
+                analyzeInBackground(organizer);
+                setListOrdering(ordering);
+                showInfo("  ");
+                prepareInBackground(trackList.isEmpty() ? null : trackList.get(0));
+            }
+        };
+        libraryLoader.execute();
+    }
+
+    /**
+     * Record the tracks played in a play history, closing the history
+     * of any previous folder.
+     * @param newHistory The history, or null.
+     */
+    private void setHistory(PlayHistory newHistory)
+    {
+        if(history != null) {
+            history.close();
+        }
+        history = newHistory;
+        player.setPlayHistory(history);
+    }
+
+    /**
+     * Prepare the player to play a track on a background thread, so
+     * that the decoder and audio system are ready before the first play.
+     * @param track The track likely to be played first, or null.
+     */
+    private void prepareInBackground(final Track track)
+    {
+        Thread preparer = new Thread() {
+            public void run()
+            {
+                player.prepare(track);
+            }
+        };
+        preparer.setPriority(Thread.MIN_PRIORITY);
+        preparer.setDaemon(true);
+        preparer.start();
+    }
+
+    /**
+     * Analyze the organizer's tracks on a background thread, so that tracks
+     * play at similar levels and without leading and trailing silence.
+     * @param organizer The organizer holding the tracks.
+     */
+    private void analyzeInBackground(final MusicOrganizer organizer)
+    {
+        Thread analyzer = new Thread() {
+            public void run()
+            {
+                organizer.analyzeTracks();
+            }
+        };
+        analyzer.setPriority(Thread.MIN_PRIORITY);
+        analyzer.setDaemon(true);
+        analyzer.start();
+    }
+
     /**
      * Play the sound file currently selected in the file list. If there is no
      * selection in the list, or if the selected file is not a sound file,
-     * do nothing.
+     * do nothing. The tracks following it in the list are queued after it.
      */
     private void play()
     {
         int index = fileList.getSelectedIndex();
         if(index >= 0 && index < trackList.size()) {
             slider.setValue(0);
-            player.startPlaying(trackList.get(index).getFilename());
+            player.startPlaying(trackList, index);
             setPlaybackState(PlaybackState.PLAYING);
         }
     }
 
+    /**
+     * Play the next track in the queue, if there is one.
+     */
+    private void next()
+    {
+        if (player.playNext()) {
+            slider.setValue(0);
+            setPlaybackState(PlaybackState.PLAYING);
+        }
+    }
+
+    /**
+     * Play the previous track in the queue, if there is one.
+     */
+    private void previous()
+    {
+        if (player.playPrevious()) {
+            slider.setValue(0);
+            setPlaybackState(PlaybackState.PLAYING);
+        }
+    }
+
+    /**
+     * Prompts the user for a playlist file, queues its tracks and plays the first.
+     */
+    private void importPlaylist()
+    {
+        if (getPlaylistChooser().showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                List<Track> tracks = PlaylistFile.load(playlistChooser.getSelectedFile());
+                if (!tracks.isEmpty()) {
+                    slider.setValue(0);
+                    player.startPlaying(tracks, 0);
+                    setPlaybackState(PlaybackState.PLAYING);
+                }
+            }
+            catch (IOException e) {
+                showInfo("Cannot read playlist");
+            }
+        }
+    }
+
+    /**
+     * Prompts the user for a file name and saves the queue to it as a playlist.
+     * An empty queue saves the current track list instead.
+     */
+    private void exportPlaylist()
+    {
+        if (getPlaylistChooser().showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            List<Track> tracks = player.getQueue().getTracks();
+            if (tracks.isEmpty()) {
+                tracks = trackList;
+            }
+            try {
+                PlaylistFile.save(tracks, playlistChooser.getSelectedFile());
+            }
+            catch (IOException e) {
+                showInfo("Cannot write playlist");
+            }
+        }
+    }
+
+    /**
+     * Return the file chooser for playlists, creating it if needed.
+     * @return The chooser.
+     */
+    private JFileChooser getPlaylistChooser()
+    {
+        if (playlistChooser == null) {
+            playlistChooser = new JFileChooser();
+        }
+        return playlistChooser;
+    }
+
     /**
      * Stop the currently playing sound file (if there is one playing).
      */
@@ -185,14 +405,14 @@ public class MusicPlayerGUI extends JFrame
 
     /**
      * Skips to a section of the track.
-     * @param sliderValue The position of the slider, int between 0 and 100.
+     * @param sliderValue The position of the slider, int between 0 and SLIDER_STEPS.
      */
     private void skip(int sliderValue)
     {
-        final int numFrames = player.getLength();
-        // convert sliderValue into a frame position based on numFrames
-        final int position = (int) Math.round((double) sliderValue / 100 * numFrames);
-        player.seekTo(position);
+        final long lengthMillis = player.getLengthMillis();
+        // convert sliderValue into a time based on the track length
+        final long position = Math.round((double) sliderValue / SLIDER_STEPS * lengthMillis);
+        player.seekToMillis(position);
 
         // seekTo causes the audio player to pause, so we want to resume it if the
         // player was in a playing state when they moved the slider
@@ -210,6 +430,24 @@ public class MusicPlayerGUI extends JFrame
         infoLabel.setText(message);
     }
 
+    /**
+     * Return the player, for StartupBenchmark.
+     * @return The player.
+     */
+    MusicPlayer getPlayer()
+    {
+        return player;
+    }
+
+    /**
+     * Return the library, for StartupBenchmark.
+     * @return The library, or null if it has not yet loaded.
+     */
+    MusicOrganizer getOrganizer()
+    {
+        return organizer;
+    }
+
     /**
      * Quit function: quit the application.
      */
@@ -236,9 +474,15 @@ public class MusicPlayerGUI extends JFrame
      */
     private void setListOrdering(String ordering)
     {
+        this.ordering = ordering;
+        if (organizer == null) {
+            // The list is filled in when the library has loaded.
+            return;
+        }
         trackList = organizer.sortByField(ordering);
         String[] tracks = getTracksDisplayList(trackList);
         fileList.setListData(tracks);
+        requestVisibleArt();
     }
 
     /**
@@ -256,6 +500,69 @@ public class MusicPlayerGUI extends JFrame
         return tracks;
     }
 
+    /**
+     * Ask for the cover art of the tracks showing in the list to be
+     * loaded, the list being repainted as each arrives. The top row is
+     * asked for last, so that it is loaded first.
+     */
+    private void requestVisibleArt()
+    {
+        if (albumArt == null) {
+            return;
+        }
+        int first = fileList.getFirstVisibleIndex();
+        int last = Math.min(fileList.getLastVisibleIndex(), trackList.size() - 1);
+        for (int i = last; i >= first && i >= 0; i--) {
+            albumArt.get(trackList.get(i), () -> fileList.repaint());
+        }
+    }
+
+    /**
+     * Show each track in the list beside the thumbnail of its cover art.
+     * Only thumbnails already in memory are drawn, so painting never
+     * waits for a file; requestVisibleArt loads the rest. The renderer is
+     * its own icon, so that every row has the same width of icon whether
+     * or not it has art.
+     */
+    private class TrackRenderer extends DefaultListCellRenderer implements Icon
+    {
+        private static final long serialVersionUID = 1L;
+
+        // The thumbnail of the row being drawn, or null.
+        private BufferedImage art;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus)
+        {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            art = null;
+            if (albumArt != null && index >= 0 && index < trackList.size()) {
+                art = albumArt.peek(trackList.get(index));
+            }
+            setIcon(this);
+            return this;
+        }
+
+        public void paintIcon(Component c, Graphics g, int x, int y)
+        {
+            if (art != null) {
+                g.drawImage(art, x + (THUMBNAIL_SIZE - art.getWidth()) / 2,
+                            y + (THUMBNAIL_SIZE - art.getHeight()) / 2, null);
+            }
+        }
+
+        public int getIconWidth()
+        {
+            return THUMBNAIL_SIZE;
+        }
+
+        public int getIconHeight()
+        {
+            return THUMBNAIL_SIZE;
+        }
+    }
+
     // ---- Swing stuff to build the frame and all its components and menus ----
 
     /**
@@ -299,6 +606,8 @@ public class MusicPlayerGUI extends JFrame
             fileList.setBackground(new Color(0,0,0));
             fileList.setSelectionBackground(new Color(87,49,134));
             fileList.setSelectionForeground(new Color(140,171,226));
+            fileList.setCellRenderer(new TrackRenderer());
+            fileList.setFixedCellHeight(THUMBNAIL_SIZE + 4);
 
             fileList.addListSelectionListener(new ListSelectionListener() {
                 @Override
@@ -333,10 +642,10 @@ public class MusicPlayerGUI extends JFrame
 
             JScrollPane scrollPane = new JScrollPane(fileList);
             scrollPane.setColumnHeaderView(new JLabel("Audio files"));
+            // load the cover art of the tracks scrolled into view
+            scrollPane.getViewport().addChangeListener(e -> requestVisibleArt());
             leftPane.add(scrollPane, BorderLayout.CENTER);
 
-            // Set up the initial listing.
-            setListOrdering(ordering[0]);
         }
         contentPane.add(leftPane, BorderLayout.CENTER);
 
@@ -352,7 +661,7 @@ public class MusicPlayerGUI extends JFrame
             infoLabel.setForeground(new Color(140,171,226));
             centerPane.add(infoLabel, BorderLayout.CENTER);
 
-            slider = new JSlider(0, 100, 0);
+            slider = new JSlider(0, SLIDER_STEPS, 0);
             TitledBorder border = new TitledBorder("Seek");
             border.setTitleColor(Color.white);
             slider.setBorder(new CompoundBorder(new EmptyBorder(6, 10, 10, 10), border));
@@ -376,7 +685,7 @@ public class MusicPlayerGUI extends JFrame
             });
 
             slider.setBackground(Color.BLACK);
-            slider.setMajorTickSpacing(25);
+            slider.setMajorTickSpacing(SLIDER_STEPS / 4);
             slider.setPaintTicks(true);
             slider.setEnabled(false);
             centerPane.add(slider, BorderLayout.SOUTH);
@@ -411,6 +720,16 @@ public class MusicPlayerGUI extends JFrame
             resumeButton.addActionListener(e -> resume());
             toolbar.add(resumeButton);
             resumeButton.setEnabled(false);
+
+            previousButton = new JButton("Previous");
+            previousButton.addActionListener(e -> previous());
+            toolbar.add(previousButton);
+            previousButton.setEnabled(false);
+
+            nextButton = new JButton("Next");
+            nextButton.addActionListener(e -> next());
+            toolbar.add(nextButton);
+            nextButton.setEnabled(false);
         }
 
         contentPane.add(toolbar, BorderLayout.NORTH);
@@ -447,6 +766,50 @@ public class MusicPlayerGUI extends JFrame
             item.addActionListener(e -> quit());
         menu.add(item);
 
+        // create the Playlist menu
+        menu = new JMenu("Playlist");
+        menubar.add(menu);
+
+        item = new JMenuItem("Import...");
+            item.addActionListener(e -> importPlaylist());
+        menu.add(item);
+
+        item = new JMenuItem("Export...");
+            item.addActionListener(e -> exportPlaylist());
+        menu.add(item);
+        menu.addSeparator();
+
+        item = new JMenuItem("Shuffle");
+            item.addActionListener(e -> player.getQueue().shuffle());
+        menu.add(item);
+
+        JMenu repeatMenu = new JMenu("Repeat");
+        ButtonGroup repeatGroup = new ButtonGroup();
+        for (PlayQueue.RepeatMode mode : PlayQueue.RepeatMode.values()) {
+            JRadioButtonMenuItem modeItem = new JRadioButtonMenuItem(mode.toString());
+            modeItem.setSelected(mode == PlayQueue.RepeatMode.OFF);
+            modeItem.addActionListener(e -> player.getQueue().setRepeatMode(mode));
+            repeatGroup.add(modeItem);
+            repeatMenu.add(modeItem);
+        }
+        menu.add(repeatMenu);
+
+        JCheckBoxMenuItem crossfadeItem = new JCheckBoxMenuItem("Crossfade", true);
+            crossfadeItem.addActionListener(e -> player.setCrossfadeMillis(
+                crossfadeItem.isSelected() ? Crossfader.DEFAULT_FADE_MILLIS : 0));
+        menu.add(crossfadeItem);
+
+        JMenu speedMenu = new JMenu("Speed");
+        ButtonGroup speedGroup = new ButtonGroup();
+        for (double speed : new double[] { 0.5, 0.75, 1.0, 1.25, 1.5, 2.0 }) {
+            JRadioButtonMenuItem speedItem = new JRadioButtonMenuItem(speed + "x");
+            speedItem.setSelected(speed == 1.0);
+            speedItem.addActionListener(e -> player.setSpeed(speed, TimeStretcher.Mode.LOW_LATENCY));
+            speedGroup.add(speedItem);
+            speedMenu.add(speedItem);
+        }
+        menu.add(speedMenu);
+
         // create the Help menu
         menu = new JMenu("Help");
         menubar.add(menu);
@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.FactoryRegistry;
+
+/**
+ * Play music from a stream, such as an HTTP URL, a pipe or a socket.
+ * Unlike MusicFilePlayer the length of the music is not known in advance.
+ * Data is passed through a JitterBuffer, which starts playing after a
+ * small prebuffer and buffers more after every underrun.
+ *
+ * A player created from a URL can seek, if the server accepts byte
+ * ranges. The byte offset of a time is estimated from the size of the
+ * ID3 tag and the bit rate of the first frame, so seeking is exact only
+ * for constant bit rate files.
+ *
+ * Connecting to the source and waiting for its data are done outside
+ * the player's lock, so stop(), pause() and the getters never wait for
+ * a slow or stalled source, and stop() abandons an opening that has
+ * not finished.
+ *
+ * @version 2026.10.19
+ */
+public class MusicStreamPlayer
+{
+    // The default size of the jitter buffer, in bytes.
+    public static final int DEFAULT_CAPACITY = 512 * 1024;
+    // The default initial prebuffer, in bytes.
+    public static final int DEFAULT_PREBUFFER = 16 * 1024;
+
+    // The URL being played, or null if playing a stream.
+    private final URL url;
+    // The stream being played, until it is first opened.
+    private InputStream stream;
+    // The size of the jitter buffer.
+    private int capacity;
+    // The initial prebuffer.
+    private int prebuffer;
+
+    // The buffer between the source and the decoder.
+    private JitterBuffer jitterBuffer;
+    // The MPEG audio bitstream.
+    private Bitstream bitstream;
+    // The MPEG audio decoder.
+    private Decoder decoder;
+    // The AudioDevice the audio samples are written to.
+    private AudioDevice audio;
+    // Whether currently playing.
+    private volatile boolean playing;
+    // The time of the first frame after the last seek, in milliseconds.
+    private long basePosition;
+    // The time played since the last seek, in milliseconds.
+    private double playedMillis;
+    // The number of bytes per millisecond, from the first frame's bit rate.
+    private double bytesPerMilli;
+    // The size of the ID3 tag before the first frame, in bytes.
+    private long dataOffset;
+    // The longest time stop() waits for the source to be released, in milliseconds.
+    private static final long STOP_WAIT_MILLIS = 1000;
+    // How long a read from a URL waits before checking whether it was stopped.
+    private static final int READ_TIMEOUT_MILLIS = 250;
+    // The longest time to wait for a connection to a URL, in milliseconds.
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Create a player for a stream.
+     * @param stream The stream of MPEG audio data.
+     */
+    public MusicStreamPlayer(InputStream stream)
+    {
+        this.url = null;
+        this.stream = stream;
+        capacity = DEFAULT_CAPACITY;
+        prebuffer = DEFAULT_PREBUFFER;
+    }
+
+    /**
+     * Create a player for a channel.
+     * @param channel The channel of MPEG audio data.
+     */
+    public MusicStreamPlayer(ReadableByteChannel channel)
+    {
+        this(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Create a player for a URL.
+     * @param url The location of the MPEG audio data.
+     */
+    public MusicStreamPlayer(URL url)
+    {
+        this.url = url;
+        this.stream = null;
+        capacity = DEFAULT_CAPACITY;
+        prebuffer = DEFAULT_PREBUFFER;
+    }
+
+    /**
+     * Set the size of the jitter buffer. This takes effect when the
+     * source is next opened, by play() or by a seek.
+     * @param capacity The size of the buffer, in bytes.
+     * @param prebuffer The number of bytes buffered before playing starts.
+     */
+    public void setBufferSize(int capacity, int prebuffer)
+    {
+        this.capacity = capacity;
+        this.prebuffer = prebuffer;
+    }
+
+    /**
+     * Play the stream until it ends, stop() is called or pause() is called.
+     * @return true if the stream ended, false if paused or stopped.
+     */
+    public boolean play() throws JavaLayerException
+    {
+        JitterBuffer opening = null;
+        synchronized(this) {
+            if(bitstream == null) {
+                opening = startOpen();
+            }
+            playing = true;
+        }
+        boolean opened = opening == null || finishOpen(opening, 0);
+        boolean more = true;
+        while(opened && playing && more) {
+            more = decodeFrame();
+        }
+        synchronized(this) {
+            playing = false;
+            if(audio != null) {
+                audio.flush();
+            }
+        }
+        return !more;
+    }
+
+    /**
+     * Pause the playing. Playing continues when play() is called again.
+     */
+    public void pause()
+    {
+        playing = false;
+    }
+
+    /**
+     * Stop playing and close the source and the audio device. The
+     * thread reading the source is waited for, briefly. If the source
+     * is still being opened, by play() or a seek, the opening is
+     * abandoned and its connection closed as soon as it is made.
+     */
+    public void stop()
+    {
+        JitterBuffer closed;
+        synchronized(this) {
+            playing = false;
+            closed = jitterBuffer;
+            closeSource();
+            if(audio != null) {
+                audio.close();
+                audio = null;
+            }
+        }
+        if(closed != null) {
+            try {
+                closed.awaitProducer(STOP_WAIT_MILLIS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Return whether the player can seek.
+     * @return true if the source is a URL.
+     */
+    public boolean isSeekable()
+    {
+        return url != null;
+    }
+
+    /**
+     * Set the playing position. Playing pauses, and continues
+     * from the new position when play() is called. The source is
+     * reopened at the new position, which waits for the connection,
+     * but not for the prebuffer to fill.
+     * @param millis The new position, in milliseconds.
+     * @throws JavaLayerException If the source cannot seek.
+     */
+    public void seekMillis(long millis) throws JavaLayerException
+    {
+        if(!isSeekable()) {
+            throw new JavaLayerException("Cannot seek in a stream");
+        }
+        JitterBuffer opening;
+        long offset;
+        synchronized(this) {
+            pause();
+            offset = bytesPerMilli > 0 ? dataOffset + (long) (millis * bytesPerMilli) : 0;
+            opening = startOpen();
+            basePosition = bytesPerMilli > 0 ? millis : 0;
+            playedMillis = 0;
+        }
+        finishOpen(opening, offset);
+    }
+
+    /**
+     * Return the current playing position.
+     * @return The position, in milliseconds.
+     */
+    public long getPositionMillis()
+    {
+        return basePosition + (long) playedMillis;
+    }
+
+    /**
+     * Return the number of times playing had to wait for data.
+     * @return The number of underruns since the source was last opened.
+     */
+    public synchronized int getUnderruns()
+    {
+        return jitterBuffer == null ? 0 : jitterBuffer.getUnderruns();
+    }
+
+    /**
+     * Return the current prebuffer, which grows after underruns.
+     * @return The prebuffer size, in bytes.
+     */
+    public synchronized int getPrebuffer()
+    {
+        return jitterBuffer == null ? prebuffer : jitterBuffer.getPrebuffer();
+    }
+
+    /**
+     * Decode a single frame and write it to the audio device.
+     * The frame is read, which may wait for data, without holding the
+     * lock; if the source is closed or replaced meanwhile, the frame is
+     * dropped.
+     * @return false if there are no more frames, true otherwise.
+     */
+    private boolean decodeFrame() throws JavaLayerException
+    {
+        try {
+            Bitstream source;
+            synchronized(this) {
+                if(audio == null) {
+                    return false;
+                }
+                source = bitstream;
+                if(source == null) {
+                    // Being reopened by a seek, which has paused playing.
+                    return true;
+                }
+            }
+            Header h;
+            try {
+                h = source.readFrame();
+            }
+            catch(BitstreamException ex) {
+                synchronized(this) {
+                    if(source != bitstream) {
+                        // Closed by stop() or a seek.
+                        return audio != null;
+                    }
+                }
+                throw ex;
+            }
+            synchronized(this) {
+                if(source != bitstream) {
+                    // Stopped or seeked while waiting; playing has already been paused.
+                    return audio != null;
+                }
+                if(h == null) {
+                    return false;
+                }
+                if(bytesPerMilli == 0 && h.bitrate() > 0) {
+                    bytesPerMilli = h.bitrate() / 8000.0;
+                }
+                long start = System.nanoTime();
+                SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                PlayerMetrics.get().recordDecode(System.nanoTime() - start);
+                PlayerMetrics.get().setStreamBufferBytes(jitterBuffer.getLevel());
+                audio.write(output.getBuffer(), 0, output.getBufferLength());
+                playedMillis += h.ms_per_frame();
+                bitstream.closeFrame();
+            }
+        }
+        catch(RuntimeException ex) {
+            throw new JavaLayerException("Exception decoding audio frame", ex);
+        }
+        return true;
+    }
+
+    /**
+     * Start opening the source: close the current one, and make the
+     * buffer for the new one, so that stop() can abandon the opening.
+     * Called with the lock held; finishOpen() does the rest without it.
+     * @return The buffer for the new source.
+     */
+    private JitterBuffer startOpen() throws JavaLayerException
+    {
+        closeSource();
+        if(url == null && stream == null) {
+            throw new JavaLayerException("The stream has already been played");
+        }
+        jitterBuffer = new JitterBuffer(capacity, prebuffer);
+        return jitterBuffer;
+    }
+
+    /**
+     * Connect to the source at the given byte offset and read up to its
+     * first frame, without holding the lock, which waits for the
+     * prebuffer to fill. Then, unless stopped or reopened meanwhile,
+     * make the new source current, with a fresh decoder and audio device.
+     * @param opening The buffer from startOpen().
+     * @param offset The offset to start at; must be 0 unless seekable.
+     * @return true if the source was opened, false if it was abandoned.
+     */
+    private boolean finishOpen(JitterBuffer opening, long offset) throws JavaLayerException
+    {
+        InputStream source;
+        if(url != null) {
+            try {
+                source = openUrl(offset);
+            }
+            catch(IOException ex) {
+                synchronized(this) {
+                    if(jitterBuffer != opening) {
+                        return false;
+                    }
+                    jitterBuffer = null;
+                }
+                throw new JavaLayerException(ex.getMessage(), ex);
+            }
+        }
+        else {
+            synchronized(this) {
+                source = stream;
+                stream = null;
+            }
+            if(source == null) {
+                throw new JavaLayerException("The stream has already been played");
+            }
+        }
+        // If stop() has already closed the buffer, the thread filling it
+        // closes the source at once.
+        opening.fillFrom(source);
+        Bitstream opened = new Bitstream(opening.getInputStream());
+
+        synchronized(this) {
+            if(jitterBuffer != opening) {
+                // Stopped or reopened while waiting.
+                return false;
+            }
+            bitstream = opened;
+            if(offset == 0) {
+                // The ID3 tag, which seeks must skip, has been read past.
+                dataOffset = opened.header_pos();
+            }
+
+            // The decoder keeps a reference to the bitstream it was
+            // first used with, so a fresh one is needed.
+            if(audio != null) {
+                audio.close();
+            }
+            audio = FactoryRegistry.systemRegistry().createAudioDevice();
+            decoder = new Decoder();
+            audio.open(decoder);
+            playedMillis = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Open a connection to the URL, starting at the given byte offset.
+     */
+    private InputStream openUrl(long offset) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        // Lets the thread reading a stalled source notice that it was stopped.
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if(offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        InputStream in = connection.getInputStream();
+        if(offset > 0 && connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode() != 206) {
+            in.close();
+            throw new IOException("The server does not accept byte ranges");
+        }
+        return in;
+    }
+
+    /**
+     * Close the current source, if any. The bitstream is not closed, as
+     * the playing thread may be reading it; it reads the end of the
+     * aborted buffer instead.
+     */
+    private void closeSource()
+    {
+        if(jitterBuffer != null) {
+            jitterBuffer.abort();
+            jitterBuffer = null;
+        }
+        bitstream = null;
+    }
+}
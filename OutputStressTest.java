@@ -0,0 +1,88 @@
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * A test of RealtimeOutput against a simulated slow sink.
+ * A file is played through the DSP chain and a RealtimeOutput into a
+ * SimulatedAudioDevice, optionally with the device stalling at
+ * intervals and with busy threads competing for the processors. The
+ * test reports the near misses, underruns and smallest lead seen, and
+ * whether the effects were bypassed.
+ *
+ * Usage: java OutputStressTest file [seconds] [stall interval ms]
+ *            [stall length ms] [busy threads] [output priority]
+ *
+ * @version 2026.10.19
+ */
+public class OutputStressTest
+{
+    // The device rate used.
+    private static final int RATE = 44100;
+
+    /**
+     * Run the test.
+     * @param args The file, seconds, stall interval, stall length, busy threads and priority.
+     */
+    public static void main(String[] args) throws JavaLayerException, InterruptedException
+    {
+        String file = args[0];
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        long stallInterval = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long stallLength = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        int busyThreads = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        int priority = args.length > 5 ? Integer.parseInt(args[5]) : Thread.MAX_PRIORITY;
+
+        for(int i = 0; i < busyThreads; i++) {
+            Thread busy = new Thread() {
+                public void run()
+                {
+                    long x = 0;
+                    while(true) {
+                        x += System.nanoTime() % 7;
+                    }
+                }
+            };
+            busy.setDaemon(true);
+            busy.start();
+        }
+
+        SimulatedAudioDevice sink = new SimulatedAudioDevice(RATE, 2);
+        sink.open(new Decoder());
+        sink.setStalls(stallInterval, stallLength);
+        DspChain effects = new DspChain();
+        Equalizer equalizer = new Equalizer();
+        equalizer.addBand(100, 3, 0.9);
+        equalizer.addBand(3000, -2, 0.9);
+        effects.add(equalizer);
+        effects.add(new Limiter());
+        RealtimeOutput output = new RealtimeOutput(sink, RATE, 2, effects,
+                                                   RealtimeOutput.DEFAULT_BUFFER_MILLIS,
+                                                   RealtimeOutput.DEFAULT_MARGIN_MILLIS, priority);
+
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        boolean bypassSeen = false;
+        while(System.nanoTime() < end) {
+            // The file is played again from the start until the time is up.
+            MusicFilePlayer player = new MusicFilePlayer(file, output, RATE, Resampler.Quality.STANDARD);
+            player.setEffects(effects);
+            if(player.getEndFrame() == 0) {
+                System.out.println("No frames to play in " + file);
+                player.close();
+                output.close();
+                return;
+            }
+            while(System.nanoTime() < end && player.getPosition() < player.getEndFrame()
+                  && player.play(10)) {
+                bypassSeen |= effects.isBypassed();
+            }
+            player.close();
+        }
+        output.flush();
+        System.out.println("near misses:     " + output.getNearMisses());
+        System.out.println("underruns:       " + output.getUnderruns());
+        System.out.println("lowest lead:     " + output.getLowestLeadMillis() + " ms");
+        System.out.println("effects bypassed: " + (bypassSeen ? "yes" : "no"));
+        System.out.print(effects.report());
+        output.close();
+    }
+}
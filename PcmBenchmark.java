@@ -0,0 +1,228 @@
+import java.util.Random;
+
+/**
+ * A benchmark of the PcmKernels operations.
+ * Each kernel is timed against a straightforward per-sample version
+ * written with branches and floating point, as sample processing was
+ * written before PcmKernels, and the results are checked against each
+ * other. Both are run until the JIT has compiled them.
+ *
+ * To see how much of the speed comes from SIMD instructions, run the
+ * benchmark again with -XX:-UseSuperWord, which stops the JIT using them.
+ * -XX:UseAVX=2 limits a processor with AVX-512 to AVX2.
+ *
+ * Usage: java PcmBenchmark [block size] [seconds per test]
+ *
+ * @version 2026.10.19
+ */
+public class PcmBenchmark
+{
+    // The samples processed.
+    private final short[] samples;
+    private final short[] other;
+    private final short[] work;
+    private final float[] floats;
+    // How long to run each test, in nanoseconds.
+    private final long runNanos;
+    // Accumulates results so the JIT cannot discard the work.
+    private long sink;
+
+    /**
+     * Run the benchmark.
+     * @param args The block size in samples, and the seconds per test.
+     */
+    public static void main(String[] args)
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2304;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        System.out.println("Java " + System.getProperty("java.version") + ", "
+                           + System.getProperty("os.arch") + ", block of " + size + " samples");
+        new PcmBenchmark(size, seconds).run();
+    }
+
+    /**
+     * Create a benchmark.
+     * @param size The number of samples in a block.
+     * @param seconds How long to run each test.
+     */
+    public PcmBenchmark(int size, double seconds)
+    {
+        samples = new short[size];
+        other = new short[size];
+        work = new short[size];
+        floats = new float[size];
+        runNanos = (long) (seconds * 1e9);
+        Random random = new Random(42);
+        for(int i = 0; i < size; i++) {
+            samples[i] = (short) (random.nextGaussian() * 8000);
+            other[i] = (short) (random.nextGaussian() * 8000);
+        }
+    }
+
+    /**
+     * Check and time every kernel.
+     */
+    public void run()
+    {
+        int n = samples.length;
+        check();
+        System.out.printf("%-14s %12s %12s %8s%n", "operation", "simple ns/s", "kernel ns/s", "speedup");
+        report("gain",
+               () -> { System.arraycopy(samples, 0, work, 0, n); simpleGain(work, 23170); },
+               () -> { System.arraycopy(samples, 0, work, 0, n); PcmKernels.gain(work, 0, n, 23170); });
+        report("add",
+               () -> { System.arraycopy(samples, 0, work, 0, n); simpleAdd(work, other); },
+               () -> { System.arraycopy(samples, 0, work, 0, n);
+                       PcmKernels.add(work, 0, other, 0, n); });
+        report("mix",
+               () -> { System.arraycopy(samples, 0, work, 0, n); simpleMix(work, other); },
+               () -> { System.arraycopy(samples, 0, work, 0, n);
+                       PcmKernels.mix(work, 0, other, 0, n, 0, (1 << 30) / n); });
+        report("toFloat",
+               () -> simpleToFloat(samples, floats),
+               () -> PcmKernels.toFloat(samples, 0, floats, 0, n));
+        report("fromFloat",
+               () -> simpleFromFloat(floats, work),
+               () -> PcmKernels.fromFloat(floats, 0, work, 0, n));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Check that each kernel gives the same results as its simple version,
+     * or is within the stated error.
+     */
+    private void check()
+    {
+        int n = samples.length;
+        short[] expected = new short[n];
+        System.arraycopy(samples, 0, expected, 0, n);
+        System.arraycopy(samples, 0, work, 0, n);
+        simpleGain(expected, 23170);
+        PcmKernels.gain(work, 0, n, 23170);
+        compare("gain", expected, work, 0);
+
+        System.arraycopy(samples, 0, expected, 0, n);
+        System.arraycopy(samples, 0, work, 0, n);
+        simpleAdd(expected, other);
+        PcmKernels.add(work, 0, other, 0, n);
+        compare("add", expected, work, 0);
+
+        System.arraycopy(samples, 0, expected, 0, n);
+        System.arraycopy(samples, 0, work, 0, n);
+        simpleMix(expected, other);
+        PcmKernels.mix(work, 0, other, 0, n, 0, (1 << 30) / n);
+        compare("mix", expected, work, 2);
+
+        PcmKernels.toFloat(samples, 0, floats, 0, n);
+        PcmKernels.fromFloat(floats, 0, work, 0, n);
+        compare("round trip", samples, work, 0);
+    }
+
+    /**
+     * Report whether two blocks agree to within the given error.
+     */
+    private void compare(String name, short[] expected, short[] actual, int error)
+    {
+        int worst = 0;
+        for(int i = 0; i < expected.length; i++) {
+            worst = Math.max(worst, Math.abs(expected[i] - actual[i]));
+        }
+        System.out.println(name + ": largest difference " + worst
+                           + (worst <= error ? " (ok)" : " (EXCEEDS " + error + ")"));
+    }
+
+    /**
+     * Time a simple version and a kernel, and print the result.
+     */
+    private void report(String name, Runnable simple, Runnable kernel)
+    {
+        // Warm up both, so both are compiled before timing.
+        time(simple);
+        time(kernel);
+        double simpleNanos = time(simple);
+        double kernelNanos = time(kernel);
+        System.out.printf("%-14s %12.3f %12.3f %7.1fx%n", name,
+                          simpleNanos, kernelNanos, simpleNanos / kernelNanos);
+    }
+
+    /**
+     * Run an operation repeatedly for the test time.
+     * @return The time per sample, in nanoseconds.
+     */
+    private double time(Runnable operation)
+    {
+        long count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for(int i = 0; i < 100; i++) {
+                operation.run();
+            }
+            count += 100;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < runNanos);
+        sink += work[count % work.length == 0 ? 0 : 1] + (long) floats[0];
+        return (double) elapsed / count / samples.length;
+    }
+
+    private static void simpleGain(short[] block, int scale)
+    {
+        for(int i = 0; i < block.length; i++) {
+            int sample = (block[i] * scale) >> 14;
+            if(sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            }
+            else if(sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            block[i] = (short) sample;
+        }
+    }
+
+    private static void simpleAdd(short[] block, short[] source)
+    {
+        for(int i = 0; i < block.length; i++) {
+            int sample = block[i] + source[i];
+            if(sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            }
+            else if(sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            block[i] = (short) sample;
+        }
+    }
+
+    private static void simpleMix(short[] block, short[] source)
+    {
+        double step = 1.0 / block.length;
+        for(int i = 0; i < block.length; i++) {
+            double in = i * step;
+            long sample = Math.round(block[i] * in + source[i] * (1 - in));
+            block[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+    }
+
+    private static void simpleToFloat(short[] source, float[] target)
+    {
+        for(int i = 0; i < source.length; i++) {
+            target[i] = source[i] / 32768.0f;
+        }
+    }
+
+    private static void simpleFromFloat(float[] source, short[] target)
+    {
+        for(int i = 0; i < source.length; i++) {
+            float sample = source[i] * 32768;
+            if(sample >= Short.MAX_VALUE) {
+                target[i] = Short.MAX_VALUE;
+            }
+            else if(sample <= Short.MIN_VALUE) {
+                target[i] = Short.MIN_VALUE;
+            }
+            else {
+                target[i] = (short) Math.round(sample);
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded samples, shared by all players.
+ * Short tracks such as jingles, and regions that are played again and
+ * again, can be played from memory instead of being read and decoded
+ * each time. An entry holds the samples of a range of frames of a file,
+ * exactly as the decoder produced them, and is keyed by the file (its
+ * name, modification time and length) and the range.
+ *
+ * The samples are held outside the Java heap, in direct buffers, so a
+ * large cache does not slow garbage collection. The cache is limited
+ * to a number of bytes, and the least recently used entries are
+ * evicted to stay within it. A range larger than a quarter of the
+ * capacity is not cached. The cache is off until a capacity is set.
+ *
+ * @version 2026.10.19
+ */
+public class PcmCache
+{
+    // The entries, least recently used first.
+    private static final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    // The largest number of bytes held, or 0 if the cache is off.
+    private static long capacity = 0;
+    // The number of bytes held.
+    private static long size = 0;
+    // The number of lookups that found an entry, and that did not.
+    private static long hits = 0;
+    private static long misses = 0;
+
+    /**
+     * Set the largest number of bytes of samples held.
+     * Entries are evicted if the cache is now too large.
+     * @param bytes The capacity, or 0 to turn the cache off.
+     */
+    public static void setCapacity(long bytes)
+    {
+        synchronized(entries) {
+            capacity = bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Return the largest number of bytes of samples held.
+     * @return The capacity, or 0 if the cache is off.
+     */
+    public static long getCapacity()
+    {
+        synchronized(entries) {
+            return capacity;
+        }
+    }
+
+    /**
+     * Return whether a range of the given size would be cached.
+     * @param bytes The size of the samples of the range.
+     * @return true if the cache is on and the range is small enough.
+     */
+    public static boolean fits(long bytes)
+    {
+        synchronized(entries) {
+            return bytes > 0 && bytes <= capacity / 4;
+        }
+    }
+
+    /**
+     * Return the cached samples of a range of frames of a file.
+     * @param filename The file.
+     * @param start The first frame of the range.
+     * @param end The frame following the range.
+     * @return The samples, or null if they are not cached.
+     */
+    public static Entry get(String filename, int start, int end)
+    {
+        String key = getKey(filename, start, end);
+        Entry entry;
+        synchronized(entries) {
+            entry = entries.get(key);
+            if(entry != null) {
+                hits++;
+            }
+            else {
+                misses++;
+            }
+        }
+        PlayerMetrics.get().recordPcmLookup(entry != null);
+        return entry;
+    }
+
+    /**
+     * Add the samples of a range of frames of a file.
+     * @param filename The file.
+     * @param start The first frame of the range.
+     * @param end The frame following the range.
+     * @param entry The samples, which must be complete.
+     */
+    public static void put(String filename, int start, int end, Entry entry)
+    {
+        String key = getKey(filename, start, end);
+        synchronized(entries) {
+            Entry old = entries.put(key, entry);
+            if(old != null) {
+                size -= old.getBytes();
+            }
+            size += entry.getBytes();
+            evict();
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public static void clear()
+    {
+        synchronized(entries) {
+            entries.clear();
+            size = 0;
+            PlayerMetrics.get().setPcmCacheBytes(size);
+        }
+    }
+
+    /**
+     * Return the number of bytes of samples held.
+     * @return The size of the cache.
+     */
+    public static long getSize()
+    {
+        synchronized(entries) {
+            return size;
+        }
+    }
+
+    /**
+     * Return the number of lookups that found their samples.
+     * @return The number of hits.
+     */
+    public static long getHits()
+    {
+        synchronized(entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * Return the number of lookups that did not find their samples.
+     * @return The number of misses.
+     */
+    public static long getMisses()
+    {
+        synchronized(entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * Return the fraction of lookups that found their samples.
+     * @return The hit rate, from 0 to 1.
+     */
+    public static double getHitRate()
+    {
+        synchronized(entries) {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until within the capacity.
+     */
+    private static void evict()
+    {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(size > capacity && eldest.hasNext()) {
+            size -= eldest.next().getBytes();
+            eldest.remove();
+        }
+        PlayerMetrics.get().setPcmCacheBytes(size);
+    }
+
+    /**
+     * Return the key of a range of a file. The key changes if the file does.
+     */
+    private static String getKey(String filename, int start, int end)
+    {
+        long modified = 0;
+        long length = 0;
+        try {
+            // One stat of the file for both.
+            BasicFileAttributes attributes =
+                Files.readAttributes(Paths.get(filename), BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            length = attributes.size();
+        }
+        catch(IOException e) {
+            // A missing file is keyed as empty, as File would give.
+        }
+        return filename + '|' + modified + '|' + length + '|' + start + '-' + end;
+    }
+
+    /**
+     * The decoded samples of a range of frames, all of the same length
+     * and format. An entry is filled one frame at a time by the player
+     * decoding the range, then put in the cache, after which it is only read.
+     */
+    public static class Entry
+    {
+        // The samples, interleaved, one frame after another.
+        private final ShortBuffer samples;
+        // The number of frames in the range.
+        private final int frames;
+        // The number of samples in each frame, counting every channel.
+        private final int frameSamples;
+        // The format.
+        private final int sampleRate;
+        private final int channels;
+        // The number of frames added so far.
+        private int added;
+
+        /**
+         * Create an empty entry.
+         * @param frames The number of frames in the range.
+         * @param frameSamples The number of samples in each frame, counting every channel.
+         * @param sampleRate The sample rate.
+         * @param channels The number of channels.
+         */
+        public Entry(int frames, int frameSamples, int sampleRate, int channels)
+        {
+            samples = ByteBuffer.allocateDirect(frames * frameSamples * 2)
+                                .order(ByteOrder.nativeOrder()).asShortBuffer();
+            this.frames = frames;
+            this.frameSamples = frameSamples;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            added = 0;
+        }
+
+        /**
+         * Add the next frame.
+         * @param frame The number of the frame within the range.
+         * @param source The decoded samples.
+         * @param length The number of samples.
+         * @return false if the frame is not the next one, or not the same
+         *         length as the others, and the entry cannot be completed.
+         */
+        public boolean add(int frame, short[] source, int length)
+        {
+            if(frame != added || length != frameSamples || added == frames) {
+                return false;
+            }
+            samples.position(added * frameSamples);
+            samples.put(source, 0, length);
+            added++;
+            return true;
+        }
+
+        /**
+         * Return whether every frame has been added.
+         * @return true if the entry is complete.
+         */
+        public boolean isComplete()
+        {
+            return added == frames;
+        }
+
+        /**
+         * Copy the samples of a frame.
+         * @param frame The number of the frame within the range.
+         * @param target Receives the samples; it must hold getFrameSamples().
+         */
+        public void read(int frame, short[] target)
+        {
+            ShortBuffer view = samples.duplicate();
+            view.position(frame * frameSamples);
+            view.get(target, 0, frameSamples);
+        }
+
+        /**
+         * Return the number of samples in each frame, counting every channel.
+         * @return The frame length.
+         */
+        public int getFrameSamples()
+        {
+            return frameSamples;
+        }
+
+        /**
+         * Return the sample rate.
+         * @return The sample rate, in Hz.
+         */
+        public int getSampleRate()
+        {
+            return sampleRate;
+        }
+
+        /**
+         * Return the number of channels.
+         * @return The number of channels.
+         */
+        public int getChannels()
+        {
+            return channels;
+        }
+
+        /**
+         * Return the size of the samples.
+         * @return The number of bytes.
+         */
+        public long getBytes()
+        {
+            return (long) frames * frameSamples * 2;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Decode an audio file to PCM samples without playing it.
+ * The same javazoom Decoder used by MusicFilePlayer is used, so
+ * the samples are identical to those sent to the audio device.
+ *
+ * The SampleBuffer returned by readFrame is reused by the decoder
+ * for every frame, so its contents must be used before the next call.
+ *
+ * @version 2026.10.19
+ */
+public class PcmReader
+{
+    // The MPEG audio bitstream.
+    private Bitstream bitstream;
+    // The MPEG audio decoder.
+    private Decoder decoder;
+    // The header of the frame most recently read.
+    private Header header;
+
+    /**
+     * Create a reader for the given file.
+     * @param filename The file to be decoded.
+     */
+    public PcmReader(String filename) throws JavaLayerException
+    {
+        try {
+            bitstream = new Bitstream(new BufferedInputStream(
+                        new FileInputStream(filename)));
+        }
+        catch(java.io.IOException ex) {
+            throw new JavaLayerException(ex.getMessage(), ex);
+        }
+        decoder = new Decoder();
+        header = null;
+    }
+
+    /**
+     * Decode the next frame.
+     * @return The decoded samples, or null if there are no more frames.
+     */
+    public SampleBuffer readFrame() throws JavaLayerException
+    {
+        header = bitstream.readFrame();
+        if(header == null) {
+            return null;
+        }
+        try {
+            return (SampleBuffer) decoder.decodeFrame(header, bitstream);
+        }
+        catch (RuntimeException ex) {
+            throw new JavaLayerException("Exception decoding audio frame", ex);
+        }
+        finally {
+            bitstream.closeFrame();
+        }
+    }
+
+    /**
+     * Return the header of the frame most recently read.
+     * @return The header, or null if no frame has been read.
+     */
+    public Header getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * Return the sample rate of the decoded output.
+     * Only valid once a frame has been read.
+     * @return The sample rate in Hz.
+     */
+    public int getSampleRate()
+    {
+        return decoder.getOutputFrequency();
+    }
+
+    /**
+     * Return the number of channels of the decoded output.
+     * Only valid once a frame has been read.
+     * @return The number of channels.
+     */
+    public int getChannels()
+    {
+        return decoder.getOutputChannels();
+    }
+
+    /**
+     * Close the underlying file.
+     */
+    public void close()
+    {
+        try {
+            bitstream.close();
+        }
+        catch (BitstreamException ex) {
+        }
+    }
+}
@@ -0,0 +1,567 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A record of what has been played, kept in a log file, with running
+ * totals of plays per track, per artist and per hour.
+ *
+ * MusicPlayer reports when each track starts and when it ends, either
+ * by being played to its end or by being skipped, with how much of it
+ * was heard. Reporting never waits: events are put on a queue, and a
+ * background thread writes them to the end of the log. The thread
+ * writes everything that has queued up while it was busy in one go and
+ * then forces it to disk once, so under load one disk flush covers many
+ * events. If the queue is ever full the event is dropped and counted
+ * (see getDropped) rather than holding up playing.
+ *
+ * The log is a text file with one event per line:
+ *
+ *   time (ms since 1970) TAB type TAB percent heard TAB artist TAB title TAB file
+ *
+ * where the type is START, SKIP or COMPLETE. A track counts as played
+ * when it completes or is skipped after at least PLAY_PERCENT of it has
+ * been heard. The totals are rebuilt from the log when it is opened; a
+ * last line left incomplete by a crash is ignored. Run as a program,
+ * the class prints a report of a log; see main().
+ *
+ * @version 2026.10.19
+ */
+public class PlayHistory
+{
+    /**
+     * The kinds of event recorded.
+     */
+    public enum Type
+    {
+        START, SKIP, COMPLETE
+    }
+
+    // The name of the history kept in a library folder.
+    public static final String LOG_NAME = "play-history.log";
+    // How much of a skipped track must have been heard for it to count as played.
+    public static final int PLAY_PERCENT = 50;
+    // The number of hours for which plays per hour are kept.
+    public static final int HOURS_KEPT = 7 * 24;
+    // The number of events that can wait to be written.
+    private static final int QUEUE_SIZE = 4096;
+    // The length of an hour, in milliseconds.
+    private static final long HOUR = 3600_000L;
+
+    // The log file.
+    private final File file;
+    // The channel writing to the end of the log.
+    private final FileChannel channel;
+    // The events waiting to be written.
+    private final BlockingQueue<Event> pending;
+    // The thread writing events.
+    private final Thread writer;
+    // The organizer told of plays, or null.
+    private final MusicOrganizer organizer;
+    // The number of events written, dropped, and written batches.
+    private final AtomicLong written;
+    private final AtomicLong dropped;
+    private final AtomicLong batches;
+    // The number of events queued, to tell when all have been written.
+    private final AtomicLong queued;
+    // Whether the history has been closed.
+    private volatile boolean closed;
+
+    // The totals, guarded by the history: per file and per artist.
+    private final Map<String, Counts> trackCounts;
+    private final Map<String, Counts> artistCounts;
+    // Plays in each of the last HOURS_KEPT hours, by hour number modulo HOURS_KEPT.
+    private final long[] hourlyPlays;
+    // The hour number (hours since 1970) of the latest hour counted.
+    private long latestHour;
+
+    /**
+     * Open a play history, creating the log if it does not exist,
+     * and rebuild the totals from it.
+     * @param file The log file.
+     * @throws IOException If the log cannot be read or opened for writing.
+     */
+    public PlayHistory(File file) throws IOException
+    {
+        this(file, null);
+    }
+
+    /**
+     * Open a play history, creating the log if it does not exist, and
+     * rebuild the totals from it. The play count and time last played
+     * of the organizer's tracks are set from the log, and the organizer
+     * is told of each play as it is recorded, so that smart playlists
+     * stay up to date.
+     * @param file The log file.
+     * @param organizer The organizer holding the tracks played, or null.
+     * @throws IOException If the log cannot be read or opened for writing.
+     */
+    public PlayHistory(File file, MusicOrganizer organizer) throws IOException
+    {
+        this.file = file;
+        this.organizer = organizer;
+        pending = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        written = new AtomicLong();
+        dropped = new AtomicLong();
+        batches = new AtomicLong();
+        queued = new AtomicLong();
+        trackCounts = new HashMap<>();
+        artistCounts = new HashMap<>();
+        hourlyPlays = new long[HOURS_KEPT];
+        long validLength = load();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE);
+        // Drop an incomplete last line, so that appending starts on a line of its own.
+        channel.truncate(validLength);
+        channel.position(validLength);
+        if(organizer != null) {
+            for(Track track : organizer.getAllTracks()) {
+                Counts counts = trackCounts.get(track.getFilename());
+                if(counts != null) {
+                    track.setPlays((int) counts.plays, counts.lastPlayed);
+                    organizer.trackChanged(track);
+                }
+            }
+        }
+        writer = new Thread("play-history") {
+            public void run()
+            {
+                writeEvents();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record that a track has started playing. This never waits.
+     * @param track The track.
+     */
+    public void started(Track track)
+    {
+        record(new Event(System.currentTimeMillis(), Type.START, 0, track));
+    }
+
+    /**
+     * Record that a track has stopped playing. This never waits.
+     * @param track The track.
+     * @param percent How much of it was heard, from 0 to 100.
+     * @param completed Whether it was played to its end, rather than skipped.
+     */
+    public void ended(Track track, int percent, boolean completed)
+    {
+        percent = Math.max(0, Math.min(100, percent));
+        record(new Event(System.currentTimeMillis(), completed ? Type.COMPLETE : Type.SKIP,
+                         completed ? 100 : percent, track));
+    }
+
+    /**
+     * Return the number of times a track has been played.
+     * @param filename The track's file.
+     * @return The number of plays.
+     */
+    public synchronized long getPlays(String filename)
+    {
+        Counts counts = trackCounts.get(filename);
+        return counts == null ? 0 : counts.plays;
+    }
+
+    /**
+     * Return the number of times a track has been skipped before
+     * PLAY_PERCENT of it was heard.
+     * @param filename The track's file.
+     * @return The number of skips.
+     */
+    public synchronized long getSkips(String filename)
+    {
+        Counts counts = trackCounts.get(filename);
+        return counts == null ? 0 : counts.skips;
+    }
+
+    /**
+     * Return the number of plays of each track.
+     * @return The plays, by file name.
+     */
+    public synchronized Map<String, Long> getPlaysPerTrack()
+    {
+        return totals(trackCounts);
+    }
+
+    /**
+     * Return the number of plays of each artist's tracks.
+     * @return The plays, by artist.
+     */
+    public synchronized Map<String, Long> getPlaysPerArtist()
+    {
+        return totals(artistCounts);
+    }
+
+    /**
+     * Return the number of plays in each of the last few hours.
+     * @param hours The number of hours, up to HOURS_KEPT.
+     * @return The plays in each hour, the current hour last.
+     */
+    public synchronized long[] getPlaysPerHour(int hours)
+    {
+        hours = Math.min(hours, HOURS_KEPT);
+        long[] result = new long[hours];
+        long now = System.currentTimeMillis() / HOUR;
+        for(int i = 0; i < hours; i++) {
+            long hour = now - hours + 1 + i;
+            if(hour <= latestHour && hour > latestHour - HOURS_KEPT) {
+                result[i] = hourlyPlays[(int) Math.floorMod(hour, (long) HOURS_KEPT)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of events written to the log since it was opened.
+     * @return The number of events.
+     */
+    public long getWritten()
+    {
+        return written.get();
+    }
+
+    /**
+     * Return the number of times the log has been written and forced to
+     * disk since it was opened. Each write covers one or more events.
+     * @return The number of writes.
+     */
+    public long getBatches()
+    {
+        return batches.get();
+    }
+
+    /**
+     * Return the number of events dropped because too many were waiting.
+     * @return The number of events.
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Wait until the events recorded so far have been written.
+     * @param millis The longest time to wait.
+     * @return true if they have all been written.
+     */
+    public boolean flush(long millis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized(written) {
+            while(written.get() + dropped.get() < queued.get() && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) {
+                    return false;
+                }
+                written.wait(remaining);
+            }
+        }
+        return written.get() + dropped.get() >= queued.get();
+    }
+
+    /**
+     * Write any events waiting and close the log.
+     */
+    public void close()
+    {
+        try {
+            flush(1000);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(1000);
+            channel.close();
+        }
+        catch(InterruptedException | IOException e) {
+            System.out.println("Problem closing the play history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Print a report of a play history: plays and skips per artist and
+     * per track, and plays in each of the last 24 hours.
+     * @param args The log file.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 1) {
+            System.out.println("Usage: java PlayHistory log");
+            return;
+        }
+        PlayHistory history = new PlayHistory(new File(args[0]));
+        synchronized(history) {
+            System.out.println("Artist\tPlays\tSkips");
+            printCounts(history.artistCounts);
+            System.out.println();
+            System.out.println("File\tPlays\tSkips");
+            printCounts(history.trackCounts);
+        }
+        System.out.println();
+        System.out.println("Plays in the last 24 hours, oldest first: "
+                           + Arrays.toString(history.getPlaysPerHour(24)));
+        history.close();
+    }
+
+    /**
+     * Queue an event for writing, or drop it if the queue is full.
+     */
+    private void record(Event event)
+    {
+        if(closed) {
+            return;
+        }
+        queued.incrementAndGet();
+        if(!pending.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write events as they arrive, all those waiting at once, until closed.
+     */
+    private void writeEvents()
+    {
+        List<Event> batch = new ArrayList<>();
+        while(!closed) {
+            try {
+                Event first = pending.poll(1, TimeUnit.SECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+            }
+            catch(InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(batch);
+            StringBuilder text = new StringBuilder();
+            for(Event event : batch) {
+                text.append(event.toLine()).append('\n');
+            }
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while(bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+                batches.incrementAndGet();
+            }
+            catch(IOException e) {
+                System.out.println("Unable to write the play history: " + e.getMessage());
+            }
+            for(Event event : batch) {
+                if(count(event) && organizer != null && event.track != null) {
+                    organizer.recordPlay(event.track, event.time);
+                }
+            }
+            synchronized(written) {
+                written.addAndGet(batch.size());
+                written.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Read the log, adding up its events. The log is split into lines as
+     * bytes, and only complete lines are decoded, so a last line cut off
+     * by a crash, even in the middle of a character, is ignored.
+     * @return The length of the log up to the end of its last complete line.
+     */
+    private long load() throws IOException
+    {
+        if(!file.exists()) {
+            return 0;
+        }
+        long validLength = 0;
+        long offset = 0;
+        byte[] chunk = new byte[64 * 1024];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try(InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while((n = in.read(chunk)) > 0) {
+                int start = 0;
+                for(int i = 0; i < n; i++) {
+                    if(chunk[i] == '\n') {
+                        line.write(chunk, start, i - start);
+                        Event event = Event.parse(line.toString(StandardCharsets.UTF_8));
+                        if(event != null) {
+                            count(event);
+                        }
+                        line.reset();
+                        start = i + 1;
+                        validLength = offset + start;
+                    }
+                }
+                line.write(chunk, start, n - start);
+                offset += n;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Add an event to the totals.
+     * @return true if the event counts as a play.
+     */
+    private synchronized boolean count(Event event)
+    {
+        Counts track = trackCounts.computeIfAbsent(event.filename, f -> new Counts());
+        Counts artist = artistCounts.computeIfAbsent(event.artist, a -> new Counts());
+        if(event.type == Type.START) {
+            track.starts++;
+            artist.starts++;
+            return false;
+        }
+        if(event.type == Type.SKIP && event.percent < PLAY_PERCENT) {
+            track.skips++;
+            artist.skips++;
+            return false;
+        }
+        track.plays++;
+        artist.plays++;
+        track.lastPlayed = Math.max(track.lastPlayed, event.time);
+        long hour = event.time / HOUR;
+        if(hour > latestHour) {
+            // Clear the hours passed since the last play.
+            for(long h = Math.max(latestHour + 1, hour - HOURS_KEPT + 1); h <= hour; h++) {
+                hourlyPlays[(int) Math.floorMod(h, (long) HOURS_KEPT)] = 0;
+            }
+            latestHour = hour;
+        }
+        if(hour > latestHour - HOURS_KEPT) {
+            hourlyPlays[(int) Math.floorMod(hour, (long) HOURS_KEPT)]++;
+        }
+        return true;
+    }
+
+    /**
+     * Return the plays from a map of counts.
+     */
+    private static Map<String, Long> totals(Map<String, Counts> counts)
+    {
+        Map<String, Long> result = new HashMap<>();
+        for(Map.Entry<String, Counts> entry : counts.entrySet()) {
+            if(entry.getValue().plays > 0) {
+                result.put(entry.getKey(), entry.getValue().plays);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Print a map of counts, most played first.
+     */
+    private static void printCounts(Map<String, Counts> counts)
+    {
+        List<Map.Entry<String, Counts>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().plays, a.getValue().plays));
+        for(Map.Entry<String, Counts> entry : entries) {
+            System.out.println(entry.getKey() + "\t" + entry.getValue().plays
+                               + "\t" + entry.getValue().skips);
+        }
+    }
+
+    /**
+     * The running totals for a track or an artist.
+     */
+    private static class Counts
+    {
+        long starts;
+        long plays;
+        long skips;
+        long lastPlayed;
+    }
+
+    /**
+     * An event in the log.
+     */
+    private static class Event
+    {
+        final long time;
+        final Type type;
+        final int percent;
+        final String artist;
+        final String title;
+        final String filename;
+        // The track, for events recorded since the log was opened.
+        final Track track;
+
+        Event(long time, Type type, int percent, Track track)
+        {
+            this(time, type, percent, track.getArtist(), track.getTitle(),
+                 track.getFilename(), track);
+        }
+
+        Event(long time, Type type, int percent, String artist, String title,
+              String filename, Track track)
+        {
+            this.time = time;
+            this.type = type;
+            this.percent = percent;
+            this.artist = artist;
+            this.title = title;
+            this.filename = filename;
+            this.track = track;
+        }
+
+        /**
+         * Return the event as a line of the log, without the line end.
+         */
+        String toLine()
+        {
+            return time + "\t" + type + "\t" + percent + "\t" + clean(artist)
+                + "\t" + clean(title) + "\t" + clean(filename);
+        }
+
+        /**
+         * Read an event from a line of the log.
+         * @return The event, or null if the line is not a valid event.
+         */
+        static Event parse(String line)
+        {
+            String[] parts = line.split("\t", -1);
+            if(parts.length != 6) {
+                return null;
+            }
+            try {
+                return new Event(Long.parseLong(parts[0]), Type.valueOf(parts[1]),
+                                 Integer.parseInt(parts[2]), parts[3], parts[4], parts[5], null);
+            }
+            catch(IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Replace the characters that separate fields and lines.
+         */
+        private static String clean(String text)
+        {
+            return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+    }
+}
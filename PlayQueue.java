@@ -0,0 +1,263 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A queue of tracks to be played in order.
+ * The queue has a current position. Tracks may be appended, inserted
+ * after the current track, or removed, and the tracks following the
+ * current one may be shuffled. When the end is reached the queue can
+ * stop, repeat the whole list, or repeat the current track.
+ * The tracks that have been played are remembered in a history.
+ *
+ * All methods are synchronized, since the queue is shared between the
+ * user interface and the threads that play the tracks.
+ *
+ * @version 2026.10.19
+ */
+public class PlayQueue
+{
+    /**
+     * What happens when a track finishes.
+     */
+    public enum RepeatMode {
+        // Play the next track, stopping at the end of the queue.
+        OFF,
+        // Play the current track again.
+        ONE,
+        // Play the next track, returning to the start at the end of the queue.
+        ALL
+    }
+
+    // The largest number of tracks remembered in the history.
+    private static final int HISTORY_SIZE = 100;
+
+    // The tracks in the queue.
+    private List<Track> tracks;
+    // The position of the current track, or -1 if none has been played.
+    private int current;
+    // The repeat mode.
+    private RepeatMode repeat;
+    // The tracks played, most recent first.
+    private Deque<Track> history;
+
+    /**
+     * Create an empty queue.
+     */
+    public PlayQueue()
+    {
+        tracks = new ArrayList<>();
+        current = -1;
+        repeat = RepeatMode.OFF;
+        history = new ArrayDeque<>();
+    }
+
+    /**
+     * Replace the contents of the queue.
+     * @param newTracks The tracks to be queued.
+     * @param start The position of the track to make current.
+     * @return The current track, or null if start is not valid.
+     */
+    public synchronized Track setTracks(List<Track> newTracks, int start)
+    {
+        tracks = new ArrayList<>(newTracks);
+        current = -1;
+        return moveTo(start);
+    }
+
+    /**
+     * Add a track to the end of the queue.
+     * @param track The track to be added.
+     */
+    public synchronized void append(Track track)
+    {
+        tracks.add(track);
+    }
+
+    /**
+     * Add a track so that it is played after the current track.
+     * @param track The track to be added.
+     */
+    public synchronized void insertNext(Track track)
+    {
+        tracks.add(current + 1, track);
+    }
+
+    /**
+     * Remove a track from the queue.
+     * @param index The position of the track to be removed.
+     */
+    public synchronized void remove(int index)
+    {
+        if(index >= 0 && index < tracks.size()) {
+            tracks.remove(index);
+            if(index <= current) {
+                current--;
+            }
+        }
+    }
+
+    /**
+     * Remove all tracks from the queue.
+     */
+    public synchronized void clear()
+    {
+        tracks.clear();
+        current = -1;
+    }
+
+    /**
+     * Put the tracks following the current track into a random order.
+     */
+    public synchronized void shuffle()
+    {
+        Collections.shuffle(tracks.subList(current + 1, tracks.size()));
+    }
+
+    /**
+     * Set what happens when a track finishes.
+     * @param repeat The repeat mode.
+     */
+    public synchronized void setRepeatMode(RepeatMode repeat)
+    {
+        this.repeat = repeat;
+    }
+
+    /**
+     * Return what happens when a track finishes.
+     * @return The repeat mode.
+     */
+    public synchronized RepeatMode getRepeatMode()
+    {
+        return repeat;
+    }
+
+    /**
+     * Return the current track.
+     * @return The current track, or null if there is none.
+     */
+    public synchronized Track getCurrent()
+    {
+        if(current >= 0 && current < tracks.size()) {
+            return tracks.get(current);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Move to the next track, as requested by the user.
+     * In repeat mode ALL the queue returns to the start after the last track.
+     * @return The new current track, or null if the end has been reached.
+     */
+    public synchronized Track next()
+    {
+        if(current + 1 < tracks.size()) {
+            return moveTo(current + 1);
+        }
+        else if(repeat == RepeatMode.ALL && !tracks.isEmpty()) {
+            return moveTo(0);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Move on when the current track has finished, following the repeat mode.
+     * @return The track to play next, or null if the end has been reached.
+     */
+    public synchronized Track advance()
+    {
+        if(repeat == RepeatMode.ONE && getCurrent() != null) {
+            return moveTo(current);
+        }
+        else {
+            return next();
+        }
+    }
+
+    /**
+     * Move back to the previous track.
+     * @return The new current track, or null if there is no previous track.
+     */
+    public synchronized Track previous()
+    {
+        if(current > 0) {
+            return moveTo(current - 1);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Return the tracks that will be played next, without moving.
+     * @param count The largest number of tracks to return.
+     * @return The upcoming tracks, in order.
+     */
+    public synchronized List<Track> getUpcoming(int count)
+    {
+        if(repeat == RepeatMode.ONE && getCurrent() != null) {
+            return Collections.singletonList(getCurrent());
+        }
+        int start = current + 1;
+        int end = Math.min(tracks.size(), start + count);
+        List<Track> upcoming = new ArrayList<>(tracks.subList(start, end));
+        if(repeat == RepeatMode.ALL) {
+            for(int i = 0; upcoming.size() < count && i < current; i++) {
+                upcoming.add(tracks.get(i));
+            }
+        }
+        return upcoming;
+    }
+
+    /**
+     * Return a copy of the tracks in the queue.
+     * @return The tracks, in order.
+     */
+    public synchronized List<Track> getTracks()
+    {
+        return new ArrayList<>(tracks);
+    }
+
+    /**
+     * Return the tracks that have been played.
+     * @return The tracks, most recent first.
+     */
+    public synchronized List<Track> getHistory()
+    {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * Return the number of tracks in the queue.
+     * @return The number of tracks.
+     */
+    public synchronized int size()
+    {
+        return tracks.size();
+    }
+
+    /**
+     * Make the given position current and record it in the history.
+     * @param index The new position.
+     * @return The new current track, or null if the index is not valid.
+     */
+    private Track moveTo(int index)
+    {
+        if(index < 0 || index >= tracks.size()) {
+            return null;
+        }
+        current = index;
+        Track track = tracks.get(index);
+        history.addFirst(track);
+        if(history.size() > HISTORY_SIZE) {
+            history.removeLast();
+        }
+        return track;
+    }
+}
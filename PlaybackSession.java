@@ -0,0 +1,234 @@
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * One independent playback zone hosted by a PlayerManager.
+ * A session plays one track at a time. It does not own a thread:
+ * the manager's shared threads play it a few frames at a time, each
+ * time shortly before the audio already written would run out.
+ *
+ * Sessions are ordered by that deadline, brought forward by the
+ * session's priority, so the most urgent session is always served first.
+ *
+ * @version 2026.10.19
+ */
+public class PlaybackSession implements Delayed
+{
+    // How far before the audio runs out a session is played.
+    static final long LEAD_MILLIS = 250;
+    // How much each priority level brings the deadline forward.
+    private static final long PRIORITY_MILLIS = 20;
+    // The number of frames played at each step (about 100ms).
+    static final int STEP_FRAMES = 4;
+
+    // The name of the zone.
+    private final String zone;
+    // The priority; higher values are served earlier.
+    private final int priority;
+    // The player for the current track, or null.
+    private MusicFilePlayer player;
+    // Whether the session is playing.
+    private volatile boolean active;
+    // The length of a frame, in milliseconds.
+    private double frameMillis;
+    // The time playing (re)started, in nanoseconds.
+    private long startNanos;
+    // The audio written since playing (re)started, in milliseconds.
+    private double writtenMillis;
+    // The time this session must next be played, in nanoseconds.
+    private long dueNanos;
+
+    // The CPU time used playing this session, in nanoseconds.
+    private long cpuNanos;
+    // The memory allocated playing this session, in bytes.
+    private long allocatedBytes;
+    // The number of times the audio ran out before the session was played.
+    private int underruns;
+
+    /**
+     * Create a session. Sessions are created by PlayerManager.
+     * @param zone The name of the zone.
+     * @param priority The priority; higher values are served earlier.
+     */
+    PlaybackSession(String zone, int priority)
+    {
+        this.zone = zone;
+        this.priority = priority;
+    }
+
+    /**
+     * Return the name of the zone.
+     * @return The zone name.
+     */
+    public String getZone()
+    {
+        return zone;
+    }
+
+    /**
+     * Return the priority of the session.
+     * @return The priority.
+     */
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Return whether the session is playing.
+     * @return true if playing.
+     */
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * Return the playing position.
+     * @return The position, in milliseconds, or 0 if there is no track.
+     */
+    public long getPositionMillis()
+    {
+        MusicFilePlayer current = player;
+        return current == null ? 0 : current.getPositionMillis();
+    }
+
+    /**
+     * Return the CPU time used playing this session.
+     * @return The CPU time, in nanoseconds.
+     */
+    public synchronized long getCpuNanos()
+    {
+        return cpuNanos;
+    }
+
+    /**
+     * Return the memory allocated while playing this session.
+     * @return The number of bytes allocated.
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    /**
+     * Return the number of times the audio ran out before the session was played.
+     * @return The number of underruns.
+     */
+    public synchronized int getUnderruns()
+    {
+        return underruns;
+    }
+
+    /**
+     * Start playing a track, replacing any current track.
+     * @param track The track to play.
+     */
+    synchronized void start(Track track) throws JavaLayerException
+    {
+        close();
+        player = new MusicFilePlayer(track.getFilename());
+        player.setGain(track.getTrackGain());
+        player.setConcealment(MusicFilePlayer.Concealment.REPEAT);
+        if(track.getEndFrame() >= 0) {
+            player.setTrim(track.getStartFrame(), track.getEndFrame());
+        }
+        frameMillis = player.getLength() > 0
+                      ? (double) player.getLengthMillis() / player.getLength() : 26;
+        restart();
+    }
+
+    /**
+     * Make the session due now, as at the start of playing.
+     */
+    synchronized void restart()
+    {
+        startNanos = System.nanoTime();
+        writtenMillis = 0;
+        dueNanos = startNanos;
+        active = player != null;
+    }
+
+    /**
+     * Stop scheduling the session; it is resumed by restart().
+     */
+    void pause()
+    {
+        active = false;
+    }
+
+    /**
+     * Stop playing and close the player.
+     */
+    synchronized void close()
+    {
+        active = false;
+        if(player != null) {
+            player.close();
+            player = null;
+        }
+    }
+
+    /**
+     * Play the next few frames, and work out when the next step is due.
+     * @return true if the session should be scheduled again.
+     */
+    synchronized boolean step() throws JavaLayerException
+    {
+        if(!active || player == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        double elapsedMillis = (now - startNanos) / 1e6;
+        if(writtenMillis > 0 && elapsedMillis > writtenMillis) {
+            // The audio ran out: start the timing again from now.
+            underruns++;
+            PlayerMetrics.get().recordUnderrun();
+            startNanos = now;
+            writtenMillis = 0;
+        }
+        int before = player.getPosition();
+        boolean more = player.step(STEP_FRAMES);
+        writtenMillis += (player.getPosition() - before) * frameMillis;
+        dueNanos = startNanos + (long) ((writtenMillis - LEAD_MILLIS) * 1e6);
+        if(!more) {
+            active = false;
+        }
+        return more;
+    }
+
+    /**
+     * Add to the resources used by this session.
+     */
+    synchronized void addUsage(long cpu, long allocated)
+    {
+        cpuNanos += cpu;
+        allocatedBytes += allocated;
+    }
+
+    /**
+     * Return the time remaining until the session must be played.
+     */
+    public long getDelay(TimeUnit unit)
+    {
+        return unit.convert(getEffectiveDue() - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Order sessions by deadline, brought forward by priority.
+     */
+    public int compareTo(Delayed other)
+    {
+        return Long.compare(getEffectiveDue(), ((PlaybackSession) other).getEffectiveDue());
+    }
+
+    /**
+     * Return the deadline, brought forward by priority.
+     */
+    private long getEffectiveDue()
+    {
+        return dueNanos - priority * PRIORITY_MILLIS * 1_000_000L;
+    }
+}
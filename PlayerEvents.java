@@ -0,0 +1,284 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted by the players.
+ * A recording taken with these events shows track opens, seeks,
+ * decoding stalls, audio device changes and library scans alongside
+ * the JVM's own garbage collection and I/O events, so that a glitch
+ * can be matched with its cause. When no recording is running the
+ * events are not created, so they cost nothing.
+ *
+ * Record with, for example:
+ *     java -XX:StartFlightRecording=filename=player.jfr ...
+ * and view the "MP3 Player" category in JDK Mission Control, or with
+ *     jfr print --categories "MP3 Player" player.jfr
+ *
+ * @version 2026.10.19
+ */
+public class PlayerEvents
+{
+    // Whether a listener is keeping recording up to date.
+    private static volatile boolean listening;
+    // Whether a recording is running.
+    private static volatile boolean recording;
+
+    /**
+     * A track was opened, including scanning it for its frame index.
+     */
+    @Name("mp3player.TrackOpen")
+    @Label("Track Open")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class TrackOpen extends Event
+    {
+        @Label("File")
+        String filename;
+
+        @Label("Frame Count")
+        int frameCount;
+
+        @Label("Scan Duration")
+        @Description("Time to find the frame index; short if it was cached")
+        @Timespan(Timespan.NANOSECONDS)
+        long scanDuration;
+    }
+
+    /**
+     * The playing position was moved.
+     */
+    @Name("mp3player.Seek")
+    @Label("Seek")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class Seek extends Event
+    {
+        @Label("File")
+        String filename;
+
+        @Label("From Frame")
+        int fromFrame;
+
+        @Label("To Frame")
+        int toFrame;
+    }
+
+    /**
+     * Reading and decoding a frame took longer than the threshold.
+     */
+    @Name("mp3player.DecodeStall")
+    @Label("Decode Stall")
+    @Category("MP3 Player")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    public static class DecodeStall extends Event
+    {
+        @Label("File")
+        String filename;
+
+        @Label("Frame")
+        int frame;
+    }
+
+    /**
+     * An audio device was opened or closed.
+     */
+    @Name("mp3player.AudioDevice")
+    @Label("Audio Device")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class AudioDevice extends Event
+    {
+        @Label("Action")
+        String action;
+
+        @Label("Device")
+        String device;
+
+        @Label("Shared")
+        @Description("Whether the device is shared by successive tracks")
+        boolean shared;
+
+        @Label("Sample Rate")
+        @Description("The fixed rate of a shared device, or 0")
+        int sampleRate;
+    }
+
+    /**
+     * A batch of tracks was read from the library.
+     */
+    @Name("mp3player.LibraryScan")
+    @Label("Library Scan")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class LibraryScan extends Event
+    {
+        @Label("Folder")
+        String folder;
+
+        @Label("Tracks")
+        int tracks;
+    }
+
+    /**
+     * A track was started by MusicPlayer.
+     */
+    @Name("mp3player.TrackStart")
+    @Label("Track Start")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class TrackStart extends Event
+    {
+        @Label("File")
+        String filename;
+
+        @Label("Gain")
+        @Description("The normalization gain applied, in dB")
+        double gain;
+
+        @Label("Crossfade")
+        @Description("Whether the end of the track fades into the next")
+        boolean crossfade;
+    }
+
+    /**
+     * The audio given to the device came close to running out, or ran out.
+     */
+    @Name("mp3player.NearMiss")
+    @Label("Output Near Miss")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class NearMiss extends Event
+    {
+        @Label("Lead")
+        @Description("How far ahead of the device's deadline the audio was")
+        @Timespan(Timespan.MILLISECONDS)
+        long leadMillis;
+
+        @Label("Underrun")
+        @Description("Whether the audio ran out")
+        boolean underrun;
+
+        @Label("Effects Bypassed")
+        boolean effectsBypassed;
+    }
+
+    /**
+     * A frame could not be decoded and was concealed.
+     */
+    @Name("mp3player.CorruptFrame")
+    @Label("Corrupt Frame")
+    @Category("MP3 Player")
+    @StackTrace(false)
+    public static class CorruptFrame extends Event
+    {
+        @Label("File")
+        String filename;
+
+        @Label("Frame")
+        int frame;
+
+        @Label("Offset")
+        @Description("The offset of the frame in the file")
+        long offset;
+
+        @Label("Concealment")
+        String concealment;
+    }
+
+    /**
+     * A problem was reported while playing.
+     */
+    @Name("mp3player.PlaybackProblem")
+    @Label("Playback Problem")
+    @Category("MP3 Player")
+    public static class PlaybackProblem extends Event
+    {
+        @Label("File")
+        String filename;
+    }
+
+    /**
+     * Return whether a Flight Recorder recording is running. Until one
+     * is, events are not created at all, so that playing allocates
+     * nothing for them. Before Flight Recorder has been started, as by
+     * -XX:StartFlightRecording or jcmd JFR.start, it is not even asked:
+     * setting it up takes a few hundred milliseconds and would otherwise
+     * delay the first track.
+     * @return true if events may be recorded.
+     */
+    static boolean isActive()
+    {
+        if(!FlightRecorder.isInitialized()) {
+            return false;
+        }
+        if(!listening) {
+            listen();
+        }
+        return recording;
+    }
+
+    /**
+     * Follow recordings starting and stopping, from now on.
+     */
+    private static synchronized void listen()
+    {
+        if(listening) {
+            return;
+        }
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            public void recordingStateChanged(Recording changed)
+            {
+                recording = isRecording();
+            }
+        });
+        recording = isRecording();
+        listening = true;
+    }
+
+    /**
+     * Return whether any recording is running.
+     */
+    private static boolean isRecording()
+    {
+        for(Recording running : FlightRecorder.getFlightRecorder().getRecordings()) {
+            if(running.getState() == RecordingState.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that an audio device was opened or closed.
+     * @param action "open" or "close".
+     * @param device The device.
+     * @param shared Whether the device is shared by successive tracks.
+     * @param sampleRate The fixed rate of a shared device, or 0.
+     */
+    static void audioDevice(String action, javazoom.jl.player.AudioDevice device,
+                            boolean shared, int sampleRate)
+    {
+        if(!isActive()) {
+            return;
+        }
+        AudioDevice event = new AudioDevice();
+        if(event.isEnabled()) {
+            event.action = action;
+            event.device = device.getClass().getSimpleName();
+            event.shared = shared;
+            event.sampleRate = sampleRate;
+            event.commit();
+        }
+    }
+}
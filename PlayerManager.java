@@ -0,0 +1,231 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * Host many independent playback sessions (zones) in one JVM.
+ * All sessions are played by a small pool of shared threads rather than
+ * a thread each. A session waits in a queue ordered by the time its
+ * audio would run out, and a thread plays a few frames of the most
+ * urgent session, then returns it to the queue. Sessions with a higher
+ * priority are served a little earlier.
+ *
+ * Sessions also share frame indexes (FrameIndexCache) and file handles
+ * (SharedFileChannels), so many zones playing the same file cost little
+ * more than one.
+ *
+ * The CPU time and memory allocated for each session are measured.
+ *
+ * @version 2026.10.19
+ */
+public class PlayerManager
+{
+    // The sessions waiting to be played, most urgent first.
+    private final DelayQueue<PlaybackSession> queue;
+    // All sessions.
+    private final List<PlaybackSession> sessions;
+    // The shared threads.
+    private final List<Thread> workers;
+    // Used to measure CPU time and allocation per session.
+    private final ThreadMXBean threads;
+    // The time the manager was created, in nanoseconds.
+    private final long createdNanos;
+
+    /**
+     * Create a manager with one thread per processor.
+     */
+    public PlayerManager()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a manager.
+     * @param threadCount The number of shared threads.
+     */
+    public PlayerManager(int threadCount)
+    {
+        queue = new DelayQueue<>();
+        sessions = new ArrayList<>();
+        workers = new ArrayList<>();
+        threads = ManagementFactory.getThreadMXBean();
+        createdNanos = System.nanoTime();
+        for(int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread("zone-player-" + i) {
+                public void run()
+                {
+                    work();
+                }
+            };
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MAX_PRIORITY);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Create a new session.
+     * @param zone The name of the zone.
+     * @param priority The priority; higher values are served earlier.
+     * @return The session.
+     */
+    public PlaybackSession createSession(String zone, int priority)
+    {
+        PlaybackSession session = new PlaybackSession(zone, priority);
+        synchronized(sessions) {
+            sessions.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * Start playing a track in a session.
+     * @param session The session.
+     * @param track The track to play.
+     */
+    public void play(PlaybackSession session, Track track) throws JavaLayerException
+    {
+        synchronized(session) {
+            queue.remove(session);
+            session.start(track);
+            queue.put(session);
+        }
+    }
+
+    /**
+     * Pause a session.
+     * @param session The session.
+     */
+    public void pause(PlaybackSession session)
+    {
+        session.pause();
+        queue.remove(session);
+    }
+
+    /**
+     * Resume a paused session.
+     * @param session The session.
+     */
+    public void resume(PlaybackSession session)
+    {
+        synchronized(session) {
+            queue.remove(session);
+            session.restart();
+            if(session.isActive()) {
+                queue.put(session);
+            }
+        }
+    }
+
+    /**
+     * Stop a session and remove it from the manager.
+     * @param session The session.
+     */
+    public void close(PlaybackSession session)
+    {
+        queue.remove(session);
+        session.close();
+        synchronized(sessions) {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * Stop all sessions and the shared threads.
+     */
+    public void shutdown()
+    {
+        for(PlaybackSession session : getSessions()) {
+            close(session);
+        }
+        for(Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Return all sessions.
+     * @return A copy of the list of sessions.
+     */
+    public List<PlaybackSession> getSessions()
+    {
+        synchronized(sessions) {
+            return new ArrayList<>(sessions);
+        }
+    }
+
+    /**
+     * Return a report of the resources used by each session.
+     * CPU is given as a percentage of one core since the manager was created.
+     * @return The report, one line per session.
+     */
+    public String report()
+    {
+        double elapsed = (System.nanoTime() - createdNanos) / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-16s %8s %10s %12s %9s%n",
+                                    "zone", "priority", "cpu %", "allocated", "underruns"));
+        for(PlaybackSession session : getSessions()) {
+            report.append(String.format("%-16s %8d %10.2f %10d KB %9d%n",
+                                        session.getZone(), session.getPriority(),
+                                        session.getCpuNanos() / 1e7 / elapsed,
+                                        session.getAllocatedBytes() / 1024,
+                                        session.getUnderruns()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Play the most urgent session, repeatedly, until interrupted.
+     */
+    private void work()
+    {
+        long id = Thread.currentThread().getId();
+        while(!Thread.currentThread().isInterrupted()) {
+            PlaybackSession session;
+            try {
+                session = queue.take();
+            }
+            catch(InterruptedException e) {
+                return;
+            }
+            long cpu = threads.getCurrentThreadCpuTime();
+            long allocated = getAllocatedBytes(id);
+            boolean more;
+            try {
+                more = session.step();
+            }
+            catch(JavaLayerException e) {
+                System.out.println("There was a problem playing zone: " + session.getZone());
+                PlayerMetrics.get().recordError();
+                more = false;
+            }
+            session.addUsage(threads.getCurrentThreadCpuTime() - cpu,
+                             getAllocatedBytes(id) - allocated);
+            synchronized(session) {
+                // The session may have been resumed while it was being played.
+                if(more && session.isActive() && !queue.contains(session)) {
+                    queue.put(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of bytes allocated by a thread, if the JVM can measure it.
+     */
+    private long getAllocatedBytes(long threadId)
+    {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+        }
+        else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of playback, shared by all players in the JVM: decode time
+ * per frame, buffer occupancy, underruns, seek latency, the time to
+ * open and scan tracks, library scan and loudness analysis throughput
+ * and cache hit rates.
+ *
+ * Recording uses only LongAdders and volatile writes, with no locks,
+ * so the metrics are always on. They are published through JMX and,
+ * by MetricsEndpoint, in the Prometheus text format.
+ *
+ * @version 2026.10.19
+ */
+public class PlayerMetrics implements PlayerMetricsMBean
+{
+    // The name of the MBean.
+    public static final String OBJECT_NAME = "mp3player:type=PlayerMetrics";
+
+    // The metrics of this JVM.
+    private static final PlayerMetrics metrics = new PlayerMetrics();
+
+    // The time to decode and play each frame.
+    private final LatencyHistogram decode;
+    // The time to move to a new position.
+    private final LatencyHistogram seek;
+    // The time to open a track, including scanning it if needed.
+    private final LatencyHistogram open;
+    // The time to scan a file for its frame index.
+    private final LatencyHistogram scan;
+    // The number of times audio ran out.
+    private final LongAdder underruns;
+    // The number of times output came close to running out.
+    private final LongAdder nearMisses;
+    // The number of problems playing.
+    private final LongAdder errors;
+    // The number of damaged frames replaced by silence or repetition.
+    private final LongAdder concealedFrames;
+    // Frame index cache lookups.
+    private final LongAdder indexHits;
+    private final LongAdder indexMisses;
+    // Decoded sample cache lookups.
+    private final LongAdder pcmHits;
+    private final LongAdder pcmMisses;
+    // Tracks read from the library, and the time taken.
+    private final LongAdder tracksRead;
+    private final LongAdder readNanos;
+    // Tracks analyzed for loudness, and the time taken.
+    private final LongAdder tracksAnalyzed;
+    private final LongAdder analysisNanos;
+    // The bytes waiting in the stream buffer when last measured.
+    private volatile long streamBufferBytes;
+    // The bytes held by the decoded sample cache.
+    private volatile long pcmCacheBytes;
+
+    /**
+     * Return the metrics of this JVM.
+     * @return The metrics.
+     */
+    public static PlayerMetrics get()
+    {
+        return metrics;
+    }
+
+    /**
+     * Create the metrics and register them with the platform MBean server
+     * as OBJECT_NAME, in the background.
+     */
+    private PlayerMetrics()
+    {
+        decode = new LatencyHistogram();
+        seek = new LatencyHistogram();
+        open = new LatencyHistogram();
+        scan = new LatencyHistogram();
+        underruns = new LongAdder();
+        nearMisses = new LongAdder();
+        errors = new LongAdder();
+        concealedFrames = new LongAdder();
+        indexHits = new LongAdder();
+        indexMisses = new LongAdder();
+        pcmHits = new LongAdder();
+        pcmMisses = new LongAdder();
+        tracksRead = new LongAdder();
+        readNanos = new LongAdder();
+        tracksAnalyzed = new LongAdder();
+        analysisNanos = new LongAdder();
+        // Starting the MBean server takes a few hundred milliseconds, so it
+        // is done in the background rather than holding up the first track.
+        Thread registration = new Thread("metrics-registration") {
+            public void run()
+            {
+                try {
+                    ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(PlayerMetrics.this, new ObjectName(OBJECT_NAME));
+                }
+                catch(Exception e) {
+                    System.out.println("Could not register the metrics MBean: " + e);
+                }
+            }
+        };
+        registration.setDaemon(true);
+        registration.setPriority(Thread.MIN_PRIORITY);
+        registration.start();
+    }
+
+    /**
+     * Record the time taken to decode and play a frame.
+     * @param nanos The time, in nanoseconds.
+     */
+    public void recordDecode(long nanos)
+    {
+        decode.record(nanos);
+    }
+
+    /**
+     * Record the time taken to move to a new position.
+     * @param nanos The time, in nanoseconds.
+     */
+    public void recordSeek(long nanos)
+    {
+        seek.record(nanos);
+    }
+
+    /**
+     * Record the time taken to open a track.
+     * @param nanos The time, in nanoseconds.
+     */
+    public void recordOpen(long nanos)
+    {
+        open.record(nanos);
+    }
+
+    /**
+     * Record the time taken to scan a file for its frame index.
+     * @param nanos The time, in nanoseconds.
+     */
+    public void recordScan(long nanos)
+    {
+        scan.record(nanos);
+    }
+
+    /**
+     * Record a frame index cache lookup.
+     * @param hit true if the index was cached.
+     */
+    public void recordIndexLookup(boolean hit)
+    {
+        if(hit) {
+            indexHits.increment();
+        }
+        else {
+            indexMisses.increment();
+        }
+    }
+
+    /**
+     * Record a lookup in the decoded sample cache.
+     * @param hit Whether the samples were cached.
+     */
+    public void recordPcmLookup(boolean hit)
+    {
+        if(hit) {
+            pcmHits.increment();
+        }
+        else {
+            pcmMisses.increment();
+        }
+    }
+
+    /**
+     * Record tracks read from the library.
+     * @param tracks The number of tracks.
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void recordLibraryRead(int tracks, long nanos)
+    {
+        tracksRead.add(tracks);
+        readNanos.add(nanos);
+    }
+
+    /**
+     * Record tracks analyzed for loudness.
+     * @param tracks The number of tracks.
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void recordAnalysis(int tracks, long nanos)
+    {
+        tracksAnalyzed.add(tracks);
+        analysisNanos.add(nanos);
+    }
+
+    /**
+     * Record that audio ran out before more was written.
+     */
+    public void recordUnderrun()
+    {
+        underruns.increment();
+    }
+
+    /**
+     * Record that output came close to running out.
+     */
+    public void recordNearMiss()
+    {
+        nearMisses.increment();
+    }
+
+    /**
+     * Record that a damaged frame was replaced by silence or repetition.
+     */
+    public void recordConcealed()
+    {
+        concealedFrames.increment();
+    }
+
+    /**
+     * Record a problem playing.
+     */
+    public void recordError()
+    {
+        errors.increment();
+    }
+
+    /**
+     * Record the number of bytes waiting in a stream buffer.
+     * @param bytes The number of bytes.
+     */
+    public void setStreamBufferBytes(long bytes)
+    {
+        streamBufferBytes = bytes;
+    }
+
+    /**
+     * Record the size of the decoded sample cache.
+     * @param bytes The number of bytes held.
+     */
+    public void setPcmCacheBytes(long bytes)
+    {
+        pcmCacheBytes = bytes;
+    }
+
+    public long getFramesDecoded()
+    {
+        return decode.getCount();
+    }
+
+    public double getDecodeMeanMicros()
+    {
+        return decode.getMean() / 1000;
+    }
+
+    public long getDecodeP99Micros()
+    {
+        return decode.getPercentile(99) / 1000;
+    }
+
+    public long getDecodeMaxBucketMicros()
+    {
+        return decode.getPercentile(100) / 1000;
+    }
+
+    public long getUnderruns()
+    {
+        return underruns.sum();
+    }
+
+    public long getNearMisses()
+    {
+        return nearMisses.sum();
+    }
+
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    public long getConcealedFrames()
+    {
+        return concealedFrames.sum();
+    }
+
+    public long getStreamBufferBytes()
+    {
+        return streamBufferBytes;
+    }
+
+    public long getSeeks()
+    {
+        return seek.getCount();
+    }
+
+    public long getSeekP99Micros()
+    {
+        return seek.getPercentile(99) / 1000;
+    }
+
+    public long getTracksOpened()
+    {
+        return open.getCount();
+    }
+
+    public double getTrackOpenMeanMicros()
+    {
+        return open.getMean() / 1000;
+    }
+
+    public long getTrackOpenP99Micros()
+    {
+        return open.getPercentile(99) / 1000;
+    }
+
+    public long getIndexScans()
+    {
+        return scan.getCount();
+    }
+
+    public double getIndexScanMeanMicros()
+    {
+        return scan.getMean() / 1000;
+    }
+
+    public double getIndexCacheHitRate()
+    {
+        long hits = indexHits.sum();
+        long total = hits + indexMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public double getPcmCacheHitRate()
+    {
+        long hits = pcmHits.sum();
+        long total = hits + pcmMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getPcmCacheBytes()
+    {
+        return pcmCacheBytes;
+    }
+
+    public long getTracksRead()
+    {
+        return tracksRead.sum();
+    }
+
+    public double getLibraryTracksPerSecond()
+    {
+        long nanos = readNanos.sum();
+        return nanos == 0 ? 0 : tracksRead.sum() * 1e9 / nanos;
+    }
+
+    public long getTracksAnalyzed()
+    {
+        return tracksAnalyzed.sum();
+    }
+
+    public double getAnalysisTracksPerMinute()
+    {
+        long nanos = analysisNanos.sum();
+        return nanos == 0 ? 0 : tracksAnalyzed.sum() * 60e9 / nanos;
+    }
+
+    /**
+     * Return the metrics in the Prometheus text exposition format.
+     * @return The metrics, one sample per line.
+     */
+    public String toPrometheus()
+    {
+        StringBuilder text = new StringBuilder();
+        appendHistogram(text, "mp3player_decode_seconds", "Time to decode and play a frame.", decode);
+        appendHistogram(text, "mp3player_seek_seconds", "Time to move to a new position.", seek);
+        appendHistogram(text, "mp3player_track_open_seconds", "Time to open a track.", open);
+        appendHistogram(text, "mp3player_index_scan_seconds", "Time to scan a file's frames.", scan);
+        appendCounter(text, "mp3player_underruns_total", "Times audio ran out.", underruns.sum());
+        appendCounter(text, "mp3player_near_misses_total", "Times output came close to running out.", nearMisses.sum());
+        appendCounter(text, "mp3player_errors_total", "Problems playing.", errors.sum());
+        appendCounter(text, "mp3player_concealed_frames_total", "Damaged frames concealed.", concealedFrames.sum());
+        appendCounter(text, "mp3player_index_cache_hits_total", "Frame index cache hits.", indexHits.sum());
+        appendCounter(text, "mp3player_index_cache_misses_total", "Frame index cache misses.", indexMisses.sum());
+        appendCounter(text, "mp3player_pcm_cache_hits_total", "Decoded sample cache hits.", pcmHits.sum());
+        appendCounter(text, "mp3player_pcm_cache_misses_total", "Decoded sample cache misses.", pcmMisses.sum());
+        appendCounter(text, "mp3player_library_tracks_read_total", "Tracks read from the library.", tracksRead.sum());
+        appendCounter(text, "mp3player_library_read_seconds_total", "Time reading the library.", readNanos.sum() / 1e9);
+        appendCounter(text, "mp3player_tracks_analyzed_total", "Tracks analyzed for loudness.", tracksAnalyzed.sum());
+        appendCounter(text, "mp3player_analysis_seconds_total", "Time analyzing loudness.", analysisNanos.sum() / 1e9);
+        text.append("# HELP mp3player_stream_buffer_bytes Bytes waiting in the stream buffer.\n");
+        text.append("# TYPE mp3player_stream_buffer_bytes gauge\n");
+        text.append("mp3player_stream_buffer_bytes ").append(streamBufferBytes).append('\n');
+        text.append("# HELP mp3player_pcm_cache_bytes Bytes held by the decoded sample cache.\n");
+        text.append("# TYPE mp3player_pcm_cache_bytes gauge\n");
+        text.append("mp3player_pcm_cache_bytes ").append(pcmCacheBytes).append('\n');
+        return text.toString();
+    }
+
+    /**
+     * Append a counter of events in the Prometheus format.
+     */
+    private static void appendCounter(StringBuilder text, String name, String help, long value)
+    {
+        appendCounter(text, name, help, Long.toString(value));
+    }
+
+    /**
+     * Append a counter of seconds in the Prometheus format.
+     */
+    private static void appendCounter(StringBuilder text, String name, String help, double value)
+    {
+        appendCounter(text, name, help, Double.toString(value));
+    }
+
+    /**
+     * Append a counter in the Prometheus format.
+     */
+    private static void appendCounter(StringBuilder text, String name, String help, String value)
+    {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Append a histogram in the Prometheus format, with bounds in seconds.
+     */
+    private static void appendHistogram(StringBuilder text, String name, String help,
+                                        LatencyHistogram histogram)
+    {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        long[] counts = histogram.getCounts();
+        long cumulative = 0;
+        for(int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            // Only buckets from 1 microsecond are worth showing.
+            if(i >= 10) {
+                text.append(name).append("_bucket{le=\"")
+                    .append(LatencyHistogram.getBound(i) / 1e9).append("\"} ")
+                    .append(cumulative).append('\n');
+            }
+        }
+        text.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        text.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+        text.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * The playback metrics published through JMX, in the
+ * "mp3player:type=PlayerMetrics" MBean. Durations are in microseconds.
+ *
+ * @version 2026.10.19
+ */
+public interface PlayerMetricsMBean
+{
+    long getFramesDecoded();
+    double getDecodeMeanMicros();
+    long getDecodeP99Micros();
+    long getDecodeMaxBucketMicros();
+    long getUnderruns();
+    long getNearMisses();
+    long getErrors();
+    long getConcealedFrames();
+    long getStreamBufferBytes();
+    long getSeeks();
+    long getSeekP99Micros();
+    long getTracksOpened();
+    double getTrackOpenMeanMicros();
+    long getTrackOpenP99Micros();
+    long getIndexScans();
+    double getIndexScanMeanMicros();
+    double getIndexCacheHitRate();
+    double getPcmCacheHitRate();
+    long getPcmCacheBytes();
+    long getTracksRead();
+    double getLibraryTracksPerSecond();
+    long getTracksAnalyzed();
+    double getAnalysisTracksPerMinute();
+}
@@ -0,0 +1,158 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read and write playlists in the M3U and PLS formats.
+ * The format is chosen by the file name suffix: .pls for PLS,
+ * anything else for M3U. Relative paths in a playlist are taken
+ * relative to the folder holding the playlist, and file: URIs are
+ * decoded.
+ *
+ * PLS and .m3u8 files are in UTF-8. Other M3U files are in ISO-8859-1,
+ * as written by most players; when saving one, a path that cannot be
+ * written in ISO-8859-1 is written as a file: URI instead. Bytes that
+ * are not valid in a playlist's encoding are replaced rather than
+ * failing the whole playlist, and a byte order mark is ignored.
+ *
+ * @version 2026.10.19
+ */
+public class PlaylistFile
+{
+    /**
+     * Read the tracks listed in a playlist.
+     * @param file The playlist file.
+     * @return The tracks, in order.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<Track> load(File file) throws IOException
+    {
+        TrackReader reader = new TrackReader();
+        boolean pls = isPls(file);
+        List<Track> tracks = new ArrayList<>();
+        String text = new String(Files.readAllBytes(file.toPath()), getCharset(file));
+        if(text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        for(String line : text.split("\r\n|\r|\n")) {
+            line = line.trim();
+            String path = null;
+            if(pls) {
+                // Entries are of the form FileN=path.
+                int equals = line.indexOf('=');
+                if(line.regionMatches(true, 0, "File", 0, 4) && equals > 0) {
+                    path = line.substring(equals + 1).trim();
+                }
+            }
+            else if(!line.isEmpty() && !line.startsWith("#")) {
+                path = line;
+            }
+            if(path != null) {
+                tracks.add(reader.readTrack(resolve(file, path)));
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * Write a playlist.
+     * @param tracks The tracks to be listed.
+     * @param file The playlist file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(List<Track> tracks, File file) throws IOException
+    {
+        Charset charset = getCharset(file);
+        CharsetEncoder encoder = charset.newEncoder();
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), charset))) {
+            if(isPls(file)) {
+                out.println("[playlist]");
+                for(int i = 0; i < tracks.size(); i++) {
+                    Track track = tracks.get(i);
+                    out.println("File" + (i + 1) + "=" + track.getFilename());
+                    out.println("Title" + (i + 1) + "=" + getTitle(track));
+                    out.println("Length" + (i + 1) + "=-1");
+                }
+                out.println("NumberOfEntries=" + tracks.size());
+                out.println("Version=2");
+            }
+            else {
+                out.println("#EXTM3U");
+                for(Track track : tracks) {
+                    out.println("#EXTINF:-1," + getTitle(track));
+                    String path = track.getFilename();
+                    if(!encoder.canEncode(path)) {
+                        path = new File(path).getAbsoluteFile().toURI().toASCIIString();
+                    }
+                    out.println(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return whether a file is a PLS playlist.
+     */
+    private static boolean isPls(File file)
+    {
+        return file.getName().toLowerCase().endsWith(".pls");
+    }
+
+    /**
+     * Return the character encoding of a playlist: UTF-8 for PLS and
+     * .m3u8 files, ISO-8859-1 for other M3U files.
+     */
+    private static Charset getCharset(File file)
+    {
+        String name = file.getName().toLowerCase();
+        if(isPls(file) || name.endsWith(".m3u8")) {
+            return StandardCharsets.UTF_8;
+        }
+        return StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * Find a file named in a playlist.
+     * @param playlist The playlist file.
+     * @param path The path given in the playlist.
+     * @return The named file.
+     */
+    private static File resolve(File playlist, String path)
+    {
+        if(path.regionMatches(true, 0, "file:", 0, 5)) {
+            try {
+                return new File(URI.create(path));
+            }
+            catch(IllegalArgumentException e) {
+                // Not a valid URI, such as one with unescaped spaces:
+                // take the rest as a plain path.
+                if(path.regionMatches(true, 0, "file://", 0, 7)) {
+                    path = path.substring("file://".length());
+                }
+                else {
+                    path = path.substring("file:".length());
+                }
+            }
+        }
+        File file = new File(path);
+        if(!file.isAbsolute() && playlist.getParentFile() != null) {
+            file = new File(playlist.getParentFile(), path);
+        }
+        return file;
+    }
+
+    /**
+     * Return the display title of a track.
+     */
+    private static String getTitle(Track track)
+    {
+        return track.getArtist() + " - " + track.getTitle();
+    }
+}
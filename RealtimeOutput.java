@@ -0,0 +1,349 @@
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+
+/**
+ * An audio device that writes to another device from its own output
+ * thread, at a priority of its own. Players write decoded samples into
+ * a buffer, and the output thread copies them to the device, so a
+ * decoding thread held up by a loaded machine does not cut the sound
+ * as long as the buffer lasts.
+ *
+ * The output keeps a clock of how much audio the device has been given
+ * against the time that has passed, so it knows how far ahead of the
+ * device's deadline the audio is. If the lead falls below the near-miss
+ * margin, a near miss is reported (counted, and recorded in PlayerMetrics
+ * and as a Flight Recorder event) before anything is heard, and the
+ * non-essential effects of the DSP chain are bypassed until the output
+ * has kept up for a while. If the lead runs out, an underrun is reported.
+ *
+ * The format is fixed when the output is created, so it is used with
+ * players sharing a device at a fixed rate.
+ *
+ * @version 2026.10.19
+ */
+public class RealtimeOutput implements AudioDevice
+{
+    // The default size of the buffer, in milliseconds.
+    public static final int DEFAULT_BUFFER_MILLIS = 500;
+    // The default near-miss margin, in milliseconds.
+    public static final int DEFAULT_MARGIN_MILLIS = 60;
+    // How long the effects stay bypassed after a near miss.
+    private static final long RECOVERY_NANOS = 5_000_000_000L;
+    // The number of frames copied to the device at a time.
+    private static final int CHUNK_FRAMES = 256;
+    // How often the deadline is checked while waiting for samples.
+    private static final long CHECK_MILLIS = 5;
+
+    // The device written to.
+    private final AudioDevice device;
+    // The format.
+    private final int sampleRate;
+    private final int channels;
+    // The effects bypassed while output is falling behind, or null.
+    private final DspChain effects;
+    // The near-miss margin, in frames.
+    private final long marginFrames;
+
+    // The buffered samples, used as a ring.
+    private final short[] buffer;
+    private int readPosition;
+    private int count;
+    // Whether the output thread is copying a chunk to the device.
+    private boolean writing;
+    // Whether the output is open.
+    private volatile boolean open;
+    // The output thread.
+    private final Thread thread;
+
+    // The time the device clock started, in nanoseconds, or 0 when idle.
+    private long clockStart;
+    // The frames given to the device since the clock started.
+    private long deviceFrames;
+    // Whether the lead is meaningful yet: the buffer has filled, or it has had time to.
+    private boolean primed;
+    // Whether flush() is waiting for the buffer to empty, which is not a near miss.
+    private boolean draining;
+    // Whether the lead is below the margin.
+    private boolean nearMiss;
+    // The time until which effects stay bypassed, in nanoseconds.
+    private long degradedUntil;
+    // The smallest lead seen, in frames.
+    private long lowestLead;
+    // The number of near misses and underruns.
+    private int nearMisses;
+    private int underruns;
+
+    /**
+     * Create an output with the default buffer and margin, at the highest priority.
+     * @param device The open device to write to.
+     * @param sampleRate The sample rate of the device.
+     * @param channels The number of channels of the device.
+     * @param effects The effects to bypass when falling behind, or null.
+     */
+    public RealtimeOutput(AudioDevice device, int sampleRate, int channels, DspChain effects)
+    {
+        this(device, sampleRate, channels, effects,
+             DEFAULT_BUFFER_MILLIS, DEFAULT_MARGIN_MILLIS, Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Create an output.
+     * @param device The open device to write to.
+     * @param sampleRate The sample rate of the device.
+     * @param channels The number of channels of the device.
+     * @param effects The effects to bypass when falling behind, or null.
+     * @param bufferMillis The size of the buffer, in milliseconds.
+     * @param marginMillis The lead below which a near miss is reported.
+     * @param priority The priority of the output thread.
+     */
+    public RealtimeOutput(AudioDevice device, int sampleRate, int channels, DspChain effects,
+                          int bufferMillis, int marginMillis, int priority)
+    {
+        this.device = device;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.effects = effects;
+        marginFrames = (long) marginMillis * sampleRate / 1000;
+        buffer = new short[(int) ((long) bufferMillis * sampleRate / 1000) * channels];
+        lowestLead = Long.MAX_VALUE;
+        open = true;
+        thread = new Thread("audio-output") {
+            public void run()
+            {
+                output();
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        thread.start();
+    }
+
+    /**
+     * The device is already open; the decoder is not needed.
+     */
+    public void open(Decoder decoder)
+    {
+    }
+
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    /**
+     * Add samples to the buffer, waiting while it is full.
+     */
+    public void write(short[] samples, int offset, int length) throws JavaLayerException
+    {
+        synchronized(this) {
+            checkDeadline();
+            int written = 0;
+            while(written < length && open) {
+                while(count == buffer.length && open) {
+                    primed = true;
+                    try {
+                        wait();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new JavaLayerException("Interrupted while writing", e);
+                    }
+                }
+                int writePosition = (readPosition + count) % buffer.length;
+                int n = Math.min(length - written,
+                                 Math.min(buffer.length - count, buffer.length - writePosition));
+                System.arraycopy(samples, offset + written, buffer, writePosition, n);
+                count += n;
+                written += n;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until everything written has been played.
+     * The clock stops, since a pause in writing is expected to follow.
+     */
+    public void flush()
+    {
+        synchronized(this) {
+            draining = true;
+            try {
+                while((count > 0 || writing) && open) {
+                    wait();
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            clockStart = 0;
+            draining = false;
+        }
+        device.flush();
+    }
+
+    /**
+     * Stop at once, discarding buffered samples, and close the device.
+     */
+    public void close()
+    {
+        synchronized(this) {
+            open = false;
+            count = 0;
+            notifyAll();
+        }
+        thread.interrupt();
+        device.close();
+    }
+
+    public int getPosition()
+    {
+        return device.getPosition();
+    }
+
+    /**
+     * Return the number of times the lead fell below the margin.
+     * @return The number of near misses.
+     */
+    public synchronized int getNearMisses()
+    {
+        return nearMisses;
+    }
+
+    /**
+     * Return the number of times the device ran out of audio.
+     * @return The number of underruns.
+     */
+    public synchronized int getUnderruns()
+    {
+        return underruns;
+    }
+
+    /**
+     * Return the smallest lead over the device's deadline seen so far.
+     * @return The lead, in milliseconds.
+     */
+    public synchronized long getLowestLeadMillis()
+    {
+        return lowestLead == Long.MAX_VALUE ? 0 : lowestLead * 1000 / sampleRate;
+    }
+
+    /**
+     * Compare the audio given to the device and buffered with the time
+     * passed, reporting near misses and underruns, and bypass or restore
+     * the effects.
+     */
+    private void checkDeadline()
+    {
+        long now = System.nanoTime();
+        if(clockStart == 0 || draining) {
+            return;
+        }
+        long elapsedFrames = (now - clockStart) * sampleRate / 1_000_000_000L;
+        if(!primed && elapsedFrames * channels >= buffer.length) {
+            primed = true;
+        }
+        if(!primed) {
+            return;
+        }
+        long lead = deviceFrames + count / channels - elapsedFrames;
+        lowestLead = Math.min(lowestLead, lead);
+        if(lead < 0) {
+            underruns++;
+            PlayerMetrics.get().recordUnderrun();
+            report(lead, true);
+            // Start the clock again from what is waiting now.
+            clockStart = now;
+            deviceFrames = 0;
+        }
+        if(lead < marginFrames) {
+            if(!nearMiss) {
+                nearMiss = true;
+                nearMisses++;
+                PlayerMetrics.get().recordNearMiss();
+                if(lead >= 0) {
+                    report(lead, false);
+                }
+            }
+            degradedUntil = now + RECOVERY_NANOS;
+            if(effects != null) {
+                effects.setBypassed(true);
+            }
+        }
+        else if(lead > 2 * marginFrames) {
+            nearMiss = false;
+            if(effects != null && effects.isBypassed() && now > degradedUntil) {
+                effects.setBypassed(false);
+            }
+        }
+    }
+
+    /**
+     * Record a near miss or underrun as a Flight Recorder event.
+     */
+    private void report(long lead, boolean underrun)
+    {
+        PlayerEvents.NearMiss event = PlayerEvents.isActive() ? new PlayerEvents.NearMiss() : null;
+        if(event != null && event.isEnabled()) {
+            event.leadMillis = lead * 1000 / sampleRate;
+            event.underrun = underrun;
+            event.effectsBypassed = effects != null;
+            event.commit();
+        }
+    }
+
+    /**
+     * Copy buffered samples to the device until closed.
+     */
+    private void output()
+    {
+        short[] chunk = new short[CHUNK_FRAMES * channels];
+        while(open) {
+            int n;
+            synchronized(this) {
+                try {
+                    while(count == 0 && open) {
+                        if(clockStart != 0) {
+                            // Starved: keep watching the deadline.
+                            checkDeadline();
+                            wait(CHECK_MILLIS);
+                        }
+                        else {
+                            wait();
+                        }
+                    }
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                if(!open) {
+                    return;
+                }
+                n = Math.min(Math.min(count, chunk.length), buffer.length - readPosition);
+                System.arraycopy(buffer, readPosition, chunk, 0, n);
+                readPosition = (readPosition + n) % buffer.length;
+                count -= n;
+                writing = true;
+                if(clockStart == 0) {
+                    clockStart = System.nanoTime();
+                    deviceFrames = 0;
+                    primed = false;
+                }
+                deviceFrames += n / channels;
+                notifyAll();
+            }
+            try {
+                device.write(chunk, 0, n);
+            }
+            catch(JavaLayerException e) {
+                System.out.println("There was a problem writing to the audio device");
+            }
+            synchronized(this) {
+                writing = false;
+                checkDeadline();
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,513 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP interface for controlling MusicPlayers from other
+ * programs. It listens on the loopback address only. Several players
+ * can be controlled through one server, each under its own name:
+ *
+ *     GET  /players                   a JSON list of the players' names
+ *     GET  /players/name/status       the player's status as JSON
+ *     GET  /players/name/events       a stream of the player's status
+ *                                     (Server-Sent Events)
+ *     POST /players/name/play?track=n play the organizer's tracks from track n
+ *     POST /players/name/play?query=q play the tracks matching a TrackQuery
+ *     POST /players/name/pause        pause
+ *     POST /players/name/resume       resume (or POST play with no parameters)
+ *     POST /players/name/stop         stop
+ *     POST /players/name/next         play the next track in the queue
+ *     POST /players/name/previous     play the previous track in the queue
+ *     POST /players/name/seek?ms=t    move to a time in the current track
+ *     POST /players/name/queue?track=n
+ *                                     add a track to the end of the queue
+ *
+ * The status gives the state (playing, paused, stopped or finished),
+ * the current track, the position and length in milliseconds and the
+ * number of tracks queued. A command replies with the status after it
+ * has been carried out, or 400 if it is not valid.
+ *
+ * Each player has a command queue and a thread of its own that carries
+ * the commands out in order, so a command waits only for the commands
+ * sent to the same player before it, and never for the requests of
+ * other players or for event streams. Connections are kept open between
+ * requests. The event stream sends the status every PUSH_MILLIS and as
+ * soon as a command has been carried out.
+ *
+ * @version 2026.10.19
+ */
+public class RemoteControl
+{
+    // The default port.
+    public static final int DEFAULT_PORT = 9470;
+    // The time between status updates on an event stream, in milliseconds.
+    public static final int PUSH_MILLIS = 250;
+    // The number of commands that can wait for each player.
+    private static final int QUEUE_SIZE = 64;
+    // The longest time a request waits for its command to be carried out.
+    private static final long COMMAND_TIMEOUT_MILLIS = 5000;
+
+    // The tracks that can be played.
+    private final MusicOrganizer organizer;
+    // The players, by name.
+    private final Map<String, Controller> controllers;
+    // The server, once started.
+    private HttpServer server;
+
+    /**
+     * Create a remote control.
+     * @param organizer The tracks that can be played.
+     */
+    public RemoteControl(MusicOrganizer organizer)
+    {
+        this.organizer = organizer;
+        controllers = new LinkedHashMap<>();
+    }
+
+    /**
+     * Make a player controllable.
+     * @param name The name the player is known by; letters, digits, - and _ only.
+     * @param player The player.
+     */
+    public void addPlayer(String name, MusicPlayer player)
+    {
+        if(!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Invalid player name: " + name);
+        }
+        Controller controller = new Controller(name, player);
+        synchronized(controllers) {
+            Controller old = controllers.put(name, controller);
+            if(old != null) {
+                old.close();
+            }
+        }
+    }
+
+    /**
+     * Start serving requests.
+     * @param port The port to listen on, or 0 for any free port.
+     * @return The port listened on.
+     * @throws IOException If the port cannot be opened.
+     */
+    public synchronized int start(int port) throws IOException
+    {
+        server = LocalHttpServer.create(port);
+        server.createContext("/players", this::handle);
+        // Event streams hold a thread each, so requests are not run on the server's own thread.
+        server.setExecutor(Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "remote-control");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving requests, and stop the players' command threads.
+     */
+    public synchronized void stop()
+    {
+        if(server != null) {
+            server.stop(0);
+            server = null;
+        }
+        synchronized(controllers) {
+            for(Controller controller : controllers.values()) {
+                controller.close();
+            }
+            controllers.clear();
+        }
+    }
+
+    /**
+     * Run players without a GUI, to be controlled remotely.
+     * @param args The folder of tracks, the port, and the number of
+     *             players (named zone0, zone1, ...; one player is named main).
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File folder = new File(args.length > 0 ? args[0] : "./audio-files");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        RemoteControl control = new RemoteControl(new MusicOrganizer(folder));
+        for(int i = 0; i < players; i++) {
+            control.addPlayer(players == 1 ? "main" : "zone" + i, new MusicPlayer());
+        }
+        port = control.start(port);
+        System.out.println("Remote control listening on http://127.0.0.1:" + port + "/players");
+    }
+
+    /**
+     * Handle a request.
+     */
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            if(path.length == 2) {
+                List<String> names;
+                synchronized(controllers) {
+                    names = new ArrayList<>(controllers.keySet());
+                }
+                StringBuilder json = new StringBuilder("[");
+                for(String name : names) {
+                    json.append(json.length() > 1 ? ", " : "").append(quote(name));
+                }
+                respond(exchange, 200, json.append("]").toString());
+                return;
+            }
+            Controller controller;
+            synchronized(controllers) {
+                controller = path.length == 4 ? controllers.get(path[2]) : null;
+            }
+            if(controller == null) {
+                respond(exchange, 404, "{\"error\": \"No such player\"}");
+                return;
+            }
+            String command = path[3];
+            boolean get = exchange.getRequestMethod().equals("GET");
+            if(command.equals("status") && get) {
+                respond(exchange, 200, controller.getStatus());
+            }
+            else if(command.equals("events") && get) {
+                controller.stream(exchange);
+            }
+            else if(exchange.getRequestMethod().equals("POST")) {
+                Map<String, String> parameters = parse(exchange.getRequestURI().getRawQuery());
+                respond(exchange, 200, controller.submit(command, parameters));
+            }
+            else {
+                respond(exchange, 405, "{\"error\": \"Commands must be sent with POST\"}");
+            }
+        }
+        catch(IllegalArgumentException e) {
+            respond(exchange, 400, "{\"error\": " + quote(String.valueOf(e.getMessage())) + "}");
+        }
+        catch(IllegalStateException e) {
+            respond(exchange, 503, "{\"error\": " + quote(e.getMessage()) + "}");
+        }
+    }
+
+    /**
+     * Carry out a command on a player. This runs on the player's command thread.
+     * @return The new state, or null if it is unchanged.
+     */
+    private String execute(MusicPlayer player, String command, Map<String, String> parameters)
+    {
+        switch(command) {
+            case "play":
+                if(parameters.containsKey("track")) {
+                    player.startPlaying(organizer.getAllTracks(), getTrackIndex(parameters));
+                    return "playing";
+                }
+                if(parameters.containsKey("query")) {
+                    List<Track> tracks = organizer.query(parameters.get("query"));
+                    if(tracks.isEmpty()) {
+                        throw new IllegalArgumentException("No tracks match the query");
+                    }
+                    player.startPlaying(tracks, 0);
+                    return "playing";
+                }
+                player.resume();
+                return "playing";
+            case "resume":
+                player.resume();
+                return "playing";
+            case "pause":
+                player.pause();
+                return "paused";
+            case "stop":
+                player.stop();
+                return "stopped";
+            case "next":
+                return player.playNext() ? "playing" : null;
+            case "previous":
+                return player.playPrevious() ? "playing" : null;
+            case "seek":
+                player.seekToMillis(getNumber(parameters, "ms"));
+                return "paused";
+            case "queue":
+                player.getQueue().append(organizer.getAllTracks().get(getTrackIndex(parameters)));
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Return the index of the track given by the "track" parameter.
+     */
+    private int getTrackIndex(Map<String, String> parameters)
+    {
+        long index = getNumber(parameters, "track");
+        if(index < 0 || index >= organizer.getNumberOfTracks()) {
+            throw new IllegalArgumentException("No such track: " + index);
+        }
+        return (int) index;
+    }
+
+    /**
+     * Return the value of a numeric parameter.
+     */
+    private static long getNumber(Map<String, String> parameters, String name)
+    {
+        String value = parameters.get(name);
+        if(value == null || !value.matches("-?[0-9]{1,18}")) {
+            throw new IllegalArgumentException("Expected a number for " + name);
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Split a query string into its parameters.
+     */
+    private static Map<String, String> parse(String query) throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<>();
+        if(query != null) {
+            for(String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if(equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                                   URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Send a JSON response.
+     */
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Return a string as a JSON string literal.
+     */
+    private static String quote(String text)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for(char c : text.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if(c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * A player, its command queue and the thread carrying the commands out.
+     */
+    private class Controller
+    {
+        // The player's name.
+        private final String name;
+        // The player.
+        private final MusicPlayer player;
+        // The commands waiting to be carried out.
+        private final BlockingQueue<Command> commands;
+        // The thread carrying them out.
+        private final Thread thread;
+        // The state set by the last command: playing, paused or stopped.
+        private volatile String state;
+        // The number of commands carried out, to wake event streams.
+        private long changes;
+        // Whether the controller has been closed.
+        private volatile boolean closed;
+
+        Controller(String name, MusicPlayer player)
+        {
+            this.name = name;
+            this.player = player;
+            commands = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            state = "stopped";
+            thread = new Thread("remote-control-" + name) {
+                public void run()
+                {
+                    runCommands();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Queue a command and wait for it to be carried out.
+         * @return The status afterwards.
+         */
+        String submit(String command, Map<String, String> parameters)
+        {
+            Command queued = new Command(command, parameters);
+            if(closed || !commands.offer(queued)) {
+                throw new IllegalStateException("The player is not accepting commands");
+            }
+            try {
+                return queued.result.get(COMMAND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch(ExecutionException e) {
+                if(e.getCause() instanceof IllegalArgumentException) {
+                    throw (IllegalArgumentException) e.getCause();
+                }
+                throw new IllegalStateException("The command failed: " + e.getCause());
+            }
+            catch(TimeoutException e) {
+                throw new IllegalStateException("The command timed out");
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted");
+            }
+        }
+
+        /**
+         * Carry out commands in order until closed.
+         */
+        private void runCommands()
+        {
+            while(!closed) {
+                Command command;
+                try {
+                    command = commands.take();
+                }
+                catch(InterruptedException e) {
+                    continue;
+                }
+                try {
+                    String newState = execute(player, command.name, command.parameters);
+                    if(newState != null) {
+                        state = newState;
+                    }
+                    command.result.complete(getStatus());
+                }
+                catch(RuntimeException e) {
+                    command.result.completeExceptionally(e);
+                }
+                synchronized(this) {
+                    changes++;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Return the player's status as JSON.
+         */
+        String getStatus()
+        {
+            PlayQueue queue = player.getQueue();
+            Track track = queue.getCurrent();
+            String current = state;
+            if(current.equals("playing") && player.isFinished()) {
+                current = "finished";
+            }
+            StringBuilder json = new StringBuilder("{\"player\": ").append(quote(name))
+                .append(", \"state\": ").append(quote(current));
+            if(track != null) {
+                json.append(", \"track\": {\"artist\": ").append(quote(track.getArtist()))
+                    .append(", \"title\": ").append(quote(track.getTitle()))
+                    .append(", \"filename\": ").append(quote(track.getFilename())).append("}");
+            }
+            return json.append(", \"positionMillis\": ").append(player.getPositionMillis())
+                .append(", \"lengthMillis\": ").append(player.getLengthMillis())
+                .append(", \"queued\": ").append(queue.getUpcoming(queue.size()).size())
+                .append("}").toString();
+        }
+
+        /**
+         * Send the status as Server-Sent Events until the client goes away.
+         */
+        void stream(HttpExchange exchange) throws IOException
+        {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            try(OutputStream out = exchange.getResponseBody()) {
+                long seen = -1;
+                while(!closed) {
+                    synchronized(this) {
+                        if(seen == changes) {
+                            wait(PUSH_MILLIS);
+                        }
+                        seen = changes;
+                    }
+                    out.write(("data: " + getStatus() + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+            catch(IOException e) {
+                // The client has gone.
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stop carrying out commands.
+         */
+        void close()
+        {
+            closed = true;
+            thread.interrupt();
+            List<Command> waiting = new ArrayList<>();
+            commands.drainTo(waiting);
+            for(Command command : waiting) {
+                command.result.completeExceptionally(
+                    new IllegalStateException("The player is no longer controlled"));
+            }
+            synchronized(this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A command waiting to be carried out, and its result.
+     */
+    private static class Command
+    {
+        final String name;
+        final Map<String, String> parameters;
+        final CompletableFuture<String> result;
+
+        Command(String name, Map<String, String> parameters)
+        {
+            this.name = name;
+            this.parameters = parameters;
+            result = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * A benchmark of the round-trip time of RemoteControl commands.
+ * A number of players are controlled through one server, as by an
+ * automation system, and each is driven by a client thread of its own
+ * sending commands one after another over a kept-open connection. The
+ * commands alternate between asking for the status, pausing and adding
+ * a track to the queue, so they pass through each player's command
+ * queue. The time from sending each request to reading the whole
+ * response is measured, and the percentiles reported.
+ *
+ * Usage: java RemoteControlBenchmark [players] [commands per player] [folder]
+ *
+ * @version 2026.10.19
+ */
+public class RemoteControlBenchmark
+{
+    /**
+     * Run the benchmark.
+     * @param args The number of players, the number of commands sent to
+     *             each, and the folder of tracks.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        File folder = new File(args.length > 2 ? args[2] : "./audio-files");
+        MusicOrganizer organizer = new MusicOrganizer(folder);
+        if(organizer.getNumberOfTracks() == 0) {
+            System.out.println("No tracks found in " + folder);
+            return;
+        }
+        RemoteControl control = new RemoteControl(organizer);
+        for(int i = 0; i < players; i++) {
+            control.addPlayer("zone" + i, new MusicPlayer());
+        }
+        int port = control.start(0);
+
+        // Warm up, then measure.
+        run(port, players, commands / 4);
+        long start = System.nanoTime();
+        long[] times = run(port, players, commands);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        control.stop();
+
+        Arrays.sort(times);
+        System.out.printf("%d players, %d commands: %.0f commands/s%n",
+                          players, times.length, times.length / seconds);
+        System.out.printf("round trip: p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                          percentile(times, 50), percentile(times, 99),
+                          percentile(times, 99.9), times[times.length - 1] / 1e6);
+    }
+
+    /**
+     * Drive every player at once from a thread each.
+     * @return The round-trip times of all the commands, in nanoseconds.
+     */
+    private static long[] run(int port, int players, int commands) throws InterruptedException
+    {
+        long[] times = new long[players * commands];
+        Thread[] clients = new Thread[players];
+        for(int p = 0; p < players; p++) {
+            final int player = p;
+            clients[p] = new Thread() {
+                public void run()
+                {
+                    String base = "http://127.0.0.1:" + port + "/players/zone" + player + "/";
+                    try {
+                        for(int i = 0; i < commands; i++) {
+                            long sent = System.nanoTime();
+                            switch(i % 3) {
+                                case 0:
+                                    send(base + "status", "GET");
+                                    break;
+                                case 1:
+                                    send(base + "pause", "POST");
+                                    break;
+                                default:
+                                    send(base + "queue?track=0", "POST");
+                                    break;
+                            }
+                            times[player * commands + i] = System.nanoTime() - sent;
+                        }
+                    }
+                    catch(IOException e) {
+                        System.out.println("Request failed: " + e);
+                    }
+                }
+            };
+            clients[p].start();
+        }
+        for(Thread client : clients) {
+            client.join();
+        }
+        return times;
+    }
+
+    /**
+     * Send a request and read the response. The connection is kept open
+     * for the next request.
+     */
+    private static void send(String url, String method) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if(connection.getResponseCode() != 200) {
+            throw new IOException("Status " + connection.getResponseCode() + " for " + url);
+        }
+        try(InputStream in = connection.getInputStream()) {
+            while(in.read() >= 0) {
+                // Read the whole response so that the connection can be reused.
+            }
+        }
+    }
+
+    /**
+     * Return a percentile of sorted times, in milliseconds.
+     */
+    private static double percentile(long[] sorted, double percentile)
+    {
+        int index = (int) Math.min(sorted.length - 1, Math.round(percentile / 100 * sorted.length));
+        return sorted[index] / 1e6;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * A benchmark of the Resampler at each quality.
+ * For each common conversion the benchmark reports the throughput, as
+ * frames per second and as a multiple of real time for one stereo
+ * stream, and the accuracy, as the signal to noise ratio when
+ * converting a sine wave.
+ *
+ * Usage: java ResamplerBenchmark [seconds per test]
+ *
+ * @version 2026.10.19
+ */
+public class ResamplerBenchmark
+{
+    // The conversions measured: input and output rates.
+    private static final int[][] CONVERSIONS = {
+        { 22050, 44100 }, { 44100, 48000 }, { 48000, 44100 }, { 32000, 48000 }
+    };
+    // The number of frames in each block, as decoded from an MP3 frame.
+    private static final int BLOCK_FRAMES = 1152;
+    // The frequency of the test tone, in Hz.
+    private static final double TONE = 997;
+
+    /**
+     * Run the benchmark.
+     * @param args The seconds per test.
+     */
+    public static void main(String[] args)
+    {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+        System.out.printf("%-14s %-9s %14s %12s %9s%n",
+                          "conversion", "quality", "frames/s", "x realtime", "SNR dB");
+        for(int[] conversion : CONVERSIONS) {
+            for(Resampler.Quality quality : Resampler.Quality.values()) {
+                double rate = throughput(conversion[0], conversion[1], quality, seconds);
+                System.out.printf("%-14s %-9s %14.0f %12.0f %9.1f%n",
+                                  conversion[0] + "->" + conversion[1], quality,
+                                  rate, rate / conversion[0],
+                                  accuracy(conversion[0], conversion[1], quality));
+            }
+        }
+    }
+
+    /**
+     * Measure the number of stereo input frames converted per second.
+     */
+    private static double throughput(int inputRate, int outputRate,
+                                     Resampler.Quality quality, double seconds)
+    {
+        Resampler resampler = new Resampler(inputRate, outputRate, 2, quality);
+        short[] block = tone(inputRate, BLOCK_FRAMES, 2);
+        long runNanos = (long) (seconds * 1e9);
+        // Run once untimed, so that the timed run is compiled.
+        for(int pass = 0; pass < 2; pass++) {
+            long frames = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                for(int i = 0; i < 50; i++) {
+                    resampler.process(block, 0, block.length);
+                }
+                frames += 50 * BLOCK_FRAMES;
+                elapsed = System.nanoTime() - start;
+            } while(elapsed < runNanos);
+            if(pass == 1) {
+                return frames / (elapsed / 1e9);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Convert a mono sine wave and compare the result with the ideal one.
+     * @return The signal to noise ratio, in dB.
+     */
+    private static double accuracy(int inputRate, int outputRate, Resampler.Quality quality)
+    {
+        Resampler resampler = new Resampler(inputRate, outputRate, 1, quality);
+        short[] input = tone(inputRate, inputRate, 1);
+        int count = resampler.process(input, 0, input.length);
+        short[] output = resampler.getOutput();
+        double delay = (double) resampler.getLatency() / inputRate;
+        double signal = 0;
+        double noise = 0;
+        // Skip the start, while the filter fills.
+        for(int i = outputRate / 10; i < count; i++) {
+            double t = (double) i / outputRate - delay;
+            double expected = 16000 * Math.sin(2 * Math.PI * TONE * t);
+            signal += expected * expected;
+            noise += (output[i] - expected) * (output[i] - expected);
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    /**
+     * Make a block of a sine wave.
+     */
+    private static short[] tone(int rate, int frames, int channels)
+    {
+        short[] samples = new short[frames * channels];
+        for(int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(16000 * Math.sin(2 * Math.PI * TONE * i / rate));
+            for(int c = 0; c < channels; c++) {
+                samples[i * channels + c] = sample;
+            }
+        }
+        return samples;
+    }
+}
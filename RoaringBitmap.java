@@ -0,0 +1,493 @@
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, used to index tracks by row.
+ * The ints are divided into chunks of 65536 by their high 16 bits, and
+ * each chunk is held in whichever form is smaller: a sorted array of the
+ * low 16 bits while the chunk holds at most 4096 ints, a bitmap of 65536
+ * bits (8KB) once it holds more. Sparse and dense sets are both compact,
+ * and sets are combined a chunk at a time, skipping chunks only one holds.
+ * This is the layout of "roaring" bitmaps, without run containers.
+ *
+ * @version 2026.10.19
+ */
+public class RoaringBitmap
+{
+    // The number of ints in a chunk.
+    public static final int CHUNK = 1 << 16;
+    // The most ints a chunk holds as an array.
+    private static final int MAX_ARRAY = 4096;
+    // The number of longs in a chunk's bitmap.
+    private static final int WORDS = CHUNK / 64;
+
+    // The high 16 bits of each chunk held, in increasing order.
+    private int[] keys;
+    // The chunks, in the same order.
+    private Chunk[] chunks;
+    // The number of chunks held.
+    private int count;
+
+    /**
+     * Create an empty set.
+     */
+    public RoaringBitmap()
+    {
+        keys = new int[4];
+        chunks = new Chunk[4];
+        count = 0;
+    }
+
+    /**
+     * Add an int to the set.
+     * @param value The int; must not be negative.
+     */
+    public void add(int value)
+    {
+        int i = find(value >>> 16);
+        if(i < 0) {
+            i = -i - 1;
+            insert(i, value >>> 16, new Chunk());
+        }
+        chunks[i].add(value & 0xFFFF);
+    }
+
+    /**
+     * Remove an int from the set.
+     * @param value The int.
+     */
+    public void remove(int value)
+    {
+        int i = find(value >>> 16);
+        if(i >= 0) {
+            chunks[i].remove(value & 0xFFFF);
+            if(chunks[i].cardinality == 0) {
+                delete(i);
+            }
+        }
+    }
+
+    /**
+     * Return whether the set holds an int.
+     * @param value The int.
+     * @return true if the int is in the set.
+     */
+    public boolean contains(int value)
+    {
+        int i = find(value >>> 16);
+        return i >= 0 && chunks[i].contains(value & 0xFFFF);
+    }
+
+    /**
+     * Return the number of ints in the set.
+     * @return The cardinality.
+     */
+    public int getCardinality()
+    {
+        int cardinality = 0;
+        for(int i = 0; i < count; i++) {
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Return the ints in the set.
+     * @return The ints, in increasing order.
+     */
+    public int[] toArray()
+    {
+        int[] values = new int[getCardinality()];
+        int n = 0;
+        for(int i = 0; i < count; i++) {
+            n = chunks[i].copyTo(keys[i] << 16, values, n);
+        }
+        return values;
+    }
+
+    /**
+     * Add the ints of a chunk, given as a bitmap. Chunks must be added
+     * in increasing order, after any ints already in the set.
+     * @param key The high 16 bits of the ints in the chunk.
+     * @param words The bitmap: WORDS longs, bit i of word w for the int w * 64 + i.
+     */
+    public void addChunk(int key, long[] words)
+    {
+        Chunk chunk = new Chunk(words.clone());
+        if(chunk.cardinality > 0) {
+            insert(count, key, chunk);
+        }
+    }
+
+    /**
+     * Return the ints in both of two sets.
+     * @param a One set.
+     * @param b The other set.
+     * @return A new set.
+     */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while(i < a.count && j < b.count) {
+            if(a.keys[i] < b.keys[j]) {
+                i++;
+            }
+            else if(a.keys[i] > b.keys[j]) {
+                j++;
+            }
+            else {
+                result.append(a.keys[i], a.chunks[i].and(b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the ints in either of two sets.
+     * @param a One set.
+     * @param b The other set.
+     * @return A new set.
+     */
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while(i < a.count || j < b.count) {
+            if(j == b.count || (i < a.count && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.chunks[i].copy());
+                i++;
+            }
+            else if(i == a.count || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.chunks[j].copy());
+                j++;
+            }
+            else {
+                result.append(a.keys[i], a.chunks[i].or(b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the ints in one set but not another.
+     * @param a The set.
+     * @param b The ints to leave out.
+     * @return A new set.
+     */
+    public static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for(int i = 0; i < a.count; i++) {
+            while(j < b.count && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if(j < b.count && b.keys[j] == a.keys[i]) {
+                result.append(a.keys[i], a.chunks[i].andNot(b.chunks[j]));
+            }
+            else {
+                result.append(a.keys[i], a.chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the position of the chunk with the given key, or
+     * -(insertion point) - 1 if there is none.
+     */
+    private int find(int key)
+    {
+        return Arrays.binarySearch(keys, 0, count, key);
+    }
+
+    /**
+     * Add a chunk at the end, if it is not empty.
+     */
+    private void append(int key, Chunk chunk)
+    {
+        if(chunk.cardinality > 0) {
+            insert(count, key, chunk);
+        }
+    }
+
+    /**
+     * Insert a chunk at the given position.
+     */
+    private void insert(int i, int key, Chunk chunk)
+    {
+        if(count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            chunks = Arrays.copyOf(chunks, count * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(chunks, i, chunks, i + 1, count - i);
+        keys[i] = key;
+        chunks[i] = chunk;
+        count++;
+    }
+
+    /**
+     * Remove the chunk at the given position.
+     */
+    private void delete(int i)
+    {
+        System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+        System.arraycopy(chunks, i + 1, chunks, i, count - i - 1);
+        count--;
+        chunks[count] = null;
+    }
+
+    /**
+     * The low 16 bits of the ints in one chunk, as a sorted array or a bitmap.
+     */
+    private static class Chunk
+    {
+        // The sorted values, or null if held as a bitmap.
+        private char[] values;
+        // The bitmap, or null if held as an array.
+        private long[] words;
+        // The number of values.
+        private int cardinality;
+
+        /**
+         * Create an empty chunk.
+         */
+        Chunk()
+        {
+            values = new char[4];
+        }
+
+        /**
+         * Create a chunk from a bitmap, as an array if it is small enough.
+         */
+        Chunk(long[] words)
+        {
+            this.words = words;
+            for(long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            compress();
+        }
+
+        /**
+         * Add a value.
+         */
+        void add(int value)
+        {
+            if(words != null) {
+                long bit = 1L << value;
+                if((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            if(i >= 0) {
+                return;
+            }
+            if(cardinality == MAX_ARRAY) {
+                words = toWords();
+                values = null;
+                add(value);
+                return;
+            }
+            i = -i - 1;
+            if(cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = (char) value;
+            cardinality++;
+        }
+
+        /**
+         * Remove a value.
+         */
+        void remove(int value)
+        {
+            if(words != null) {
+                long bit = 1L << value;
+                if((words[value >>> 6] & bit) != 0) {
+                    words[value >>> 6] &= ~bit;
+                    cardinality--;
+                    compress();
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            if(i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+        }
+
+        /**
+         * Return whether a value is held.
+         */
+        boolean contains(int value)
+        {
+            if(words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, (char) value) >= 0;
+        }
+
+        /**
+         * Return the values in this chunk and another.
+         */
+        Chunk and(Chunk other)
+        {
+            if(values != null && other.values != null) {
+                Chunk result = new Chunk();
+                result.values = new char[Math.max(1, Math.min(cardinality, other.cardinality))];
+                int i = 0;
+                int j = 0;
+                while(i < cardinality && j < other.cardinality) {
+                    if(values[i] < other.values[j]) {
+                        i++;
+                    }
+                    else if(values[i] > other.values[j]) {
+                        j++;
+                    }
+                    else {
+                        result.values[result.cardinality++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return result;
+            }
+            if(values != null || other.values != null) {
+                // Look up each value of the array in the bitmap.
+                Chunk array = values != null ? this : other;
+                Chunk bitmap = values != null ? other : this;
+                Chunk result = new Chunk();
+                result.values = new char[Math.max(1, array.cardinality)];
+                for(int i = 0; i < array.cardinality; i++) {
+                    if(bitmap.contains(array.values[i])) {
+                        result.values[result.cardinality++] = array.values[i];
+                    }
+                }
+                return result;
+            }
+            long[] result = new long[WORDS];
+            for(int w = 0; w < WORDS; w++) {
+                result[w] = words[w] & other.words[w];
+            }
+            return new Chunk(result);
+        }
+
+        /**
+         * Return the values in this chunk or another.
+         */
+        Chunk or(Chunk other)
+        {
+            long[] result = toWords();
+            long[] others = other.words != null ? other.words : other.toWords();
+            for(int w = 0; w < WORDS; w++) {
+                result[w] |= others[w];
+            }
+            return new Chunk(result);
+        }
+
+        /**
+         * Return the values in this chunk but not another.
+         */
+        Chunk andNot(Chunk other)
+        {
+            if(values != null) {
+                Chunk result = new Chunk();
+                result.values = new char[Math.max(1, cardinality)];
+                for(int i = 0; i < cardinality; i++) {
+                    if(!other.contains(values[i])) {
+                        result.values[result.cardinality++] = values[i];
+                    }
+                }
+                return result;
+            }
+            long[] result = words.clone();
+            long[] others = other.words != null ? other.words : other.toWords();
+            for(int w = 0; w < WORDS; w++) {
+                result[w] &= ~others[w];
+            }
+            return new Chunk(result);
+        }
+
+        /**
+         * Return a copy of this chunk.
+         */
+        Chunk copy()
+        {
+            Chunk result = new Chunk();
+            result.values = values != null ? Arrays.copyOf(values, Math.max(1, cardinality)) : null;
+            result.words = words != null ? words.clone() : null;
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        /**
+         * Copy the values, with the given high bits, into an array.
+         * @return The position following the last value copied.
+         */
+        int copyTo(int high, int[] target, int n)
+        {
+            if(values != null) {
+                for(int i = 0; i < cardinality; i++) {
+                    target[n++] = high | values[i];
+                }
+                return n;
+            }
+            for(int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while(word != 0) {
+                    target[n++] = high | (w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Return the values as a new bitmap.
+         */
+        private long[] toWords()
+        {
+            if(words != null) {
+                return words.clone();
+            }
+            long[] result = new long[WORDS];
+            for(int i = 0; i < cardinality; i++) {
+                result[values[i] >>> 6] |= 1L << values[i];
+            }
+            return result;
+        }
+
+        /**
+         * Change a bitmap to an array if it is small enough.
+         */
+        private void compress()
+        {
+            if(words == null || cardinality > MAX_ARRAY) {
+                return;
+            }
+            values = new char[Math.max(1, cardinality)];
+            int n = 0;
+            for(int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while(word != 0) {
+                    values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            words = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File handles shared by all players in the JVM.
+ * Each file is opened once, however many players are reading it, and
+ * each player reads through its own stream with its own position.
+ * The streams use positional reads, so they do not disturb each other.
+ * A file is closed when its last stream is closed.
+ *
+ * Interrupting a thread while it reads a FileChannel closes the channel,
+ * for every stream sharing it. When that happens the file is opened
+ * again, and the other streams carry on reading; the interrupted
+ * thread's read fails as usual.
+ *
+ * @version 2026.10.19
+ */
+public class SharedFileChannels
+{
+    // The open files, and the number of streams using each.
+    private static final Map<String, Handle> handles = new HashMap<>();
+
+    /**
+     * Open a stream reading a file from the given offset.
+     * @param filename The file to read.
+     * @param offset The position of the first byte to read.
+     * @return The stream.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static InputStream openStream(String filename, long offset) throws IOException
+    {
+        Handle handle;
+        synchronized(handles) {
+            handle = handles.get(filename);
+            if(handle == null) {
+                handle = new Handle(filename,
+                    FileChannel.open(Paths.get(filename), StandardOpenOption.READ));
+                handles.put(filename, handle);
+            }
+            handle.users++;
+        }
+        return new ChannelStream(handle, offset);
+    }
+
+    /**
+     * Return the number of files currently open.
+     * @return The number of open files.
+     */
+    public static int getOpenCount()
+    {
+        synchronized(handles) {
+            return handles.size();
+        }
+    }
+
+    /**
+     * Open a file again after its channel has been closed by an interrupt,
+     * unless another stream has already done so.
+     * @param handle The file.
+     * @param closed The channel that was found closed.
+     * @return The file's open channel.
+     */
+    private static FileChannel reopen(Handle handle, FileChannel closed) throws IOException
+    {
+        synchronized(handles) {
+            if(handle.channel == closed) {
+                handle.channel = FileChannel.open(Paths.get(handle.filename),
+                                                  StandardOpenOption.READ);
+            }
+            return handle.channel;
+        }
+    }
+
+    /**
+     * Stop using a file, closing it if it has no more users.
+     */
+    private static void release(Handle handle)
+    {
+        synchronized(handles) {
+            handle.users--;
+            if(handle.users == 0) {
+                handles.remove(handle.filename);
+                try {
+                    handle.channel.close();
+                }
+                catch(IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * An open file and the number of streams using it.
+     */
+    private static class Handle
+    {
+        final String filename;
+        // The channel, replaced if it is closed by an interrupt.
+        volatile FileChannel channel;
+        int users;
+
+        Handle(String filename, FileChannel channel)
+        {
+            this.filename = filename;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A stream reading a shared file from its own position.
+     */
+    private static class ChannelStream extends InputStream
+    {
+        private final Handle handle;
+        private long position;
+        private boolean closed;
+
+        ChannelStream(Handle handle, long position)
+        {
+            this.handle = handle;
+            this.position = position;
+        }
+
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            if(closed) {
+                throw new IOException("Stream closed");
+            }
+            FileChannel channel = handle.channel;
+            int n;
+            try {
+                n = channel.read(ByteBuffer.wrap(data, offset, length), position);
+            }
+            catch(ClosedByInterruptException e) {
+                // This thread was interrupted; open the file again for the others.
+                reopen(handle, channel);
+                throw e;
+            }
+            catch(ClosedChannelException e) {
+                // Another thread was interrupted while reading, closing the channel.
+                n = reopen(handle, channel).read(ByteBuffer.wrap(data, offset, length), position);
+            }
+            if(n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        public long skip(long n)
+        {
+            position += n;
+            return n;
+        }
+
+        public void close()
+        {
+            if(!closed) {
+                closed = true;
+                release(handle);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Find the leading and trailing silence of a track.
+ * The decoded frames of a track are given to the detector in order.
+ * A frame is audible if its RMS level is above a threshold, and the
+ * audible part of the track starts and ends with a run of audible
+ * frames long enough not to be a click or a burst of noise.
+ *
+ * @version 2026.10.19
+ */
+public class SilenceDetector
+{
+    // The default level below which a frame is silent, in dB relative to full scale.
+    public static final double DEFAULT_THRESHOLD = -50.0;
+    // The number of consecutive audible frames (about 0.2s) that count as sound.
+    private static final int MIN_AUDIBLE_FRAMES = 8;
+
+    // The mean square sample value below which a frame is silent.
+    private double threshold;
+    // The number of frames seen.
+    private int frameCount;
+    // The length of the current run of audible frames.
+    private int run;
+    // The first and last frames of sound, or -1 if none found yet.
+    private int firstAudible;
+    private int lastAudible;
+
+    /**
+     * Create a detector using the default threshold.
+     */
+    public SilenceDetector()
+    {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Create a detector.
+     * @param thresholdDb The level below which a frame is silent, in dB
+     *                    relative to full scale.
+     */
+    public SilenceDetector(double thresholdDb)
+    {
+        double level = 32768 * Math.pow(10, thresholdDb / 20);
+        threshold = level * level;
+        frameCount = 0;
+        run = 0;
+        firstAudible = -1;
+        lastAudible = -1;
+    }
+
+    /**
+     * Add the next frame of the track.
+     * @param samples The decoded samples of the frame.
+     * @param length The number of samples.
+     */
+    public void addFrame(short[] samples, int length)
+    {
+        double sum = 0;
+        for(int i = 0; i < length; i++) {
+            sum += samples[i] * samples[i];
+        }
+        if(length > 0 && sum / length > threshold) {
+            run++;
+            if(run >= MIN_AUDIBLE_FRAMES) {
+                if(firstAudible < 0) {
+                    firstAudible = frameCount - run + 1;
+                }
+                lastAudible = frameCount;
+            }
+        }
+        else {
+            run = 0;
+        }
+        frameCount++;
+    }
+
+    /**
+     * Return the first frame of sound.
+     * @return The first audible frame, or 0 if the track is silent.
+     */
+    public int getStartFrame()
+    {
+        return firstAudible < 0 ? 0 : firstAudible;
+    }
+
+    /**
+     * Return the end of the sound.
+     * @return The frame following the last audible frame, or the number of
+     *         frames if the track is silent.
+     */
+    public int getEndFrame()
+    {
+        return lastAudible < 0 ? frameCount : lastAudible + 1;
+    }
+}
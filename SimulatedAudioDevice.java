@@ -0,0 +1,111 @@
+import java.util.concurrent.locks.LockSupport;
+
+import javazoom.jl.player.AudioDeviceBase;
+
+/**
+ * An audio device that plays nothing, but takes as long to accept
+ * samples as a real device would, for testing output without sound
+ * hardware. It can be made slower than real time, and can stall
+ * at intervals, to simulate a slow or unreliable sink.
+ *
+ * Like a real device it has a buffer: writing returns at once until
+ * the buffer is full, then waits for the simulated playing to catch up.
+ *
+ * @version 2026.10.19
+ */
+public class SimulatedAudioDevice extends AudioDeviceBase
+{
+    // The format.
+    private final int sampleRate;
+    private final int channels;
+    // The size of the simulated device buffer, in frames.
+    private final long bufferFrames;
+    // How fast samples are consumed, as a multiple of real time.
+    private volatile double speed;
+    // How often the device stalls, and for how long, in milliseconds.
+    private volatile long stallInterval;
+    private volatile long stallLength;
+
+    // The time playing started, in nanoseconds, or 0 if not started.
+    private long startNanos;
+    // The frames written since playing started.
+    private long writtenFrames;
+    // The time of the next stall, in nanoseconds.
+    private long nextStall;
+    // The total time spent stalled, in nanoseconds.
+    private long stalledNanos;
+
+    /**
+     * Create a device consuming samples in real time, with a 100ms buffer.
+     * @param sampleRate The sample rate.
+     * @param channels The number of channels.
+     */
+    public SimulatedAudioDevice(int sampleRate, int channels)
+    {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        bufferFrames = sampleRate / 10;
+        speed = 1;
+    }
+
+    /**
+     * Set how fast samples are consumed.
+     * @param speed The multiple of real time; less than 1 is too slow to keep up.
+     */
+    public void setSpeed(double speed)
+    {
+        this.speed = speed;
+    }
+
+    /**
+     * Make the device stall at intervals, as if the system were busy.
+     * @param intervalMillis The time between stalls, or 0 for none.
+     * @param lengthMillis The length of each stall.
+     */
+    public void setStalls(long intervalMillis, long lengthMillis)
+    {
+        stallInterval = intervalMillis;
+        stallLength = lengthMillis;
+    }
+
+    protected void writeImpl(short[] samples, int offset, int length)
+    {
+        long now = System.nanoTime();
+        if(startNanos == 0) {
+            startNanos = now;
+            nextStall = now + stallInterval * 1_000_000;
+        }
+        if(stallInterval > 0 && now >= nextStall) {
+            LockSupport.parkNanos(stallLength * 1_000_000);
+            stalledNanos += stallLength * 1_000_000;
+            nextStall = System.nanoTime() + stallInterval * 1_000_000;
+        }
+        writtenFrames += length / channels;
+        // Wait until the frames beyond the buffer would have been played.
+        long playedBy = startNanos + stalledNanos
+                        + (long) ((writtenFrames - bufferFrames) * 1e9 / (sampleRate * speed));
+        long wait = playedBy - System.nanoTime();
+        if(wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    protected void flushImpl()
+    {
+        long playedBy = startNanos + stalledNanos
+                        + (long) (writtenFrames * 1e9 / (sampleRate * speed));
+        long wait = playedBy - System.nanoTime();
+        if(startNanos != 0 && wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        // The device is empty: the next write starts playing again.
+        startNanos = 0;
+        writtenFrames = 0;
+        stalledNanos = 0;
+    }
+
+    public int getPosition()
+    {
+        return (int) (writtenFrames * 1000 / sampleRate);
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.List;
+
+/**
+ * A playlist of the tracks in a MusicOrganizer that match a TrackQuery.
+ * The matching tracks are found once when the playlist is made, and
+ * then kept up to date as tracks are added, removed and changed, by
+ * testing only the track concerned. A query that refers to the time,
+ * such as "played in 7 days", is evaluated afresh each time the tracks
+ * are asked for.
+ *
+ * @version 2026.10.19
+ */
+public class SmartPlaylist
+{
+    // The rule choosing the tracks.
+    private final TrackQuery query;
+    // The tracks searched.
+    private final TrackColumns columns;
+    // The rows of the matching tracks.
+    private RoaringBitmap rows;
+
+    /**
+     * Create a smart playlist.
+     * @param query The rule choosing the tracks.
+     * @param columns The tracks to choose from.
+     */
+    SmartPlaylist(TrackQuery query, TrackColumns columns)
+    {
+        this.query = query;
+        this.columns = columns;
+        rows = columns.select(query);
+    }
+
+    /**
+     * Return the query.
+     * @return The rule choosing the tracks.
+     */
+    public TrackQuery getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * Return the tracks that currently match.
+     * @return The tracks, in the order they were added to the organizer.
+     */
+    public synchronized List<Track> getTracks()
+    {
+        if(query.isTimeDependent()) {
+            rows = columns.select(query);
+        }
+        return columns.getTracks(rows);
+    }
+
+    /**
+     * Return the number of tracks that currently match.
+     * @return The number of tracks.
+     */
+    public synchronized int size()
+    {
+        if(query.isTimeDependent()) {
+            rows = columns.select(query);
+        }
+        return rows.getCardinality();
+    }
+
+    /**
+     * Update the playlist for a track that has been added or changed.
+     * @param row The track's row.
+     */
+    synchronized void trackChanged(int row)
+    {
+        if(columns.matches(query, row)) {
+            rows.add(row);
+        }
+        else {
+            rows.remove(row);
+        }
+    }
+
+    /**
+     * Update the playlist for a track that has been removed.
+     * @param row The track's former row.
+     */
+    synchronized void trackRemoved(int row)
+    {
+        rows.remove(row);
+    }
+}
@@ -0,0 +1,278 @@
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.AudioDeviceFactory;
+import javazoom.jl.player.FactoryRegistry;
+import javazoom.jl.player.NullAudioDevice;
+
+/**
+ * A benchmark of the startup of MusicPlayerGUI. Each run starts a new
+ * JVM which opens the GUI on the default folder, waits for the library
+ * to be listed, and plays its first track. The time from the JVM starting
+ * to main, to the window opening, to the library being listed and to the first
+ * audio is measured, and the medians of several runs reported.
+ *
+ * With --archive, the runs are made both without and with an AppCDS
+ * archive of the classes loaded at startup. The archive is created by a
+ * first training run if the file does not exist. The classes must be in
+ * jars for the archive to be used, so the classpath should be, for
+ * example, mp3player.jar:+libs/jl1.0.1.jar.
+ *
+ * The GUI needs a display. Run it from the project folder, as the GUI
+ * opens ./audio-files.
+ *
+ * Usage: java StartupBenchmark [runs] [--archive file] [--silent]
+ *
+ * @version 2026.10.19
+ */
+public class StartupBenchmark
+{
+    // The argument that makes a run the measured child.
+    private static final String CHILD = "--child";
+    // How long to wait for each stage of a run, in milliseconds.
+    private static final long TIMEOUT_MILLIS = 30000;
+    // The names of the timings a child reports.
+    private static final String[] STAGES = { "main", "window", "library", "audio" };
+
+    /**
+     * Run the benchmark, or one measured run of it.
+     * @param args The number of runs, and the options.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        long mainNanos = System.nanoTime();
+        int runs = 5;
+        String archive = null;
+        boolean silent = false;
+        boolean child = false;
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case CHILD:
+                    child = true;
+                    break;
+                case "--silent":
+                    silent = true;
+                    break;
+                case "--archive":
+                    if(++i == args.length) {
+                        throw new IllegalArgumentException("--archive needs a file name");
+                    }
+                    archive = args[i];
+                    break;
+                default:
+                    runs = Integer.parseInt(args[i]);
+                    break;
+            }
+        }
+        if(child) {
+            measure(mainNanos, silent);
+            return;
+        }
+
+        String classpath = System.getProperty("java.class.path");
+        report("", run(runs, classpath, silent, null));
+        if(archive != null) {
+            if(!isAllJars(classpath)) {
+                System.out.println("The classpath is not all jars, so the archive will not be used: "
+                                   + classpath);
+            }
+            if(!new File(archive).exists()) {
+                startChild(classpath, silent, "-XX:ArchiveClassesAtExit=" + archive);
+                System.out.println("Created " + archive);
+            }
+            report("AppCDS ", run(runs, classpath, silent, "-XX:SharedArchiveFile=" + archive));
+        }
+    }
+
+    /**
+     * Make a number of measured runs, each in a new JVM.
+     * @param runs The number of runs.
+     * @param classpath The classpath of the child JVMs.
+     * @param silent Whether to play to no device.
+     * @param option An option for the child JVMs, or null.
+     * @return The timings of each stage, in milliseconds, one array per stage.
+     */
+    private static long[][] run(int runs, String classpath, boolean silent, String option)
+        throws Exception
+    {
+        // A first run is not measured, to bring the files into the page cache.
+        startChild(classpath, silent, option);
+        long[][] times = new long[STAGES.length][runs];
+        for(int i = 0; i < runs; i++) {
+            long[] run = startChild(classpath, silent, option);
+            for(int stage = 0; stage < STAGES.length; stage++) {
+                times[stage][i] = run[stage];
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Start a child JVM for one run and read its timings.
+     * @param classpath The classpath of the child JVM.
+     * @param silent Whether to play to no device.
+     * @param option An option for the child JVM, or null.
+     * @return The timing of each stage, in milliseconds, or -1 for a
+     *         stage that was not reached.
+     */
+    private static long[] startChild(String classpath, boolean silent, String option)
+        throws Exception
+    {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if(option != null) {
+            command.add(option);
+        }
+        command.add("-cp");
+        command.add(classpath);
+        command.add(StartupBenchmark.class.getName());
+        command.add(CHILD);
+        if(silent) {
+            command.add("--silent");
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        long[] times = new long[STAGES.length];
+        Arrays.fill(times, -1);
+        try(BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while((line = output.readLine()) != null) {
+                String[] words = line.split(" ");
+                int stage = Arrays.asList(STAGES).indexOf(words[0]);
+                if(stage >= 0 && words.length == 2) {
+                    times[stage] = Long.parseLong(words[1]);
+                }
+                else {
+                    System.out.println("  " + line);
+                }
+            }
+        }
+        process.waitFor();
+        return times;
+    }
+
+    /**
+     * Print the median timing of each stage.
+     * @param label What was measured.
+     * @param times The timings of each stage, one array per stage.
+     */
+    private static void report(String label, long[][] times)
+    {
+        StringBuilder line = new StringBuilder(label);
+        for(int stage = 0; stage < STAGES.length; stage++) {
+            long[] sorted = times[stage].clone();
+            Arrays.sort(sorted);
+            long median = sorted[sorted.length / 2];
+            line.append(String.format("%s %s ms  ", STAGES[stage],
+                                      median < 0 ? "-" : Long.toString(median)));
+        }
+        System.out.println(line.toString().trim() + "  (median of " + times[0].length + ")");
+    }
+
+    /**
+     * Return whether a classpath is made only of jar files, as AppCDS requires.
+     * @param classpath The classpath.
+     * @return true if every entry is a jar.
+     */
+    private static boolean isAllJars(String classpath)
+    {
+        for(String entry : classpath.split(File.pathSeparator)) {
+            if(!entry.endsWith(".jar")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open the GUI and time its startup, printing the time from the JVM
+     * starting to each stage, then exit.
+     * @param mainNanos When main was entered, in nanoseconds.
+     * @param silent Whether to play to no device.
+     */
+    private static void measure(long mainNanos, boolean silent) throws Exception
+    {
+        long mainMillis = System.currentTimeMillis() - (System.nanoTime() - mainNanos) / 1000000;
+        if(silent) {
+            FactoryRegistry.systemRegistry().addFactory(new AudioDeviceFactory() {
+                public AudioDevice createAudioDevice() throws JavaLayerException
+                {
+                    return new NullAudioDevice();
+                }
+            });
+        }
+        final long[] windowMillis = { -1 };
+        final MusicPlayerGUI[] gui = new MusicPlayerGUI[1];
+        SwingUtilities.invokeAndWait(() -> {
+            gui[0] = new MusicPlayerGUI();
+            // The window opened event is posted by setVisible, so it follows this.
+            gui[0].addWindowListener(new WindowAdapter() {
+                public void windowOpened(WindowEvent e)
+                {
+                    synchronized(windowMillis) {
+                        windowMillis[0] = System.currentTimeMillis();
+                        windowMillis.notifyAll();
+                    }
+                }
+            });
+        });
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        synchronized(windowMillis) {
+            while(windowMillis[0] < 0 && System.currentTimeMillis() < deadline) {
+                windowMillis.wait(TIMEOUT_MILLIS);
+            }
+        }
+
+        long libraryMillis = -1;
+        long audioMillis = -1;
+        MusicOrganizer organizer = null;
+        while(System.currentTimeMillis() < deadline
+              && (organizer = gui[0].getOrganizer()) == null) {
+            Thread.sleep(1);
+        }
+        if(organizer != null) {
+            libraryMillis = System.currentTimeMillis();
+            MusicPlayer player = gui[0].getPlayer();
+            if(organizer.getNumberOfTracks() > 0) {
+                player.startPlaying(organizer.getAllTracks(), 0);
+                while(System.currentTimeMillis() < deadline && player.getPositionMillis() <= 0) {
+                    Thread.sleep(1);
+                }
+                if(player.getPositionMillis() > 0) {
+                    audioMillis = System.currentTimeMillis();
+                }
+                player.stop();
+            }
+        }
+
+        // The JVM start time is read last, so as not to slow the startup.
+        long startMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        print("main", mainMillis, startMillis);
+        print("window", windowMillis[0], startMillis);
+        print("library", libraryMillis, startMillis);
+        print("audio", audioMillis, startMillis);
+        System.exit(0);
+    }
+
+    /**
+     * Print the time to a stage.
+     * @param stage The stage.
+     * @param millis When it was reached, or -1 if it was not.
+     * @param startMillis When the JVM started.
+     */
+    private static void print(String stage, long millis, long startMillis)
+    {
+        System.out.println(stage + " " + (millis < 0 ? -1 : millis - startMillis));
+    }
+}
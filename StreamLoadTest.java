@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A load test for StreamServer.
+ * Many clients are connected at once, each requesting the same track,
+ * and all are served from one thread using non-blocking I/O. The test
+ * reports how many streams completed, the total throughput, and the
+ * time to the first byte of each stream.
+ *
+ * Usage: java StreamLoadTest [clients] [track id] [host] [port]
+ * If no host is given, a server for ./audio-files is started in this JVM.
+ *
+ * @version 2026.10.19
+ */
+public class StreamLoadTest
+{
+    /**
+     * Run the load test.
+     * @param args The number of clients, the track id, the host and the port.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int trackId = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        String host = "localhost";
+        int port;
+        if(args.length > 2) {
+            host = args[2];
+            port = args.length > 3 ? Integer.parseInt(args[3]) : StreamServer.DEFAULT_PORT;
+        }
+        else {
+            StreamServer server = new StreamServer(
+                new MusicOrganizer(new java.io.File("./audio-files")), 0);
+            port = server.start();
+        }
+        new StreamLoadTest().run(host, port, clients, trackId);
+    }
+
+    /**
+     * Connect the clients and read all the streams.
+     */
+    public void run(String host, int port, int clients, int trackId) throws IOException
+    {
+        byte[] request = ("GET /tracks/" + trackId + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                         .getBytes(StandardCharsets.ISO_8859_1);
+        Selector selector = Selector.open();
+        long[] firstByte = new long[clients];
+        long startTime = System.nanoTime();
+        for(int i = 0; i < clients; i++) {
+            SocketChannel socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.connect(new InetSocketAddress(host, port));
+            socket.register(selector, SelectionKey.OP_CONNECT, new Client(i, ByteBuffer.wrap(request)));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        long totalBytes = 0;
+        int open = clients;
+        int completed = 0;
+        int failed = 0;
+        while(open > 0) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel socket = (SocketChannel) key.channel();
+                Client client = (Client) key.attachment();
+                try {
+                    if(key.isConnectable()) {
+                        socket.finishConnect();
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    else if(key.isWritable()) {
+                        socket.write(client.request);
+                        if(!client.request.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    }
+                    else if(key.isReadable()) {
+                        buffer.clear();
+                        int n = socket.read(buffer);
+                        if(n > 0) {
+                            if(client.received == 0) {
+                                firstByte[client.id] = System.nanoTime() - startTime;
+                            }
+                            client.received += n;
+                            totalBytes += n;
+                        }
+                        else if(n < 0) {
+                            completed++;
+                            open--;
+                            socket.close();
+                        }
+                    }
+                }
+                catch(IOException e) {
+                    if(failed == 0) {
+                        System.out.println("First failure: " + e);
+                    }
+                    failed++;
+                    open--;
+                    socket.close();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        selector.close();
+
+        Arrays.sort(firstByte);
+        System.out.println(String.format("%d clients: %d completed, %d failed in %.2f s",
+                                         clients, completed, failed, seconds));
+        System.out.println(String.format("Throughput: %.1f MB/s",
+                                         totalBytes / seconds / (1024 * 1024)));
+        System.out.println(String.format("Time to first byte: median %.1f ms, 99th percentile %.1f ms",
+                                         firstByte[clients / 2] / 1e6,
+                                         firstByte[clients * 99 / 100] / 1e6));
+    }
+
+    /**
+     * The state of one client.
+     */
+    private static class Client
+    {
+        final int id;
+        final ByteBuffer request;
+        long received;
+
+        Client(int id, ByteBuffer request)
+        {
+            this.id = id;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+import javazoom.jl.player.AudioDeviceFactory;
+import javazoom.jl.player.FactoryRegistry;
+import javazoom.jl.player.NullAudioDevice;
+
+/**
+ * A test of MusicStreamPlayer against a stand-in server on the loopback
+ * address. The server serves one file, accepts byte ranges, and can be
+ * told to send slowly or to stall. Playing is to no device, so it runs
+ * as fast as the data arrives. The test checks that:
+ *
+ *   - a whole track plays to the end, and its length is right;
+ *   - a seek near the end asks for the byte offset of that time,
+ *     allowing for the ID3 tag;
+ *   - a source sending in bursts causes underruns, and the prebuffer grows;
+ *   - when the source stalls, the getters answer at once, and stop()
+ *     returns promptly and ends the thread reading the source, both
+ *     once playing has started and while the first data is still
+ *     being buffered.
+ *
+ * Usage: java StreamPlayerTest [file]
+ * With no file, the first track in ./audio-files is used.
+ *
+ * @version 2026.10.19
+ */
+public class StreamPlayerTest
+{
+    // How the stand-in server sends the file: STALL stops sending once
+    // playing has started, STALL_AT_START before the prebuffer is full.
+    private enum Behaviour { NORMAL, BURSTS, STALL, STALL_AT_START }
+
+    // The file served.
+    private final File file;
+    // The server, and how it is behaving.
+    private HttpServer server;
+    private volatile Behaviour behaviour;
+    // The offset of the last range asked for, or 0.
+    private final AtomicLong lastRange;
+    // The number of checks failed.
+    private int failures;
+
+    /**
+     * Run the test.
+     * @param args The file to play, if any.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File file;
+        if(args.length > 0) {
+            file = new File(args[0]);
+        }
+        else {
+            file = new File(new MusicOrganizer(new File("./audio-files")).getAllTracks()
+                            .get(0).getFilename());
+        }
+        FactoryRegistry.systemRegistry().addFactory(new AudioDeviceFactory() {
+            public AudioDevice createAudioDevice() throws JavaLayerException
+            {
+                return new NullAudioDevice();
+            }
+        });
+        StreamPlayerTest test = new StreamPlayerTest(file);
+        int failures = test.run();
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Create a test of the given file.
+     * @param file The MP3 file to serve.
+     */
+    public StreamPlayerTest(File file)
+    {
+        this.file = file;
+        behaviour = Behaviour.NORMAL;
+        lastRange = new AtomicLong();
+    }
+
+    /**
+     * Start the server, make all the checks and stop the server.
+     * @return The number of checks failed.
+     */
+    public int run() throws Exception
+    {
+        server = LocalHttpServer.create(0);
+        server.createContext("/", this::serve);
+        server.setExecutor(Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "stand-in-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/track.mp3");
+        FrameIndex index = FrameIndex.scan(file.getPath());
+        try {
+            checkWholeTrack(url, index);
+            checkSeek(url, index);
+            checkBursts(url);
+            checkStall(url, Behaviour.STALL);
+            checkStall(url, Behaviour.STALL_AT_START);
+        }
+        finally {
+            server.stop(0);
+        }
+        return failures;
+    }
+
+    /**
+     * Play the whole track.
+     */
+    private void checkWholeTrack(URL url, FrameIndex index) throws JavaLayerException
+    {
+        behaviour = Behaviour.NORMAL;
+        MusicStreamPlayer player = new MusicStreamPlayer(url);
+        boolean ended = player.play();
+        long expected = index.getLengthMillis();
+        long played = player.getPositionMillis();
+        player.stop();
+        check("whole track plays to the end", ended);
+        check("whole track length " + played + " ms, expected " + expected + " ms",
+              Math.abs(played - expected) <= 100);
+    }
+
+    /**
+     * Seek to near the end of the track, and check the offset asked for.
+     */
+    private void checkSeek(URL url, FrameIndex index) throws JavaLayerException
+    {
+        behaviour = Behaviour.NORMAL;
+        MusicStreamPlayer player = new MusicStreamPlayer(url);
+        // Play a little, so that the bit rate is known.
+        Thread pauser = new Thread(() -> {
+            while(player.getPositionMillis() < 500) {
+                Thread.yield();
+            }
+            player.pause();
+        });
+        pauser.start();
+        player.play();
+        long duration = index.getLengthMillis();
+        long target = duration * 9 / 10;
+        player.seekMillis(target);
+        int frame = (int) (index.millisToSamples(target) / index.getSamplesPerFrame());
+        long expected = index.getOffset(frame);
+        long asked = lastRange.get();
+        int frameLength = (int) (index.getOffset(1) - index.getOffset(0));
+        check("seek to " + target + " ms asks for byte " + asked + ", frame starts at "
+              + expected, Math.abs(asked - expected) <= frameLength);
+        check("seek sets the position", player.getPositionMillis() == target);
+        boolean ended = player.play();
+        long played = player.getPositionMillis();
+        player.stop();
+        check("play after seek ends at " + played + " ms, expected about " + duration + " ms",
+              ended && Math.abs(played - duration) <= 200);
+    }
+
+    /**
+     * Play from a source that sends in bursts with pauses between.
+     */
+    private void checkBursts(URL url) throws JavaLayerException
+    {
+        behaviour = Behaviour.BURSTS;
+        MusicStreamPlayer player = new MusicStreamPlayer(url);
+        player.setBufferSize(256 * 1024, 4 * 1024);
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(3000);
+            }
+            catch(InterruptedException e) {
+            }
+            player.pause();
+        });
+        stopper.start();
+        player.play();
+        int underruns = player.getUnderruns();
+        int prebuffer = player.getPrebuffer();
+        player.stop();
+        check("bursts cause underruns (" + underruns + ")", underruns > 0);
+        check("prebuffer grows after underruns (" + prebuffer + " bytes)", prebuffer > 4 * 1024);
+    }
+
+    /**
+     * Play from a source that stalls, then stop.
+     * @param stall STALL or STALL_AT_START.
+     */
+    private void checkStall(URL url, Behaviour stall) throws Exception
+    {
+        behaviour = stall;
+        String when = stall == Behaviour.STALL ? " while playing" : " while buffering";
+        MusicStreamPlayer player = new MusicStreamPlayer(url);
+        Thread playing = new Thread(() -> {
+            try {
+                player.play();
+            }
+            catch(JavaLayerException e) {
+                System.out.println("Playing failed: " + e.getMessage());
+            }
+        }, "stream-player");
+        playing.start();
+        Thread.sleep(1000);
+        check("player is waiting for the stalled source" + when, playing.isAlive());
+
+        long getters = time(() -> {
+            player.getUnderruns();
+            player.getPrebuffer();
+            player.getPositionMillis();
+        });
+        check("getters answer when stalled" + when + " (" + describe(getters) + ")",
+              getters >= 0 && getters < 100);
+
+        long stopping = time(player::stop);
+        playing.join(2000);
+        check("stop returns when stalled" + when + " (" + describe(stopping) + ")",
+              stopping >= 0 && stopping < 1500);
+        check("playing thread ends after stop" + when, !playing.isAlive());
+        check("source thread ends after stop" + when, !isRunning("jitter-buffer"));
+    }
+
+    /**
+     * Serve the file, or the range of it asked for, as the server is
+     * set to behave.
+     */
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long size = in.length();
+            long first = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if(range != null && range.matches("bytes=[0-9]+-")) {
+                first = Long.parseLong(range.substring(6, range.length() - 1));
+                lastRange.set(first);
+                exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + first + "-" + (size - 1) + "/" + size);
+                exchange.sendResponseHeaders(206, size - first);
+            }
+            else {
+                exchange.sendResponseHeaders(200, size);
+            }
+            in.seek(first);
+            byte[] chunk = new byte[4096];
+            long sent = 0;
+            OutputStream out = exchange.getResponseBody();
+            if(behaviour == Behaviour.STALL_AT_START) {
+                // Well short of the prebuffer, so not even the tag is read.
+                int n = in.read(chunk, 0, 1000);
+                out.write(chunk, 0, n);
+                out.flush();
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            int n;
+            while((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+                sent += n;
+                if(behaviour == Behaviour.BURSTS && sent % (32 * 1024) == 0) {
+                    out.flush();
+                    // Longer than 32KB takes to play, so the buffer runs dry.
+                    Thread.sleep(1500);
+                }
+                else if(behaviour == Behaviour.STALL && sent >= 64 * 1024) {
+                    out.flush();
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+
+            }
+            out.close();
+        }
+        catch(InterruptedException e) {
+            // The test is over.
+        }
+        catch(IOException e) {
+            // The player closed the connection.
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Run a task on another thread, so that the test goes on if it blocks.
+     * @return The time it took, in milliseconds, or -1 if it had not
+     *         finished after a few seconds.
+     */
+    private static long time(Runnable task) throws InterruptedException
+    {
+        Thread thread = new Thread(task, "timed-call");
+        thread.setDaemon(true);
+        long start = System.nanoTime();
+        thread.start();
+        thread.join(5000);
+        return thread.isAlive() ? -1 : (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Describe a time returned by time().
+     */
+    private static String describe(long millis)
+    {
+        return millis < 0 ? "still blocked after 5 s" : millis + " ms";
+    }
+
+    /**
+     * Return whether a thread with the given name is running.
+     */
+    private static boolean isRunning(String name)
+    {
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals(name) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Report the result of a check.
+     */
+    private void check(String description, boolean passed)
+    {
+        System.out.println((passed ? "ok    " : "FAIL  ") + description);
+        if(!passed) {
+            failures++;
+        }
+    }
+}
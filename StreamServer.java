@@ -0,0 +1,671 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * A headless server that makes the tracks of a MusicOrganizer available
+ * over HTTP, so that they can be played by other machines.
+ *
+ * The server understands these requests:
+ *     GET /tracks          a JSON list of the tracks and their ids
+ *     GET /tracks/id       the track's MP3 data; a Range header selects bytes
+ *     GET /tracks/id?start=ms&amp;end=ms
+ *                          the frames covering the given time range
+ * HEAD is accepted in place of GET.
+ *
+ * All connections are served by a single thread using non-blocking I/O.
+ * File data is sent with FileChannel.transferTo, so it is copied from the
+ * file to the socket by the operating system without passing through the
+ * Java heap. Each response closes its connection. A time range needs the
+ * track's frame index; if it is not cached, it is built on another
+ * thread while the request waits, so that the other connections are not
+ * held up by the scan.
+ *
+ * @version 2026.10.19
+ */
+public class StreamServer
+{
+    // The default port to listen on.
+    public static final int DEFAULT_PORT = 8090;
+    // The largest request accepted, in bytes.
+    private static final int MAX_REQUEST = 8192;
+    // The largest amount of file data sent in one write.
+    private static final long CHUNK = 256 * 1024;
+
+    // The tracks that are served. A track's id is its position in this list.
+    private final List<Track> tracks;
+    // The port to listen on.
+    private final int port;
+    // The channel accepting connections.
+    private ServerSocketChannel server;
+    // The selector watching all channels.
+    private Selector selector;
+    // Whether the server should keep running.
+    private volatile boolean running;
+    // The thread that builds frame indexes for requests waiting on them.
+    private final ExecutorService indexer;
+    // Work handed back to the server thread, such as requests whose index is ready.
+    private final Queue<Runnable> tasks;
+
+    /**
+     * Start the server from the command line.
+     * @param args The music folder, and optionally the port.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String dir = args.length > 0 ? args[0] : "./audio-files";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        StreamServer streamServer = new StreamServer(new MusicOrganizer(new File(dir)), port);
+        System.out.println("Serving " + dir + " on port " + port);
+        streamServer.run();
+    }
+
+    /**
+     * Create a server for the tracks of an organizer.
+     * @param organizer The organizer holding the tracks.
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public StreamServer(MusicOrganizer organizer, int port)
+    {
+        this.tracks = organizer.getAllTracks();
+        this.port = port;
+        indexer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "stream-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Start the server on a new thread.
+     * @return The port the server is listening on.
+     */
+    public int start() throws IOException
+    {
+        open();
+        Thread thread = new Thread("stream-server") {
+            public void run()
+            {
+                serve();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Run the server on the current thread until it is stopped.
+     */
+    public void run() throws IOException
+    {
+        open();
+        serve();
+    }
+
+    /**
+     * Stop the server and close all connections.
+     */
+    public void stop()
+    {
+        running = false;
+        if(selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Open the listening socket.
+     */
+    private void open() throws IOException
+    {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+
+    /**
+     * Handle events on all connections until the server is stopped.
+     */
+    private void serve()
+    {
+        try {
+            while(running) {
+                selector.select();
+                Runnable task;
+                while((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if(!key.isValid()) {
+                            continue;
+                        }
+                        if(key.isAcceptable()) {
+                            accept();
+                        }
+                        else if(key.isReadable()) {
+                            ((Connection) key.attachment()).read(key);
+                        }
+                        else if(key.isWritable()) {
+                            ((Connection) key.attachment()).write(key);
+                        }
+                    }
+                    catch(IOException e) {
+                        close(key);
+                    }
+                }
+            }
+        }
+        catch(IOException e) {
+            System.out.println("Stream server stopped: " + e.getMessage());
+        }
+        finally {
+            for(SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            }
+            catch(IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Accept all waiting connections.
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel socket;
+        while((socket = server.accept()) != null) {
+            socket.configureBlocking(false);
+            socket.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    /**
+     * Close a connection and any file it is sending.
+     */
+    private static void close(SelectionKey key)
+    {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch(IOException e) {
+        }
+        Object attachment = key.attachment();
+        if(attachment instanceof Connection) {
+            ((Connection) attachment).closeFile();
+        }
+    }
+
+    /**
+     * The state of one client connection.
+     */
+    private class Connection
+    {
+        // The request read so far.
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+        // The response headers, and any body that is not file data.
+        private ByteBuffer response;
+        // The file being sent, if any.
+        private FileChannel file;
+        // The position of the next byte of the file to send.
+        private long position;
+        // The number of file bytes still to send.
+        private long remaining;
+        // The connection's key in the selector.
+        private SelectionKey key;
+        // Whether only the headers of the response are to be sent.
+        private boolean headOnly;
+
+        /**
+         * Read more of the request, and respond once it is complete.
+         */
+        void read(SelectionKey key) throws IOException
+        {
+            SocketChannel socket = (SocketChannel) key.channel();
+            if(socket.read(request) < 0) {
+                close(key);
+                return;
+            }
+            String text = new String(request.array(), 0, request.position(),
+                                     StandardCharsets.ISO_8859_1);
+            int end = text.indexOf("\r\n\r\n");
+            if(end < 0) {
+                if(!request.hasRemaining()) {
+                    this.key = key;
+                    respond(400, "Bad Request", "text/plain", "Request too large\n");
+                    ready();
+                }
+                return;
+            }
+            this.key = key;
+            // Nothing more is read; the key waits for the response to be ready.
+            key.interestOps(0);
+            handle(text.substring(0, end));
+            if(response != null) {
+                ready();
+            }
+        }
+
+        /**
+         * Start sending the prepared response.
+         */
+        private void ready()
+        {
+            if(headOnly) {
+                remaining = 0;
+                response.limit(indexOfBody(response));
+            }
+            if(key.isValid()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+            else {
+                closeFile();
+            }
+        }
+
+        /**
+         * Send more of the response, closing the connection when it is complete.
+         */
+        void write(SelectionKey key) throws IOException
+        {
+            SocketChannel socket = (SocketChannel) key.channel();
+            if(response.hasRemaining()) {
+                socket.write(response);
+                if(response.hasRemaining()) {
+                    return;
+                }
+            }
+            while(remaining > 0) {
+                long sent = file.transferTo(position, Math.min(remaining, CHUNK), socket);
+                if(sent <= 0) {
+                    // The socket's buffer is full; wait until it can take more.
+                    return;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            close(key);
+        }
+
+        /**
+         * Close the file being sent, if any.
+         */
+        void closeFile()
+        {
+            if(file != null) {
+                try {
+                    file.close();
+                }
+                catch(IOException e) {
+                }
+                file = null;
+            }
+        }
+
+        /**
+         * Prepare the response to a complete request.
+         * @param head The request line and headers.
+         */
+        private void handle(String head)
+        {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if(requestLine.length < 2) {
+                respond(400, "Bad Request", "text/plain", "Bad request\n");
+                return;
+            }
+            String method = requestLine[0];
+            headOnly = method.equals("HEAD");
+            if(!headOnly && !method.equals("GET")) {
+                respond(405, "Method Not Allowed", "text/plain", "Only GET and HEAD are allowed\n");
+                return;
+            }
+            String range = null;
+            for(int i = 1; i < lines.length; i++) {
+                if(lines[i].regionMatches(true, 0, "Range:", 0, 6)) {
+                    range = lines[i].substring(6).trim();
+                }
+            }
+
+            String target = requestLine[1];
+            String query = "";
+            int question = target.indexOf('?');
+            if(question >= 0) {
+                query = target.substring(question + 1);
+                target = target.substring(0, question);
+            }
+
+            if(target.equals("/tracks")) {
+                respond(200, "OK", "application/json", listTracks());
+            }
+            else if(target.startsWith("/tracks/")) {
+                int id;
+                try {
+                    id = Integer.parseInt(target.substring("/tracks/".length()));
+                }
+                catch(NumberFormatException e) {
+                    id = -1;
+                }
+                if(id < 0 || id >= tracks.size()) {
+                    respond(404, "Not Found", "text/plain", "No such track\n");
+                }
+                else {
+                    sendTrack(tracks.get(id), range, query);
+                }
+            }
+            else {
+                respond(404, "Not Found", "text/plain", "Not found\n");
+            }
+        }
+
+        /**
+         * Prepare a response carrying the data of a track. If a time range
+         * is asked for and the track's frame index is not cached, the
+         * index is built on the indexer thread and the response is
+         * prepared when it is ready, leaving response null until then.
+         * @param track The track to send.
+         * @param range The Range header, or null.
+         * @param query The query string; start and end give a time range in ms.
+         */
+        private void sendTrack(final Track track, String range, String query)
+        {
+            try {
+                file = FileChannel.open(Paths.get(track.getFilename()), StandardOpenOption.READ);
+                final long startMillis = getParameter(query, "start");
+                final long endMillis = getParameter(query, "end");
+                if(startMillis >= 0 || endMillis >= 0) {
+                    FrameIndex index = FrameIndexCache.getIfCached(track.getFilename());
+                    if(index != null) {
+                        sendTime(index, startMillis, endMillis);
+                        return;
+                    }
+                    indexer.execute(() -> {
+                        FrameIndex built = null;
+                        try {
+                            built = FrameIndexCache.get(track.getFilename());
+                        }
+                        catch(JavaLayerException | RuntimeException e) {
+                            // Reported as a failure below.
+                        }
+                        final FrameIndex found = built;
+                        tasks.add(() -> indexed(found, startMillis, endMillis));
+                        selector.wakeup();
+                    });
+                    return;
+                }
+                long size = file.size();
+                long[] bytes = range == null ? null : parseRange(range, size);
+                if(bytes == null) {
+                    sendBytes(0, size - 1, false);
+                }
+                else {
+                    sendBytes(bytes[0], bytes[1], true);
+                }
+            }
+            catch(IOException | RuntimeException e) {
+                failed();
+            }
+        }
+
+        /**
+         * Prepare the response to a request that was waiting for a frame
+         * index, and start sending it.
+         * @param index The index, or null if it could not be built.
+         */
+        private void indexed(FrameIndex index, long startMillis, long endMillis)
+        {
+            if(!key.isValid()) {
+                // The connection was closed while the index was built.
+                closeFile();
+                return;
+            }
+            if(index == null) {
+                failed();
+            }
+            else {
+                try {
+                    sendTime(index, startMillis, endMillis);
+                }
+                catch(IOException | RuntimeException e) {
+                    failed();
+                }
+            }
+            ready();
+        }
+
+        /**
+         * Prepare a response carrying the frames covering a time range.
+         * @param index The track's frame index.
+         * @param startMillis The start of the range, or -1 for the start of the track.
+         * @param endMillis The end of the range, or -1 for the end of the track.
+         */
+        private void sendTime(FrameIndex index, long startMillis, long endMillis) throws IOException
+        {
+            long size = file.size();
+            long first = 0;
+            long last = size - 1;
+            int frames = index.getFrameCount();
+            int samplesPerFrame = index.getSamplesPerFrame();
+            if(startMillis >= 0) {
+                int frame = (int) (index.millisToSamples(startMillis) / samplesPerFrame);
+                first = frame < frames ? index.getOffset(frame) : size;
+            }
+            if(endMillis >= 0) {
+                int frame = (int) (index.millisToSamples(endMillis) / samplesPerFrame) + 1;
+                last = (frame < frames ? index.getOffset(frame) : size) - 1;
+            }
+            sendBytes(first, last, false);
+        }
+
+        /**
+         * Prepare a response carrying a range of the file's bytes.
+         * @param first The first byte.
+         * @param last The last byte.
+         * @param partial Whether this is the answer to a Range header.
+         */
+        private void sendBytes(long first, long last, boolean partial) throws IOException
+        {
+            long size = file.size();
+            if(first > last || first >= size) {
+                closeFile();
+                respond(416, "Range Not Satisfiable", "text/plain", "Bad range\n",
+                        "Content-Range: bytes */" + size + "\r\n");
+                return;
+            }
+            position = first;
+            remaining = last - first + 1;
+            String headers = "Accept-Ranges: bytes\r\n";
+            if(partial) {
+                headers += "Content-Range: bytes " + first + "-" + last + "/" + size + "\r\n";
+            }
+            response = header(partial ? 206 : 200, partial ? "Partial Content" : "OK",
+                              "audio/mpeg", remaining, headers);
+        }
+
+        /**
+         * Prepare the response to a track that cannot be read.
+         */
+        private void failed()
+        {
+            closeFile();
+            remaining = 0;
+            respond(500, "Internal Server Error", "text/plain", "Cannot read track\n");
+        }
+
+        /**
+         * Prepare a complete response with a text body.
+         */
+        private void respond(int status, String reason, String type, String body)
+        {
+            respond(status, reason, type, body, "");
+        }
+
+        /**
+         * Prepare a complete response with a text body and extra headers.
+         */
+        private void respond(int status, String reason, String type, String body, String headers)
+        {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer head = header(status, reason, type, bytes.length, headers);
+            response = ByteBuffer.allocate(head.remaining() + bytes.length);
+            response.put(head).put(bytes).flip();
+        }
+    }
+
+    /**
+     * Build the status line and headers of a response.
+     */
+    private static ByteBuffer header(int status, String reason, String type,
+                                     long length, String headers)
+    {
+        String text = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                    + "Content-Type: " + type + "\r\n"
+                    + "Content-Length: " + length + "\r\n"
+                    + headers
+                    + "Connection: close\r\n\r\n";
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Find where the body of a prepared response starts.
+     */
+    private static int indexOfBody(ByteBuffer response)
+    {
+        byte[] bytes = response.array();
+        for(int i = 3; i < response.limit(); i++) {
+            if(bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return response.limit();
+    }
+
+    /**
+     * Parse a Range header asking for a single range of bytes.
+     * A range that starts beyond the end of the file is kept, so that it
+     * can be refused as not satisfiable.
+     * @param range The header's value, such as "bytes=100-199" or "bytes=-500".
+     * @param size The size of the file.
+     * @return The first and last byte, or null if the header is malformed
+     *         or asks for several ranges, in which case it is ignored.
+     */
+    private static long[] parseRange(String range, long size)
+    {
+        if(!range.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if(dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String from = spec.substring(0, dash).trim();
+        String to = spec.substring(dash + 1).trim();
+        if(!from.matches("[0-9]{0,18}") || !to.matches("[0-9]{0,18}")
+           || (from.isEmpty() && to.isEmpty())) {
+            return null;
+        }
+        if(from.isEmpty()) {
+            // A suffix range: the last n bytes.
+            long suffix = Long.parseLong(to);
+            return suffix == 0 ? new long[] { size, size } : new long[] { Math.max(0, size - suffix), size - 1 };
+        }
+        long first = Long.parseLong(from);
+        if(to.isEmpty()) {
+            return new long[] { first, size - 1 };
+        }
+        long last = Long.parseLong(to);
+        if(last < first) {
+            return null;
+        }
+        return new long[] { first, Math.min(last, size - 1) };
+    }
+
+    /**
+     * Return the value of a numeric query parameter.
+     * @return The value, or -1 if it is missing or not a number.
+     */
+    private static long getParameter(String query, String name)
+    {
+        for(String pair : query.split("&")) {
+            if(pair.startsWith(name + "=")) {
+                try {
+                    return Long.parseLong(pair.substring(name.length() + 1));
+                }
+                catch(NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the list of tracks as JSON.
+     */
+    private String listTracks()
+    {
+        StringBuilder json = new StringBuilder("[");
+        for(int id = 0; id < tracks.size(); id++) {
+            Track track = tracks.get(id);
+            if(id > 0) {
+                json.append(",");
+            }
+            json.append("\n  {\"id\": ").append(id)
+                .append(", \"artist\": ").append(quote(track.getArtist()))
+                .append(", \"title\": ").append(quote(track.getTitle()))
+                .append(", \"filename\": ").append(quote(new File(track.getFilename()).getName()))
+                .append("}");
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    /**
+     * Return a string as a JSON string literal.
+     */
+    private static String quote(String text)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for(char c : text.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if(c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
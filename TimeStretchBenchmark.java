@@ -0,0 +1,216 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * A benchmark of the TimeStretcher in each mode at a range of speeds.
+ * For each the benchmark reports the CPU time used per second of audio
+ * played, the speed as a multiple of real time for one stereo stream,
+ * and the latency. With no file a 440Hz tone is stretched and checked:
+ * its pitch should stay at 440Hz, its length should be the tone's
+ * length divided by the speed, and its RMS level should stay that of
+ * the tone. A line that fails the length or level check is marked.
+ *
+ * Usage: java TimeStretchBenchmark [file] [seconds per test]
+ *
+ * @version 2026.10.19
+ */
+public class TimeStretchBenchmark
+{
+    // The speeds measured.
+    private static final double[] SPEEDS = { 0.5, 0.75, 1.0, 1.25, 1.5, 2.0 };
+    // The sample rate of the test tone.
+    private static final int RATE = 44100;
+    // The frequency of the test tone, in Hz.
+    private static final double TONE = 440;
+    // The number of frames in each block, as decoded from an MP3 frame.
+    private static final int BLOCK_FRAMES = 1152;
+    // The most audio read from a file, in seconds.
+    private static final int MAX_FILE_SECONDS = 30;
+    // How far the stretched tone's length may be from that expected, as a fraction.
+    private static final double LENGTH_TOLERANCE = 0.02;
+    // The lowest RMS level of the stretched tone, as a fraction of the tone's.
+    private static final double MIN_LEVEL = 0.9;
+
+    /**
+     * Run the benchmark.
+     * @param args The file, if any, and the seconds per test.
+     */
+    public static void main(String[] args) throws JavaLayerException
+    {
+        String filename = null;
+        double seconds = 2;
+        for(String arg : args) {
+            if(arg.matches("[0-9.]+")) {
+                seconds = Double.parseDouble(arg);
+            }
+            else {
+                filename = arg;
+            }
+        }
+        int rate = RATE;
+        short[] audio;
+        if(filename != null) {
+            PcmReader reader = new PcmReader(filename);
+            audio = read(reader);
+            rate = reader.getSampleRate();
+            reader.close();
+        }
+        else {
+            audio = tone(RATE, RATE * 10);
+        }
+        System.out.printf("%-13s %6s %14s %12s %11s %s%n", "mode", "speed",
+                          "CPU ms per s", "x realtime", "latency ms",
+                          filename == null ? "  pitch Hz  length %   level %" : "");
+        boolean failed = false;
+        for(TimeStretcher.Mode mode : TimeStretcher.Mode.values()) {
+            for(double speed : SPEEDS) {
+                double cpu = cost(audio, rate, mode, speed, seconds);
+                TimeStretcher stretcher = new TimeStretcher(rate, 2, mode);
+                String check = "";
+                if(filename == null) {
+                    double[] result = check(audio, rate, mode, speed);
+                    boolean bad = Math.abs(result[1] - 1) > LENGTH_TOLERANCE
+                                  || result[2] < MIN_LEVEL;
+                    failed |= bad;
+                    check = String.format("%10.1f %9.1f %9.1f%s", result[0], result[1] * 100,
+                                          result[2] * 100, bad ? "  FAIL" : "");
+                }
+                System.out.printf("%-13s %6.2f %14.2f %12.0f %11.1f %s%n", mode, speed,
+                                  cpu * 1000, 1 / cpu,
+                                  stretcher.getLatency() * 1000.0 / rate, check);
+            }
+        }
+        if(failed) {
+            System.out.println("The stretched tone was the wrong length or level.");
+        }
+    }
+
+    /**
+     * Measure the CPU time used to produce one second of stretched audio.
+     * @return The CPU time, in seconds.
+     */
+    private static double cost(short[] audio, int rate, TimeStretcher.Mode mode,
+                               double speed, double seconds)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        TimeStretcher stretcher = new TimeStretcher(rate, 2, mode);
+        stretcher.setSpeed(speed);
+        int block = BLOCK_FRAMES * 2;
+        long runNanos = (long) (seconds * 1e9);
+        // Run once untimed, so that the timed run is compiled.
+        for(int pass = 0; pass < 2; pass++) {
+            long produced = 0;
+            long start = System.nanoTime();
+            long cpu = threads.getCurrentThreadCpuTime();
+            int position = 0;
+            while(System.nanoTime() - start < runNanos) {
+                if(position + block > audio.length) {
+                    position = 0;
+                }
+                produced += stretcher.process(audio, position, block);
+                position += block;
+            }
+            if(pass == 1) {
+                double used = (threads.getCurrentThreadCpuTime() - cpu) / 1e9;
+                return used / ((double) produced / 2 / rate);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stretch the whole tone in one call, as TimeStretcher.stretch does,
+     * so that the output grows while it is being produced, and measure
+     * it: its frequency, by counting the times it rises through zero,
+     * its length against the length expected at the speed, and its RMS
+     * level against the tone's.
+     * @return The frequency in Hz, the length as a fraction of that
+     *         expected, and the level as a fraction of the tone's.
+     */
+    private static double[] check(short[] audio, int rate, TimeStretcher.Mode mode, double speed)
+    {
+        TimeStretcher stretcher = new TimeStretcher(rate, 2, mode);
+        stretcher.setSpeed(speed);
+        int count = stretcher.process(audio, 0, audio.length);
+        short[] output = stretcher.getOutput();
+        // The input still held (the latency) is not yet output.
+        double expected = (audio.length / 2 - stretcher.getLatency()) / speed;
+        double length = count / 2 / expected;
+        // Skip the start, while the first segments fade in.
+        int skip = rate / 10;
+        double level = rms(output, 2 * skip, count) / rms(audio, 0, audio.length);
+
+        int crossings = 0;
+        int first = -1;
+        int last = -1;
+        for(int i = skip; i + 1 < count / 2; i++) {
+            if(output[2 * i] < 0 && output[2 * i + 2] >= 0) {
+                if(first < 0) {
+                    first = i;
+                }
+                else {
+                    crossings++;
+                    last = i;
+                }
+            }
+        }
+        double pitch = last > first ? (double) crossings * rate / (last - first) : 0;
+        return new double[] { pitch, length, level };
+    }
+
+    /**
+     * Return the RMS level of a range of samples.
+     */
+    private static double rms(short[] samples, int from, int to)
+    {
+        double sum = 0;
+        for(int i = from; i < to; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return to > from ? Math.sqrt(sum / (to - from)) : 0;
+    }
+
+    /**
+     * Decode the start of a file to stereo samples.
+     */
+    private static short[] read(PcmReader reader) throws JavaLayerException
+    {
+        short[] samples = new short[0];
+        int length = 0;
+        SampleBuffer frame;
+        while((frame = reader.readFrame()) != null
+              && length < reader.getSampleRate() * MAX_FILE_SECONDS * 2) {
+            short[] buffer = frame.getBuffer();
+            int count = frame.getBufferLength();
+            boolean mono = frame.getChannelCount() == 1;
+            if(samples.length < length + 2 * count) {
+                samples = Arrays.copyOf(samples, 2 * (length + 2 * count));
+            }
+            for(int i = 0; i < count; i++) {
+                samples[length++] = buffer[i];
+                if(mono) {
+                    samples[length++] = buffer[i];
+                }
+            }
+        }
+        return Arrays.copyOf(samples, length);
+    }
+
+    /**
+     * Make a stereo sine wave.
+     */
+    private static short[] tone(int rate, int frames)
+    {
+        short[] samples = new short[frames * 2];
+        for(int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(16000 * Math.sin(2 * Math.PI * TONE * i / rate));
+            samples[2 * i] = sample;
+            samples[2 * i + 1] = sample;
+        }
+        return samples;
+    }
+}
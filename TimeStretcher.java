@@ -0,0 +1,348 @@
+import java.util.Arrays;
+
+/**
+ * Change the speed of interleaved 16-bit samples without changing their
+ * pitch, using WSOLA (waveform similarity overlap-add).
+ * The output is built from overlapping Hann-windowed segments of the
+ * input, one every half window. Each segment is taken from about
+ * speed times further along the input than the one before, but its
+ * exact position is chosen, within a small tolerance, to be the one
+ * most like the input that naturally followed the previous segment,
+ * so the segments join without a break in the waveform.
+ *
+ * The mode sets the length of the segments and how thoroughly the
+ * tolerance is searched, which trades latency and CPU time against
+ * smoothness. Samples are kept between calls, so a stream may be
+ * stretched in blocks of any size, and the speed may be changed
+ * between blocks.
+ *
+ * @version 2026.10.19
+ */
+public class TimeStretcher
+{
+    /**
+     * The length of segments and thoroughness of the search.
+     */
+    public enum Mode {
+        // 20ms segments, searched coarsely then refined: about 20ms
+        // latency, for changing the speed while listening.
+        LOW_LATENCY(20, 6, 4),
+        // 50ms segments, every position searched: smoother, especially
+        // for music, at more latency and CPU time.
+        HIGH_QUALITY(50, 15, 1);
+
+        // The length of a segment, in milliseconds.
+        final int windowMillis;
+        // How far a segment may be moved from its nominal position, in milliseconds.
+        final int toleranceMillis;
+        // The step of the coarse search, and of the samples it compares.
+        final int stride;
+
+        Mode(int windowMillis, int toleranceMillis, int stride)
+        {
+            this.windowMillis = windowMillis;
+            this.toleranceMillis = toleranceMillis;
+            this.stride = stride;
+        }
+    }
+
+    // The slowest and fastest speeds.
+    public static final double MIN_SPEED = 0.5;
+    public static final double MAX_SPEED = 2.0;
+
+    // The number of channels.
+    private final int channels;
+    // The mode.
+    private final Mode mode;
+    // The length of a segment, and the step between segments in the
+    // output (half a segment), in frames.
+    private final int window;
+    private final int hop;
+    // How far a segment may be moved from its nominal position, in frames.
+    private final int tolerance;
+    // The Hann window applied to each segment.
+    private final float[] shape;
+    // The speed: input frames consumed per output frame.
+    private double speed;
+
+    // The input samples of each channel, and their sum, which is what
+    // segments are compared by.
+    private float[][] input;
+    private float[] mix;
+    // The number of input frames held.
+    private int held;
+    // The nominal position of the next segment, in input frames.
+    private double nominal;
+    // The position of the previous segment, if there is one.
+    private int previous;
+    private boolean started;
+    // The second half of the previous segment, windowed, waiting to be
+    // added to the first half of the next.
+    private float[][] overlap;
+    // The stretched samples.
+    private short[] output;
+
+    /**
+     * Create a time stretcher at normal speed.
+     * @param sampleRate The sample rate.
+     * @param channels The number of interleaved channels.
+     * @param mode The length of segments and thoroughness of the search.
+     */
+    public TimeStretcher(int sampleRate, int channels, Mode mode)
+    {
+        this.channels = channels;
+        this.mode = mode;
+        hop = Math.max(1, sampleRate * mode.windowMillis / 2000);
+        window = 2 * hop;
+        tolerance = sampleRate * mode.toleranceMillis / 1000;
+        shape = new float[window];
+        for(int i = 0; i < window; i++) {
+            shape[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / window));
+        }
+        speed = 1;
+        input = new float[channels][window * 4];
+        mix = new float[window * 4];
+        overlap = new float[channels][hop];
+        output = new short[0];
+        reset();
+    }
+
+    /**
+     * Return the mode.
+     * @return The mode.
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Set the speed. It takes effect from the next segment.
+     * @param speed The speed, from MIN_SPEED to MAX_SPEED; 1 is normal.
+     */
+    public void setSpeed(double speed)
+    {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    /**
+     * Return the speed.
+     * @return The speed; 1 is normal.
+     */
+    public double getSpeed()
+    {
+        return speed;
+    }
+
+    /**
+     * Stretch a block of samples. The stretched samples are
+     * available from getOutput() until the next call.
+     * @param samples The interleaved input samples.
+     * @param offset The position of the first sample.
+     * @param length The number of samples; a whole number of frames.
+     * @return The number of output samples.
+     */
+    public int process(short[] samples, int offset, int length)
+    {
+        int frames = length / channels;
+        ensureInput(held + frames);
+        for(int i = 0; i < frames; i++) {
+            mix[held + i] = 0;
+        }
+        for(int c = 0; c < channels; c++) {
+            float[] channel = input[c];
+            for(int i = 0; i < frames; i++) {
+                float sample = samples[offset + i * channels + c];
+                channel[held + i] = sample;
+                mix[held + i] += sample;
+            }
+        }
+        held += frames;
+
+        int produced = 0;
+        while((int) Math.round(nominal) + tolerance + window <= held) {
+            int centre = (int) Math.round(nominal);
+            int chosen = started ? search(centre, previous + hop) : centre;
+            ensureOutput((produced + hop) * channels);
+            for(int c = 0; c < channels; c++) {
+                float[] channel = input[c];
+                float[] tail = overlap[c];
+                for(int i = 0; i < hop; i++) {
+                    int sample = Math.round(tail[i] + shape[i] * channel[chosen + i]);
+                    output[(produced + i) * channels + c] =
+                        (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+                    tail[i] = shape[hop + i] * channel[chosen + hop + i];
+                }
+            }
+            produced += hop;
+            previous = chosen;
+            started = true;
+            nominal += speed * hop;
+        }
+
+        // Keep the frames still needed by the next segment and the search.
+        int first = (int) Math.max(0, Math.min(held, Math.round(nominal) - tolerance));
+        if(started) {
+            first = Math.min(first, previous + hop);
+        }
+        if(first > 0) {
+            for(int c = 0; c < channels; c++) {
+                System.arraycopy(input[c], first, input[c], 0, held - first);
+            }
+            System.arraycopy(mix, first, mix, 0, held - first);
+            held -= first;
+            nominal -= first;
+            previous -= first;
+        }
+        return produced * channels;
+    }
+
+    /**
+     * Stretch the input still held, as at the end of a stream, by
+     * following it with silence. The samples are available from
+     * getOutput() until the next call.
+     * @return The number of output samples.
+     */
+    public int flush()
+    {
+        short[] silence = new short[(window + tolerance) * channels];
+        return process(silence, 0, silence.length);
+    }
+
+    /**
+     * Return the samples stretched by the last call of process().
+     * @return The stretched samples; only the number returned by process() are valid.
+     */
+    public short[] getOutput()
+    {
+        return output;
+    }
+
+    /**
+     * Forget all input, as at the start of a new stream.
+     */
+    public void reset()
+    {
+        held = 0;
+        nominal = 0;
+        previous = 0;
+        started = false;
+        for(float[] tail : overlap) {
+            Arrays.fill(tail, 0);
+        }
+    }
+
+    /**
+     * Return the delay introduced by the stretching.
+     * @return The delay, in input frames.
+     */
+    public int getLatency()
+    {
+        return window + tolerance;
+    }
+
+    /**
+     * Stretch a whole recording in high quality.
+     * @param samples The interleaved samples.
+     * @param sampleRate The sample rate.
+     * @param channels The number of channels.
+     * @param speed The speed, from MIN_SPEED to MAX_SPEED.
+     * @return The stretched samples.
+     */
+    public static short[] stretch(short[] samples, int sampleRate, int channels, double speed)
+    {
+        TimeStretcher stretcher = new TimeStretcher(sampleRate, channels, Mode.HIGH_QUALITY);
+        stretcher.setSpeed(speed);
+        int count = stretcher.process(samples, 0, samples.length);
+        short[] result = Arrays.copyOf(stretcher.getOutput(), count);
+        int rest = stretcher.flush();
+        // Only as much as the input was stretched to, without the silence.
+        int length = Math.min(count + rest,
+                              (int) Math.round(samples.length / channels / stretcher.getSpeed()) * channels);
+        result = Arrays.copyOf(result, Math.max(count, length));
+        System.arraycopy(stretcher.getOutput(), 0, result, count, result.length - count);
+        return result;
+    }
+
+    /**
+     * Return the position, within the tolerance of centre, of the
+     * segment most like the input at natural.
+     */
+    private int search(int centre, int natural)
+    {
+        int lowest = Math.max(0, centre - tolerance);
+        int highest = centre + tolerance;
+        if(natural >= lowest && natural <= highest) {
+            // The input that follows on is itself within reach.
+            return natural;
+        }
+        int stride = mode.stride;
+        int best = lowest;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for(int k = lowest; k <= highest; k += stride) {
+            double score = similarity(k, natural, stride);
+            if(score > bestScore) {
+                bestScore = score;
+                best = k;
+            }
+        }
+        if(stride > 1) {
+            // Refine around the best coarse position, comparing every frame.
+            int from = Math.max(lowest, best - stride + 1);
+            int to = Math.min(highest, best + stride - 1);
+            bestScore = Double.NEGATIVE_INFINITY;
+            for(int k = from; k <= to; k++) {
+                double score = similarity(k, natural, 1);
+                if(score > bestScore) {
+                    bestScore = score;
+                    best = k;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the normalised correlation of the half segments starting
+     * at candidate and natural, comparing every step-th frame.
+     */
+    private double similarity(int candidate, int natural, int step)
+    {
+        double product = 0;
+        double energy = 0;
+        for(int i = 0; i < hop; i += step) {
+            float sample = mix[candidate + i];
+            product += sample * mix[natural + i];
+            energy += sample * sample;
+        }
+        return energy == 0 ? 0 : product / Math.sqrt(energy);
+    }
+
+    /**
+     * Make room for the given number of input frames per channel.
+     */
+    private void ensureInput(int frames)
+    {
+        if(mix.length < frames) {
+            for(int c = 0; c < channels; c++) {
+                float[] larger = new float[frames * 2];
+                System.arraycopy(input[c], 0, larger, 0, held);
+                input[c] = larger;
+            }
+            float[] larger = new float[frames * 2];
+            System.arraycopy(mix, 0, larger, 0, held);
+            mix = larger;
+        }
+    }
+
+    /**
+     * Make room for the given number of output samples, keeping those
+     * already produced.
+     */
+    private void ensureOutput(int samples)
+    {
+        if(output.length < samples) {
+            output = Arrays.copyOf(output, samples * 2);
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Store the details of a music track,
  * such as the artist, title, and file name.
@@ -15,6 +20,29 @@ public class Track
     private String title;
     // Where the track is stored.
     private String filename;
+    // The album and genre, or "" if not known.
+    private String album;
+    private String genre;
+    // The year of release, or 0 if not known.
+    private int year;
+    // The number of times the track has been played, and the time it
+    // was last played (in milliseconds since 1970), or 0 if never.
+    private int playCount;
+    private long lastPlayed;
+    // The results of loudness analysis, which are set by the analyzer's
+    // thread and read by the player's.
+    // The gain (in dB) that brings the track to the reference level.
+    private volatile double trackGain;
+    // The gain (in dB) that brings the track's album to the reference level.
+    private volatile double albumGain;
+    // The largest sample, as a fraction of full scale.
+    private volatile double peak;
+    // The first audible frame.
+    private volatile int startFrame;
+    // The frame following the last audible frame, or -1 if not known.
+    private volatile int endFrame;
+    // Named positions in the track, in samples per channel, in the order added.
+    private final Map<String, Long> cues = new LinkedHashMap<>();
     
     // Names for the available fields.
     public static final String[] FIELDS = {
@@ -32,6 +60,7 @@ public class Track
     public Track(String artist, String title, String filename)
     {
         setDetails(artist, title, filename);
+        endFrame = -1;
     }
     
     /**
@@ -43,6 +72,7 @@ public class Track
     public Track(String filename)
     {
         setDetails("unknown", "unknown", filename);
+        endFrame = -1;
     }
     
     /**
@@ -72,6 +102,197 @@ public class Track
         return filename;
     }
     
+    /**
+     * Return the album.
+     * @return The album, or "" if not known.
+     */
+    public String getAlbum()
+    {
+        return album;
+    }
+    
+    /**
+     * Return the genre.
+     * @return The genre, or "" if not known.
+     */
+    public String getGenre()
+    {
+        return genre;
+    }
+    
+    /**
+     * Return the year of release.
+     * @return The year, or 0 if not known.
+     */
+    public int getYear()
+    {
+        return year;
+    }
+    
+    /**
+     * Set the details read from the track's tag.
+     * @param album The album, or "" if not known.
+     * @param genre The genre, or "" if not known.
+     * @param year The year of release, or 0 if not known.
+     */
+    public void setTags(String album, String genre, int year)
+    {
+        this.album = album;
+        this.genre = genre;
+        this.year = year;
+    }
+    
+    /**
+     * Return the number of times the track has been played.
+     * @return The play count.
+     */
+    public synchronized int getPlayCount()
+    {
+        return playCount;
+    }
+    
+    /**
+     * Return the time the track was last played.
+     * @return The time, in milliseconds since 1970, or 0 if never played.
+     */
+    public synchronized long getLastPlayed()
+    {
+        return lastPlayed;
+    }
+    
+    /**
+     * Record that the track has been played.
+     * @param time The time it was played, in milliseconds since 1970.
+     */
+    public synchronized void recordPlay(long time)
+    {
+        playCount++;
+        lastPlayed = Math.max(lastPlayed, time);
+    }
+
+    /**
+     * Set the play count and the time last played, as when they are
+     * restored from a play history.
+     * @param playCount The number of times the track has been played.
+     * @param lastPlayed The time it was last played, in milliseconds since 1970.
+     */
+    public synchronized void setPlays(int playCount, long lastPlayed)
+    {
+        this.playCount = playCount;
+        this.lastPlayed = lastPlayed;
+    }
+
+    /**
+     * Return the track gain.
+     * This is 0 until the track's loudness has been analyzed.
+     * @return The gain in dB that brings the track to the reference level.
+     */
+    public double getTrackGain()
+    {
+        return trackGain;
+    }
+    
+    /**
+     * Return the album gain.
+     * This is 0 until the track's loudness has been analyzed.
+     * @return The gain in dB that brings the album to the reference level.
+     */
+    public double getAlbumGain()
+    {
+        return albumGain;
+    }
+    
+    /**
+     * Return the peak level.
+     * @return The largest sample, as a fraction of full scale.
+     */
+    public double getPeak()
+    {
+        return peak;
+    }
+    
+    /**
+     * Set the results of loudness analysis.
+     * @param trackGain The gain in dB for the track.
+     * @param albumGain The gain in dB for the track's album.
+     * @param peak The largest sample, as a fraction of full scale.
+     */
+    public void setLoudness(double trackGain, double albumGain, double peak)
+    {
+        this.trackGain = trackGain;
+        this.albumGain = albumGain;
+        this.peak = peak;
+    }
+    
+    /**
+     * Return the first audible frame.
+     * This is 0 until the track's silence has been analyzed.
+     * @return The frame at which playing should start.
+     */
+    public int getStartFrame()
+    {
+        return startFrame;
+    }
+    
+    /**
+     * Return the end of the audible part of the track.
+     * @return The frame following the last audible frame, or -1 if not known.
+     */
+    public int getEndFrame()
+    {
+        return endFrame;
+    }
+    
+    /**
+     * Set the audible part of the track, excluding leading and trailing silence.
+     * @param startFrame The first audible frame.
+     * @param endFrame The frame following the last audible frame.
+     */
+    public void setTrim(int startFrame, int endFrame)
+    {
+        this.startFrame = startFrame;
+        this.endFrame = endFrame;
+    }
+    
+    /**
+     * Set a named cue point, replacing any with the same name.
+     * @param name The name of the cue point.
+     * @param sample The position, in samples per channel.
+     */
+    public synchronized void setCue(String name, long sample)
+    {
+        cues.put(name, sample);
+    }
+    
+    /**
+     * Return the position of a named cue point.
+     * @param name The name of the cue point.
+     * @return The position, in samples per channel, or -1 if there is no such cue.
+     */
+    public synchronized long getCue(String name)
+    {
+        Long sample = cues.get(name);
+        return sample == null ? -1 : sample;
+    }
+    
+    /**
+     * Remove a named cue point.
+     * @param name The name of the cue point.
+     */
+    public synchronized void removeCue(String name)
+    {
+        cues.remove(name);
+    }
+    
+    /**
+     * Return the names of the cue points.
+     * @return The names, in the order the cues were added.
+     */
+    public synchronized List<String> getCueNames()
+    {
+        return new ArrayList<>(cues.keySet());
+    }
+    
     /**
      * Return the value of the named field.
      * The field should be an element of Track.FIELDS
@@ -127,6 +348,8 @@ public class Track
         this.artist = artist;
         this.title = title;
         this.filename = filename;
+        album = "";
+        genre = "";
     }
     
 }
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * The tracks of a MusicOrganizer arranged for fast searching by
+ * TrackQuery. Each track has a row, which does not change while the
+ * track is held. Numbers (year, play count, time last played) are held
+ * in primitive arrays, one per field, which are scanned in parallel in
+ * chunks of rows. Fields with few distinct values (artist, album and
+ * genre) are indexed: for each value, a RoaringBitmap of the rows that
+ * have it, so a condition on the field is decided once per distinct
+ * value rather than once per track.
+ *
+ * @version 2026.10.19
+ */
+public class TrackColumns
+{
+    // The fields indexed by value.
+    static final String[] INDEXED = { "artist", "album", "genre" };
+    // The text fields scanned row by row.
+    static final String[] TEXT = { "title", "filename" };
+    // The number fields.
+    static final String[] NUMBERS = { "year", "plays" };
+
+    // The track in each row, or null if it has been removed.
+    private final List<Track> tracks;
+    // The row of each track.
+    private final Map<Track, Integer> rows;
+    // The rows holding tracks.
+    private RoaringBitmap live;
+    // The number fields, by row.
+    private int[] years;
+    private int[] plays;
+    private long[] lastPlayed;
+    // The indexed fields: for each, the rows having each value (in lower case).
+    private final Map<String, Map<String, RoaringBitmap>> indexes;
+    // The value of each indexed field in each row, to find its bitmap on removal.
+    private final Map<String, List<String>> indexedValues;
+
+    /**
+     * Create an empty set of columns.
+     */
+    public TrackColumns()
+    {
+        tracks = new ArrayList<>();
+        rows = new IdentityHashMap<>();
+        live = new RoaringBitmap();
+        years = new int[16];
+        plays = new int[16];
+        lastPlayed = new long[16];
+        indexes = new HashMap<>();
+        indexedValues = new HashMap<>();
+        for(String field : INDEXED) {
+            indexes.put(field, new HashMap<>());
+            indexedValues.put(field, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Add a track in a new row.
+     * @param track The track.
+     * @return The row.
+     */
+    public synchronized int add(Track track)
+    {
+        int row = tracks.size();
+        tracks.add(track);
+        rows.put(track, row);
+        if(row == years.length) {
+            years = Arrays.copyOf(years, row * 2);
+            plays = Arrays.copyOf(plays, row * 2);
+            lastPlayed = Arrays.copyOf(lastPlayed, row * 2);
+        }
+        for(String field : INDEXED) {
+            indexedValues.get(field).add(null);
+        }
+        store(row, track);
+        live.add(row);
+        return row;
+    }
+
+    /**
+     * Remove a track. Its row is not reused.
+     * @param track The track.
+     * @return The row it was in, or -1 if it was not held.
+     */
+    public synchronized int remove(Track track)
+    {
+        Integer row = rows.remove(track);
+        if(row == null) {
+            return -1;
+        }
+        unindex(row);
+        tracks.set(row, null);
+        live.remove(row);
+        return row;
+    }
+
+    /**
+     * Bring the row of a track up to date after its details have changed.
+     * @param track The track.
+     * @return Its row, or -1 if it is not held.
+     */
+    public synchronized int update(Track track)
+    {
+        Integer row = rows.get(track);
+        if(row == null) {
+            return -1;
+        }
+        unindex(row);
+        store(row, track);
+        return row;
+    }
+
+    /**
+     * Return the track in a row.
+     * @param row The row.
+     * @return The track, or null if it has been removed.
+     */
+    public synchronized Track getTrack(int row)
+    {
+        return tracks.get(row);
+    }
+
+    /**
+     * Return the tracks in the given rows.
+     * @param selected The rows.
+     * @return The tracks, in row order.
+     */
+    public synchronized List<Track> getTracks(RoaringBitmap selected)
+    {
+        List<Track> result = new ArrayList<>();
+        for(int row : selected.toArray()) {
+            Track track = tracks.get(row);
+            if(track != null) {
+                result.add(track);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the rows of the tracks matching a query.
+     * @param query The query.
+     * @return The rows.
+     */
+    public synchronized RoaringBitmap select(TrackQuery query)
+    {
+        return query.select(this, System.currentTimeMillis());
+    }
+
+    /**
+     * Return whether the track in a row matches a query.
+     * @param query The query.
+     * @param row The row.
+     * @return true if the row holds a track that matches.
+     */
+    public synchronized boolean matches(TrackQuery query, int row)
+    {
+        return tracks.get(row) != null && query.matches(this, row, System.currentTimeMillis());
+    }
+
+    /**
+     * Return the rows holding tracks.
+     * @return A copy of the set of rows.
+     */
+    public synchronized RoaringBitmap getLive()
+    {
+        return RoaringBitmap.or(live, new RoaringBitmap());
+    }
+
+    /**
+     * Return the rows of tracks whose indexed field has a value accepted
+     * by a test. The test is applied once to each distinct value.
+     * @param field The field; one of INDEXED.
+     * @param test The test of a value, in lower case.
+     * @return The rows.
+     */
+    synchronized RoaringBitmap selectIndexed(String field, Predicate<String> test)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        for(Map.Entry<String, RoaringBitmap> entry : indexes.get(field).entrySet()) {
+            if(test.test(entry.getKey())) {
+                result = RoaringBitmap.or(result, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the rows accepted by a test, testing the rows in parallel,
+     * one chunk of RoaringBitmap.CHUNK rows per task.
+     * @param test The test of a row.
+     * @return The rows, excluding removed ones.
+     */
+    synchronized RoaringBitmap selectRows(IntPredicate test)
+    {
+        int size = tracks.size();
+        int chunkCount = (size + RoaringBitmap.CHUNK - 1) / RoaringBitmap.CHUNK;
+        long[][] chunks = new long[chunkCount][];
+        IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+            long[] words = new long[RoaringBitmap.CHUNK / 64];
+            int first = chunk * RoaringBitmap.CHUNK;
+            int last = Math.min(size, first + RoaringBitmap.CHUNK);
+            for(int row = first; row < last; row++) {
+                if(test.test(row)) {
+                    words[(row - first) >>> 6] |= 1L << row;
+                }
+            }
+            chunks[chunk] = words;
+        });
+        RoaringBitmap result = new RoaringBitmap();
+        for(int chunk = 0; chunk < chunkCount; chunk++) {
+            result.addChunk(chunk, chunks[chunk]);
+        }
+        return RoaringBitmap.and(result, live);
+    }
+
+    /**
+     * Return the value of a number field in a row.
+     * @param field The field; one of NUMBERS.
+     * @param row The row.
+     * @return The value.
+     */
+    long getNumber(String field, int row)
+    {
+        return field.equals("year") ? years[row] : plays[row];
+    }
+
+    /**
+     * Return the time the track in a row was last played.
+     * @param row The row.
+     * @return The time, in milliseconds since 1970, or 0 if never played.
+     */
+    long getLastPlayed(int row)
+    {
+        return lastPlayed[row];
+    }
+
+    /**
+     * Return the value of a text or indexed field in a row, in lower case.
+     * @param field The field.
+     * @param row The row.
+     * @return The value, or "" if the row has been removed.
+     */
+    String getText(String field, int row)
+    {
+        Track track = tracks.get(row);
+        if(track == null) {
+            return "";
+        }
+        switch(field) {
+            case "title":
+                return track.getTitle().toLowerCase();
+            case "filename":
+                return track.getFilename().toLowerCase();
+            default:
+                String value = indexedValues.get(field).get(row);
+                return value == null ? "" : value;
+        }
+    }
+
+    /**
+     * Copy a track's details into its row, and index them.
+     */
+    private void store(int row, Track track)
+    {
+        years[row] = track.getYear();
+        plays[row] = track.getPlayCount();
+        lastPlayed[row] = track.getLastPlayed();
+        String[] values = { track.getArtist(), track.getAlbum(), track.getGenre() };
+        for(int f = 0; f < INDEXED.length; f++) {
+            String value = values[f].toLowerCase();
+            indexedValues.get(INDEXED[f]).set(row, value);
+            indexes.get(INDEXED[f]).computeIfAbsent(value, v -> new RoaringBitmap()).add(row);
+        }
+    }
+
+    /**
+     * Remove a row from the indexes.
+     */
+    private void unindex(int row)
+    {
+        for(String field : INDEXED) {
+            String value = indexedValues.get(field).get(row);
+            Map<String, RoaringBitmap> index = indexes.get(field);
+            RoaringBitmap bitmap = index.get(value);
+            if(bitmap != null) {
+                bitmap.remove(row);
+                if(bitmap.getCardinality() == 0) {
+                    index.remove(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A rule choosing tracks, as used by smart playlists, such as
+ *
+ *     genre = blues AND year < 1940 AND NOT played in 7 days
+ *
+ * A query is made of conditions joined by AND and OR and negated by
+ * NOT, with parentheses for grouping. A condition is either
+ *
+ *     field op value
+ *
+ * where the field is artist, album, genre, title or filename (compared
+ * as text, ignoring case) or year or plays (compared as numbers), and
+ * the op is one of = != < <= > >= or ~ (contains; text only); or
+ *
+ *     played in n days
+ *
+ * (or hours, or weeks), which is true of tracks played that recently.
+ * Values containing spaces are written in double quotes.
+ *
+ * A query is compiled once, and can then select the matching rows of
+ * a TrackColumns all at once, or test a single row.
+ *
+ * @version 2026.10.19
+ */
+public class TrackQuery
+{
+    // The pieces of a query: quoted text, operators, parentheses and words.
+    private static final Pattern TOKEN =
+        Pattern.compile("\\s*(\"[^\"]*\"|<=|>=|!=|=|<|>|~|\\(|\\)|[^\\s()<>=!~\"]+)");
+
+    // The text of the query.
+    private final String text;
+    // The compiled query.
+    private final Node root;
+
+    /**
+     * Create a query from its compiled form.
+     */
+    private TrackQuery(String text, Node root)
+    {
+        this.text = text;
+        this.root = root;
+    }
+
+    /**
+     * Compile a query.
+     * @param text The query.
+     * @return The compiled query.
+     * @throws IllegalArgumentException If the query is not valid.
+     */
+    public static TrackQuery parse(String text)
+    {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        int position = 0;
+        while(matcher.find() && matcher.start() == position) {
+            tokens.add(matcher.group(1));
+            position = matcher.end();
+        }
+        if(!text.substring(position).trim().isEmpty()) {
+            throw new IllegalArgumentException("Cannot understand the query at: "
+                                               + text.substring(position).trim());
+        }
+        Parser parser = new Parser(tokens);
+        Node root = parser.parseOr();
+        if(parser.position < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + tokens.get(parser.position) + " in query");
+        }
+        return new TrackQuery(text, root);
+    }
+
+    /**
+     * Return whether the matching tracks depend on the time, as with
+     * "played in", and not only on the tracks' details.
+     * @return true if the query refers to the time.
+     */
+    public boolean isTimeDependent()
+    {
+        return root.isTimeDependent();
+    }
+
+    /**
+     * Return the text of the query.
+     * @return The query.
+     */
+    public String toString()
+    {
+        return text;
+    }
+
+    /**
+     * Return the rows of the tracks that match.
+     * @param columns The tracks.
+     * @param now The current time, in milliseconds since 1970.
+     * @return The rows.
+     */
+    RoaringBitmap select(TrackColumns columns, long now)
+    {
+        return root.select(columns, now);
+    }
+
+    /**
+     * Return whether the track in a row matches.
+     * @param columns The tracks.
+     * @param row The row.
+     * @param now The current time, in milliseconds since 1970.
+     * @return true if it matches.
+     */
+    boolean matches(TrackColumns columns, int row, long now)
+    {
+        return root.matches(columns, row, now);
+    }
+
+    /**
+     * A part of a compiled query.
+     */
+    private interface Node
+    {
+        /**
+         * Return the rows that match.
+         */
+        RoaringBitmap select(TrackColumns columns, long now);
+
+        /**
+         * Return whether a row matches.
+         */
+        boolean matches(TrackColumns columns, int row, long now);
+
+        /**
+         * Return whether the result depends on the time.
+         */
+        boolean isTimeDependent();
+    }
+
+    /**
+     * Both of two parts.
+     */
+    private static class And implements Node
+    {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        public RoaringBitmap select(TrackColumns columns, long now)
+        {
+            return RoaringBitmap.and(left.select(columns, now), right.select(columns, now));
+        }
+
+        public boolean matches(TrackColumns columns, int row, long now)
+        {
+            return left.matches(columns, row, now) && right.matches(columns, row, now);
+        }
+
+        public boolean isTimeDependent()
+        {
+            return left.isTimeDependent() || right.isTimeDependent();
+        }
+    }
+
+    /**
+     * Either of two parts.
+     */
+    private static class Or implements Node
+    {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        public RoaringBitmap select(TrackColumns columns, long now)
+        {
+            return RoaringBitmap.or(left.select(columns, now), right.select(columns, now));
+        }
+
+        public boolean matches(TrackColumns columns, int row, long now)
+        {
+            return left.matches(columns, row, now) || right.matches(columns, row, now);
+        }
+
+        public boolean isTimeDependent()
+        {
+            return left.isTimeDependent() || right.isTimeDependent();
+        }
+    }
+
+    /**
+     * The opposite of a part.
+     */
+    private static class Not implements Node
+    {
+        private final Node inner;
+
+        Not(Node inner)
+        {
+            this.inner = inner;
+        }
+
+        public RoaringBitmap select(TrackColumns columns, long now)
+        {
+            return RoaringBitmap.andNot(columns.getLive(), inner.select(columns, now));
+        }
+
+        public boolean matches(TrackColumns columns, int row, long now)
+        {
+            return !inner.matches(columns, row, now);
+        }
+
+        public boolean isTimeDependent()
+        {
+            return inner.isTimeDependent();
+        }
+    }
+
+    /**
+     * Tracks played within a time of now.
+     */
+    private static class PlayedWithin implements Node
+    {
+        // The time, in milliseconds.
+        private final long millis;
+
+        PlayedWithin(long millis)
+        {
+            this.millis = millis;
+        }
+
+        public RoaringBitmap select(TrackColumns columns, long now)
+        {
+            return columns.selectRows(row -> matches(columns, row, now));
+        }
+
+        public boolean matches(TrackColumns columns, int row, long now)
+        {
+            long played = columns.getLastPlayed(row);
+            return played > 0 && played >= now - millis;
+        }
+
+        public boolean isTimeDependent()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * A comparison of a field with a value.
+     */
+    private static class Comparison implements Node
+    {
+        // The field, the operator and the value, in lower case.
+        private final String field;
+        private final String op;
+        private final String value;
+        // The value as a number, for number fields.
+        private final long number;
+        // Whether the field is a number field, or an indexed one.
+        private final boolean numeric;
+        private final boolean indexed;
+
+        Comparison(String field, String op, String value)
+        {
+            this.field = field;
+            this.op = op;
+            this.value = value.toLowerCase();
+            numeric = Arrays.asList(TrackColumns.NUMBERS).contains(field);
+            indexed = Arrays.asList(TrackColumns.INDEXED).contains(field);
+            if(!numeric && !indexed && !Arrays.asList(TrackColumns.TEXT).contains(field)) {
+                throw new IllegalArgumentException("Unknown field in query: " + field);
+            }
+            if(numeric) {
+                if(op.equals("~") || !value.matches("-?[0-9]+")) {
+                    throw new IllegalArgumentException(field + " must be compared with a number");
+                }
+                number = Long.parseLong(value);
+            }
+            else {
+                number = 0;
+            }
+        }
+
+        public RoaringBitmap select(TrackColumns columns, long now)
+        {
+            if(indexed) {
+                return columns.selectIndexed(field, this::test);
+            }
+            return columns.selectRows(row -> matches(columns, row, now));
+        }
+
+        public boolean matches(TrackColumns columns, int row, long now)
+        {
+            if(numeric) {
+                return compare(Long.compare(columns.getNumber(field, row), number));
+            }
+            return test(columns.getText(field, row));
+        }
+
+        public boolean isTimeDependent()
+        {
+            return false;
+        }
+
+        /**
+         * Test a text value, in lower case.
+         */
+        private boolean test(String text)
+        {
+            if(op.equals("~")) {
+                return text.contains(value);
+            }
+            return compare(text.compareTo(value));
+        }
+
+        /**
+         * Return whether the result of a comparison satisfies the operator.
+         */
+        private boolean compare(int order)
+        {
+            switch(op) {
+                case "=":
+                    return order == 0;
+                case "!=":
+                    return order != 0;
+                case "<":
+                    return order < 0;
+                case "<=":
+                    return order <= 0;
+                case ">":
+                    return order > 0;
+                default:
+                    return order >= 0;
+            }
+        }
+    }
+
+    /**
+     * A recursive descent parser of the tokens of a query.
+     */
+    private static class Parser
+    {
+        // The tokens, and the position of the next.
+        private final List<String> tokens;
+        private int position;
+
+        Parser(List<String> tokens)
+        {
+            this.tokens = tokens;
+            position = 0;
+        }
+
+        /**
+         * or := and ( OR and )*
+         */
+        Node parseOr()
+        {
+            Node node = parseAnd();
+            while(accept("or")) {
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        /**
+         * and := unary ( AND unary )*
+         */
+        Node parseAnd()
+        {
+            Node node = parseUnary();
+            while(accept("and")) {
+                node = new And(node, parseUnary());
+            }
+            return node;
+        }
+
+        /**
+         * unary := NOT unary | ( or ) | PLAYED IN n unit | field op value
+         */
+        Node parseUnary()
+        {
+            if(accept("not")) {
+                return new Not(parseUnary());
+            }
+            if(accept("(")) {
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            if(accept("played")) {
+                expect("in");
+                String amount = next();
+                if(!amount.matches("[0-9]+")) {
+                    throw new IllegalArgumentException("Expected a number after 'played in'");
+                }
+                return new PlayedWithin(Long.parseLong(amount) * unitMillis(next()));
+            }
+            String field = next().toLowerCase();
+            String op = next();
+            if(!op.matches("<=|>=|!=|=|<|>|~")) {
+                throw new IllegalArgumentException("Expected a comparison after " + field);
+            }
+            String value = next();
+            if(value.startsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            return new Comparison(field, op, value);
+        }
+
+        /**
+         * Return the length of a unit of time.
+         */
+        private long unitMillis(String unit)
+        {
+            switch(unit.toLowerCase()) {
+                case "hour":
+                case "hours":
+                    return 3600_000L;
+                case "day":
+                case "days":
+                    return 86400_000L;
+                case "week":
+                case "weeks":
+                    return 7 * 86400_000L;
+                default:
+                    throw new IllegalArgumentException("Unknown unit of time: " + unit);
+            }
+        }
+
+        /**
+         * Move past the next token if it is the given word, ignoring case.
+         */
+        private boolean accept(String word)
+        {
+            if(position < tokens.size() && tokens.get(position).equalsIgnoreCase(word)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Move past the given word, which must be next.
+         */
+        private void expect(String word)
+        {
+            if(!accept(word)) {
+                throw new IllegalArgumentException("Expected '" + word + "' in query");
+            }
+        }
+
+        /**
+         * Return the next token and move past it.
+         */
+        private String next()
+        {
+            if(position == tokens.size()) {
+                throw new IllegalArgumentException("The query is incomplete");
+            }
+            return tokens.get(position++);
+        }
+    }
+}
@@ -32,7 +32,38 @@ public class TrackReader
      */
     public ArrayList<Track> readTracks(File audioFolder, final String suffix)
     {
+        long start = System.nanoTime();
+        PlayerEvents.LibraryScan event = PlayerEvents.isActive()
+                                         ? new PlayerEvents.LibraryScan() : null;
+        if(event != null) {
+            event.begin();
+        }
         ArrayList<Track> tracks = new ArrayList<>();
+        File[] audioFiles = listFiles(audioFolder, suffix);
+        
+        // Put all the matching files into the organizer.
+        for(File file : audioFiles) {
+            Track trackDetails = decodeDetails(file);
+            tracks.add(trackDetails);
+        }
+        PlayerMetrics.get().recordLibraryRead(tracks.size(), System.nanoTime() - start);
+        if(event != null && event.shouldCommit()) {
+            event.folder = audioFolder.getPath();
+            event.tracks = tracks.size();
+            event.commit();
+        }
+        return tracks;
+    }
+
+    /**
+     * List the music files in the given library folder with the given
+     * suffix, without reading them.
+     * @param audioFolder The folder to look for files.
+     * @param suffix The suffix of the audio type.
+     * @return The files, or none if the folder cannot be read.
+     */
+    public File[] listFiles(File audioFolder, final String suffix)
+    {
         File[] audioFiles = audioFolder.listFiles(new FilenameFilter() {
             /**
              * Accept files with matching suffix.
@@ -45,13 +76,17 @@ public class TrackReader
                 return name.toLowerCase().endsWith(suffix);
             }
         });
-        
-        // Put all the matching files into the organizer.
-        for(File file : audioFiles) {
-            Track trackDetails = decodeDetails(file);
-            tracks.add(trackDetails);
-        }
-        return tracks;
+        return audioFiles != null ? audioFiles : new File[0];
+    }
+
+    /**
+     * Read a single music file.
+     * @param file The track file.
+     * @return A Track containing the details decoded from the file name.
+     */
+    public Track readTrack(File file)
+    {
+        return decodeDetails(file);
     }
 
     /**
@@ -59,6 +94,8 @@ public class TrackReader
      * from the file name.
      * It is assumed that the details are in the form:
      *     artist-title.mp3
+     * The album, genre and year, and the artist and title if the
+     * name is not in that form, are read from the file's ID3 tag.
      * @param file The track file.
      * @return A Track containing the details.
      */
@@ -85,6 +122,17 @@ public class TrackReader
                 title = titlePart;
             }
         }
-        return new Track(artist, title, filename);
+        // Use the tag for what the file name does not give.
+        Id3Tag tag = Id3Tag.read(file);
+        if(artist.equals("unknown") && tag.getArtist() != null) {
+            artist = tag.getArtist();
+        }
+        if(title.equals("unknown") && tag.getTitle() != null) {
+            title = tag.getTitle();
+        }
+        Track track = new Track(artist, title, filename);
+        track.setTags(tag.getAlbum() != null ? tag.getAlbum() : "",
+                      tag.getGenre() != null ? tag.getGenre() : "", tag.getYear());
+        return track;
     }
 }